@@ -42,6 +42,20 @@ public interface ConnectionConfig {
      */
     int getLoginFailureDelay();
 
+    /**
+     * The maximum delay in number of milliseconds after a login failure. The
+     * delay doubles with every recent login failure from the same IP address
+     * until it reaches this maximum.
+     *
+     * The default implementation disables the escalation.
+     *
+     * @return The maximum delay time in milliseconds, escalation is disabled
+     *         if not larger than the login failure delay
+     */
+    default int getMaxLoginFailureDelay() {
+        return 0;
+    }
+
     /**
      * The maximum number of time an anonymous user can fail to login before getting disconnected.
      * @return The maximum number of failer login attempts
@@ -68,4 +82,66 @@ public interface ConnectionConfig {
      *         processing client requests.
      */
     int getMaxThreads();
+
+    /**
+     * Tells whether commands, including blocking data transfers, are executed
+     * on virtual threads instead of a fixed size thread pool. The commands of
+     * a session are still executed in order.
+     * 
+     * The default implementation uses the thread pool.
+     * 
+     * @return true if commands are executed on virtual threads
+     */
+    default boolean isVirtualThreadsEnabled() {
+        return false;
+    }
+
+    /**
+     * The maximum number of bytes per second sent to all clients together.
+     * The default implementation does not limit the rate.
+     * @return The maximum download rate of the server, 0 if not limited
+     */
+    default int getMaxDownloadRate() {
+        return 0;
+    }
+
+    /**
+     * The maximum number of bytes per second received from all clients
+     * together.
+     * The default implementation does not limit the rate.
+     * @return The maximum upload rate of the server, 0 if not limited
+     */
+    default int getMaxUploadRate() {
+        return 0;
+    }
+
+    /**
+     * The maximum number of bytes per second sent to the clients from the
+     * same IP address.
+     * The default implementation does not limit the rate.
+     * @return The maximum download rate per IP address, 0 if not limited
+     */
+    default int getMaxDownloadRatePerIp() {
+        return 0;
+    }
+
+    /**
+     * The maximum number of bytes per second received from the clients from
+     * the same IP address.
+     * The default implementation does not limit the rate.
+     * @return The maximum upload rate per IP address, 0 if not limited
+     */
+    default int getMaxUploadRatePerIp() {
+        return 0;
+    }
+
+    /**
+     * Tells whether the transfer rates of a user are shared by all the
+     * transfers of that user. Otherwise each transfer is limited on its own.
+     * The default implementation limits each transfer on its own.
+     * @return true if the rates of a user apply to all its transfers combined
+     */
+    default boolean isUserRatesShared() {
+        return false;
+    }
 }
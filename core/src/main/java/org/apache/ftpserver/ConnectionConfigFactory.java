@@ -39,16 +39,32 @@ public class ConnectionConfigFactory {
 
     private int loginFailureDelay = 500;
 
+    private int maxLoginFailureDelay = 0;
+
     private int maxThreads = 0;
 
+    private boolean virtualThreadsEnabled = false;
+
+    private int maxDownloadRate = 0;
+
+    private int maxUploadRate = 0;
+
+    private int maxDownloadRatePerIp = 0;
+
+    private int maxUploadRatePerIp = 0;
+
+    private boolean userRatesShared = false;
+
     /**
      * Create a connection configuration instances based on the configuration on this factory
      * @return The {@link ConnectionConfig} instance
      */
     public ConnectionConfig createConnectionConfig() {
         return new DefaultConnectionConfig(anonymousLoginEnabled,
-                loginFailureDelay, maxLogins, maxAnonymousLogins,
-                maxLoginFailures, maxThreads);
+                loginFailureDelay, maxLoginFailureDelay, maxLogins,
+                maxAnonymousLogins, maxLoginFailures, maxThreads, virtualThreadsEnabled,
+                maxDownloadRate, maxUploadRate, maxDownloadRatePerIp,
+                maxUploadRatePerIp, userRatesShared);
     }
 
     /**
@@ -125,6 +141,139 @@ public class ConnectionConfigFactory {
         this.maxThreads = maxThreads;
     }
 
+    /**
+     * Tells whether client requests are processed on virtual threads.
+     * 
+     * @return true if client requests are processed on virtual threads
+     */
+    public boolean isVirtualThreadsEnabled() {
+        return virtualThreadsEnabled;
+    }
+
+    /**
+     * Sets whether client requests, including blocking data transfers, are
+     * processed on virtual threads rather than on a pool of at most
+     * {@link #getMaxThreads()} threads. The requests of a session are still
+     * processed in order. On JVMs without virtual threads, an unbounded pool
+     * of platform threads is used instead.
+     * 
+     * @param virtualThreadsEnabled
+     *            true if client requests should be processed on virtual
+     *            threads
+     */
+    public void setVirtualThreadsEnabled(boolean virtualThreadsEnabled) {
+        this.virtualThreadsEnabled = virtualThreadsEnabled;
+    }
+
+    /**
+     * The maximum number of bytes per second sent to all clients together.
+     * 
+     * @return The maximum download rate of the server, 0 if not limited
+     */
+    public int getMaxDownloadRate() {
+        return maxDownloadRate;
+    }
+
+    /**
+     * Set the maximum number of bytes per second sent to all clients
+     * together. The limit is shared by all downloads, in addition to the
+     * limits of the users.
+     * 
+     * @param maxDownloadRate
+     *            The maximum download rate of the server, 0 for no limit
+     */
+    public void setMaxDownloadRate(int maxDownloadRate) {
+        this.maxDownloadRate = maxDownloadRate;
+    }
+
+    /**
+     * The maximum number of bytes per second received from all clients
+     * together.
+     * 
+     * @return The maximum upload rate of the server, 0 if not limited
+     */
+    public int getMaxUploadRate() {
+        return maxUploadRate;
+    }
+
+    /**
+     * Set the maximum number of bytes per second received from all clients
+     * together. The limit is shared by all uploads, in addition to the
+     * limits of the users.
+     * 
+     * @param maxUploadRate
+     *            The maximum upload rate of the server, 0 for no limit
+     */
+    public void setMaxUploadRate(int maxUploadRate) {
+        this.maxUploadRate = maxUploadRate;
+    }
+
+    /**
+     * The maximum number of bytes per second sent to the clients from the
+     * same IP address.
+     * 
+     * @return The maximum download rate per IP address, 0 if not limited
+     */
+    public int getMaxDownloadRatePerIp() {
+        return maxDownloadRatePerIp;
+    }
+
+    /**
+     * Set the maximum number of bytes per second sent to the clients from the
+     * same IP address.
+     * 
+     * @param maxDownloadRatePerIp
+     *            The maximum download rate per IP address, 0 for no limit
+     */
+    public void setMaxDownloadRatePerIp(int maxDownloadRatePerIp) {
+        this.maxDownloadRatePerIp = maxDownloadRatePerIp;
+    }
+
+    /**
+     * The maximum number of bytes per second received from the clients from
+     * the same IP address.
+     * 
+     * @return The maximum upload rate per IP address, 0 if not limited
+     */
+    public int getMaxUploadRatePerIp() {
+        return maxUploadRatePerIp;
+    }
+
+    /**
+     * Set the maximum number of bytes per second received from the clients
+     * from the same IP address.
+     * 
+     * @param maxUploadRatePerIp
+     *            The maximum upload rate per IP address, 0 for no limit
+     */
+    public void setMaxUploadRatePerIp(int maxUploadRatePerIp) {
+        this.maxUploadRatePerIp = maxUploadRatePerIp;
+    }
+
+    /**
+     * Tells whether the transfer rates of a user are shared by all the
+     * transfers of that user.
+     * 
+     * @return true if the rates of a user apply to all its transfers combined
+     */
+    public boolean isUserRatesShared() {
+        return userRatesShared;
+    }
+
+    /**
+     * Sets whether the transfer rates of a user are shared by all the
+     * transfers of that user, in all its sessions. By default each transfer
+     * is limited to the rates of the user on its own, so that for example
+     * every anonymous session gets the anonymous rates.
+     * 
+     * @param userRatesShared
+     *            true if the rates of a user should apply to all its
+     *            transfers combined
+     */
+    public void setUserRatesShared(boolean userRatesShared) {
+        this.userRatesShared = userRatesShared;
+    }
+
     /**
      * Set if anonymous logins are allowed at the server
      * @param anonymousLoginEnabled true if anonymous logins should be enabled
@@ -159,4 +308,29 @@ public class ConnectionConfigFactory {
         this.loginFailureDelay = loginFailureDelay;
     }
 
+    /**
+     * The maximum delay in number of milliseconds after a login failure. The
+     * delay doubles with every recent login failure from the same IP address
+     * until it reaches this maximum.
+     * 
+     * @return The maximum delay time in milliseconds
+     */
+    public int getMaxLoginFailureDelay() {
+        return maxLoginFailureDelay;
+    }
+
+    /**
+     * Set the maximum delay in number of milliseconds after a login failure.
+     * The delay doubles with every recent login failure from the same IP
+     * address until it reaches this maximum. Makes brute force attacks
+     * spread over many connections harder. Escalation is disabled if the
+     * maximum is not larger than the login failure delay, which is the
+     * default.
+     * 
+     * @param maxLoginFailureDelay The maximum delay time in milliseconds
+     */
+    public void setMaxLoginFailureDelay(final int maxLoginFailureDelay) {
+        this.maxLoginFailureDelay = maxLoginFailureDelay;
+    }
+
 }
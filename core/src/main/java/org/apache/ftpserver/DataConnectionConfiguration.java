@@ -126,4 +126,16 @@ public interface DataConnectionConfiguration {
      * @return True if SSL is mandatory for the data channel
      */
     boolean isImplicitSsl();
+
+    /**
+     * Tells whether data connections are handled by non-blocking MINA I/O
+     * processors. If enabled, transfers complete asynchronously and do not
+     * occupy a thread for their duration. The default implementation uses
+     * blocking data connections.
+     * 
+     * @return <code>true</code> if non-blocking data connections are enabled
+     */
+    default boolean isNioEnabled() {
+        return false;
+    }
 }
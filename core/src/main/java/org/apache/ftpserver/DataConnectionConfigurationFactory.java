@@ -50,8 +50,11 @@ public class DataConnectionConfigurationFactory {
     private String passiveAddress;
     private String passiveExternalAddress;
     private PassivePorts passivePorts = new PassivePorts(Collections.<Integer>emptySet(), true);
+    private String passivePortsString;
+    private int passivePortCooldown = 0;
     private boolean passiveIpCheck = false;
     private boolean implicitSsl;
+    private boolean nioEnabled = false;
 
     /**
      * Create a {@link DataConnectionConfiguration} instance based on the 
@@ -64,7 +67,7 @@ public class DataConnectionConfigurationFactory {
                 ssl, activeEnabled, activeIpCheck,
                 activeLocalAddress, activeLocalPort,
                 passiveAddress, passivePorts,
-                passiveExternalAddress, passiveIpCheck, implicitSsl);
+                passiveExternalAddress, passiveIpCheck, implicitSsl, nioEnabled);
     }
     /*
      * (Non-Javadoc)
@@ -277,7 +280,37 @@ public class DataConnectionConfigurationFactory {
      * @param passivePorts The passive ports string
      */
     public void setPassivePorts(String passivePorts) {
-        this.passivePorts = new PassivePorts(passivePorts, true);
+        this.passivePortsString = passivePorts;
+        this.passivePorts = createPassivePorts();
+    }
+
+    /**
+     * Get the number of milliseconds a released passive port is kept unused
+     * @return The cooldown in milliseconds, 0 if ports are reused immediately
+     */
+    public int getPassivePortCooldown() {
+        return passivePortCooldown;
+    }
+
+    /**
+     * Set the number of milliseconds a released passive port is kept unused.
+     * This avoids reusing a port while the previous connection on it may
+     * still be in the TIME_WAIT state. Defaults to 0, reusing ports
+     * immediately.
+     * 
+     * @param passivePortCooldown The cooldown in milliseconds
+     */
+    public void setPassivePortCooldown(int passivePortCooldown) {
+        this.passivePortCooldown = passivePortCooldown;
+        this.passivePorts = createPassivePorts();
+    }
+
+    private PassivePorts createPassivePorts() {
+        if (passivePortsString == null) {
+            return new PassivePorts(Collections.<Integer>emptySet(), true,
+                    passivePortCooldown);
+        }
+        return new PassivePorts(passivePortsString, true, passivePortCooldown);
     }
 
     
@@ -321,4 +354,22 @@ public class DataConnectionConfigurationFactory {
     public void setImplicitSsl(boolean implicitSsl) {
         this.implicitSsl = implicitSsl;
     }
+
+    /**
+     * @return True if data connections are handled by non-blocking I/O
+     */
+    public boolean isNioEnabled() {
+        return nioEnabled;
+    }
+
+    /**
+     * Set whether data connections should be handled by non-blocking MINA I/O
+     * processors instead of a blocking socket per transfer. Data connections
+     * protected by SSL/TLS are encrypted by an SSLEngine on the I/O processors
+     * as well.
+     * @param nioEnabled True if non-blocking data connections should be used
+     */
+    public void setNioEnabled(boolean nioEnabled) {
+        this.nioEnabled = nioEnabled;
+    }
 }
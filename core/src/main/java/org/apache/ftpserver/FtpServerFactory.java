@@ -23,6 +23,7 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.apache.ftpserver.command.CommandFactory;
+import org.apache.ftpserver.command.impl.listing.ListingCache;
 import org.apache.ftpserver.ftplet.FileSystemFactory;
 import org.apache.ftpserver.ftplet.Ftplet;
 import org.apache.ftpserver.ftplet.UserManager;
@@ -30,6 +31,7 @@ import org.apache.ftpserver.ftpletcontainer.impl.DefaultFtpletContainer;
 import org.apache.ftpserver.impl.DefaultFtpServer;
 import org.apache.ftpserver.impl.DefaultFtpServerContext;
 import org.apache.ftpserver.listener.Listener;
+import org.apache.ftpserver.metrics.MetricsExporter;
 import org.apache.ftpserver.message.MessageResource;
 
 /**
@@ -42,6 +44,10 @@ public class FtpServerFactory {
 
     private DefaultFtpServerContext serverContext;
 
+    private String jmxName = "default";
+
+    private MetricsExporter metricsExporter;
+
     /**
      * Creates a server with the default configuration
      */
@@ -55,7 +61,10 @@ public class FtpServerFactory {
      * @return The {@link DefaultFtpServer} instance
      */
     public FtpServer createServer() {
-        return new DefaultFtpServer(serverContext);
+        DefaultFtpServer server = new DefaultFtpServer(serverContext);
+        server.setJmxName(jmxName);
+        server.setMetricsExporter(metricsExporter);
+        return server;
     }
     
     /**
@@ -226,4 +235,61 @@ public class FtpServerFactory {
     public void setConnectionConfig(final ConnectionConfig connectionConfig) {
         serverContext.setConnectionConfig(connectionConfig);
     }
+
+    /**
+     * Get the cache of the directory listings sent by servers created by
+     * this factory.
+     * @return The listing cache, null if listings are not cached
+     */
+    public ListingCache getListingCache() {
+        return serverContext.getListingCache();
+    }
+
+    /**
+     * Set the cache of the directory listings sent by servers created by
+     * this factory. Listings are not cached by default.
+     * @param listingCache The listing cache, created by a
+     *            {@link ListingCacheFactory}
+     */
+    public void setListingCache(final ListingCache listingCache) {
+        serverContext.setListingCache(listingCache);
+    }
+
+    /**
+     * Get the name under which the MBeans of the server are registered.
+     * @return The name, null if the MBeans are not registered
+     */
+    public String getJmxName() {
+        return jmxName;
+    }
+
+    /**
+     * Set the name under which the MBeans of the server are registered in
+     * the platform MBean server when it is started, e.g.
+     * <code>org.apache.ftpserver:type=FtpServer,name=default</code>. Servers
+     * running in the same JVM must have different names. The default value
+     * is "default".
+     * @param jmxName The name, null to not register the MBeans
+     */
+    public void setJmxName(final String jmxName) {
+        this.jmxName = jmxName;
+    }
+
+    /**
+     * Get the exporter publishing the statistics of the server.
+     * @return The exporter, null if none
+     */
+    public MetricsExporter getMetricsExporter() {
+        return metricsExporter;
+    }
+
+    /**
+     * Set the exporter publishing the statistics of the server, started and
+     * stopped with it. None by default.
+     * @param metricsExporter The exporter, e.g. created by a
+     *            {@link org.apache.ftpserver.metrics.MetricsExporterFactory}
+     */
+    public void setMetricsExporter(final MetricsExporter metricsExporter) {
+        this.metricsExporter = metricsExporter;
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver;
+
+import org.apache.ftpserver.command.impl.listing.ListingCache;
+
+/**
+ * Factory for the cache of the directory listings shared by all the sessions
+ * of a server, set with {@link FtpServerFactory#setListingCache(ListingCache)}.
+ * Useful when many clients list the same directories, e.g. on download
+ * mirrors.
+ *
+ * Listings are removed from the cache when the directory is changed through
+ * the server, e.g. by STOR, DELE, RNTO, MKD, RMD or MFMT. Changes made
+ * outside the server are seen once the cached listings expire. Only
+ * directories of the native file system are cached.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ListingCacheFactory {
+
+    private int maxSize = 100;
+
+    private int timeToLive = 10;
+
+    private int maxListingSize = 1024 * 1024;
+
+    /**
+     * Create a {@link ListingCache} instance based on the provided
+     * configuration
+     * @return The {@link ListingCache}
+     */
+    public ListingCache createListingCache() {
+        return new ListingCache(maxSize, timeToLive * 1000L, maxListingSize);
+    }
+
+    /**
+     * Get the maximum number of cached directories.
+     * @return The maximum number of cached directories
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Set the maximum number of cached directories, the least recently used
+     * ones being removed when the cache is full. The default value is 100.
+     * @param maxSize The maximum number of cached directories
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get how long a listing is cached.
+     * @return The time to live in seconds
+     */
+    public int getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Set how long a listing is cached. Changes made to the directories
+     * other than through the server are seen after this delay. The default
+     * value is 10 seconds.
+     * @param timeToLive The time to live in seconds
+     */
+    public void setTimeToLive(int timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Get the maximum size of a cached listing.
+     * @return The maximum size in bytes
+     */
+    public int getMaxListingSize() {
+        return maxListingSize;
+    }
+
+    /**
+     * Set the maximum size of a cached listing, larger listings being read
+     * from the file system each time. The default value is 1 MB.
+     * @param maxListingSize The maximum size in bytes
+     */
+    public void setMaxListingSize(int maxListingSize) {
+        this.maxListingSize = maxListingSize;
+    }
+}
@@ -20,6 +20,9 @@
 package org.apache.ftpserver.command.impl;
 
 import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.ftpserver.command.AbstractCommand;
 import org.apache.ftpserver.ftplet.FtpReply;
@@ -27,6 +30,9 @@ import org.apache.ftpserver.ftplet.FtpRequest;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.TransferProgress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -37,13 +43,20 @@ import org.apache.ftpserver.impl.LocalizedFtpReply;
  * any associated transfer of data. No action is to be taken if the previous
  * command has been completed (including data transfer). The control connection
  * is not to be closed by the server, but the data connection must be closed.
- * Current implementation does not do anything. As here data transfers are not
- * multi-threaded.
+ * The reply to an aborted transfer command is sent before the reply to ABOR.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
 public class ABOR extends AbstractCommand {
 
+    private final Logger LOG = LoggerFactory.getLogger(ABOR.class);
+
+    /**
+     * How long to wait for the aborted transfer command to reply before
+     * replying to ABOR anyway, in milliseconds
+     */
+    private static final long TRANSFER_COMPLETION_TIMEOUT = 10000L;
+
     /**
      * Execute command
      */
@@ -55,8 +68,39 @@ public class ABOR extends AbstractCommand {
         session.resetState();
 
         // and abort any data connection
+        TransferProgress transfer = session.getTransferProgress();
         session.getDataConnection().closeDataConnection();
-        session.write(LocalizedFtpReply.translate(session, request, context,
-                FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "ABOR", null));
+
+        final FtpReply reply = LocalizedFtpReply.translate(session, request,
+                context, FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "ABOR",
+                null);
+        if (transfer == null) {
+            session.write(reply);
+            return;
+        }
+
+        // reply once the aborted command has replied, without holding the
+        // calling thread
+        final AtomicBoolean replied = new AtomicBoolean(false);
+        final String command = transfer.getRequest().getCommand();
+        final ScheduledFuture<?> timeout = context.getScheduler().schedule(
+                new Runnable() {
+                    public void run() {
+                        if (replied.compareAndSet(false, true)) {
+                            LOG.warn("Aborted {} command did not complete in time",
+                                    command);
+                            session.write(reply);
+                        }
+                    }
+                }, TRANSFER_COMPLETION_TIMEOUT, TimeUnit.MILLISECONDS);
+
+        transfer.whenComplete(new Runnable() {
+            public void run() {
+                if (replied.compareAndSet(false, true)) {
+                    timeout.cancel(false);
+                    session.write(reply);
+                }
+            }
+        });
     }
 }
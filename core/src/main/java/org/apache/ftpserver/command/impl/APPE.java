@@ -24,7 +24,9 @@ import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.SocketException;
 
+import org.apache.ftpserver.DataConnectionException;
 import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.command.impl.listing.ListingCache;
 import org.apache.ftpserver.ftplet.DataConnection;
 import org.apache.ftpserver.ftplet.DataConnectionFactory;
 import org.apache.ftpserver.ftplet.DefaultFtpReply;
@@ -32,11 +34,13 @@ import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.AsyncDataConnection;
+import org.apache.ftpserver.impl.DataTransferListener;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
-import org.apache.ftpserver.impl.IODataConnectionFactory;
 import org.apache.ftpserver.impl.LocalizedDataTransferFtpReply;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.ServerDataConnectionFactory;
 import org.apache.ftpserver.impl.ServerFtpStatistics;
 import org.apache.ftpserver.util.IoUtils;
 import org.slf4j.Logger;
@@ -66,6 +70,7 @@ public class APPE extends AbstractCommand {
             final FtpServerContext context, final FtpRequest request)
             throws IOException, FtpException {
 
+        boolean closeDataConnection = true;
         try {
 
             // reset state variables
@@ -88,8 +93,8 @@ public class APPE extends AbstractCommand {
             // 24-10-2007 - added check if PORT or PASV is issued, see
             // https://issues.apache.org/jira/browse/FTPSERVER-110
             DataConnectionFactory connFactory = session.getDataConnection();
-            if (connFactory instanceof IODataConnectionFactory) {
-                InetAddress address = ((IODataConnectionFactory) connFactory)
+            if (connFactory instanceof ServerDataConnectionFactory) {
+                InetAddress address = ((ServerDataConnectionFactory) connFactory)
                         .getInetAddress();
                 if (address == null) {
                     session.write(new DefaultFtpReply(
@@ -146,7 +151,6 @@ public class APPE extends AbstractCommand {
             }
 
             // get data from client
-            boolean failure = false;
             OutputStream os = null;
             long transSz = 0L;
             try {
@@ -160,52 +164,118 @@ public class APPE extends AbstractCommand {
                 // open streams
                 os = file.createOutputStream(offset);
 
+                if (dataConnection instanceof AsyncDataConnection
+                        && session.isAsyncTransferAllowed(request)) {
+                    // the reply is sent when the transfer completes, the
+                    // data connection closes itself
+                    final OutputStream out = os;
+                    final FtpFile transferredFile = file;
+                    final Runnable completion = session.deferCommandCompletion();
+                    closeDataConnection = false;
+                    ((AsyncDataConnection) dataConnection).transferFromClient(
+                            session.getFtpletSession(), out,
+                            new DataTransferListener() {
+                                public void transferCompleted(long transferredSize) {
+                                    transferDone(session, context, request,
+                                            transferredFile, out, transferredSize, null);
+                                    completion.run();
+                                }
+
+                                public void transferFailed(long transferredSize,
+                                        Exception cause) {
+                                    transferDone(session, context, request,
+                                            transferredFile, out, transferredSize, cause);
+                                    completion.run();
+                                }
+                            });
+                    return;
+                }
+
                 // transfer data
                 transSz = dataConnection.transferFromClient(session.getFtpletSession(), os);
+            } catch (IOException e) {
+                transferDone(session, context, request, file, os, transSz, e);
+                return;
+            } catch (RuntimeException e) {
+                // make sure we really close the output stream
+                IoUtils.close(os);
+                throw e;
+            }
 
+            transferDone(session, context, request, file, os, transSz, null);
+        } finally {
+            if (closeDataConnection) {
+                session.getDataConnection().closeDataConnection();
+            }
+        }
+    }
+
+    /**
+     * Close the output stream and send the final reply for the transfer.
+     * 
+     * @param failure
+     *            The cause of the transfer failure, null if the transfer
+     *            succeeded
+     */
+    private void transferDone(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final FtpFile file, final OutputStream os, final long transSz,
+            Exception failure) {
+        String fileName = file.getAbsolutePath();
+
+        if (failure == null) {
+            try {
                 // attempt to close the output stream so that errors in 
                 // closing it will return an error to the client (FTPSERVER-119) 
                 if(os != null) {
                     os.close();
                 }
+            } catch (IOException ex) {
+                failure = ex;
+            }
+        }
 
-                LOG.info("File uploaded {}", fileName);
+        // make sure we really close the output stream
+        IoUtils.close(os);
 
-                // notify the statistics component
-                ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
-                        .getFtpStatistics();
-                ftpStat.setUpload(session, file, transSz);
-                
-            } catch (SocketException e) {
-                LOG.debug("SocketException during file upload", e);
-                failure = true;
-                session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
-                        "APPE", fileName, file));
-            } catch (IOException e) {
-                LOG.debug("IOException during file upload", e);
-                failure = true;
-                session
-                        .write(LocalizedDataTransferFtpReply
-                                .translate(
-                                        session,
-                                        request,
-                                        context,
-                                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
-                                        "APPE", fileName, file));
-            } finally {
-                // make sure we really close the output stream
-                IoUtils.close(os);
-            }
+        // the size of the file changed
+        ListingCache listingCache = context.getListingCache();
+        if (listingCache != null) {
+            listingCache.invalidate(file);
+        }
+
+        if (failure == null) {
+            LOG.info("File uploaded {}", fileName);
+
+            // notify the statistics component
+            ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
+                    .getFtpStatistics();
+            ftpStat.setUpload(session, file, transSz);
 
             // if data transfer ok - send transfer complete message
-            if (!failure) {
-                session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "APPE",
-                        fileName, file, transSz));
-            }
-        } finally {
-            session.getDataConnection().closeDataConnection();
+            session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "APPE",
+                    fileName, file, transSz));
+        } else if (failure instanceof DataConnectionException) {
+            LOG.debug("Exception opening the data connection", failure);
+            session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION, "APPE",
+                    fileName, file));
+        } else if (failure instanceof SocketException) {
+            LOG.debug("SocketException during file upload", failure);
+            session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+                    "APPE", fileName, file));
+        } else {
+            LOG.debug("IOException during file upload", failure);
+            session
+                    .write(LocalizedDataTransferFtpReply
+                            .translate(
+                                    session,
+                                    request,
+                                    context,
+                                    FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                    "APPE", fileName, file));
         }
     }
 }
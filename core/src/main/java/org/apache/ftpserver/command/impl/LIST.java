@@ -20,9 +20,11 @@
 package org.apache.ftpserver.command.impl;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.SocketException;
 
+import org.apache.ftpserver.DataConnectionException;
 import org.apache.ftpserver.command.AbstractCommand;
 import org.apache.ftpserver.command.impl.listing.DirectoryLister;
 import org.apache.ftpserver.command.impl.listing.LISTFileFormater;
@@ -35,11 +37,14 @@ import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.AsyncDataConnection;
+import org.apache.ftpserver.impl.DataTransferListener;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
-import org.apache.ftpserver.impl.IODataConnectionFactory;
 import org.apache.ftpserver.impl.LocalizedDataTransferFtpReply;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.ServerDataConnectionFactory;
+import org.apache.ftpserver.util.IoUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -72,6 +77,7 @@ public class LIST extends AbstractCommand {
             final FtpServerContext context, final FtpRequest request)
             throws IOException, FtpException {
 
+        boolean closeDataConnection = true;
         try {
 
             // reset state variables
@@ -95,8 +101,8 @@ public class LIST extends AbstractCommand {
             // 24-10-2007 - added check if PORT or PASV is issued, see
             // https://issues.apache.org/jira/browse/FTPSERVER-110
             DataConnectionFactory connFactory = session.getDataConnection();
-            if (connFactory instanceof IODataConnectionFactory) {
-                InetAddress address = ((IODataConnectionFactory) connFactory)
+            if (connFactory instanceof ServerDataConnectionFactory) {
+                InetAddress address = ((ServerDataConnectionFactory) connFactory)
                         .getInetAddress();
                 if (address == null) {
                     session.write(new DefaultFtpReply(
@@ -123,27 +129,45 @@ public class LIST extends AbstractCommand {
 
             // transfer listing data
             boolean failure = false;
-            String dirList = directoryLister.listFiles(parsedArg, 
-                session.getFileSystemView(), LIST_FILE_FORMATER);
+            InputStream dirList = directoryLister.openListing(parsedArg,
+                session.getFileSystemView(), LIST_FILE_FORMATER,
+                context.getListingCache(), "LIST", session.getUser());
+
+            if (dataConnection instanceof AsyncDataConnection
+                    && session.isAsyncTransferAllowed(request)) {
+                // the reply is sent when the transfer completes, the
+                // data connection closes itself
+                final FtpFile listedFile = file;
+                final Runnable completion = session.deferCommandCompletion();
+                closeDataConnection = false;
+                ((AsyncDataConnection) dataConnection).transferToClient(
+                        session.getFtpletSession(), dirList,
+                        new DataTransferListener() {
+                            public void transferCompleted(long transferredSize) {
+                                IoUtils.close(dirList);
+                                transferDone(session, context, request,
+                                        listedFile, transferredSize, null);
+                                completion.run();
+                            }
+
+                            public void transferFailed(long transferredSize,
+                                    Exception cause) {
+                                IoUtils.close(dirList);
+                                transferDone(session, context, request,
+                                        listedFile, transferredSize, cause);
+                                completion.run();
+                            }
+                        });
+                return;
+            }
+
+            long listLength = 0;
             try {
-                dataConnection.transferToClient(session.getFtpletSession(), dirList);
-            } catch (SocketException ex) {
-                LOG.debug("Socket exception during list transfer", ex);
-                failure = true;
-                session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
-                        "LIST", null, file));
+                listLength = dataConnection.transferToClient(
+                        session.getFtpletSession(), dirList);
             } catch (IOException ex) {
-                LOG.debug("IOException during list transfer", ex);
                 failure = true;
-                session
-                        .write(LocalizedDataTransferFtpReply
-                                .translate(
-                                        session,
-                                        request,
-                                        context,
-                                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
-                                        "LIST", null, file));
+                transferDone(session, context, request, file, listLength, ex);
             } catch (IllegalArgumentException e) {
                 LOG.debug("Illegal list syntax: " + request.getArgument(), e);
                 // if listing syntax error - send message
@@ -155,16 +179,56 @@ public class LIST extends AbstractCommand {
                                         context,
                                         FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
                                         "LIST", null, file));
+            } finally {
+                IoUtils.close(dirList);
             }
 
             // if data transfer ok - send transfer complete message
             if (!failure) {
-                session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "LIST",
-                        null, file, dirList.length()));
+                transferDone(session, context, request, file, listLength, null);
             }
         } finally {
-            session.getDataConnection().closeDataConnection();
+            if (closeDataConnection) {
+                session.getDataConnection().closeDataConnection();
+            }
+        }
+    }
+
+    /**
+     * Send the final reply for the listing transfer.
+     * 
+     * @param failure
+     *            The cause of the transfer failure, null if the transfer
+     *            succeeded
+     */
+    private void transferDone(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final FtpFile file, final long listLength,
+            final Exception failure) {
+        if (failure == null) {
+            session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "LIST",
+                    null, file, listLength));
+        } else if (failure instanceof DataConnectionException) {
+            LOG.debug("Exception opening the data connection", failure);
+            session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION, "LIST",
+                    null, file));
+        } else if (failure instanceof SocketException) {
+            LOG.debug("Socket exception during list transfer", failure);
+            session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+                    "LIST", null, file));
+        } else {
+            LOG.debug("IOException during list transfer", failure);
+            session
+                    .write(LocalizedDataTransferFtpReply
+                            .translate(
+                                    session,
+                                    request,
+                                    context,
+                                    FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                    "LIST", null, file));
         }
     }
 
@@ -24,6 +24,7 @@ import java.text.ParseException;
 import java.util.Date;
 
 import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.command.impl.listing.ListingCache;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
@@ -136,6 +137,11 @@ public class MFMT extends AbstractCommand {
                  return;
              }
 
+            ListingCache listingCache = context.getListingCache();
+            if (listingCache != null) {
+                listingCache.invalidate(file);
+            }
+
              // all checks okay, lets go
             session
             .write(LocalizedFtpReply
@@ -22,6 +22,7 @@ package org.apache.ftpserver.command.impl;
 import java.io.IOException;
 
 import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.command.impl.listing.ListingCache;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
@@ -100,6 +101,10 @@ public class MKD extends AbstractCommand {
 
         // now create directory
         if (file.mkdir()) {
+            ListingCache listingCache = context.getListingCache();
+            if (listingCache != null) {
+                listingCache.invalidate(file);
+            }
             session.write(LocalizedFileActionFtpReply.translate(session, request, context,
                     FtpReply.REPLY_257_PATHNAME_CREATED, "MKD", fileName, file));
 
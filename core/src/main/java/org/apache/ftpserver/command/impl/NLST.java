@@ -20,9 +20,11 @@
 package org.apache.ftpserver.command.impl;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.SocketException;
 
+import org.apache.ftpserver.DataConnectionException;
 import org.apache.ftpserver.command.AbstractCommand;
 import org.apache.ftpserver.command.impl.listing.DirectoryLister;
 import org.apache.ftpserver.command.impl.listing.FileFormater;
@@ -36,10 +38,13 @@ import org.apache.ftpserver.ftplet.DefaultFtpReply;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.AsyncDataConnection;
+import org.apache.ftpserver.impl.DataTransferListener;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
-import org.apache.ftpserver.impl.IODataConnectionFactory;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.ServerDataConnectionFactory;
+import org.apache.ftpserver.util.IoUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -72,6 +77,7 @@ public class NLST extends AbstractCommand {
             final FtpServerContext context, final FtpRequest request)
             throws IOException, FtpException {
 
+        boolean closeDataConnection = true;
         try {
 
             // reset state
@@ -80,8 +86,8 @@ public class NLST extends AbstractCommand {
             // 24-10-2007 - added check if PORT or PASV is issued, see
             // https://issues.apache.org/jira/browse/FTPSERVER-110
             DataConnectionFactory connFactory = session.getDataConnection();
-            if (connFactory instanceof IODataConnectionFactory) {
-                InetAddress address = ((IODataConnectionFactory) connFactory)
+            if (connFactory instanceof ServerDataConnectionFactory) {
+                InetAddress address = ((ServerDataConnectionFactory) connFactory)
                         .getInetAddress();
                 if (address == null) {
                     session.write(new DefaultFtpReply(
@@ -120,25 +126,45 @@ public class NLST extends AbstractCommand {
                     formater = NLST_FILE_FORMATER;
                 }
 
-                dataConnection.transferToClient(session.getFtpletSession(), directoryLister.listFiles(
-                        parsedArg, session.getFileSystemView(), formater));
-            } catch (SocketException ex) {
-                LOG.debug("Socket exception during data transfer", ex);
-                failure = true;
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
-                        "NLST", null));
+                InputStream dirList = directoryLister.openListing(parsedArg,
+                        session.getFileSystemView(), formater, context
+                                .getListingCache(),
+                        formater == LIST_FILE_FORMATER ? "LIST" : "NLST",
+                        session.getUser());
+
+                if (dataConnection instanceof AsyncDataConnection
+                        && session.isAsyncTransferAllowed(request)) {
+                    // the reply is sent when the transfer completes, the
+                    // data connection closes itself
+                    final Runnable completion = session.deferCommandCompletion();
+                    closeDataConnection = false;
+                    ((AsyncDataConnection) dataConnection).transferToClient(
+                            session.getFtpletSession(), dirList,
+                            new DataTransferListener() {
+                                public void transferCompleted(long transferredSize) {
+                                    IoUtils.close(dirList);
+                                    transferDone(session, context, request, null);
+                                    completion.run();
+                                }
+
+                                public void transferFailed(long transferredSize,
+                                        Exception cause) {
+                                    IoUtils.close(dirList);
+                                    transferDone(session, context, request, cause);
+                                    completion.run();
+                                }
+                            });
+                    return;
+                }
+
+                try {
+                    dataConnection.transferToClient(session.getFtpletSession(), dirList);
+                } finally {
+                    IoUtils.close(dirList);
+                }
             } catch (IOException ex) {
-                LOG.debug("IOException during data transfer", ex);
                 failure = true;
-                session
-                        .write(LocalizedFtpReply
-                                .translate(
-                                        session,
-                                        request,
-                                        context,
-                                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
-                                        "NLST", null));
+                transferDone(session, context, request, ex);
             } catch (IllegalArgumentException e) {
                 LOG
                         .debug("Illegal listing syntax: "
@@ -156,12 +182,49 @@ public class NLST extends AbstractCommand {
 
             // if data transfer ok - send transfer complete message
             if (!failure) {
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "NLST",
-                        null));
+                transferDone(session, context, request, null);
             }
         } finally {
-            session.getDataConnection().closeDataConnection();
+            if (closeDataConnection) {
+                session.getDataConnection().closeDataConnection();
+            }
+        }
+    }
+
+    /**
+     * Send the final reply for the listing transfer.
+     * 
+     * @param failure
+     *            The cause of the transfer failure, null if the transfer
+     *            succeeded
+     */
+    private void transferDone(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final Exception failure) {
+        if (failure == null) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "NLST",
+                    null));
+        } else if (failure instanceof DataConnectionException) {
+            LOG.debug("Exception opening the data connection", failure);
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION, "NLST",
+                    null));
+        } else if (failure instanceof SocketException) {
+            LOG.debug("Socket exception during data transfer", failure);
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+                    "NLST", null));
+        } else {
+            LOG.debug("IOException during data transfer", failure);
+            session
+                    .write(LocalizedFtpReply
+                            .translate(
+                                    session,
+                                    request,
+                                    context,
+                                    FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                    "NLST", null));
         }
     }
 }
@@ -22,6 +22,7 @@ package org.apache.ftpserver.command.impl;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 
+import org.apache.ftpserver.ConnectionConfig;
 import org.apache.ftpserver.command.AbstractCommand;
 import org.apache.ftpserver.ftplet.Authentication;
 import org.apache.ftpserver.ftplet.AuthenticationFailedException;
@@ -206,12 +207,7 @@ public class PASS extends AbstractCommand {
                 session.setUserArgument(oldUserArgument);
                 session.setMaxIdleTime(oldMaxIdleTime);
 
-                delayAfterLoginFailure(context.getConnectionConfig()
-                        .getLoginFailureDelay());
-
                 LOG.warn("Login failure - " + userName);
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_530_NOT_LOGGED_IN, "PASS", userName));
                 stat.setLoginFail(session);
 
                 session.increaseFailedLogins();
@@ -219,12 +215,22 @@ public class PASS extends AbstractCommand {
                 // kick the user if the max number of failed logins is reached
                 int maxAllowedLoginFailues = context.getConnectionConfig()
                         .getMaxLoginFailures();
-                if (maxAllowedLoginFailues != 0
-                        && session.getFailedLogins() >= maxAllowedLoginFailues) {
+                boolean disconnect = maxAllowedLoginFailues != 0
+                        && session.getFailedLogins() >= maxAllowedLoginFailues;
+                if (disconnect) {
                     LOG.warn("User exceeded the number of allowed failed logins, session will be closed");
+                }
 
-                    session.close(false).awaitUninterruptibly(10000);
+                // the reply is delayed without holding the request thread
+                long loginFailureDelay = getLoginFailureDelay(session,
+                        context, stat);
+                if (loginFailureDelay > 0) {
+                    LOG.debug("Delaying the reply for " + loginFailureDelay
+                            + " milliseconds due to login failure");
                 }
+                session.writeDelayed(LocalizedFtpReply.translate(session,
+                        request, context, FtpReply.REPLY_530_NOT_LOGGED_IN,
+                        "PASS", userName), loginFailureDelay, disconnect);
 
                 return;
             }
@@ -254,17 +260,26 @@ public class PASS extends AbstractCommand {
         }
     }
 
-    private void delayAfterLoginFailure(final int loginFailureDelay) {
-
-        if (loginFailureDelay > 0) {
-            LOG.debug("Waiting for " + loginFailureDelay
-                    + " milliseconds due to login failure");
-
-            try {
-                Thread.sleep(loginFailureDelay);
-            } catch (InterruptedException e) {
-                // ignore and go on
+    /**
+     * The delay after a login failure, doubled for every earlier recent
+     * failure from the same IP address up to the maximum delay.
+     */
+    private long getLoginFailureDelay(final FtpIoSession session,
+            final FtpServerContext context, final ServerFtpStatistics stat) {
+        ConnectionConfig connectionConfig = context.getConnectionConfig();
+        long delay = connectionConfig.getLoginFailureDelay();
+        long maxDelay = connectionConfig.getMaxLoginFailureDelay();
+
+        if (delay > 0 && maxDelay > delay
+                && session.getRemoteAddress() instanceof InetSocketAddress) {
+            int failures = stat.getRecentFailedLoginNumber(
+                    ((InetSocketAddress) session.getRemoteAddress())
+                            .getAddress());
+            for (int i = 1; i < failures && delay < maxDelay; i++) {
+                delay *= 2;
             }
+            delay = Math.min(delay, maxDelay);
         }
+        return delay;
     }
 }
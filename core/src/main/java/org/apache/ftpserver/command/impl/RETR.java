@@ -25,6 +25,7 @@ import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.SocketException;
 
+import org.apache.ftpserver.DataConnectionException;
 import org.apache.ftpserver.command.AbstractCommand;
 import org.apache.ftpserver.ftplet.DataConnection;
 import org.apache.ftpserver.ftplet.DataConnectionFactory;
@@ -34,12 +35,15 @@ import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.AsyncDataConnection;
+import org.apache.ftpserver.impl.DataTransferListener;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
-import org.apache.ftpserver.impl.IODataConnectionFactory;
 import org.apache.ftpserver.impl.LocalizedDataTransferFtpReply;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.ServerDataConnectionFactory;
 import org.apache.ftpserver.impl.ServerFtpStatistics;
+import org.apache.ftpserver.impl.TransferProgress;
 import org.apache.ftpserver.util.IoUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -67,6 +71,7 @@ public class RETR extends AbstractCommand {
             final FtpServerContext context, final FtpRequest request)
             throws IOException, FtpException {
 
+        boolean closeDataConnection = true;
         try {
 
             // get state variable
@@ -129,8 +134,8 @@ public class RETR extends AbstractCommand {
             //sense to have this as the first check before checking everything 
             //else such as the file and its permissions.  
             DataConnectionFactory connFactory = session.getDataConnection();
-            if (connFactory instanceof IODataConnectionFactory) {
-                InetAddress address = ((IODataConnectionFactory) connFactory)
+            if (connFactory instanceof ServerDataConnectionFactory) {
+                InetAddress address = ((ServerDataConnectionFactory) connFactory)
                         .getInetAddress();
                 if (address == null) {
                     session.write(new DefaultFtpReply(
@@ -144,10 +149,6 @@ public class RETR extends AbstractCommand {
             session.write(LocalizedFtpReply.translate(session, request, context,
                     FtpReply.REPLY_150_FILE_STATUS_OKAY, "RETR", null));
 
-            // send file data to client
-            boolean failure = false;
-            InputStream is = null;
-
             DataConnection dataConnection;
             try {
                 dataConnection = session.getDataConnection().openConnection();
@@ -159,61 +160,128 @@ public class RETR extends AbstractCommand {
                 return;
             }
 
+            // send file data to client
+            InputStream is = null;
             long transSz = 0L;
             try {
 
                 // open streams
                 is = openInputStream(session, file, skipLen);
 
+                TransferProgress transfer = session.getTransferProgress();
+                if (transfer != null) {
+                    transfer.setExpectedSize(Math.max(0L, file.getSize() - skipLen));
+                }
+
+                if (dataConnection instanceof AsyncDataConnection
+                        && session.isAsyncTransferAllowed(request)) {
+                    // the reply is sent when the transfer completes, the
+                    // data connection closes itself
+                    final InputStream in = is;
+                    final FtpFile transferredFile = file;
+                    final Runnable completion = session.deferCommandCompletion();
+                    closeDataConnection = false;
+                    ((AsyncDataConnection) dataConnection).transferToClient(
+                            session.getFtpletSession(), in,
+                            new DataTransferListener() {
+                                public void transferCompleted(long transferredSize) {
+                                    transferDone(session, context, request,
+                                            transferredFile, in, transferredSize, null);
+                                    completion.run();
+                                }
+
+                                public void transferFailed(long transferredSize,
+                                        Exception cause) {
+                                    transferDone(session, context, request,
+                                            transferredFile, in, transferredSize, cause);
+                                    completion.run();
+                                }
+                            });
+                    return;
+                }
+
                 // transfer data
                 transSz = dataConnection.transferToClient(session.getFtpletSession(), is);
+            } catch (IOException ex) {
+                transferDone(session, context, request, file, is, transSz, ex);
+                return;
+            } catch (RuntimeException ex) {
+                // make sure we really close the input stream
+                IoUtils.close(is);
+                throw ex;
+            }
+
+            transferDone(session, context, request, file, is, transSz, null);
+        } finally {
+            session.resetState();
+            if (closeDataConnection) {
+                session.getDataConnection().closeDataConnection();
+            }
+        }
+    }
+
+    /**
+     * Close the input stream and send the final reply for the transfer.
+     * 
+     * @param failure
+     *            The cause of the transfer failure, null if the transfer
+     *            succeeded
+     */
+    private void transferDone(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final FtpFile file, final InputStream is, final long transSz,
+            Exception failure) {
+        String fileName = file.getAbsolutePath();
+
+        if (failure == null) {
+            try {
                 // attempt to close the input stream so that errors in 
                 // closing it will return an error to the client (FTPSERVER-119) 
                 if(is != null) {
                     is.close();
                 }
-
-                LOG.info("File downloaded {}", fileName);
-
-                // notify the statistics component
-                ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
-                        .getFtpStatistics();
-                if (ftpStat != null) {
-                    ftpStat.setDownload(session, file, transSz);
-                }
-                
-            } catch (SocketException ex) {
-                LOG.debug("Socket exception during data transfer", ex);
-                failure = true;
-                session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
-                        "RETR", fileName, file, transSz));
             } catch (IOException ex) {
-                LOG.debug("IOException during data transfer", ex);
-                failure = true;
-                session
-                        .write(LocalizedDataTransferFtpReply
-                                .translate(
-                                        session,
-                                        request,
-                                        context,
-                                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
-                                        "RETR", fileName, file, transSz));
-            } finally {
-                // make sure we really close the input stream
-                IoUtils.close(is);
+                failure = ex;
             }
+        }
 
-            // if data transfer ok - send transfer complete message
-            if (!failure) {
-                session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "RETR",
-                        fileName, file, transSz));
+        // make sure we really close the input stream
+        IoUtils.close(is);
+
+        if (failure == null) {
+            LOG.info("File downloaded {}", fileName);
 
+            // notify the statistics component
+            ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
+                    .getFtpStatistics();
+            if (ftpStat != null) {
+                ftpStat.setDownload(session, file, transSz);
             }
-        } finally {
-            session.resetState();
-            session.getDataConnection().closeDataConnection();
+
+            // if data transfer ok - send transfer complete message
+            session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "RETR",
+                    fileName, file, transSz));
+        } else if (failure instanceof DataConnectionException) {
+            LOG.debug("Exception opening the data connection", failure);
+            session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION, "RETR",
+                    null, file));
+        } else if (failure instanceof SocketException) {
+            LOG.debug("Socket exception during data transfer", failure);
+            session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+                    "RETR", fileName, file, transSz));
+        } else {
+            LOG.debug("IOException during data transfer", failure);
+            session
+                    .write(LocalizedDataTransferFtpReply
+                            .translate(
+                                    session,
+                                    request,
+                                    context,
+                                    FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                    "RETR", fileName, file, transSz));
         }
     }
 
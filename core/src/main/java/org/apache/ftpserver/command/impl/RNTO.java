@@ -22,6 +22,7 @@ package org.apache.ftpserver.command.impl;
 import java.io.IOException;
 
 import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.command.impl.listing.ListingCache;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
@@ -129,6 +130,11 @@ public class RNTO extends AbstractCommand {
             
             // now rename
             if (frFile.move(toFile)) {
+                ListingCache listingCache = context.getListingCache();
+                if (listingCache != null) {
+                    listingCache.invalidate(frFile);
+                    listingCache.invalidate(toFile);
+                }
                 session.write(LocalizedRenameFtpReply.translate(session, request, context,
                         FtpReply.REPLY_250_REQUESTED_FILE_ACTION_OKAY, "RNTO",
                         toFileStr, frFile, toFile));
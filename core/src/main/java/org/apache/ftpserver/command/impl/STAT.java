@@ -35,6 +35,7 @@ import org.apache.ftpserver.impl.FtpServerContext;
 import org.apache.ftpserver.impl.LocalizedDataTransferFtpReply;
 import org.apache.ftpserver.impl.LocalizedFileActionFtpReply;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.TransferProgress;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -42,7 +43,8 @@ import org.apache.ftpserver.impl.LocalizedFtpReply;
  * <code>STAT [&lt;SP&gt; &lt;pathname&gt;] &lt;CRLF&gt;</code><br>
  * 
  * This command shall cause a status response to be sent over the control
- * connection in the form of a reply.
+ * connection in the form of a reply. Without argument, the reply reports the
+ * progress of the data transfer in progress, if any.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
@@ -89,7 +91,7 @@ public class STAT extends AbstractCommand {
                 session.write(LocalizedFileActionFtpReply.translate(session, request, context,
                         replyCode, "STAT", dirList, file));
                 
-            } catch (FtpException e) {
+            } catch (FtpException | IOException e) {
                 session
                 .write(LocalizedFileActionFtpReply
                         .translate(
@@ -100,6 +102,11 @@ public class STAT extends AbstractCommand {
                                 "STAT", null, file));
             }
         
+        } else if (session.getTransferProgress() != null) {
+            // write the status of the transfer in progress
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_213_FILE_STATUS, "STAT",
+                    getTransferStatus(session.getTransferProgress())));
         } else {
             // write the status info
             session.write(LocalizedFtpReply.translate(session, request, context,
@@ -107,4 +114,23 @@ public class STAT extends AbstractCommand {
         }
     }
 
+    private String getTransferStatus(final TransferProgress transfer) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Transfer in progress: ").append(
+                transfer.getRequest().getRequestLine()).append('\n');
+        // a line starting with a number could end the reply for clients
+        sb.append("Transferred ").append(transfer.getTransferredSize());
+        if (transfer.getExpectedSize() >= 0) {
+            sb.append(" of ").append(transfer.getExpectedSize());
+        }
+        sb.append(" bytes\n");
+        sb.append("Rate ").append(transfer.getRate()).append(" bytes/s");
+        if (transfer.getRemainingTime() >= 0) {
+            sb.append(", ").append(transfer.getRemainingTime()).append(
+                    " seconds remaining");
+        }
+        sb.append('\n');
+        return sb.toString();
+    }
+
 }
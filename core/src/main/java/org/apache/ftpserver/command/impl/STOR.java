@@ -24,7 +24,9 @@ import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.SocketException;
 
+import org.apache.ftpserver.DataConnectionException;
 import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.command.impl.listing.ListingCache;
 import org.apache.ftpserver.ftplet.DataConnection;
 import org.apache.ftpserver.ftplet.DataConnectionFactory;
 import org.apache.ftpserver.ftplet.DefaultFtpReply;
@@ -32,11 +34,13 @@ import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.AsyncDataConnection;
+import org.apache.ftpserver.impl.DataTransferListener;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
-import org.apache.ftpserver.impl.IODataConnectionFactory;
 import org.apache.ftpserver.impl.LocalizedDataTransferFtpReply;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.ServerDataConnectionFactory;
 import org.apache.ftpserver.impl.ServerFtpStatistics;
 import org.apache.ftpserver.util.IoUtils;
 import org.slf4j.Logger;
@@ -66,6 +70,7 @@ public class STOR extends AbstractCommand {
             final FtpServerContext context, final FtpRequest request)
             throws IOException, FtpException {
 
+        boolean closeDataConnection = true;
         try {
 
             // get state variable
@@ -88,8 +93,8 @@ public class STOR extends AbstractCommand {
             // 24-10-2007 - added check if PORT or PASV is issued, see
             // https://issues.apache.org/jira/browse/FTPSERVER-110
             DataConnectionFactory connFactory = session.getDataConnection();
-            if (connFactory instanceof IODataConnectionFactory) {
-                InetAddress address = ((IODataConnectionFactory) connFactory)
+            if (connFactory instanceof ServerDataConnectionFactory) {
+                InetAddress address = ((ServerDataConnectionFactory) connFactory)
                         .getInetAddress();
                 if (address == null) {
                     session.write(new DefaultFtpReply(
@@ -140,58 +145,123 @@ public class STOR extends AbstractCommand {
             }
 
             // transfer data
-            boolean failure = false;
             OutputStream outStream = null;
             long transSz = 0L;
             try {
                 outStream = file.createOutputStream(skipLen);
-                transSz = dataConnection.transferFromClient(session.getFtpletSession(), outStream);
 
-                // attempt to close the output stream so that errors in 
-                // closing it will return an error to the client (FTPSERVER-119) 
-                if(outStream != null) {
-                    outStream.close();
-                }
+                if (dataConnection instanceof AsyncDataConnection
+                        && session.isAsyncTransferAllowed(request)) {
+                    // the reply is sent when the transfer completes, the
+                    // data connection closes itself
+                    final OutputStream out = outStream;
+                    final FtpFile transferredFile = file;
+                    final Runnable completion = session.deferCommandCompletion();
+                    closeDataConnection = false;
+                    ((AsyncDataConnection) dataConnection).transferFromClient(
+                            session.getFtpletSession(), out,
+                            new DataTransferListener() {
+                                public void transferCompleted(long transferredSize) {
+                                    transferDone(session, context, request,
+                                            transferredFile, out, transferredSize, null);
+                                    completion.run();
+                                }
 
-                LOG.info("File uploaded {}", fileName);
+                                public void transferFailed(long transferredSize,
+                                        Exception cause) {
+                                    transferDone(session, context, request,
+                                            transferredFile, out, transferredSize, cause);
+                                    completion.run();
+                                }
+                            });
+                    return;
+                }
 
-                // notify the statistics component
-                ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
-                        .getFtpStatistics();
-                ftpStat.setUpload(session, file, transSz);
-                
-            } catch (SocketException ex) {
-                LOG.debug("Socket exception during data transfer", ex);
-                failure = true;
-                session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
-                        "STOR", fileName, file));
+                transSz = dataConnection.transferFromClient(session.getFtpletSession(), outStream);
             } catch (IOException ex) {
-                LOG.debug("IOException during data transfer", ex);
-                failure = true;
-                session
-                        .write(LocalizedDataTransferFtpReply
-                                .translate(
-                                        session,
-                                        request,
-                                        context,
-                                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
-                                        "STOR", fileName, file));
-            } finally {
+                transferDone(session, context, request, file, outStream, transSz, ex);
+                return;
+            } catch (RuntimeException ex) {
                 // make sure we really close the output stream
                 IoUtils.close(outStream);
+                throw ex;
             }
 
-            // if data transfer ok - send transfer complete message
-            if (!failure) {
-                session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "STOR",
-                        fileName, file, transSz));
-
-            }
+            transferDone(session, context, request, file, outStream, transSz, null);
         } finally {
             session.resetState();
-            session.getDataConnection().closeDataConnection();
+            if (closeDataConnection) {
+                session.getDataConnection().closeDataConnection();
+            }
+        }
+    }
+
+    /**
+     * Close the output stream and send the final reply for the transfer.
+     * 
+     * @param failure
+     *            The cause of the transfer failure, null if the transfer
+     *            succeeded
+     */
+    private void transferDone(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final FtpFile file, final OutputStream os, final long transSz,
+            Exception failure) {
+        String fileName = file.getAbsolutePath();
+
+        if (failure == null) {
+            try {
+                // attempt to close the output stream so that errors in 
+                // closing it will return an error to the client (FTPSERVER-119) 
+                if(os != null) {
+                    os.close();
+                }
+            } catch (IOException ex) {
+                failure = ex;
+            }
+        }
+
+        // make sure we really close the output stream
+        IoUtils.close(os);
+
+        // the size of the file changed
+        ListingCache listingCache = context.getListingCache();
+        if (listingCache != null) {
+            listingCache.invalidate(file);
+        }
+
+        if (failure == null) {
+            LOG.info("File uploaded {}", fileName);
+
+            // notify the statistics component
+            ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
+                    .getFtpStatistics();
+            ftpStat.setUpload(session, file, transSz);
+
+            // if data transfer ok - send transfer complete message
+            session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "STOR",
+                    fileName, file, transSz));
+        } else if (failure instanceof DataConnectionException) {
+            LOG.debug("Exception opening the data connection", failure);
+            session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION, "STOR",
+                    fileName, file));
+        } else if (failure instanceof SocketException) {
+            LOG.debug("Socket exception during data transfer", failure);
+            session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+                    "STOR", fileName, file));
+        } else {
+            LOG.debug("IOException during data transfer", failure);
+            session
+                    .write(LocalizedDataTransferFtpReply
+                            .translate(
+                                    session,
+                                    request,
+                                    context,
+                                    FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                    "STOR", fileName, file));
         }
     }
 }
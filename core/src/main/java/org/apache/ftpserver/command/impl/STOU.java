@@ -24,7 +24,9 @@ import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.SocketException;
 
+import org.apache.ftpserver.DataConnectionException;
 import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.command.impl.listing.ListingCache;
 import org.apache.ftpserver.ftplet.DataConnection;
 import org.apache.ftpserver.ftplet.DataConnectionFactory;
 import org.apache.ftpserver.ftplet.DefaultFtpReply;
@@ -33,10 +35,12 @@ import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.AsyncDataConnection;
+import org.apache.ftpserver.impl.DataTransferListener;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
-import org.apache.ftpserver.impl.IODataConnectionFactory;
 import org.apache.ftpserver.impl.LocalizedDataTransferFtpReply;
+import org.apache.ftpserver.impl.ServerDataConnectionFactory;
 import org.apache.ftpserver.impl.ServerFtpStatistics;
 import org.apache.ftpserver.util.IoUtils;
 import org.slf4j.Logger;
@@ -65,12 +69,13 @@ public class STOU extends AbstractCommand {
             final FtpServerContext context, final FtpRequest request)
             throws IOException, FtpException {
 
+        boolean closeDataConnection = true;
         try {
             // 24-10-2007 - added check if PORT or PASV is issued, see
             // https://issues.apache.org/jira/browse/FTPSERVER-110
             DataConnectionFactory connFactory = session.getDataConnection();
-            if (connFactory instanceof IODataConnectionFactory) {
-                InetAddress address = ((IODataConnectionFactory) connFactory)
+            if (connFactory instanceof ServerDataConnectionFactory) {
+                InetAddress address = ((ServerDataConnectionFactory) connFactory)
                         .getInetAddress();
                 if (address == null) {
                     session.write(new DefaultFtpReply(
@@ -129,10 +134,6 @@ public class STOU extends AbstractCommand {
             session.write(new DefaultFtpReply(
                     FtpReply.REPLY_150_FILE_STATUS_OKAY, "FILE: " + fileName));
 
-            // get data from client
-            boolean failure = false;
-            OutputStream os = null;
-
             DataConnection dataConnection;
             try {
                 dataConnection = session.getDataConnection().openConnection();
@@ -144,63 +145,130 @@ public class STOU extends AbstractCommand {
                 return;
             }
 
+            // get data from client
+            OutputStream os = null;
             long transSz = 0L;
             try {
 
                 // open streams
                 os = file.createOutputStream(0L);
 
+                if (dataConnection instanceof AsyncDataConnection
+                        && session.isAsyncTransferAllowed(request)) {
+                    // the reply is sent when the transfer completes, the
+                    // data connection closes itself
+                    final OutputStream out = os;
+                    final FtpFile transferredFile = file;
+                    final Runnable completion = session.deferCommandCompletion();
+                    closeDataConnection = false;
+                    ((AsyncDataConnection) dataConnection).transferFromClient(
+                            session.getFtpletSession(), out,
+                            new DataTransferListener() {
+                                public void transferCompleted(long transferredSize) {
+                                    transferDone(session, context, request,
+                                            transferredFile, out, transferredSize, null);
+                                    completion.run();
+                                }
+
+                                public void transferFailed(long transferredSize,
+                                        Exception cause) {
+                                    transferDone(session, context, request,
+                                            transferredFile, out, transferredSize, cause);
+                                    completion.run();
+                                }
+                            });
+                    return;
+                }
+
                 // transfer data
                 transSz = dataConnection.transferFromClient(session.getFtpletSession(), os);
+            } catch (IOException ex) {
+                transferDone(session, context, request, file, os, transSz, ex);
+                return;
+            } catch (RuntimeException ex) {
+                // make sure we really close the output stream
+                IoUtils.close(os);
+                throw ex;
+            }
+
+            transferDone(session, context, request, file, os, transSz, null);
+        } finally {
+            if (closeDataConnection) {
+                session.getDataConnection().closeDataConnection();
+            }
+        }
+
+    }
 
+    /**
+     * Close the output stream and send the final reply for the transfer.
+     * 
+     * @param failure
+     *            The cause of the transfer failure, null if the transfer
+     *            succeeded
+     */
+    private void transferDone(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final FtpFile file, final OutputStream os, final long transSz,
+            Exception failure) {
+        String fileName = file.getAbsolutePath();
+
+        if (failure == null) {
+            try {
                 // attempt to close the output stream so that errors in 
                 // closing it will return an error to the client (FTPSERVER-119) 
                 if(os != null) {
                     os.close();
                 }
-
-                LOG.info("File uploaded {}", fileName);
-
-                // notify the statistics component
-                ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
-                        .getFtpStatistics();
-                if (ftpStat != null) {
-                    ftpStat.setUpload(session, file, transSz);
-                }
-                
-            } catch (SocketException ex) {
-                LOG.debug("Socket exception during data transfer", ex);
-                failure = true;
-                session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
-                        "STOU", fileName, file));
             } catch (IOException ex) {
-                LOG.debug("IOException during data transfer", ex);
-                failure = true;
-                session
-                        .write(LocalizedDataTransferFtpReply
-                                .translate(
-                                        session,
-                                        request,
-                                        context,
-                                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
-                                        "STOU", fileName, file));
-            } finally {
-                // make sure we really close the output stream
-                IoUtils.close(os);
+                failure = ex;
             }
+        }
 
-            // if data transfer ok - send transfer complete message
-            if (!failure) {
-                session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "STOU",
-                        fileName, file, transSz));
+        // make sure we really close the output stream
+        IoUtils.close(os);
 
-            }
-        } finally {
-            session.getDataConnection().closeDataConnection();
+        // the size of the file changed
+        ListingCache listingCache = context.getListingCache();
+        if (listingCache != null) {
+            listingCache.invalidate(file);
         }
 
+        if (failure == null) {
+            LOG.info("File uploaded {}", fileName);
+
+            // notify the statistics component
+            ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
+                    .getFtpStatistics();
+            if (ftpStat != null) {
+                ftpStat.setUpload(session, file, transSz);
+            }
+
+            // if data transfer ok - send transfer complete message
+            session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "STOU",
+                    fileName, file, transSz));
+        } else if (failure instanceof DataConnectionException) {
+            LOG.debug("Exception opening the data connection", failure);
+            session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION, "STOU",
+                    fileName, file));
+        } else if (failure instanceof SocketException) {
+            LOG.debug("Socket exception during data transfer", failure);
+            session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+                    "STOU", fileName, file));
+        } else {
+            LOG.debug("IOException during data transfer", failure);
+            session
+                    .write(LocalizedDataTransferFtpReply
+                            .translate(
+                                    session,
+                                    request,
+                                    context,
+                                    FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                    "STOU", fileName, file));
+        }
     }
 
     /**
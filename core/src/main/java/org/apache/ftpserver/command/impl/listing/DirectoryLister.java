@@ -19,13 +19,16 @@
 
 package org.apache.ftpserver.command.impl.listing;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 
 import org.apache.ftpserver.ftplet.FileSystemView;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.util.IoUtils;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -36,74 +39,81 @@ import org.apache.ftpserver.ftplet.FtpFile;
  */
 public class DirectoryLister {
 
-    private String traverseFiles(final List<? extends FtpFile> files,
-            final FileFilter filter, final FileFormater formater) {
-        StringBuilder sb = new StringBuilder();
-
-        sb.append(traverseFiles(files, filter, formater, true));
-        sb.append(traverseFiles(files, filter, formater, false));
-
-        return sb.toString();
-    }
-
-    private String traverseFiles(final List<? extends FtpFile> files,
-            final FileFilter filter, final FileFormater formater,
-            boolean matchDirs) {
-        StringBuilder sb = new StringBuilder();
-        for (FtpFile file : files) {
-            if (file == null) {
-                continue;
-            }
-
-            if (filter == null || filter.accept(file)) {
-                if (file.isDirectory() == matchDirs) {
-                    sb.append(formater.format(file));
-                }
-            }
-        }
-
-        return sb.toString();
-    }
-
+    /**
+     * Format the listing into a string, use for short listings only.
+     */
     public String listFiles(final ListArgument argument,
             final FileSystemView fileSystemView, final FileFormater formater)
             throws IOException {
-
-        StringBuilder sb = new StringBuilder();
-
-        // get all the file objects
-        List<? extends FtpFile> files = listFiles(fileSystemView, argument.getFile());
-        if (files != null) {
-            FileFilter filter = null;
-            if (!argument.hasOption('a')) {
-                filter = new VisibleFileFilter();
-            }
-            if (argument.getPattern() != null) {
-                filter = new RegexFileFilter(argument.getPattern(), filter);
-            }
-
-            sb.append(traverseFiles(files, filter, formater));
+        InputStream listing = openListing(argument, fileSystemView, formater);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            IoUtils.copy(listing, out, 4096);
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            IoUtils.close(listing);
         }
+    }
 
-        return sb.toString();
+    /**
+     * Open the listing as a stream of UTF-8 encoded bytes. The directory is
+     * read and the entries are formatted while the stream is read, so the
+     * listing can be sent to the client without holding all of it in memory.
+     * The files are listed in alphabetical order unless the <code>-f</code>
+     * option is given, which allows large directories to be listed without
+     * first reading all file names. The stream must be closed after use.
+     */
+    public InputStream openListing(final ListArgument argument,
+            final FileSystemView fileSystemView, final FileFormater formater) {
+        return openListing(argument, fileSystemView, formater, null, null,
+                null);
     }
 
     /**
-     * Get the file list. Files will be listed in alphabetlical order.
+     * Open the listing like {@link #openListing(ListArgument, FileSystemView, FileFormater)},
+     * from a cache if possible.
+     *
+     * @param cache
+     *            The listing cache, null to always read the directory
+     * @param format
+     *            Identifies the format of the entries, e.g. the MLST facts
+     * @param user
+     *            The user the listing is for
      */
-    private List<? extends FtpFile> listFiles(FileSystemView fileSystemView, String file) {
-        List <? extends FtpFile> files = null;
+    public InputStream openListing(final ListArgument argument,
+            final FileSystemView fileSystemView, final FileFormater formater,
+            final ListingCache cache, final String format, final User user) {
+
+        FtpFile file = null;
         try {
-            FtpFile virtualFile = fileSystemView.getFile(file);
-            if (virtualFile.isFile()) {
-                List<FtpFile> auxFiles = new ArrayList<>();
-                auxFiles.add(virtualFile);
-                files = auxFiles;
-            } else {
-                files = virtualFile.listFiles();
-            }
+            file = fileSystemView.getFile(argument.getFile());
         } catch (FtpException ex) {
         }
-        return files;
+
+        FileFilter filter = null;
+        if (!argument.hasOption('a')) {
+            filter = new VisibleFileFilter();
+        }
+        if (argument.getPattern() != null) {
+            filter = new RegexFileFilter(argument.getPattern(), filter);
+        }
+
+        final FtpFile listedFile = file;
+        final FileFilter listingFilter = filter;
+        if (cache == null || file == null) {
+            return new ListingInputStream(listedFile, !argument
+                    .hasOption('f'), listingFilter, formater);
+        }
+
+        // the options changing the listed entries
+        String variant = format + '\n' + argument.hasOption('a')
+                + argument.hasOption('f') + '\n' + argument.getPattern();
+        return cache.open(file, variant, user,
+                new ListingCache.ListingSource() {
+                    public InputStream open() {
+                        return new ListingInputStream(listedFile, !argument
+                                .hasOption('f'), listingFilter, formater);
+                    }
+                });
     }
 }
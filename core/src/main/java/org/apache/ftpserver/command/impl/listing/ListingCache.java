@@ -0,0 +1,412 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.command.impl.listing;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.usermanager.impl.ConcurrentLoginPermission;
+import org.apache.ftpserver.usermanager.impl.TransferRatePermission;
+import org.apache.ftpserver.usermanager.impl.WritePermission;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Cache of the encoded directory listings, shared by all the sessions of a
+ * server. A directory may be cached in several variants, one for each
+ * listing format, set of options and write permissions of the user, as
+ * write permissions are shown in the listings.
+ *
+ * The listings of a directory are removed when a command changes the
+ * directory, see {@link #invalidate(FtpFile)}. Changes made outside the
+ * server are seen once the cached listings expire. Users with other
+ * authorities than the ones of this server are never served cached listings,
+ * as what they may write can not be told in advance.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ListingCache {
+
+    private final int maxSize;
+
+    private final long timeToLive;
+
+    private final int maxListingSize;
+
+    /**
+     * The variants of the cached directories by physical path, in least
+     * recently used order, guarded by itself
+     */
+    private final Map<String, Map<String, CachedListing>> directories;
+
+    /**
+     * Incremented on each invalidation, so that listings read while a
+     * directory is changed are not cached
+     */
+    private long generation = 0L;
+
+    private final AtomicLong hitCount = new AtomicLong(0L);
+
+    private final AtomicLong missCount = new AtomicLong(0L);
+
+    /**
+     * An encoded listing.
+     */
+    private static class CachedListing {
+        private final byte[] data;
+
+        private final long expiryTime;
+
+        public CachedListing(final byte[] data, final long expiryTime) {
+            this.data = data;
+            this.expiryTime = expiryTime;
+        }
+    }
+
+    /**
+     * @param maxSize
+     *            The maximum number of cached directories
+     * @param timeToLive
+     *            How long a listing is cached, in milliseconds
+     * @param maxListingSize
+     *            The maximum size of a cached listing, in bytes
+     */
+    public ListingCache(final int maxSize, final long timeToLive,
+            final int maxListingSize) {
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.maxListingSize = maxListingSize;
+
+        directories = new LinkedHashMap<String, Map<String, CachedListing>>(
+                16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, Map<String, CachedListing>> eldest) {
+                return size() > ListingCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Get the maximum number of cached directories.
+     * @return The maximum number of cached directories
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Get how long a listing is cached.
+     * @return The time to live in milliseconds
+     */
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Get the maximum size of a cached listing.
+     * @return The maximum size in bytes
+     */
+    public int getMaxListingSize() {
+        return maxListingSize;
+    }
+
+    /**
+     * The number of listings served from the cache.
+     * @return The hit count
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * The number of cacheable listings read from the file system.
+     * @return The miss count
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * The number of cached directories, including expired listings not
+     * removed yet.
+     * @return The cache size
+     */
+    public int getSize() {
+        synchronized (directories) {
+            return directories.size();
+        }
+    }
+
+    /**
+     * Open a listing, from the cache if possible.
+     *
+     * @param dir
+     *            The listed directory
+     * @param variant
+     *            The format and options of the listing
+     * @param user
+     *            The user the listing is for
+     * @param listing
+     *            Reads the listing from the file system, used if it is not
+     *            cached
+     * @return The listing, UTF-8 encoded
+     */
+    public InputStream open(final FtpFile dir, final String variant,
+            final User user, final ListingSource listing) {
+        String path = getPhysicalPath(dir);
+        String authorization = getAuthorizationKey(dir, user);
+        if (path == null || authorization == null || !dir.isDirectory()) {
+            return listing.open();
+        }
+
+        String key = variant + '\n' + authorization;
+        synchronized (directories) {
+            Map<String, CachedListing> variants = directories.get(path);
+            CachedListing cached = variants != null ? variants.get(key) : null;
+            if (cached != null) {
+                if (cached.expiryTime > System.currentTimeMillis()) {
+                    hitCount.incrementAndGet();
+                    return new ByteArrayInputStream(cached.data);
+                }
+                variants.remove(key);
+            }
+        }
+
+        missCount.incrementAndGet();
+        long lookupGeneration;
+        synchronized (directories) {
+            lookupGeneration = generation;
+        }
+        return new RecordingInputStream(listing.open(), path, key,
+                lookupGeneration);
+    }
+
+    /**
+     * Remove the listings of the directory containing a file, and of the
+     * file itself if it is a directory. Called when the file is created,
+     * changed, renamed or removed.
+     *
+     * @param file
+     *            The changed file
+     */
+    public void invalidate(final FtpFile file) {
+        if (file == null) {
+            return;
+        }
+        Object physicalFile = file.getPhysicalFile();
+        if (!(physicalFile instanceof File)) {
+            return;
+        }
+
+        File absoluteFile = ((File) physicalFile).getAbsoluteFile();
+        File parent = absoluteFile.getParentFile();
+        synchronized (directories) {
+            generation++;
+            directories.remove(absoluteFile.getPath());
+            if (parent != null) {
+                directories.remove(parent.getPath());
+            }
+        }
+    }
+
+    /**
+     * Remove all the listings from the cache.
+     */
+    public void invalidateAll() {
+        synchronized (directories) {
+            generation++;
+            directories.clear();
+        }
+    }
+
+    private void put(final String path, final String key, final byte[] data,
+            final long lookupGeneration) {
+        if (timeToLive <= 0 || maxSize <= 0) {
+            return;
+        }
+
+        synchronized (directories) {
+            // changed while being listed
+            if (lookupGeneration != generation) {
+                return;
+            }
+            Map<String, CachedListing> variants = directories.get(path);
+            if (variants == null) {
+                variants = new HashMap<>();
+                directories.put(path, variants);
+            }
+            variants.put(key, new CachedListing(data, System
+                    .currentTimeMillis() + timeToLive));
+        }
+    }
+
+    private static String getPhysicalPath(final FtpFile dir) {
+        if (dir == null) {
+            return null;
+        }
+        Object physicalFile = dir.getPhysicalFile();
+        if (!(physicalFile instanceof File)) {
+            return null;
+        }
+        return ((File) physicalFile).getAbsolutePath();
+    }
+
+    /**
+     * Describe what a user may write in a directory.
+     *
+     * @return The key, null if the authorities of the user are not known
+     */
+    private static String getAuthorizationKey(final FtpFile dir,
+            final User user) {
+        if (user == null) {
+            return null;
+        }
+        List<? extends Authority> authorities = user.getAuthorities();
+        if (authorities == null) {
+            return "";
+        }
+
+        List<String> roots = new ArrayList<>();
+        for (Authority authority : authorities) {
+            Class<?> clazz = authority.getClass();
+            if (clazz == WritePermission.class) {
+                roots.add(((WritePermission) authority).getPermissionRoot());
+            } else if (clazz != TransferRatePermission.class
+                    && clazz != ConcurrentLoginPermission.class) {
+                return null;
+            }
+        }
+        if (roots.isEmpty()) {
+            // may write nothing, wherever the directory is
+            return "";
+        }
+
+        // the permissions are relative to the home directory of the user
+        Collections.sort(roots);
+        return dir.getAbsolutePath() + '\n' + roots;
+    }
+
+    /**
+     * Reads a listing from the file system.
+     */
+    public interface ListingSource {
+        /**
+         * Open the listing.
+         * @return The listing, UTF-8 encoded
+         */
+        InputStream open();
+    }
+
+    /**
+     * Copies a listing as it is read, to cache it once fully read.
+     */
+    private class RecordingInputStream extends FilterInputStream {
+        private final String path;
+
+        private final String key;
+
+        private final long lookupGeneration;
+
+        private ByteArrayOutputStream recorded = new ByteArrayOutputStream();
+
+        public RecordingInputStream(final InputStream in, final String path,
+                final String key, final long lookupGeneration) {
+            super(in);
+            this.path = path;
+            this.key = key;
+            this.lookupGeneration = lookupGeneration;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                complete();
+            } else if (recorded != null) {
+                recorded.write(b);
+                checkSize();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len)
+                throws IOException {
+            int count = super.read(b, off, len);
+            if (count == -1) {
+                complete();
+            } else if (recorded != null) {
+                recorded.write(b, off, count);
+                checkSize();
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            // skipped data can not be cached
+            recorded = null;
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void checkSize() {
+            if (recorded.size() > maxListingSize) {
+                recorded = null;
+            }
+        }
+
+        private void complete() {
+            if (recorded != null) {
+                put(path, key, recorded.toByteArray(), lookupGeneration);
+                recorded = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            // a partly read listing is not cached
+            recorded = null;
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.command.impl.listing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.ftpserver.ftplet.FtpFile;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * A directory listing read as UTF-8 encoded bytes. The files are read from
+ * the directory once and formatted in small batches as the stream is read.
+ * Unsorted listings are streamed in directory order, so memory use does not
+ * grow with the size of the listing. Sorted listings list the directories
+ * before the files, the files being kept until the directory has been read.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ListingInputStream extends InputStream {
+
+    /**
+     * Number of characters formatted at a time
+     */
+    private static final int BATCH_SIZE = 8192;
+
+    private final FtpFile file;
+
+    private final boolean sorted;
+
+    private final FileFilter filter;
+
+    private final FileFormater formater;
+
+    private final StringBuilder batch = new StringBuilder(BATCH_SIZE * 2);
+
+    /**
+     * The directory is read in the first pass, the files kept for after the
+     * directories are listed in the second
+     */
+    private int pass = 0;
+
+    /**
+     * The files of a sorted listing, listed after the directories
+     */
+    private final List<FtpFile> keptFiles = new ArrayList<FtpFile>();
+
+    private DirectoryStream<FtpFile> directoryStream = null;
+
+    private Iterator<? extends FtpFile> files = null;
+
+    private byte[] buffer = new byte[0];
+
+    private int position = 0;
+
+    /**
+     * @param file
+     *            The directory to list the files of, or the single file to
+     *            list. Null for an empty listing
+     * @param sorted
+     *            Whether the files are listed in alphabetical order
+     * @param filter
+     *            The filter of the listed files, null to list all files
+     * @param formater
+     *            The format of the entries
+     */
+    public ListingInputStream(final FtpFile file, final boolean sorted,
+            final FileFilter filter, final FileFormater formater) {
+        this.file = file;
+        this.sorted = sorted;
+        this.filter = filter;
+        this.formater = formater;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len)
+            throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(len, buffer.length - position);
+        System.arraycopy(buffer, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer.length - position;
+    }
+
+    /**
+     * End the listing, closing the directory being read, if any.
+     */
+    @Override
+    public void close() throws IOException {
+        pass = 2;
+        keptFiles.clear();
+        buffer = new byte[0];
+        position = 0;
+        closeDirectory();
+    }
+
+    private void closeDirectory() throws IOException {
+        files = null;
+        if (directoryStream != null) {
+            DirectoryStream<FtpFile> stream = directoryStream;
+            directoryStream = null;
+            stream.close();
+        }
+    }
+
+    /**
+     * Format the next batch of entries if the current one has been read.
+     *
+     * @return false if the end of the listing has been reached
+     */
+    private boolean fill() throws IOException {
+        while (position == buffer.length) {
+            if (pass == 2) {
+                return false;
+            }
+            if (files == null) {
+                files = pass == 0 ? openFiles() : keptFiles.iterator();
+            }
+
+            batch.setLength(0);
+            try {
+                while (batch.length() < BATCH_SIZE && files.hasNext()) {
+                    FtpFile next = files.next();
+                    if (next == null
+                            || (filter != null && !filter.accept(next))) {
+                        continue;
+                    }
+
+                    if (pass == 0 && sorted && !next.isDirectory()) {
+                        keptFiles.add(next);
+                    } else {
+                        batch.append(formater.format(next));
+                    }
+                }
+
+                if (!files.hasNext()) {
+                    closeDirectory();
+                    pass = pass == 0 && !keptFiles.isEmpty() ? 1 : 2;
+                }
+            } catch (DirectoryIteratorException e) {
+                throw e.getCause();
+            }
+
+            buffer = batch.toString().getBytes(StandardCharsets.UTF_8);
+            position = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Start reading the listed files.
+     */
+    private Iterator<? extends FtpFile> openFiles() throws IOException {
+        if (file == null) {
+            return Collections.<FtpFile> emptyList().iterator();
+        }
+        if (file.isFile()) {
+            return Collections.singletonList(file).iterator();
+        }
+
+        directoryStream = file.openDirectoryStream(sorted);
+        if (directoryStream == null) {
+            return Collections.<FtpFile> emptyList().iterator();
+        }
+        return directoryStream.iterator();
+    }
+}
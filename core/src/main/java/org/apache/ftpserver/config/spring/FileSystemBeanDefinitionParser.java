@@ -59,5 +59,13 @@ public class FileSystemBeanDefinitionParser extends
             builder.addPropertyValue("createHome", Boolean
                     .valueOf(element.getAttribute("create-home")));
         }
+        if (StringUtils.hasText(element.getAttribute("native-owners"))) {
+            builder.addPropertyValue("nativeOwners", Boolean
+                    .valueOf(element.getAttribute("native-owners")));
+        }
+        if (StringUtils.hasText(element.getAttribute("case-insensitive-index-size"))) {
+            builder.addPropertyValue("caseInsensitiveIndexSize", Integer
+                    .valueOf(element.getAttribute("case-insensitive-index-size")));
+        }
     }
 }
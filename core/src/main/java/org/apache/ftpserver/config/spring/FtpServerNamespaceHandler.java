@@ -45,6 +45,8 @@ public class FtpServerNamespaceHandler extends NamespaceHandlerSupport {
                 new UserManagerBeanDefinitionParser());
         registerBeanDefinitionParser("db-user-manager",
                 new UserManagerBeanDefinitionParser());
+        registerBeanDefinitionParser("caching-user-manager",
+                new UserManagerBeanDefinitionParser());
         registerBeanDefinitionParser("native-filesystem",
                 new FileSystemBeanDefinitionParser());
         registerBeanDefinitionParser("commands",
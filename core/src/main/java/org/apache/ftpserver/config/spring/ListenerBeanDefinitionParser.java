@@ -88,6 +88,15 @@ public class ListenerBeanDefinitionParser extends
                     element, "idle-timeout", 300));
         }
 
+        if (StringUtils.hasText(element.getAttribute("max-download-rate"))) {
+            factoryBuilder.addPropertyValue("maxDownloadRate", SpringUtil
+                    .parseInt(element, "max-download-rate"));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-upload-rate"))) {
+            factoryBuilder.addPropertyValue("maxUploadRate", SpringUtil
+                    .parseInt(element, "max-upload-rate"));
+        }
+
         String localAddress = SpringUtil.parseStringFromInetAddress(element,
                 "local-address");
         if (localAddress != null) {
@@ -220,6 +229,16 @@ public class ListenerBeanDefinitionParser extends
                 ssl.setSslProtocol(protocol);
             }
 
+            if (StringUtils.hasText(sslElm.getAttribute("session-cache-size"))) {
+                ssl.setSessionCacheSize(SpringUtil.parseInt(sslElm,
+                        "session-cache-size"));
+            }
+
+            if (StringUtils.hasText(sslElm.getAttribute("session-timeout"))) {
+                ssl.setSessionTimeout(SpringUtil.parseInt(sslElm,
+                        "session-timeout"));
+            }
+
             return ssl.createSslConfiguration();
         } else {
             return null;
@@ -246,6 +265,8 @@ public class ListenerBeanDefinitionParser extends
 
             dc.setIdleTime(SpringUtil.parseInt(element, "idle-timeout", dc.getIdleTime()));
 
+            dc.setNioEnabled(SpringUtil.parseBoolean(element, "nio-enabled", false));
+
             Element activeElm = SpringUtil.getChildElement(element,
                     FtpServerNamespaceHandler.FTPSERVER_NS, "active");
             if (activeElm != null) {
@@ -282,6 +303,10 @@ public class ListenerBeanDefinitionParser extends
                 if (ports != null) {
                     dc.setPassivePorts(ports);
                 }
+                if (StringUtils.hasText(passiveElm.getAttribute("port-cooldown"))) {
+                    dc.setPassivePortCooldown(SpringUtil.parseInt(passiveElm,
+                            "port-cooldown"));
+                }
                 dc.setPassiveIpCheck(SpringUtil.parseBoolean(passiveElm,
                     "ip-check", false));
             }
@@ -28,8 +28,12 @@ import org.apache.ftpserver.ConnectionConfigFactory;
 import org.apache.ftpserver.FtpServer;
 import org.apache.ftpserver.FtpServerConfigurationException;
 import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.ListingCacheFactory;
+import org.apache.ftpserver.command.impl.listing.ListingCache;
 import org.apache.ftpserver.message.MessageResource;
 import org.apache.ftpserver.message.MessageResourceFactory;
+import org.apache.ftpserver.metrics.MetricsExporter;
+import org.apache.ftpserver.metrics.MetricsExporterFactory;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.config.BeanDefinitionHolder;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
@@ -79,7 +83,8 @@ public class ServerBeanDefinitionParser extends
                 Map<?, ?> ftplets = parseFtplets(childElm, parserContext, builder);
                 factoryBuilder.addPropertyValue("ftplets", ftplets);
             } else if ("file-user-manager".equals(childName)
-                    || "db-user-manager".equals(childName)) {
+                    || "db-user-manager".equals(childName)
+                    || "caching-user-manager".equals(childName)) {
                 Object userManager = parserContext.getDelegate()
                         .parseCustomElement(childElm,
                                 builder.getBeanDefinition());
@@ -107,6 +112,12 @@ public class ServerBeanDefinitionParser extends
                         parserContext, builder);
                 factoryBuilder.addPropertyValue("messageResource", mr);
 
+            } else if ("metrics-exporter".equals(childName)) {
+                factoryBuilder.addPropertyValue("metricsExporter",
+                        parseMetricsExporter(childElm));
+            } else if ("listing-cache".equals(childName)) {
+                factoryBuilder.addPropertyValue("listingCache",
+                        parseListingCache(childElm));
             } else {
                 throw new FtpServerConfigurationException(
                         "Unknown configuration name: " + childName);
@@ -123,6 +134,30 @@ public class ServerBeanDefinitionParser extends
             connectionConfig.setMaxThreads(SpringUtil.parseInt(element,
                     "max-threads"));
         }
+        if (StringUtils.hasText(element.getAttribute("virtual-threads"))) {
+            connectionConfig.setVirtualThreadsEnabled(SpringUtil.parseBoolean(
+                    element, "virtual-threads", false));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-download-rate"))) {
+            connectionConfig.setMaxDownloadRate(SpringUtil.parseInt(element,
+                    "max-download-rate"));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-upload-rate"))) {
+            connectionConfig.setMaxUploadRate(SpringUtil.parseInt(element,
+                    "max-upload-rate"));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-download-rate-per-ip"))) {
+            connectionConfig.setMaxDownloadRatePerIp(SpringUtil.parseInt(element,
+                    "max-download-rate-per-ip"));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-upload-rate-per-ip"))) {
+            connectionConfig.setMaxUploadRatePerIp(SpringUtil.parseInt(element,
+                    "max-upload-rate-per-ip"));
+        }
+        if (StringUtils.hasText(element.getAttribute("shared-user-rates"))) {
+            connectionConfig.setUserRatesShared(SpringUtil.parseBoolean(
+                    element, "shared-user-rates", false));
+        }
         if (StringUtils.hasText(element.getAttribute("max-anon-logins"))) {
             connectionConfig.setMaxAnonymousLogins(SpringUtil.parseInt(element,
                     "max-anon-logins"));
@@ -139,9 +174,18 @@ public class ServerBeanDefinitionParser extends
             connectionConfig.setLoginFailureDelay(SpringUtil.parseInt(element,
                     "login-failure-delay"));
         }
+        if (StringUtils.hasText(element.getAttribute("max-login-failure-delay"))) {
+            connectionConfig.setMaxLoginFailureDelay(SpringUtil.parseInt(element,
+                    "max-login-failure-delay"));
+        }
 
         factoryBuilder.addPropertyValue("connectionConfig", connectionConfig.createConnectionConfig());
 
+        if (StringUtils.hasText(element.getAttribute("jmx-name"))) {
+            factoryBuilder.addPropertyValue("jmxName", element
+                    .getAttribute("jmx-name"));
+        }
+
        
         BeanDefinition factoryDefinition = factoryBuilder.getBeanDefinition();
 
@@ -182,6 +226,45 @@ public class ServerBeanDefinitionParser extends
         return mr.createMessageResource();
     }
 
+    /**
+     * Parse the "metrics-exporter" element
+     */
+    private MetricsExporter parseMetricsExporter(final Element childElm) {
+        MetricsExporterFactory factory = new MetricsExporterFactory();
+
+        if (StringUtils.hasText(childElm.getAttribute("local-address"))) {
+            factory.setServerAddress(childElm.getAttribute("local-address"));
+        }
+        if (StringUtils.hasText(childElm.getAttribute("port"))) {
+            factory.setPort(SpringUtil.parseInt(childElm, "port"));
+        }
+        if (StringUtils.hasText(childElm.getAttribute("path"))) {
+            factory.setPath(childElm.getAttribute("path"));
+        }
+
+        return factory.createMetricsExporter();
+    }
+
+    /**
+     * Parse the "listing-cache" element
+     */
+    private ListingCache parseListingCache(final Element childElm) {
+        ListingCacheFactory factory = new ListingCacheFactory();
+
+        if (StringUtils.hasText(childElm.getAttribute("max-size"))) {
+            factory.setMaxSize(SpringUtil.parseInt(childElm, "max-size"));
+        }
+        if (StringUtils.hasText(childElm.getAttribute("time-to-live"))) {
+            factory.setTimeToLive(SpringUtil.parseInt(childElm, "time-to-live"));
+        }
+        if (StringUtils.hasText(childElm.getAttribute("max-listing-size"))) {
+            factory.setMaxListingSize(SpringUtil.parseInt(childElm,
+                    "max-listing-size"));
+        }
+
+        return factory.createListingCache();
+    }
+
     /**
      * Parse the "ftplets" element
      */
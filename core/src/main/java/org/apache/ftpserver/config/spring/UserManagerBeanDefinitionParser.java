@@ -19,6 +19,7 @@
 
 package org.apache.ftpserver.config.spring;
 
+import org.apache.ftpserver.usermanager.CachingUserManagerFactory;
 import org.apache.ftpserver.usermanager.ClearTextPasswordEncryptor;
 import org.apache.ftpserver.usermanager.DbUserManagerFactory;
 import org.apache.ftpserver.usermanager.Md5PasswordEncryptor;
@@ -33,8 +34,8 @@ import org.springframework.util.StringUtils;
 import org.w3c.dom.Element;
 
 /**
- * Parses the FtpServer "file-user-manager" or "db-user-manager" elements into a
- * Spring bean graph
+ * Parses the FtpServer "file-user-manager", "db-user-manager" or
+ * "caching-user-manager" elements into a Spring bean graph
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
@@ -51,6 +52,10 @@ public class UserManagerBeanDefinitionParser extends
             final ParserContext parserContext,
             final BeanDefinitionBuilder builder) {
 
+        if (element.getLocalName().equals("caching-user-manager")) {
+            parseCachingUserManager(element, parserContext, builder);
+            return;
+        }
 
         Class<?> factoryClass;
         if (element.getLocalName().equals("file-user-manager")) {
@@ -81,6 +86,9 @@ public class UserManagerBeanDefinitionParser extends
             if (StringUtils.hasText(element.getAttribute("url"))) {
                 factoryBuilder.addPropertyValue("url", element.getAttribute("url"));
             }
+            if (StringUtils.hasText(element.getAttribute("watch-file"))) {
+                factoryBuilder.addPropertyValue("watchFile", Boolean.valueOf(element.getAttribute("watch-file")));
+            }
         } else {
             Element dsElm = SpringUtil.getChildElement(element,
                     FtpServerNamespaceHandler.FTPSERVER_NS, "data-source");
@@ -115,6 +123,50 @@ public class UserManagerBeanDefinitionParser extends
                     "authenticate"));
         }
 
+        registerFactory(factoryBuilder, parserContext, builder);
+    }
+
+    /**
+     * Parse a caching user manager, wrapping the user manager defined by the
+     * child element
+     */
+    private void parseCachingUserManager(final Element element,
+            final ParserContext parserContext,
+            final BeanDefinitionBuilder builder) {
+        BeanDefinitionBuilder factoryBuilder = BeanDefinitionBuilder
+                .genericBeanDefinition(CachingUserManagerFactory.class);
+
+        if (StringUtils.hasText(element.getAttribute("max-size"))) {
+            factoryBuilder.addPropertyValue("maxSize", SpringUtil.parseInt(
+                    element, "max-size"));
+        }
+        if (StringUtils.hasText(element.getAttribute("time-to-live"))) {
+            factoryBuilder.addPropertyValue("timeToLive", SpringUtil.parseInt(
+                    element, "time-to-live"));
+        }
+        if (StringUtils.hasText(element.getAttribute("negative-time-to-live"))) {
+            factoryBuilder.addPropertyValue("negativeTimeToLive", SpringUtil
+                    .parseInt(element, "negative-time-to-live"));
+        }
+
+        // schema ensure we get one of the user manager elements
+        Element userManagerElm = SpringUtil.getChildElement(element, null, null);
+        Object userManager;
+        if ("user-manager".equals(userManagerElm.getLocalName())) {
+            userManager = SpringUtil.parseSpringChildElement(userManagerElm,
+                    parserContext, builder);
+        } else {
+            userManager = parserContext.getDelegate().parseCustomElement(
+                    userManagerElm, builder.getBeanDefinition());
+        }
+        factoryBuilder.addPropertyValue("userManager", userManager);
+
+        registerFactory(factoryBuilder, parserContext, builder);
+    }
+
+    private void registerFactory(final BeanDefinitionBuilder factoryBuilder,
+            final ParserContext parserContext,
+            final BeanDefinitionBuilder builder) {
         BeanDefinition factoryDefinition = factoryBuilder.getBeanDefinition();
         String factoryId = parserContext.getReaderContext().generateBeanName(factoryDefinition);
         
@@ -124,7 +176,6 @@ public class UserManagerBeanDefinitionParser extends
         // set the factory on the listener bean
         builder.getRawBeanDefinition().setFactoryBeanName(factoryId);
         builder.getRawBeanDefinition().setFactoryMethodName("createUserManager");
-
     }
 
     private String getSql(final Element element, final String elmName) {
@@ -21,6 +21,7 @@ package org.apache.ftpserver.filesystem.nativefs;
 
 import java.io.File;
 
+import org.apache.ftpserver.filesystem.nativefs.impl.CaseInsensitiveNameIndex;
 import org.apache.ftpserver.filesystem.nativefs.impl.NativeFileSystemView;
 import org.apache.ftpserver.ftplet.FileSystemFactory;
 import org.apache.ftpserver.ftplet.FileSystemView;
@@ -43,6 +44,16 @@ public class NativeFileSystemFactory implements FileSystemFactory {
 
     private boolean caseInsensitive;
 
+    private boolean nativeOwners;
+
+    private int caseInsensitiveIndexSize = 1000;
+
+    /**
+     * The index shared by the case insensitive views, created when first
+     * needed
+     */
+    private CaseInsensitiveNameIndex nameIndex;
+
     /**
      * Should the home directories be created automatically
      * @return true if the file system will create the home directory if not available
@@ -78,6 +89,45 @@ public class NativeFileSystemFactory implements FileSystemFactory {
         this.caseInsensitive = caseInsensitive;
     }
 
+    /**
+     * Are the native owner and group of the files shown
+     * @return true if the native owner and group of the files are shown
+     */
+    public boolean isNativeOwners() {
+        return nativeOwners;
+    }
+
+    /**
+     * Should the native owner and group of the files be shown in the
+     * listings, instead of "user" and "group". Only used on file systems
+     * supporting POSIX attributes.
+     * @param nativeOwners true if the native owner and group of the files should be shown
+     */
+    public void setNativeOwners(boolean nativeOwners) {
+        this.nativeOwners = nativeOwners;
+    }
+
+    /**
+     * Get the maximum number of directories whose file names are indexed to
+     * resolve case insensitive paths
+     * @return The maximum number of indexed directories
+     */
+    public int getCaseInsensitiveIndexSize() {
+        return caseInsensitiveIndexSize;
+    }
+
+    /**
+     * Set the maximum number of directories whose file names are indexed to
+     * resolve case insensitive paths, shared by all the users. The least
+     * recently used directories are removed from the index when it is full.
+     * The default value is 1000, 0 to scan the directories on each access.
+     * Only used if this file system is case insensitive.
+     * @param caseInsensitiveIndexSize The maximum number of indexed directories
+     */
+    public void setCaseInsensitiveIndexSize(int caseInsensitiveIndexSize) {
+        this.caseInsensitiveIndexSize = caseInsensitiveIndexSize;
+    }
+
     /**
      * Create the appropriate user file system view.
      */
@@ -98,10 +148,21 @@ public class NativeFileSystemFactory implements FileSystemFactory {
                 }
             }
 
-            FileSystemView fsView = new NativeFileSystemView(user,
-                    caseInsensitive);
+            CaseInsensitiveNameIndex index = null;
+            if (caseInsensitive) {
+                index = getNameIndex();
+            }
+
+            FileSystemView fsView = new NativeFileSystemView(user, index,
+                    nativeOwners);
             return fsView;
         }
     }
 
+    private synchronized CaseInsensitiveNameIndex getNameIndex() {
+        if (nameIndex == null) {
+            nameIndex = new CaseInsensitiveNameIndex(caseInsensitiveIndexSize);
+        }
+        return nameIndex;
+    }
 }
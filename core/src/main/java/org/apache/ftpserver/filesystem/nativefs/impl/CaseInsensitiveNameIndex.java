@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.filesystem.nativefs.impl;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Index of the file names of directories, by case folded name, used to
+ * resolve case insensitive paths with a lookup instead of a directory scan.
+ * 
+ * The least recently used directories are evicted when the index is full. A
+ * directory is indexed again when its last modification time changes, or
+ * if it was modified too shortly before being indexed for the time to tell
+ * further changes apart.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class CaseInsensitiveNameIndex {
+
+    /**
+     * The coarsest last modification time resolution of the usual file
+     * systems, in milliseconds
+     */
+    private static final long TIME_RESOLUTION = 2000L;
+
+    private final int maxSize;
+
+    /**
+     * The indexed directories by path, in least recently used order, guarded
+     * by itself
+     */
+    private final Map<String, DirectoryNames> directories;
+
+    /**
+     * The names of a directory.
+     */
+    private static class DirectoryNames {
+        private final long lastModified;
+
+        /**
+         * Whether the directory might have been changed after being indexed
+         * without its last modification time changing
+         */
+        private final boolean racy;
+
+        /**
+         * The file names by case folded name
+         */
+        private final Map<String, String> names;
+
+        public DirectoryNames(final long lastModified, final boolean racy,
+                final Map<String, String> names) {
+            this.lastModified = lastModified;
+            this.racy = racy;
+            this.names = names;
+        }
+    }
+
+    /**
+     * @param maxSize
+     *            The maximum number of indexed directories
+     */
+    public CaseInsensitiveNameIndex(final int maxSize) {
+        this.maxSize = maxSize;
+
+        directories = new LinkedHashMap<String, DirectoryNames>(16, 0.75f,
+                true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, DirectoryNames> eldest) {
+                return size() > CaseInsensitiveNameIndex.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Get the maximum number of indexed directories.
+     * @return The maximum number of indexed directories
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * The number of indexed directories.
+     * @return The number of indexed directories
+     */
+    public int getSize() {
+        synchronized (directories) {
+            return directories.size();
+        }
+    }
+
+    /**
+     * Find a file in a directory, ignoring case.
+     * 
+     * @param dir
+     *            The directory
+     * @param name
+     *            The file name, in any case
+     * @return The name of the file, null if the directory does not contain
+     *         such a file
+     */
+    public String getName(final File dir, final String name) {
+        long lastModified = dir.lastModified();
+        if (lastModified == 0L) {
+            // does not exist
+            return null;
+        }
+
+        String key = dir.getPath();
+        DirectoryNames entry;
+        synchronized (directories) {
+            entry = directories.get(key);
+        }
+
+        if (entry == null || entry.racy || entry.lastModified != lastModified) {
+            String[] fileNames = dir.list();
+            if (fileNames == null) {
+                return null;
+            }
+
+            Map<String, String> names = new HashMap<>(fileNames.length * 2);
+            for (String fileName : fileNames) {
+                String folded = fold(fileName);
+                if (!names.containsKey(folded)) {
+                    names.put(folded, fileName);
+                }
+            }
+
+            boolean racy = System.currentTimeMillis() - lastModified < TIME_RESOLUTION;
+            entry = new DirectoryNames(lastModified, racy, names);
+            if (maxSize > 0) {
+                synchronized (directories) {
+                    directories.put(key, entry);
+                }
+            }
+        }
+
+        return entry.names.get(fold(name));
+    }
+
+    /**
+     * Fold the case of a name, two names being equal ignoring case if their
+     * folded names are equal.
+     */
+    private static String fold(final String name) {
+        char[] chars = new char[name.length()];
+        for (int i = 0; i < chars.length; i++) {
+            // like String.equalsIgnoreCase
+            chars[i] = Character.toLowerCase(Character.toUpperCase(name
+                    .charAt(i)));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Remove all the directories from the index.
+     */
+    public void clear() {
+        synchronized (directories) {
+            directories.clear();
+        }
+    }
+}
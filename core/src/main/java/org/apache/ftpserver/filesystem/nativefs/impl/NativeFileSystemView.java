@@ -43,6 +43,11 @@ public class NativeFileSystemView implements FileSystemView {
     private final Logger LOG = LoggerFactory
     .getLogger(NativeFileSystemView.class);
 
+    /**
+     * The number of directories indexed by a view not sharing the index of
+     * its factory
+     */
+    private static final int DEFAULT_NAME_INDEX_SIZE = 100;
 
     // the root directory will always end with '/'.
     private String rootDir;
@@ -57,6 +62,14 @@ public class NativeFileSystemView implements FileSystemView {
 
     private final boolean caseInsensitive;
 
+    private final boolean nativeOwners;
+
+    /**
+     * The index used to resolve case insensitive names, null if not case
+     * insensitive
+     */
+    private final CaseInsensitiveNameIndex nameIndex;
+
     /**
      * Constructor - internal do not use directly, use {@link NativeFileSystemFactory} instead
      */
@@ -69,6 +82,28 @@ public class NativeFileSystemView implements FileSystemView {
      */
     public NativeFileSystemView(User user, boolean caseInsensitive)
             throws FtpException {
+        this(user, caseInsensitive, false);
+    }
+
+    /**
+     * Constructor - internal do not use directly, use {@link NativeFileSystemFactory} instead
+     */
+    public NativeFileSystemView(User user, boolean caseInsensitive,
+            boolean nativeOwners) throws FtpException {
+        this(user, caseInsensitive ? new CaseInsensitiveNameIndex(
+                DEFAULT_NAME_INDEX_SIZE) : null, nativeOwners);
+    }
+
+    /**
+     * Constructor - internal do not use directly, use {@link NativeFileSystemFactory} instead
+     * 
+     * @param nameIndex
+     *            The index used to resolve names ignoring case, possibly
+     *            shared with other views. null if this file system is case
+     *            sensitive
+     */
+    public NativeFileSystemView(User user, CaseInsensitiveNameIndex nameIndex,
+            boolean nativeOwners) throws FtpException {
         if (user == null) {
             throw new IllegalArgumentException("user can not be null");
         }
@@ -77,7 +112,9 @@ public class NativeFileSystemView implements FileSystemView {
                     "User home directory can not be null");
         }
 
-        this.caseInsensitive = caseInsensitive;
+        this.caseInsensitive = nameIndex != null;
+        this.nameIndex = nameIndex;
+        this.nativeOwners = nativeOwners;
 
         // add last '/' if necessary
         String rootDir = user.getHomeDirectory();
@@ -98,7 +135,8 @@ public class NativeFileSystemView implements FileSystemView {
      * user.
      */
     public FtpFile getHomeDirectory() {
-        return new NativeFtpFile("/", new File(rootDir), user);
+        return new NativeFtpFile("/", new File(rootDir), user,
+                nativeOwners);
     }
 
     /**
@@ -107,10 +145,11 @@ public class NativeFileSystemView implements FileSystemView {
     public FtpFile getWorkingDirectory() {
         FtpFile fileObj = null;
         if (currDir.equals("/")) {
-            fileObj = new NativeFtpFile("/", new File(rootDir), user);
+            fileObj = new NativeFtpFile("/", new File(rootDir), user,
+                nativeOwners);
         } else {
             File file = new File(rootDir, currDir.substring(1));
-            fileObj = new NativeFtpFile(currDir, file, user);
+            fileObj = new NativeFtpFile(currDir, file, user, nativeOwners);
 
         }
         return fileObj;
@@ -128,7 +167,7 @@ public class NativeFileSystemView implements FileSystemView {
 
         // strip the root directory and return
         String userFileName = physicalName.substring(rootDir.length() - 1);
-        return new NativeFtpFile(userFileName, fileObj, user);
+        return new NativeFtpFile(userFileName, fileObj, user, nativeOwners);
     }
 
     /**
@@ -233,12 +272,13 @@ public class NativeFileSystemView implements FileSystemView {
                 
                 if(caseInsensitive) {
                     // we're case insensitive, find a directory with the name, ignoring casing
-                    File[] matches = new File(result)
-                            .listFiles(new NameEqualsFileFilter(tok, true));
+                    CaseInsensitiveNameIndex index = nameIndex != null ? nameIndex
+                            : new CaseInsensitiveNameIndex(0);
+                    String match = index.getName(new File(result), tok);
     
-                    if (matches != null && matches.length > 0) {
+                    if (match != null) {
                         // found a file matching tok, replace tok for get the right casing
-                        tok = matches[0].getName();
+                        tok = match;
                     }
                 }
 
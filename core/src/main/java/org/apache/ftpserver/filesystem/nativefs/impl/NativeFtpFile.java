@@ -19,6 +19,7 @@
 
 package org.apache.ftpserver.filesystem.nativefs.impl;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -27,10 +28,23 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.User;
@@ -42,6 +56,13 @@ import org.slf4j.LoggerFactory;
  * <strong>Internal class, do not use directly.</strong>
  * 
  * This class wraps native file object.
+ * 
+ * The attributes of the file are read with a single call when first needed,
+ * or while walking the directory for the files of a listing, instead of a
+ * system call per attribute, and kept for the lifetime of the object. Changes
+ * made through the object discard them. The read and write permissions are
+ * still checked with the access system call, as the permission bits do not
+ * account for ACLs or the privileges of the server process.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
@@ -58,11 +79,48 @@ public class NativeFtpFile implements FtpFile {
 
     private final User user;
 
+    private static final boolean POSIX_SUPPORTED = FileSystems.getDefault()
+            .supportedFileAttributeViews().contains("posix");
+
+    /**
+     * Whether the native owner and group of the file are shown
+     */
+    private final boolean nativeOwners;
+
+    /**
+     * The attributes of the file, null if it does not exist
+     */
+    private BasicFileAttributes attributes;
+
+    private boolean attributesRead = false;
+
+    private Boolean readable;
+
+    private Boolean writable;
+
+    /**
+     * The directory this file was listed from, shared by all the files of the
+     * listing so that its write permission is checked once
+     */
+    private NativeFtpFile parentDirectory;
+
     /**
      * Constructor, internal do not use directly.
      */
     protected NativeFtpFile(final String fileName, final File file,
             final User user) {
+        this(fileName, file, user, false);
+    }
+
+    /**
+     * Constructor, internal do not use directly.
+     * 
+     * @param nativeOwners
+     *            Whether the native owner and group of the file are shown,
+     *            if the file system supports them
+     */
+    protected NativeFtpFile(final String fileName, final File file,
+            final User user, final boolean nativeOwners) {
         if (fileName == null) {
             throw new IllegalArgumentException("fileName can not be null");
         }
@@ -80,6 +138,114 @@ public class NativeFtpFile implements FtpFile {
         this.fileName = fileName;
         this.file = file;
         this.user = user;
+        this.nativeOwners = nativeOwners;
+    }
+
+    /**
+     * Get the attributes of the file, reading them if not done yet.
+     * 
+     * @return The attributes, null if the file does not exist or can not be
+     *         accessed
+     */
+    private BasicFileAttributes getAttributes() {
+        if (!attributesRead) {
+            attributes = readAttributes(file);
+            attributesRead = true;
+        }
+        return attributes;
+    }
+
+    private static BasicFileAttributes readAttributes(final File file) {
+        Path path;
+        try {
+            path = file.toPath();
+        } catch (InvalidPathException e) {
+            // the name can not be encoded for NIO, java.io.File replaces the
+            // unmappable characters
+            return file.exists() ? new LegacyFileAttributes(file) : null;
+        }
+        return readAttributes(path);
+    }
+
+    private static BasicFileAttributes readAttributes(final Path path) {
+        try {
+            if (POSIX_SUPPORTED) {
+                // the same system call as the basic attributes
+                return Files.readAttributes(path, PosixFileAttributes.class);
+            }
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            // like java.io.File, a file which can not be accessed does not
+            // exist
+            return null;
+        }
+    }
+
+    /**
+     * The attributes of a file whose name is not supported by NIO, read from
+     * java.io.File.
+     */
+    private static class LegacyFileAttributes implements BasicFileAttributes {
+        private final boolean directory;
+
+        private final boolean regularFile;
+
+        private final long size;
+
+        private final FileTime lastModifiedTime;
+
+        public LegacyFileAttributes(final File file) {
+            directory = file.isDirectory();
+            regularFile = file.isFile();
+            size = file.length();
+            lastModifiedTime = FileTime.fromMillis(file.lastModified());
+        }
+
+        public FileTime lastModifiedTime() {
+            return lastModifiedTime;
+        }
+
+        public FileTime lastAccessTime() {
+            return lastModifiedTime;
+        }
+
+        public FileTime creationTime() {
+            return lastModifiedTime;
+        }
+
+        public boolean isRegularFile() {
+            return regularFile;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        public boolean isSymbolicLink() {
+            return false;
+        }
+
+        public boolean isOther() {
+            return !directory && !regularFile;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        public Object fileKey() {
+            return null;
+        }
+    }
+
+    /**
+     * Discard the attributes read so far, after the file has been changed.
+     */
+    private void resetAttributes() {
+        attributes = null;
+        attributesRead = false;
+        readable = null;
+        writable = null;
     }
 
     /**
@@ -133,62 +299,90 @@ public class NativeFtpFile implements FtpFile {
      * Is it a directory?
      */
     public boolean isDirectory() {
-        return file.isDirectory();
+        BasicFileAttributes attrs = getAttributes();
+        return attrs != null && attrs.isDirectory();
     }
 
     /**
      * Is it a file?
      */
     public boolean isFile() {
-        return file.isFile();
+        BasicFileAttributes attrs = getAttributes();
+        return attrs != null && attrs.isRegularFile();
     }
 
     /**
      * Does this file exists?
      */
     public boolean doesExist() {
-        return file.exists();
+        return getAttributes() != null;
     }
 
     /**
      * Get file size.
      */
     public long getSize() {
-        return file.length();
+        BasicFileAttributes attrs = getAttributes();
+        return attrs != null ? attrs.size() : 0L;
     }
 
     /**
-     * Get file owner.
+     * Get file owner. This is "user" unless the native owners are shown.
      */
     public String getOwnerName() {
+        BasicFileAttributes attrs = nativeOwners ? getAttributes() : null;
+        if (attrs instanceof PosixFileAttributes) {
+            return ((PosixFileAttributes) attrs).owner().getName();
+        }
         return "user";
     }
 
     /**
-     * Get group name
+     * Get group name. This is "group" unless the native owners are shown.
      */
     public String getGroupName() {
+        BasicFileAttributes attrs = nativeOwners ? getAttributes() : null;
+        if (attrs instanceof PosixFileAttributes) {
+            return ((PosixFileAttributes) attrs).group().getName();
+        }
         return "group";
     }
 
+    /**
+     * Get the POSIX permissions of the file.
+     * 
+     * @return The permissions, null if the file does not exist or the file
+     *         system does not support POSIX permissions
+     */
+    public Set<PosixFilePermission> getPermissions() {
+        BasicFileAttributes attrs = getAttributes();
+        if (attrs instanceof PosixFileAttributes) {
+            return Collections.unmodifiableSet(((PosixFileAttributes) attrs)
+                    .permissions());
+        }
+        return null;
+    }
+
     /**
      * Get link count
      */
     public int getLinkCount() {
-        return file.isDirectory() ? 3 : 1;
+        return isDirectory() ? 3 : 1;
     }
 
     /**
      * Get last modified time.
      */
     public long getLastModified() {
-        return file.lastModified();
+        BasicFileAttributes attrs = getAttributes();
+        return attrs != null ? attrs.lastModifiedTime().toMillis() : 0L;
     }
 
     /**
      * {@inheritDoc}
      */
     public boolean setLastModified(long time) {
+        resetAttributes();
         return file.setLastModified(time);
     }
 
@@ -196,7 +390,10 @@ public class NativeFtpFile implements FtpFile {
      * Check read permission.
      */
     public boolean isReadable() {
-        return file.canRead();
+        if (readable == null) {
+            readable = Boolean.valueOf(doesExist() && file.canRead());
+        }
+        return readable.booleanValue();
     }
 
     /**
@@ -210,9 +407,12 @@ public class NativeFtpFile implements FtpFile {
         }
 
         LOG.debug("Checking if file exists");
-        if (file.exists()) {
-            LOG.debug("Checking can write: " + file.canWrite());
-            return file.canWrite();
+        if (doesExist()) {
+            if (writable == null) {
+                writable = Boolean.valueOf(file.canWrite());
+            }
+            LOG.debug("Checking can write: " + writable);
+            return writable.booleanValue();
         }
 
         LOG.debug("Authorized");
@@ -249,8 +449,11 @@ public class NativeFtpFile implements FtpFile {
         }
 
         // we check if the parent FileObject is writable.
-        NativeFtpFile parentObject = new NativeFtpFile(parentFullName, file
-                .getAbsoluteFile().getParentFile(), user);
+        NativeFtpFile parentObject = parentDirectory;
+        if (parentObject == null) {
+            parentObject = new NativeFtpFile(parentFullName, file
+                    .getAbsoluteFile().getParentFile(), user, nativeOwners);
+        }
         return parentObject.isWritable();
     }
 
@@ -261,6 +464,7 @@ public class NativeFtpFile implements FtpFile {
         boolean retVal = false;
         if (isRemovable()) {
             retVal = file.delete();
+            resetAttributes();
         }
         return retVal;
     }
@@ -281,6 +485,11 @@ public class NativeFtpFile implements FtpFile {
             } else {
                 retVal = file.renameTo(destFile);
             }
+            resetAttributes();
+            parentDirectory = null;
+            if (dest instanceof NativeFtpFile) {
+                ((NativeFtpFile) dest).resetAttributes();
+            }
         }
         return retVal;
     }
@@ -292,6 +501,7 @@ public class NativeFtpFile implements FtpFile {
         boolean retVal = false;
         if (isWritable()) {
             retVal = file.mkdir();
+            resetAttributes();
         }
         return retVal;
     }
@@ -309,7 +519,7 @@ public class NativeFtpFile implements FtpFile {
     public List<FtpFile> listFiles() {
 
         // is a directory
-        if (!file.isDirectory()) {
+        if (!isDirectory()) {
             return null;
         }
 
@@ -326,23 +536,141 @@ public class NativeFtpFile implements FtpFile {
             }
         });
 
-        // get the virtual name of the base directory
-        String virtualFileStr = getAbsolutePath();
-        if (virtualFileStr.charAt(virtualFileStr.length() - 1) != '/') {
-            virtualFileStr += '/';
-        }
-
         // now return all the files under the directory
+        String virtualDirStr = getVirtualDirectory();
         FtpFile[] virtualFiles = new FtpFile[files.length];
         for (int i = 0; i < files.length; ++i) {
             File fileObj = files[i];
-            String fileName = virtualFileStr + fileObj.getName();
-            virtualFiles[i] = new NativeFtpFile(fileName, fileObj, user);
+            virtualFiles[i] = createChild(virtualDirStr, fileObj.getName(),
+                    readAttributes(fileObj));
         }
 
         return Collections.unmodifiableList(Arrays.asList(virtualFiles));
     }
 
+    /**
+     * Open a stream over the files of this directory. The attributes of each
+     * file are read as the directory is walked. Unsorted streams read the
+     * directory while being iterated, sorted streams have to read it all
+     * first.
+     */
+    public DirectoryStream<FtpFile> openDirectoryStream(final boolean sorted)
+            throws IOException {
+
+        // is a directory
+        if (!isDirectory()) {
+            return null;
+        }
+
+        final String virtualDirStr = getVirtualDirectory();
+        final DirectoryStream<Path> paths = Files.newDirectoryStream(file
+                .toPath());
+        if (!sorted) {
+            final Iterator<Path> pathIter = paths.iterator();
+            return createDirectoryStream(new Iterator<FtpFile>() {
+                public boolean hasNext() {
+                    return pathIter.hasNext();
+                }
+
+                public FtpFile next() {
+                    Path path = pathIter.next();
+                    return createChild(virtualDirStr, path.getFileName()
+                            .toString(), readAttributes(path));
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            }, paths);
+        }
+
+        List<NativeFtpFile> children = new ArrayList<>();
+        try {
+            for (Path path : paths) {
+                children.add(createChild(virtualDirStr, path.getFileName()
+                        .toString(), readAttributes(path)));
+            }
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        } finally {
+            paths.close();
+        }
+
+        // make sure the files are returned in order
+        Collections.sort(children, new Comparator<NativeFtpFile>() {
+            public int compare(NativeFtpFile f1, NativeFtpFile f2) {
+                return f1.file.getName().compareTo(f2.file.getName());
+            }
+        });
+
+        return createDirectoryStream(children.iterator(), null);
+    }
+
+    /**
+     * Get the virtual name of this directory, ending with a '/'.
+     */
+    private String getVirtualDirectory() {
+        String virtualFileStr = getAbsolutePath();
+        if (virtualFileStr.charAt(virtualFileStr.length() - 1) != '/') {
+            virtualFileStr += '/';
+        }
+        return virtualFileStr;
+    }
+
+    /**
+     * Create a file of this directory with the attributes read while listing
+     * the directory.
+     */
+    private NativeFtpFile createChild(final String virtualDirStr,
+            final String name, final BasicFileAttributes childAttributes) {
+        NativeFtpFile child = new NativeFtpFile(virtualDirStr + name,
+                new File(file, name), user, nativeOwners);
+        child.parentDirectory = this;
+        child.attributes = childAttributes;
+        child.attributesRead = true;
+        return child;
+    }
+
+    /**
+     * Create a stream of the given files of this directory.
+     * 
+     * @param resource
+     *            Closed with the stream, may be null
+     */
+    private DirectoryStream<FtpFile> createDirectoryStream(
+            final Iterator<? extends FtpFile> files, final Closeable resource) {
+        return new DirectoryStream<FtpFile>() {
+            private boolean iterated = false;
+
+            public synchronized Iterator<FtpFile> iterator() {
+                if (iterated) {
+                    throw new IllegalStateException("Iterator already obtained");
+                }
+                iterated = true;
+
+                return new Iterator<FtpFile>() {
+                    public boolean hasNext() {
+                        return files.hasNext();
+                    }
+
+                    public FtpFile next() {
+                        return files.next();
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            public void close() throws IOException {
+                if (resource != null) {
+                    resource.close();
+                }
+            }
+        };
+    }
+
     /**
      * Create output stream for writing.
      */
@@ -356,6 +684,7 @@ public class NativeFtpFile implements FtpFile {
 
         // create output stream
         final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        resetAttributes();
         raf.setLength(offset);
         raf.seek(offset);
 
@@ -366,6 +695,7 @@ public class NativeFtpFile implements FtpFile {
             public void close() throws IOException {
                 super.close();
                 raf.close();
+                resetAttributes();
             }
         };
     }
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * A histogram with a few fixed buckets, e.g. of the sizes of the transferred
+ * files. Each bucket counts the values up to its upper bound, a last bucket
+ * counting the higher values. Recording is lock free.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class BucketHistogram {
+
+    private final long[] upperBounds;
+
+    private final AtomicLongArray buckets;
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * @param upperBounds
+     *            The upper bounds of the buckets, in increasing order
+     */
+    public BucketHistogram(final long[] upperBounds) {
+        this.upperBounds = upperBounds.clone();
+        this.buckets = new AtomicLongArray(upperBounds.length + 1);
+    }
+
+    public void record(final long value) {
+        int index = 0;
+        while (index < upperBounds.length && value > upperBounds[index]) {
+            index++;
+        }
+        buckets.incrementAndGet(index);
+        count.increment();
+        sum.add(value);
+    }
+
+    /**
+     * The number of buckets, including the last one without upper bound.
+     */
+    public int getBucketCount() {
+        return buckets.length();
+    }
+
+    /**
+     * The highest value counted by a bucket.
+     *
+     * @return The upper bound, {@link Long#MAX_VALUE} for the last bucket
+     */
+    public long getUpperBound(final int index) {
+        return index < upperBounds.length ? upperBounds[index]
+                : Long.MAX_VALUE;
+    }
+
+    /**
+     * The number of values counted by a bucket, not including the lower
+     * buckets.
+     */
+    public long getBucketValue(final int index) {
+        return buckets.get(index);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Completes the execution of a single request, e.g. notifying the Ftplets of
+ * the last reply. The command may defer it until its final reply has been
+ * sent, see {@link FtpIoSession#deferCommandCompletion()}. The completion
+ * runs at most once, whichever thread runs it first.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class CommandCompletion implements Runnable {
+
+    private final Runnable task;
+
+    private final AtomicBoolean completed = new AtomicBoolean(false);
+
+    private volatile boolean deferred = false;
+
+    /**
+     * @param task The task completing the request
+     */
+    public CommandCompletion(final Runnable task) {
+        this.task = task;
+    }
+
+    /**
+     * Run the task, unless it has already been run.
+     */
+    public void run() {
+        if (completed.compareAndSet(false, true)) {
+            task.run();
+        }
+    }
+
+    /**
+     * Mark the completion as deferred, the command then runs it once its
+     * final reply has been sent.
+     */
+    void defer() {
+        deferred = true;
+    }
+
+    /**
+     * Tells whether the command has deferred the completion.
+     * @return true if {@link #defer()} has been called
+     */
+    public boolean isDeferred() {
+        return deferred;
+    }
+}
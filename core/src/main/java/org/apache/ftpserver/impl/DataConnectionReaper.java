@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Closes the data connections requested with PORT or PASV but not used
+ * within the idle time of their data connection configuration, releasing
+ * their passive ports. Without it, a client sending PASV and never
+ * connecting keeps a passive port until its next data connection request
+ * or the end of its session.
+ *
+ * The data connection factories register when a data connection is
+ * requested and unregister when it is closed, so that only the pending
+ * data connections of all the listeners are checked.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class DataConnectionReaper {
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(DataConnectionReaper.class);
+
+    /**
+     * The interval between two checks, in milliseconds
+     */
+    static final long CHECK_INTERVAL = 1000L;
+
+    private final FtpServerContext serverContext;
+
+    private final Set<ServerDataConnectionFactory> pending = ConcurrentHashMap
+            .newKeySet();
+
+    /**
+     * The scheduled checks, null until a data connection is requested
+     */
+    private ScheduledFuture<?> checks;
+
+    private boolean disposed = false;
+
+    public DataConnectionReaper(final FtpServerContext serverContext) {
+        this.serverContext = serverContext;
+    }
+
+    /**
+     * Watch a data connection factory, whose data connection has been
+     * requested.
+     */
+    public void register(final ServerDataConnectionFactory factory) {
+        pending.add(factory);
+        startChecks();
+    }
+
+    /**
+     * Stop watching a data connection factory, whose data connection has
+     * been closed.
+     */
+    public void unregister(final ServerDataConnectionFactory factory) {
+        pending.remove(factory);
+    }
+
+    /**
+     * The number of watched data connection factories.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    private synchronized void startChecks() {
+        if (checks != null || disposed) {
+            return;
+        }
+
+        checks = serverContext.getScheduler().scheduleWithFixedDelay(
+                new Runnable() {
+                    public void run() {
+                        try {
+                            reap(System.currentTimeMillis());
+                        } catch (Exception e) {
+                            LOG.warn("Failed to close the idle data connections", e);
+                        }
+                    }
+                }, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Close the data connections idle for too long.
+     *
+     * @param currTime
+     *            The current time, in milliseconds
+     * @return The number of closed data connections
+     */
+    int reap(final long currTime) {
+        int count = 0;
+        Iterator<ServerDataConnectionFactory> iter = pending.iterator();
+        while (iter.hasNext()) {
+            ServerDataConnectionFactory factory = iter.next();
+            if (factory.closeIfTimedOut(currTime)) {
+                iter.remove();
+                LOG.debug("Closed data connection not used in time");
+                serverContext.getFtpMetrics().recordDataConnectionReaped();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Stop checking the data connections.
+     */
+    public synchronized void dispose() {
+        disposed = true;
+        if (checks != null) {
+            checks.cancel(false);
+            checks = null;
+        }
+        pending.clear();
+    }
+}
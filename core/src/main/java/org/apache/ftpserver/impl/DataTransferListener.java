@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Callback for the completion of an asynchronous data transfer. Exactly one of
+ * the methods is called, after the data connection has been closed.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface DataTransferListener {
+
+    /**
+     * The transfer completed successfully.
+     * 
+     * @param transferredSize
+     *            The number of bytes read from or written to the data
+     *            connection
+     */
+    void transferCompleted(long transferredSize);
+
+    /**
+     * The transfer failed or was aborted.
+     * 
+     * @param transferredSize
+     *            The number of bytes transferred before the failure
+     * @param cause
+     *            The cause of the failure. A
+     *            {@link org.apache.ftpserver.DataConnectionException} if the
+     *            data connection could not be opened, a
+     *            {@link java.net.SocketException} if the data connection was
+     *            closed during the transfer.
+     */
+    void transferFailed(long transferredSize, Exception cause);
+}
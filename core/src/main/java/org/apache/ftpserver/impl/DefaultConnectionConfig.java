@@ -39,31 +39,59 @@ public class DefaultConnectionConfig implements ConnectionConfig {
     private final int maxLoginFailures;
 
     private final int loginFailureDelay;
+
+    private final int maxLoginFailureDelay;
     
     private final int maxThreads;
 
+    private final boolean virtualThreadsEnabled;
+
+    private final int maxDownloadRate;
+
+    private final int maxUploadRate;
+
+    private final int maxDownloadRatePerIp;
+
+    private final int maxUploadRatePerIp;
+
+    private final boolean userRatesShared;
+
     public DefaultConnectionConfig() {
-        this(true, 500, 10, 10, 3, 0);
+        this(true, 500, 0, 10, 10, 3, 0, false, 0, 0, 0, 0, false);
     }
 
     /**
      * Internal constructor, do not use directly. Use {@link ConnectionConfigFactory} instead
      */
     public DefaultConnectionConfig(boolean anonymousLoginEnabled,
-            int loginFailureDelay, int maxLogins, int maxAnonymousLogins,
-            int maxLoginFailures, int maxThreads) {
+            int loginFailureDelay, int maxLoginFailureDelay, int maxLogins,
+            int maxAnonymousLogins,
+            int maxLoginFailures, int maxThreads, boolean virtualThreadsEnabled,
+            int maxDownloadRate, int maxUploadRate, int maxDownloadRatePerIp,
+            int maxUploadRatePerIp, boolean userRatesShared) {
         this.anonymousLoginEnabled = anonymousLoginEnabled;
         this.loginFailureDelay = loginFailureDelay;
+        this.maxLoginFailureDelay = maxLoginFailureDelay;
         this.maxLogins = maxLogins;
         this.maxAnonymousLogins = maxAnonymousLogins;
         this.maxLoginFailures = maxLoginFailures;
         this.maxThreads = maxThreads;
+        this.virtualThreadsEnabled = virtualThreadsEnabled;
+        this.maxDownloadRate = maxDownloadRate;
+        this.maxUploadRate = maxUploadRate;
+        this.maxDownloadRatePerIp = maxDownloadRatePerIp;
+        this.maxUploadRatePerIp = maxUploadRatePerIp;
+        this.userRatesShared = userRatesShared;
     }
 
     public int getLoginFailureDelay() {
         return loginFailureDelay;
     }
 
+    public int getMaxLoginFailureDelay() {
+        return maxLoginFailureDelay;
+    }
+
     public int getMaxAnonymousLogins() {
         return maxAnonymousLogins;
     }
@@ -83,5 +111,29 @@ public class DefaultConnectionConfig implements ConnectionConfig {
     public int getMaxThreads() {
         return maxThreads;
     }
+
+    public boolean isVirtualThreadsEnabled() {
+        return virtualThreadsEnabled;
+    }
+
+    public int getMaxDownloadRate() {
+        return maxDownloadRate;
+    }
+
+    public int getMaxUploadRate() {
+        return maxUploadRate;
+    }
+
+    public int getMaxDownloadRatePerIp() {
+        return maxDownloadRatePerIp;
+    }
+
+    public int getMaxUploadRatePerIp() {
+        return maxUploadRatePerIp;
+    }
+
+    public boolean isUserRatesShared() {
+        return userRatesShared;
+    }
     
 }
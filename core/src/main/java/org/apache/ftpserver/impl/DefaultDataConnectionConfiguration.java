@@ -49,6 +49,8 @@ public class DefaultDataConnectionConfiguration implements
 
     private final boolean implicitSsl;
 
+    private final boolean nioEnabled;
+
     /**
      * Internal constructor, do not use directly. Use
      * {@link DataConnectionConfigurationFactory} instead.
@@ -57,7 +59,7 @@ public class DefaultDataConnectionConfiguration implements
         SslConfiguration ssl, boolean activeEnabled, boolean activeIpCheck,
         String activeLocalAddress, int activeLocalPort, String passiveAddress,
         PassivePorts passivePorts, String passiveExternalAddress,
-        boolean passiveIpCheck, boolean implicitSsl) {
+        boolean passiveIpCheck, boolean implicitSsl, boolean nioEnabled) {
         this.idleTime = idleTime;
         this.ssl = ssl;
         this.activeEnabled = activeEnabled;
@@ -69,6 +71,7 @@ public class DefaultDataConnectionConfiguration implements
         this.passiveExternalAddress = passiveExternalAddress;
         this.passiveIpCheck = passiveIpCheck;
         this.implicitSsl = implicitSsl;
+        this.nioEnabled = nioEnabled;
     }
 
     /**
@@ -128,7 +131,7 @@ public class DefaultDataConnectionConfiguration implements
      * Get passive data port. Data port number zero (0) means that any available
      * port will be used.
      */
-    public synchronized int requestPassivePort() {
+    public int requestPassivePort() {
         return passivePorts.reserveNextPort();
     }
 
@@ -141,10 +144,17 @@ public class DefaultDataConnectionConfiguration implements
         return passivePorts.toString();
     }
 
+    /**
+     * Get the number of passive ports currently reserved by sessions.
+     */
+    public int getPassivePortsInUse() {
+        return passivePorts.getReservedCount();
+    }
+
     /**
      * Release data port
      */
-    public synchronized void releasePassivePort(final int port) {
+    public void releasePassivePort(final int port) {
         passivePorts.releasePort(port);
     }
 
@@ -161,4 +171,11 @@ public class DefaultDataConnectionConfiguration implements
     public boolean isImplicitSsl() {
         return implicitSsl;
     }
+
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#isNioEnabled()
+     */
+    public boolean isNioEnabled() {
+        return nioEnabled;
+    }
 }
@@ -21,6 +21,7 @@ package org.apache.ftpserver.impl;
 
 import java.io.IOException;
 import java.nio.charset.MalformedInputException;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.ftpserver.command.Command;
 import org.apache.ftpserver.command.CommandFactory;
@@ -50,6 +51,18 @@ public class DefaultFtpHandler implements FtpHandler {
     private final static String[] NON_AUTHENTICATED_COMMANDS = new String[] {
             "USER", "PASS", "AUTH", "QUIT", "PROT", "PBSZ" };
 
+    /**
+     * Commands transferring data, executed apart from the control channel
+     */
+    private final static String[] TRANSFER_COMMANDS = new String[] {
+            "APPE", "LIST", "MLSD", "NLST", "RETR", "STOR", "STOU" };
+
+    /**
+     * Commands executed while a data transfer is in progress
+     */
+    private final static String[] OUT_OF_BAND_COMMANDS = new String[] {
+            "ABOR", "NOOP", "STAT" };
+
     private FtpServerContext context;
 
     private Listener listener;
@@ -93,6 +106,7 @@ public class DefaultFtpHandler implements FtpHandler {
 
     public void sessionClosed(final FtpIoSession session) throws Exception {
         LOG.debug("Closing session");
+        session.getTransferState().clear();
         try {
             context.getFtpletContainer().onDisconnect(
                     session.getFtpletSession());
@@ -162,20 +176,58 @@ public class DefaultFtpHandler implements FtpHandler {
     }
 
     private boolean isCommandOkWithoutAuthentication(String command) {
-        boolean okay = false;
-        for (String allowed : NON_AUTHENTICATED_COMMANDS) {
-            if (allowed.equals(command)) {
-                okay = true;
-                break;
+        return contains(NON_AUTHENTICATED_COMMANDS, command);
+    }
+
+    private boolean isTransferCommand(String command) {
+        return contains(TRANSFER_COMMANDS, command);
+    }
+
+    private boolean isOutOfBandCommand(String command) {
+        return contains(OUT_OF_BAND_COMMANDS, command);
+    }
+
+    private static boolean contains(String[] commands, String command) {
+        for (String candidate : commands) {
+            if (candidate.equals(command)) {
+                return true;
             }
         }
-        return okay;
+        return false;
     }
 
     public void messageReceived(final FtpIoSession session,
             final FtpRequest request) throws Exception {
+        // while data is being transferred only out of band commands are
+        // executed, the other requests wait for the transfer to complete
+        TransferState transferState = session.getTransferState();
+        boolean outOfBand = isOutOfBandCommand(request.getCommand());
+        if (!outOfBand && transferState.isFull()) {
+            LOG.warn("Too many requests received during the data transfer, closing session");
+            session.write(LocalizedFtpReply.translate(session, request,
+                    context,
+                    FtpReply.REPLY_421_SERVICE_NOT_AVAILABLE_CLOSING_CONTROL_CONNECTION,
+                    "deferred.limit", null));
+            transferState.clear();
+            session.close(false);
+            return;
+        }
+        if (transferState.deferRequest(request, outOfBand)) {
+            LOG.debug("Deferring {} until the data transfer has completed",
+                    request.getCommand());
+            session.updateLastAccessTime();
+            return;
+        }
+
+        handleRequest(session, request);
+    }
+
+    private void handleRequest(final FtpIoSession session,
+            final FtpRequest request) throws Exception {
+        final long startTime = System.nanoTime();
         try {
             session.updateLastAccessTime();
+            session.setLastRequest(request);
             
             String commandName = request.getCommand();
             CommandFactory commandFactory = context.getCommandFactory();
@@ -206,51 +258,182 @@ public class DefaultFtpHandler implements FtpHandler {
                 return;
             } else if (ftpletRet != FtpletResult.SKIP) {
 
-                if (command != null) {
-                    synchronized (session) {
-                        command.execute(session, context, request);
-                    }
-                } else {
+                if (command == null) {
                     session.write(LocalizedFtpReply.translate(session, request,
                             context,
                             FtpReply.REPLY_502_COMMAND_NOT_IMPLEMENTED,
                             "not.implemented", null));
-                }
-
-                try {
-                    ftpletRet = ftplets.afterCommand(
-                            session.getFtpletSession(), request, session
-                                    .getLastReply());
-                } catch (Exception e) {
-                    LOG.debug("Ftplet container threw exception", e);
-                    ftpletRet = FtpletResult.DISCONNECT;
-                }
-                if (ftpletRet == FtpletResult.DISCONNECT) {
-                    LOG.debug("Ftplet returned DISCONNECT, session will be closed");
-
-                    session.close(false).awaitUninterruptibly(10000);
-                    return;
+                    afterCommand(session, request, startTime);
+                } else if (isTransferCommand(commandName)) {
+                    executeTransfer(session, request, command, startTime);
+                } else if (isOutOfBandCommand(commandName)) {
+                    // may run concurrently with a transfer command, so the
+                    // command completion of the session is not used
+                    command.execute(session, context, request);
+                    afterCommand(session, request, startTime);
+                } else {
+                    // commands completing asynchronously notify the Ftplets
+                    // once the final reply has been sent
+                    CommandCompletion completion = new CommandCompletion(
+                            new Runnable() {
+                                public void run() {
+                                    afterCommand(session, request, startTime);
+                                }
+                            });
+                    session.setCommandCompletion(completion);
+
+                    // no lock needed, the executor runs the requests of a
+                    // session one at a time and in order
+                    command.execute(session, context, request);
+
+                    if (!completion.isDeferred()) {
+                        completion.run();
+                    }
                 }
             }
 
         } catch (Exception ex) {
-            // send error reply
-            try {
-                session.write(LocalizedFtpReply.translate(session, request,
-                        context, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
-                        null, null));
-            } catch (Exception ex1) {
-            }
+            replyError(session, request, ex);
 
             if (ex instanceof java.io.IOException) {
                 throw (IOException) ex;
-            } else {
-                LOG.warn("RequestHandler.service()", ex);
             }
         }
 
     }
 
+    /**
+     * Execute a data transfer command on the transfer executor, leaving the
+     * control channel free for out of band commands like ABOR. The requests
+     * received in the meantime are executed once the final reply to the
+     * transfer command has been sent.
+     */
+    private void executeTransfer(final FtpIoSession session,
+            final FtpRequest request, final Command command,
+            final long startTime) {
+        final TransferState transferState = session.getTransferState();
+        transferState.beginTransfer(request);
+
+        // the session may already run the next request when the command
+        // returns, only the completion of this request tells if it deferred
+        final CommandCompletion completion = new CommandCompletion(
+                new Runnable() {
+                    public void run() {
+                        afterCommand(session, request, startTime);
+                        endTransfer(session);
+                    }
+                });
+        session.setCommandCompletion(completion);
+
+        try {
+            context.getTransferExecutor().execute(new Runnable() {
+                public void run() {
+                    try {
+                        command.execute(session, context, request);
+                    } catch (Exception ex) {
+                        replyError(session, request, ex);
+                        if (ex instanceof IOException) {
+                            LOG.error("Exception caught, closing session", ex);
+                            session.close(false);
+                        }
+                        if (!completion.isDeferred()) {
+                            endTransfer(session);
+                        }
+                        return;
+                    }
+
+                    if (!completion.isDeferred()) {
+                        completion.run();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the server is shutting down
+            LOG.debug("Transfer rejected, session will be closed");
+            transferState.clear();
+            session.close(false);
+        }
+    }
+
+    /**
+     * The data transfer command has completed, execute the requests received
+     * while it was running.
+     */
+    private void endTransfer(final FtpIoSession session) {
+        final TransferState transferState = session.getTransferState();
+        if (!transferState.endTransfer()) {
+            return;
+        }
+
+        Runnable drain = new Runnable() {
+            public void run() {
+                FtpRequest request;
+                while ((request = transferState.nextDeferredRequest()) != null) {
+                    if (session.isClosing()) {
+                        transferState.clear();
+                        return;
+                    }
+                    try {
+                        handleRequest(session, request);
+                    } catch (Exception e) {
+                        try {
+                            exceptionCaught(session, e);
+                        } catch (Exception e1) {
+                            LOG.debug("Failed to close session", e1);
+                        }
+                    }
+                }
+            }
+        };
+
+        try {
+            context.getTransferExecutor().execute(drain);
+        } catch (RejectedExecutionException e) {
+            // the server is shutting down
+            transferState.clear();
+        }
+    }
+
+    private void replyError(final FtpIoSession session,
+            final FtpRequest request, final Exception ex) {
+        // send error reply
+        try {
+            session.write(LocalizedFtpReply.translate(session, request,
+                    context, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+                    null, null));
+        } catch (Exception ex1) {
+        }
+
+        if (!(ex instanceof IOException)) {
+            LOG.warn("RequestHandler.service()", ex);
+        }
+    }
+
+    /**
+     * Record the latency of the command and notify the Ftplets of the last
+     * reply to the command, closing the session if requested.
+     */
+    private void afterCommand(final FtpIoSession session,
+            final FtpRequest request, final long startTime) {
+        context.getFtpMetrics().recordCommand(session, request,
+                System.nanoTime() - startTime);
+
+        FtpletResult ftpletRet;
+        try {
+            ftpletRet = context.getFtpletContainer().afterCommand(
+                    session.getFtpletSession(), request, session
+                            .getLastReply());
+        } catch (Exception e) {
+            LOG.debug("Ftplet container threw exception", e);
+            ftpletRet = FtpletResult.DISCONNECT;
+        }
+        if (ftpletRet == FtpletResult.DISCONNECT) {
+            LOG.debug("Ftplet returned DISCONNECT, session will be closed");
+
+            session.close(false).awaitUninterruptibly(10000);
+        }
+    }
+
     public void sessionIdle(final FtpIoSession session, final IdleStatus status)
             throws Exception {
         LOG.info("Session idle, closing");
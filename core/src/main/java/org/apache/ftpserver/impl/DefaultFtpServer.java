@@ -31,8 +31,12 @@ import org.apache.ftpserver.ftplet.FileSystemFactory;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.Ftplet;
 import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.jmx.impl.FtpServerManagement;
 import org.apache.ftpserver.listener.Listener;
 import org.apache.ftpserver.message.MessageResource;
+import org.apache.ftpserver.metrics.MetricsExporter;
+import org.apache.ftpserver.usermanager.impl.CachingUserManager;
+import org.apache.ftpserver.usermanager.impl.PropertiesUserManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,6 +59,12 @@ public class DefaultFtpServer implements FtpServer {
 
     private boolean started = false;
 
+    private String jmxName = null;
+
+    private FtpServerManagement management = null;
+
+    private MetricsExporter metricsExporter = null;
+
     /**
      * Internal constructor, do not use directly. Use {@link FtpServerFactory} instead
      */
@@ -83,9 +93,24 @@ public class DefaultFtpServer implements FtpServer {
     
             // init the Ftplet container
             serverContext.getFtpletContainer().init(serverContext);
-        
+
+            PropertiesUserManager propertiesUserManager = getPropertiesUserManager();
+            if (propertiesUserManager != null) {
+                propertiesUserManager.startWatching();
+            }
+
+            if (metricsExporter != null) {
+                metricsExporter.start(serverContext);
+            }
+
             started = true;
 
+            if (jmxName != null) {
+                management = new FtpServerManagement(this, serverContext,
+                        jmxName);
+                management.register();
+            }
+
             LOG.info("FTP server started");
         } catch(Exception e) {
             // must close listeners that we were able to start
@@ -112,6 +137,15 @@ public class DefaultFtpServer implements FtpServer {
             return;
         }
 
+        if (management != null) {
+            management.unregister();
+            management = null;
+        }
+
+        if (metricsExporter != null) {
+            metricsExporter.stop();
+        }
+
         // stop all listeners
         Map<String, Listener> listeners = serverContext.getListeners();
         for (Listener listener : listeners.values()) {
@@ -121,6 +155,13 @@ public class DefaultFtpServer implements FtpServer {
         // destroy the Ftplet container
         serverContext.getFtpletContainer().destroy();
 
+        // stop the watcher thread of the user data file, the user manager
+        // may outlive the server
+        PropertiesUserManager propertiesUserManager = getPropertiesUserManager();
+        if (propertiesUserManager != null) {
+            propertiesUserManager.stopWatching();
+        }
+
         // release server resources
         if (serverContext != null) {
             serverContext.dispose();
@@ -130,6 +171,21 @@ public class DefaultFtpServer implements FtpServer {
         started = false;
     }
 
+    /**
+     * Get the properties user manager of the server, possibly wrapped in a
+     * cache, null if it uses another user manager.
+     */
+    private PropertiesUserManager getPropertiesUserManager() {
+        UserManager userManager = serverContext.getUserManager();
+        if (userManager instanceof CachingUserManager) {
+            userManager = ((CachingUserManager) userManager).getUserManager();
+        }
+        if (userManager instanceof PropertiesUserManager) {
+            return (PropertiesUserManager) userManager;
+        }
+        return null;
+    }
+
     /**
      * Get the server status.
      */
@@ -181,6 +237,40 @@ public class DefaultFtpServer implements FtpServer {
         return suspended;
     }
 
+    /**
+     * Get the name under which the MBeans of the server are registered.
+     * @return The name, null if the MBeans are not registered
+     */
+    public String getJmxName() {
+        return jmxName;
+    }
+
+    /**
+     * Set the name under which the MBeans of the server are registered when
+     * it is started, see {@link FtpServerFactory#setJmxName(String)}.
+     * @param jmxName The name, null to not register the MBeans
+     */
+    public void setJmxName(final String jmxName) {
+        this.jmxName = jmxName;
+    }
+
+    /**
+     * Get the exporter publishing the statistics of the server.
+     * @return The exporter, null if none
+     */
+    public MetricsExporter getMetricsExporter() {
+        return metricsExporter;
+    }
+
+    /**
+     * Set the exporter publishing the statistics of the server, started and
+     * stopped with it.
+     * @param metricsExporter The exporter, null if none
+     */
+    public void setMetricsExporter(final MetricsExporter metricsExporter) {
+        this.metricsExporter = metricsExporter;
+    }
+
     /**
      * Get the root server context.
      */
@@ -19,10 +19,16 @@
 
 package org.apache.ftpserver.impl;
 
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -30,6 +36,7 @@ import org.apache.ftpserver.ConnectionConfig;
 import org.apache.ftpserver.ConnectionConfigFactory;
 import org.apache.ftpserver.command.CommandFactory;
 import org.apache.ftpserver.command.CommandFactoryFactory;
+import org.apache.ftpserver.command.impl.listing.ListingCache;
 import org.apache.ftpserver.filesystem.nativefs.NativeFileSystemFactory;
 import org.apache.ftpserver.ftplet.Authority;
 import org.apache.ftpserver.ftplet.FileSystemFactory;
@@ -86,6 +93,45 @@ public class DefaultFtpServerContext implements FtpServerContext {
      * The thread pool executor to be used by the server using this context
      */
     private ThreadPoolExecutor threadPoolExecutor = null;
+
+    /**
+     * The executor used instead of the thread pool executor when virtual
+     * threads are enabled
+     */
+    private SessionOrderedExecutor virtualThreadExecutor = null;
+
+    /**
+     * The I/O services for non-blocking data connections, created on first
+     * use
+     */
+    private NioDataConnectionService nioDataConnectionService = null;
+
+    /**
+     * The transfer rate limits, created on first use
+     */
+    private TransferRateLimiter transferRateLimiter = null;
+
+    /**
+     * The scheduler for delayed tasks, created on first use
+     */
+    private ScheduledExecutorService scheduler = null;
+
+    /**
+     * The executor for data transfer commands, created on first use
+     */
+    private ExecutorService transferExecutor = null;
+
+    /**
+     * The reaper of the unused data connections, created on first use
+     */
+    private DataConnectionReaper dataConnectionReaper = null;
+
+    private final FtpMetrics metrics = new FtpMetrics(this);
+
+    /**
+     * The cache of the directory listings, null if listings are not cached
+     */
+    private ListingCache listingCache = null;
     
     static {
         ADMIN_AUTHORITIES.add(new WritePermission());
@@ -98,6 +144,8 @@ public class DefaultFtpServerContext implements FtpServerContext {
     public DefaultFtpServerContext() {
         // create the default listener
         listeners.put("default", new ListenerFactory().createListener());
+
+        ((ServerFtpStatistics) statistics).setMetrics(metrics);
     }
 
     /**
@@ -169,6 +217,9 @@ public class DefaultFtpServerContext implements FtpServerContext {
 
     public void setFtpStatistics(FtpStatistics statistics) {
         this.statistics = statistics;
+        if (statistics instanceof ServerFtpStatistics) {
+            ((ServerFtpStatistics) statistics).setMetrics(metrics);
+        }
     }
 
     /**
@@ -198,6 +249,9 @@ public class DefaultFtpServerContext implements FtpServerContext {
     public void dispose() {
         listeners.clear();
         ftpletContainer.getFtplets().clear();
+        if (statistics instanceof DefaultFtpStatistics) {
+            ((DefaultFtpStatistics) statistics).dispose();
+        }
         if (threadPoolExecutor != null) {
             LOG.debug("Shutting down the thread pool executor");
             threadPoolExecutor.shutdown();
@@ -208,6 +262,41 @@ public class DefaultFtpServerContext implements FtpServerContext {
                 // TODO: how to handle?
             }
         }
+
+        if (virtualThreadExecutor != null) {
+            LOG.debug("Shutting down the virtual thread executor");
+            virtualThreadExecutor.shutdown();
+            try {
+                virtualThreadExecutor.awaitTermination(5000, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // ignore, we're shutting down
+            }
+        }
+
+        synchronized (this) {
+            if (nioDataConnectionService != null) {
+                LOG.debug("Disposing the non-blocking data connection services");
+                nioDataConnectionService.dispose();
+                nioDataConnectionService = null;
+            }
+
+            if (dataConnectionReaper != null) {
+                dataConnectionReaper.dispose();
+                dataConnectionReaper = null;
+            }
+
+            if (scheduler != null) {
+                LOG.debug("Shutting down the scheduler");
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+
+            if (transferExecutor != null) {
+                LOG.debug("Shutting down the transfer executor");
+                transferExecutor.shutdownNow();
+                transferExecutor = null;
+            }
+        }
     }
 
     public Listener getListener(String name) {
@@ -262,21 +351,124 @@ public class DefaultFtpServerContext implements FtpServerContext {
         this.connectionConfig = connectionConfig;
     }
     
+    /**
+     * The maximum number of threads of the thread pools, as configured or
+     * derived from the maximum number of logins.
+     */
+    private int getMaxThreads() {
+        int maxThreads = connectionConfig.getMaxThreads();
+        if(maxThreads < 1) {
+            int maxLogins = connectionConfig.getMaxLogins();
+            if(maxLogins > 0) {
+                maxThreads = maxLogins;
+            }
+            else {
+                maxThreads = 16;
+            }
+        }
+        return maxThreads;
+    }
+
     public synchronized ThreadPoolExecutor getThreadPoolExecutor() {
         if(threadPoolExecutor == null) {
-            int maxThreads = connectionConfig.getMaxThreads();
-            if(maxThreads < 1) {
-                int maxLogins = connectionConfig.getMaxLogins();
-                if(maxLogins > 0) {
-                    maxThreads = maxLogins;
-                }
-                else {
-                    maxThreads = 16;
-                }
-            }
+            int maxThreads = getMaxThreads();
             LOG.debug("Intializing shared thread pool executor with max threads of {}", maxThreads);
             threadPoolExecutor = new OrderedThreadPoolExecutor(maxThreads);
         }
         return threadPoolExecutor;
     }
+
+    public synchronized Executor getRequestExecutor() {
+        if (!connectionConfig.isVirtualThreadsEnabled()) {
+            return getThreadPoolExecutor();
+        }
+
+        if (virtualThreadExecutor == null) {
+            LOG.debug("Initializing virtual thread executor");
+            virtualThreadExecutor = new SessionOrderedExecutor(
+                    createVirtualThreadExecutorService());
+        }
+        return virtualThreadExecutor;
+    }
+
+    /**
+     * Create an executor service starting a new virtual thread for each task.
+     * Looked up reflectively as virtual threads require Java 21, falls back
+     * to an unbounded thread pool on older JVMs.
+     */
+    private ExecutorService createVirtualThreadExecutorService() {
+        try {
+            Method factoryMethod = Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factoryMethod.invoke(null);
+        } catch (Exception e) {
+            LOG.warn("Virtual threads are not available in this JVM, using an unbounded thread pool instead");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    public synchronized NioDataConnectionService getNioDataConnectionService() {
+        if (nioDataConnectionService == null) {
+            LOG.debug("Initializing non-blocking data connection services");
+            nioDataConnectionService = new NioDataConnectionService();
+        }
+        return nioDataConnectionService;
+    }
+
+    public FtpMetrics getFtpMetrics() {
+        return metrics;
+    }
+
+    public ListingCache getListingCache() {
+        return listingCache;
+    }
+
+    public void setListingCache(ListingCache listingCache) {
+        this.listingCache = listingCache;
+    }
+
+    public synchronized TransferRateLimiter getTransferRateLimiter() {
+        if (transferRateLimiter == null) {
+            transferRateLimiter = new TransferRateLimiter(this);
+            if (statistics instanceof ServerFtpStatistics) {
+                ((ServerFtpStatistics) statistics)
+                        .setTransferRateLimiter(transferRateLimiter);
+            }
+        }
+        return transferRateLimiter;
+    }
+
+    public synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            LOG.debug("Initializing the scheduler");
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+        }
+        return scheduler;
+    }
+
+    public synchronized DataConnectionReaper getDataConnectionReaper() {
+        if (dataConnectionReaper == null) {
+            dataConnectionReaper = new DataConnectionReaper(this);
+        }
+        return dataConnectionReaper;
+    }
+
+    public synchronized ExecutorService getTransferExecutor() {
+        if (transferExecutor == null) {
+            LOG.debug("Initializing the transfer executor");
+            if (connectionConfig.isVirtualThreadsEnabled()) {
+                transferExecutor = createVirtualThreadExecutorService();
+            } else {
+                // as many transfers as request threads, the others are
+                // queued until a thread is available
+                int maxThreads = getMaxThreads();
+                ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads,
+                        maxThreads, 60L, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>());
+                pool.allowCoreThreadTimeOut(true);
+                transferExecutor = pool;
+            }
+        }
+        return transferExecutor;
+    }
 }
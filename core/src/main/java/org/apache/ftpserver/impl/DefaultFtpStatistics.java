@@ -21,109 +21,259 @@ package org.apache.ftpserver.impl;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.LatencyStatistics;
+import org.apache.ftpserver.ftplet.ThroughputStatistics;
 import org.apache.ftpserver.ftplet.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
  * 
  * This is FTP statistics implementation.
  * 
- * TODO revisit concurrency, right now we're a bit over zealous with both Atomic*
- * counters and synchronization
+ * The statistics are updated without any global lock: the cumulative
+ * counters are {@link LongAdder}s, the current numbers of connections and
+ * logins are atomic, and the per user and per address tables are concurrent
+ * maps. The observers are notified asynchronously, in order, by a single
+ * thread started when the first observer is set.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
 public class DefaultFtpStatistics implements ServerFtpStatistics {
 
-    private StatisticsObserver observer = null;
+    private final Logger LOG = LoggerFactory
+            .getLogger(DefaultFtpStatistics.class);
 
-    private FileObserver fileObserver = null;
+    private volatile StatisticsObserver observer = null;
 
-    private Date startTime = new Date();
+    private volatile FileObserver fileObserver = null;
 
-    private AtomicInteger uploadCount = new AtomicInteger(0);
+    /**
+     * The maximum number of notifications waiting for the observers, the
+     * further ones are dropped
+     */
+    static final int MAX_PENDING_NOTIFICATIONS = 1000;
+
+    /**
+     * Notifies the observers, created when the first observer is set
+     */
+    private ExecutorService notifier = null;
+
+    private final AtomicLong droppedNotifications = new AtomicLong(0L);
 
-    private AtomicInteger downloadCount = new AtomicInteger(0);
+    private volatile Date startTime = new Date();
 
-    private AtomicInteger deleteCount = new AtomicInteger(0);
+    private final LongAdder uploadCount = new LongAdder();
 
-    private AtomicInteger mkdirCount = new AtomicInteger(0);
+    private final LongAdder downloadCount = new LongAdder();
 
-    private AtomicInteger rmdirCount = new AtomicInteger(0);
+    private final LongAdder deleteCount = new LongAdder();
 
-    private AtomicInteger currLogins = new AtomicInteger(0);
+    private final LongAdder mkdirCount = new LongAdder();
 
-    private AtomicInteger totalLogins = new AtomicInteger(0);
+    private final LongAdder rmdirCount = new LongAdder();
 
-    private AtomicInteger totalFailedLogins = new AtomicInteger(0);
+    private final AtomicInteger currLogins = new AtomicInteger(0);
 
-    private AtomicInteger currAnonLogins = new AtomicInteger(0);
+    private final LongAdder totalLogins = new LongAdder();
 
-    private AtomicInteger totalAnonLogins = new AtomicInteger(0);
+    private final LongAdder totalFailedLogins = new LongAdder();
 
-    private AtomicInteger currConnections = new AtomicInteger(0);
+    private final AtomicInteger currAnonLogins = new AtomicInteger(0);
 
-    private AtomicInteger totalConnections = new AtomicInteger(0);
+    private final LongAdder totalAnonLogins = new LongAdder();
 
-    private AtomicLong bytesUpload = new AtomicLong(0L);
+    private final AtomicInteger currConnections = new AtomicInteger(0);
 
-    private AtomicLong bytesDownload = new AtomicLong(0L);
+    private final LongAdder totalConnections = new LongAdder();
+
+    private final LongAdder bytesUpload = new LongAdder();
+
+    private final LongAdder bytesDownload = new LongAdder();
+
+    private volatile TransferRateLimiter transferRateLimiter = null;
+
+    private volatile FtpMetrics metrics = null;
 
     private static class UserLogins {
-        private Map<InetAddress, AtomicInteger> perAddress = new ConcurrentHashMap<>();
+        private final AtomicInteger totalLogins = new AtomicInteger(0);
 
-        public UserLogins(InetAddress address) {
-            // init with the first connection
-            totalLogins = new AtomicInteger(1);
-            perAddress.put(address, new AtomicInteger(1));
-        }
+        private final Map<InetAddress, AtomicInteger> perAddress = new ConcurrentHashMap<>();
 
-        public AtomicInteger loginsFromInetAddress(InetAddress address) {
-            AtomicInteger logins = perAddress.get(address);
-            if (logins == null) {
-                logins = new AtomicInteger(0);
-                perAddress.put(address, logins);
+        private static final Function<InetAddress, AtomicInteger> NEW_COUNTER = new Function<InetAddress, AtomicInteger>() {
+            public AtomicInteger apply(InetAddress address) {
+                return new AtomicInteger(0);
             }
-            return logins;
+        };
+
+        public int getLoginsFromInetAddress(InetAddress address) {
+            AtomicInteger logins = address != null ? perAddress.get(address)
+                    : null;
+            return logins != null ? logins.get() : 0;
         }
 
-        public AtomicInteger totalLogins;
+        public AtomicInteger loginsFromInetAddress(InetAddress address) {
+            return perAddress.computeIfAbsent(address, NEW_COUNTER);
+        }
     }
 
+    private static final Function<String, UserLogins> NEW_USER_LOGINS = new Function<String, UserLogins>() {
+        public UserLogins apply(String name) {
+            return new UserLogins();
+        }
+    };
+
     /**
      *The user login information.
      */
-    private Map<String, UserLogins> userLoginTable = new ConcurrentHashMap<>();
+    private final Map<String, UserLogins> userLoginTable = new ConcurrentHashMap<>();
+
+    /**
+     * Failed logins older than this are forgotten
+     */
+    private static final long FAILED_LOGIN_EXPIRY = TimeUnit.MINUTES.toNanos(15);
+
+    /**
+     * Expired failed logins are purged once this many addresses are tracked
+     */
+    private static final int FAILED_LOGIN_PURGE_SIZE = 1000;
+
+    /**
+     * The recent failed logins from an address, replaced on each failure.
+     */
+    private static class FailedLogins {
+        private final int count;
+
+        private final long lastFailure;
+
+        public FailedLogins(final int count, final long lastFailure) {
+            this.count = count;
+            this.lastFailure = lastFailure;
+        }
+    }
+
+    /**
+     * The recent failed logins per IP address
+     */
+    private final Map<InetAddress, FailedLogins> failedLoginTable = new ConcurrentHashMap<>();
 
     public static final String LOGIN_NUMBER = "login_number";
 
     /**
-     * Set the observer.
+     * Set the observer. The observer is notified asynchronously, but in the
+     * order of the events. Notifications are dropped while
+     * {@link #MAX_PENDING_NOTIFICATIONS} are waiting for the observers.
      */
     public void setObserver(final StatisticsObserver observer) {
+        if (observer != null) {
+            startNotifier();
+        }
         this.observer = observer;
     }
 
     /**
-     * Set the file observer.
+     * Set the file observer. The observer is notified asynchronously, but in
+     * the order of the events, the session might have changed or be closed by
+     * then. Notifications are dropped while
+     * {@link #MAX_PENDING_NOTIFICATIONS} are waiting for the observers.
      */
     public void setFileObserver(final FileObserver observer) {
+        if (observer != null) {
+            startNotifier();
+        }
         fileObserver = observer;
     }
 
+    private synchronized void startNotifier() {
+        if (notifier == null) {
+            notifier = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(MAX_PENDING_NOTIFICATIONS),
+                    new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r,
+                                    "FtpStatistics-notifier");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Notify the observers in the notifier thread.
+     */
+    private void notifyObservers(final Runnable notification) {
+        ExecutorService executor;
+        synchronized (this) {
+            executor = notifier;
+        }
+        if (executor == null) {
+            return;
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        notification.run();
+                    } catch (RuntimeException e) {
+                        LOG.warn("Statistics observer failed", e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // disposed, or the observers do not keep up
+            if (!executor.isShutdown()
+                    && droppedNotifications.incrementAndGet() == 1L) {
+                LOG.warn("Statistics observers too slow, dropping notifications");
+            }
+        }
+    }
+
+    /**
+     * The number of notifications dropped as too many were waiting for the
+     * observers.
+     */
+    public long getDroppedNotificationCount() {
+        return droppedNotifications.get();
+    }
+
+    /**
+     * Stop notifying the observers.
+     */
+    public synchronized void dispose() {
+        if (notifier != null) {
+            notifier.shutdown();
+            notifier = null;
+        }
+    }
+
     // //////////////////////////////////////////////////////
     // /////////////// All getter methods /////////////////
     /**
      * Get server start time.
      */
     public Date getStartTime() {
+        Date startTime = this.startTime;
         if (startTime != null) {
             return (Date) startTime.clone();
         } else {
@@ -135,56 +285,56 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
      * Get number of files uploaded.
      */
     public int getTotalUploadNumber() {
-        return uploadCount.get();
+        return uploadCount.intValue();
     }
 
     /**
      * Get number of files downloaded.
      */
     public int getTotalDownloadNumber() {
-        return downloadCount.get();
+        return downloadCount.intValue();
     }
 
     /**
      * Get number of files deleted.
      */
     public int getTotalDeleteNumber() {
-        return deleteCount.get();
+        return deleteCount.intValue();
     }
 
     /**
      * Get total number of bytes uploaded.
      */
     public long getTotalUploadSize() {
-        return bytesUpload.get();
+        return bytesUpload.sum();
     }
 
     /**
      * Get total number of bytes downloaded.
      */
     public long getTotalDownloadSize() {
-        return bytesDownload.get();
+        return bytesDownload.sum();
     }
 
     /**
      * Get total directory created.
      */
     public int getTotalDirectoryCreated() {
-        return mkdirCount.get();
+        return mkdirCount.intValue();
     }
 
     /**
      * Get total directory removed.
      */
     public int getTotalDirectoryRemoved() {
-        return rmdirCount.get();
+        return rmdirCount.intValue();
     }
 
     /**
      * Get total number of connections.
      */
     public int getTotalConnectionNumber() {
-        return totalConnections.get();
+        return totalConnections.intValue();
     }
 
     /**
@@ -198,14 +348,27 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
      * Get total number of logins.
      */
     public int getTotalLoginNumber() {
-        return totalLogins.get();
+        return totalLogins.intValue();
     }
 
     /**
      * Get total failed login number.
      */
     public int getTotalFailedLoginNumber() {
-        return totalFailedLogins.get();
+        return totalFailedLogins.intValue();
+    }
+
+    /**
+     * Get the number of recent failed logins from an IP address.
+     */
+    public int getRecentFailedLoginNumber(final InetAddress address) {
+        FailedLogins failedLogins = address != null ? failedLoginTable
+                .get(address) : null;
+        if (failedLogins == null
+                || System.nanoTime() - failedLogins.lastFailure > FAILED_LOGIN_EXPIRY) {
+            return 0;
+        }
+        return failedLogins.count;
     }
 
     /**
@@ -219,7 +382,7 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
      * Get total number of anonymous logins.
      */
     public int getTotalAnonymousLoginNumber() {
-        return totalAnonLogins.get();
+        return totalAnonLogins.intValue();
     }
 
     /**
@@ -232,7 +395,7 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
     /**
      * Get the login number for the specific user
      */
-    public synchronized int getCurrentUserLoginNumber(final User user) {
+    public int getCurrentUserLoginNumber(final User user) {
         UserLogins userLogins = userLoginTable.get(user.getName());
         if (userLogins == null) {// not found the login user's statistics info
             return 0;
@@ -249,14 +412,62 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
      * @param ipAddress
      *            the ip address of the remote user
      */
-    public synchronized int getCurrentUserLoginNumber(final User user,
+    public int getCurrentUserLoginNumber(final User user,
             final InetAddress ipAddress) {
         UserLogins userLogins = userLoginTable.get(user.getName());
         if (userLogins == null) {// not found the login user's statistics info
             return 0;
         } else {
-            return userLogins.loginsFromInetAddress(ipAddress).get();
+            return userLogins.getLoginsFromInetAddress(ipAddress);
+        }
+    }
+
+    /**
+     * Get the utilization of the bandwidth limits in use.
+     */
+    public Map<String, Double> getBandwidthUtilization() {
+        TransferRateLimiter limiter = transferRateLimiter;
+        if (limiter == null) {
+            return Collections.emptyMap();
+        }
+        return limiter.getUtilization();
+    }
+
+    /**
+     * Set the transfer rate limits to report the utilization of.
+     */
+    public void setTransferRateLimiter(
+            final TransferRateLimiter transferRateLimiter) {
+        this.transferRateLimiter = transferRateLimiter;
+    }
+
+    /**
+     * Get the recent transfer rates.
+     */
+    public Map<String, ThroughputStatistics> getThroughput() {
+        FtpMetrics metrics = this.metrics;
+        if (metrics == null) {
+            return Collections.emptyMap();
+        }
+        return metrics.getThroughput();
+    }
+
+    /**
+     * Get the command latencies.
+     */
+    public Map<String, LatencyStatistics> getLatencies() {
+        FtpMetrics metrics = this.metrics;
+        if (metrics == null) {
+            return Collections.emptyMap();
         }
+        return metrics.getLatencies();
+    }
+
+    /**
+     * Set the recorded transfer rates and latencies to report.
+     */
+    public void setMetrics(final FtpMetrics metrics) {
+        this.metrics = metrics;
     }
 
     // //////////////////////////////////////////////////////
@@ -264,106 +475,120 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
     /**
      * Increment upload count.
      */
-    public synchronized void setUpload(final FtpIoSession session,
+    public void setUpload(final FtpIoSession session,
             final FtpFile file, final long size) {
-        uploadCount.incrementAndGet();
-        bytesUpload.addAndGet(size);
+        uploadCount.increment();
+        bytesUpload.add(size);
+        FtpMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.recordFileTransfer(session, true, size);
+        }
         notifyUpload(session, file, size);
     }
 
     /**
      * Increment download count.
      */
-    public synchronized void setDownload(final FtpIoSession session,
+    public void setDownload(final FtpIoSession session,
             final FtpFile file, final long size) {
-        downloadCount.incrementAndGet();
-        bytesDownload.addAndGet(size);
+        downloadCount.increment();
+        bytesDownload.add(size);
+        FtpMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.recordFileTransfer(session, false, size);
+        }
         notifyDownload(session, file, size);
     }
 
     /**
      * Increment delete count.
      */
-    public synchronized void setDelete(final FtpIoSession session,
+    public void setDelete(final FtpIoSession session,
             final FtpFile file) {
-        deleteCount.incrementAndGet();
+        deleteCount.increment();
         notifyDelete(session, file);
     }
 
     /**
      * Increment make directory count.
      */
-    public synchronized void setMkdir(final FtpIoSession session,
+    public void setMkdir(final FtpIoSession session,
             final FtpFile file) {
-        mkdirCount.incrementAndGet();
+        mkdirCount.increment();
         notifyMkdir(session, file);
     }
 
     /**
      * Increment remove directory count.
      */
-    public synchronized void setRmdir(final FtpIoSession session,
+    public void setRmdir(final FtpIoSession session,
             final FtpFile file) {
-        rmdirCount.incrementAndGet();
+        rmdirCount.increment();
         notifyRmdir(session, file);
     }
 
     /**
      * Increment open connection count.
      */
-    public synchronized void setOpenConnection(final FtpIoSession session) {
+    public void setOpenConnection(final FtpIoSession session) {
         currConnections.incrementAndGet();
-        totalConnections.incrementAndGet();
+        totalConnections.increment();
+        FtpMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.recordConnection(session);
+        }
         notifyOpenConnection(session);
     }
 
     /**
      * Decrement open connection count.
      */
-    public synchronized void setCloseConnection(final FtpIoSession session) {
-        if (currConnections.get() > 0) {
-            currConnections.decrementAndGet();
-        }
+    public void setCloseConnection(final FtpIoSession session) {
+        decrementIfPositive(currConnections);
         notifyCloseConnection(session);
     }
 
+    private static void decrementIfPositive(final AtomicInteger counter) {
+        int current;
+        do {
+            current = counter.get();
+            if (current <= 0) {
+                return;
+            }
+        } while (!counter.compareAndSet(current, current - 1));
+    }
+
+    private static InetAddress getRemoteInetAddress(final FtpIoSession session) {
+        if (session.getRemoteAddress() instanceof InetSocketAddress) {
+            return ((InetSocketAddress) session.getRemoteAddress())
+                    .getAddress();
+        }
+        return null;
+    }
+
     /**
      * New login.
      */
-    public synchronized void setLogin(final FtpIoSession session) {
+    public void setLogin(final FtpIoSession session) {
         currLogins.incrementAndGet();
-        totalLogins.incrementAndGet();
+        totalLogins.increment();
         User user = session.getUser();
         if ("anonymous".equals(user.getName())) {
             currAnonLogins.incrementAndGet();
-            totalAnonLogins.incrementAndGet();
+            totalAnonLogins.increment();
         }
 
-        synchronized (user) {// thread safety is needed. Since the login occurrs
-            // at low frequency, this overhead is endurable
-            UserLogins statisticsTable = userLoginTable.get(user.getName());
-            if (statisticsTable == null) {
-                // the hash table that records the login information of the user
-                // and its ip address.
-
-                InetAddress address = null;
-                if (session.getRemoteAddress() instanceof InetSocketAddress) {
-                    address = ((InetSocketAddress) session.getRemoteAddress())
-                            .getAddress();
-                }
-                statisticsTable = new UserLogins(address);
-                userLoginTable.put(user.getName(), statisticsTable);
-            } else {
-                statisticsTable.totalLogins.incrementAndGet();
-
-                if (session.getRemoteAddress() instanceof InetSocketAddress) {
-                    InetAddress address = ((InetSocketAddress) session
-                            .getRemoteAddress()).getAddress();
-                    statisticsTable.loginsFromInetAddress(address)
-                            .incrementAndGet();
-                }
+        InetAddress address = getRemoteInetAddress(session);
+        if (address != null) {
+            failedLoginTable.remove(address);
+        }
 
-            }
+        // the record of the user is never removed, no lock is needed
+        UserLogins userLogins = userLoginTable.computeIfAbsent(user.getName(),
+                NEW_USER_LOGINS);
+        userLogins.totalLogins.incrementAndGet();
+        if (address != null) {
+            userLogins.loginsFromInetAddress(address).incrementAndGet();
         }
 
         notifyLogin(session);
@@ -372,15 +597,42 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
     /**
      * Increment failed login count.
      */
-    public synchronized void setLoginFail(final FtpIoSession session) {
-        totalFailedLogins.incrementAndGet();
+    public void setLoginFail(final FtpIoSession session) {
+        totalFailedLogins.increment();
+
+        InetAddress address = getRemoteInetAddress(session);
+        if (address != null) {
+            final long now = System.nanoTime();
+
+            if (failedLoginTable.size() >= FAILED_LOGIN_PURGE_SIZE) {
+                Iterator<FailedLogins> iter = failedLoginTable.values().iterator();
+                while (iter.hasNext()) {
+                    if (now - iter.next().lastFailure > FAILED_LOGIN_EXPIRY) {
+                        iter.remove();
+                    }
+                }
+            }
+
+            failedLoginTable.compute(address,
+                    new BiFunction<InetAddress, FailedLogins, FailedLogins>() {
+                        public FailedLogins apply(InetAddress key,
+                                FailedLogins failedLogins) {
+                            if (failedLogins == null
+                                    || now - failedLogins.lastFailure > FAILED_LOGIN_EXPIRY) {
+                                return new FailedLogins(1, now);
+                            }
+                            return new FailedLogins(failedLogins.count + 1, now);
+                        }
+                    });
+        }
+
         notifyLoginFail(session);
     }
 
     /**
      * User logout
      */
-    public synchronized void setLogout(final FtpIoSession session) {
+    public void setLogout(final FtpIoSession session) {
         User user = session.getUser();
         if (user == null) {
             return;
@@ -392,18 +644,13 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
             currAnonLogins.decrementAndGet();
         }
 
-        synchronized (user) {
-            UserLogins userLogins = userLoginTable.get(user.getName());
-
-            if (userLogins != null) {
-                userLogins.totalLogins.decrementAndGet();
-                if (session.getRemoteAddress() instanceof InetSocketAddress) {
-                    InetAddress address = ((InetSocketAddress) session
-                            .getRemoteAddress()).getAddress();
-                    userLogins.loginsFromInetAddress(address).decrementAndGet();
-                }
+        UserLogins userLogins = userLoginTable.get(user.getName());
+        if (userLogins != null) {
+            userLogins.totalLogins.decrementAndGet();
+            InetAddress address = getRemoteInetAddress(session);
+            if (address != null) {
+                userLogins.loginsFromInetAddress(address).decrementAndGet();
             }
-
         }
 
         notifyLogout(session);
@@ -415,16 +662,23 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
      * Observer upload notification.
      */
     private void notifyUpload(final FtpIoSession session,
-            final FtpFile file, long size) {
-        StatisticsObserver observer = this.observer;
-        if (observer != null) {
-            observer.notifyUpload();
+            final FtpFile file, final long size) {
+        final StatisticsObserver observer = this.observer;
+        final FileObserver fileObserver = this.fileObserver;
+        if (observer == null && fileObserver == null) {
+            return;
         }
 
-        FileObserver fileObserver = this.fileObserver;
-        if (fileObserver != null) {
-            fileObserver.notifyUpload(session, file, size);
-        }
+        notifyObservers(new Runnable() {
+            public void run() {
+                if (observer != null) {
+                    observer.notifyUpload();
+                }
+                if (fileObserver != null) {
+                    fileObserver.notifyUpload(session, file, size);
+                }
+            }
+        });
     }
 
     /**
@@ -432,69 +686,101 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
      */
     private void notifyDownload(final FtpIoSession session,
             final FtpFile file, final long size) {
-        StatisticsObserver observer = this.observer;
-        if (observer != null) {
-            observer.notifyDownload();
+        final StatisticsObserver observer = this.observer;
+        final FileObserver fileObserver = this.fileObserver;
+        if (observer == null && fileObserver == null) {
+            return;
         }
 
-        FileObserver fileObserver = this.fileObserver;
-        if (fileObserver != null) {
-            fileObserver.notifyDownload(session, file, size);
-        }
+        notifyObservers(new Runnable() {
+            public void run() {
+                if (observer != null) {
+                    observer.notifyDownload();
+                }
+                if (fileObserver != null) {
+                    fileObserver.notifyDownload(session, file, size);
+                }
+            }
+        });
     }
 
     /**
      * Observer delete notification.
      */
     private void notifyDelete(final FtpIoSession session, final FtpFile file) {
-        StatisticsObserver observer = this.observer;
-        if (observer != null) {
-            observer.notifyDelete();
+        final StatisticsObserver observer = this.observer;
+        final FileObserver fileObserver = this.fileObserver;
+        if (observer == null && fileObserver == null) {
+            return;
         }
 
-        FileObserver fileObserver = this.fileObserver;
-        if (fileObserver != null) {
-            fileObserver.notifyDelete(session, file);
-        }
+        notifyObservers(new Runnable() {
+            public void run() {
+                if (observer != null) {
+                    observer.notifyDelete();
+                }
+                if (fileObserver != null) {
+                    fileObserver.notifyDelete(session, file);
+                }
+            }
+        });
     }
 
     /**
      * Observer make directory notification.
      */
     private void notifyMkdir(final FtpIoSession session, final FtpFile file) {
-        StatisticsObserver observer = this.observer;
-        if (observer != null) {
-            observer.notifyMkdir();
+        final StatisticsObserver observer = this.observer;
+        final FileObserver fileObserver = this.fileObserver;
+        if (observer == null && fileObserver == null) {
+            return;
         }
 
-        FileObserver fileObserver = this.fileObserver;
-        if (fileObserver != null) {
-            fileObserver.notifyMkdir(session, file);
-        }
+        notifyObservers(new Runnable() {
+            public void run() {
+                if (observer != null) {
+                    observer.notifyMkdir();
+                }
+                if (fileObserver != null) {
+                    fileObserver.notifyMkdir(session, file);
+                }
+            }
+        });
     }
 
     /**
      * Observer remove directory notification.
      */
     private void notifyRmdir(final FtpIoSession session, final FtpFile file) {
-        StatisticsObserver observer = this.observer;
-        if (observer != null) {
-            observer.notifyRmdir();
+        final StatisticsObserver observer = this.observer;
+        final FileObserver fileObserver = this.fileObserver;
+        if (observer == null && fileObserver == null) {
+            return;
         }
 
-        FileObserver fileObserver = this.fileObserver;
-        if (fileObserver != null) {
-            fileObserver.notifyRmdir(session, file);
-        }
+        notifyObservers(new Runnable() {
+            public void run() {
+                if (observer != null) {
+                    observer.notifyRmdir();
+                }
+                if (fileObserver != null) {
+                    fileObserver.notifyRmdir(session, file);
+                }
+            }
+        });
     }
 
     /**
      * Observer open connection notification.
      */
     private void notifyOpenConnection(final FtpIoSession session) {
-        StatisticsObserver observer = this.observer;
+        final StatisticsObserver observer = this.observer;
         if (observer != null) {
-            observer.notifyOpenConnection();
+            notifyObservers(new Runnable() {
+                public void run() {
+                    observer.notifyOpenConnection();
+                }
+            });
         }
     }
 
@@ -502,27 +788,41 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
      * Observer close connection notification.
      */
     private void notifyCloseConnection(final FtpIoSession session) {
-        StatisticsObserver observer = this.observer;
+        final StatisticsObserver observer = this.observer;
         if (observer != null) {
-            observer.notifyCloseConnection();
+            notifyObservers(new Runnable() {
+                public void run() {
+                    observer.notifyCloseConnection();
+                }
+            });
+        }
+    }
+
+    /**
+     * Is the session logged in anonymously.
+     */
+    private static boolean isAnonymous(final FtpIoSession session) {
+        User user = session.getUser();
+        if (user != null) {
+            String login = user.getName();
+            return (login != null) && login.equals("anonymous");
         }
+        return false;
     }
 
     /**
      * Observer login notification.
      */
     private void notifyLogin(final FtpIoSession session) {
-        StatisticsObserver observer = this.observer;
+        final StatisticsObserver observer = this.observer;
         if (observer != null) {
-
-            // is anonymous login
-            User user = session.getUser();
-            boolean anonymous = false;
-            if (user != null) {
-                String login = user.getName();
-                anonymous = (login != null) && login.equals("anonymous");
-            }
-            observer.notifyLogin(anonymous);
+            // the session user is read now, it might change later
+            final boolean anonymous = isAnonymous(session);
+            notifyObservers(new Runnable() {
+                public void run() {
+                    observer.notifyLogin(anonymous);
+                }
+            });
         }
     }
 
@@ -530,12 +830,15 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
      * Observer failed login notification.
      */
     private void notifyLoginFail(final FtpIoSession session) {
-        StatisticsObserver observer = this.observer;
+        final StatisticsObserver observer = this.observer;
         if (observer != null) {
-            if (session.getRemoteAddress() instanceof InetSocketAddress) {
-                observer.notifyLoginFail(((InetSocketAddress) session
-                        .getRemoteAddress()).getAddress());
-
+            final InetAddress address = getRemoteInetAddress(session);
+            if (address != null) {
+                notifyObservers(new Runnable() {
+                    public void run() {
+                        observer.notifyLoginFail(address);
+                    }
+                });
             }
         }
     }
@@ -544,38 +847,41 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
      * Observer logout notification.
      */
     private void notifyLogout(final FtpIoSession session) {
-        StatisticsObserver observer = this.observer;
+        final StatisticsObserver observer = this.observer;
         if (observer != null) {
-            // is anonymous login
-            User user = session.getUser();
-            boolean anonymous = false;
-            if (user != null) {
-                String login = user.getName();
-                anonymous = (login != null) && login.equals("anonymous");
-            }
-            observer.notifyLogout(anonymous);
+            final boolean anonymous = isAnonymous(session);
+            notifyObservers(new Runnable() {
+                public void run() {
+                    observer.notifyLogout(anonymous);
+                }
+            });
         }
     }
 
     /**
      * Reset the cumulative counters.
      */
-    public synchronized void resetStatisticsCounters() {
+    public void resetStatisticsCounters() {
         startTime = new Date();
 
-        uploadCount.set(0);
-        downloadCount.set(0);
-        deleteCount.set(0);
+        uploadCount.reset();
+        downloadCount.reset();
+        deleteCount.reset();
 
-        mkdirCount.set(0);
-        rmdirCount.set(0);
+        mkdirCount.reset();
+        rmdirCount.reset();
 
-        totalLogins.set(0);
-        totalFailedLogins.set(0);
-        totalAnonLogins.set(0);
-        totalConnections.set(0);
+        totalLogins.reset();
+        totalFailedLogins.reset();
+        totalAnonLogins.reset();
+        totalConnections.reset();
 
-        bytesUpload.set(0);
-        bytesDownload.set(0);
+        bytesUpload.reset();
+        bytesDownload.reset();
+
+        FtpMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.reset();
+        }
     }
 }
@@ -24,7 +24,11 @@ import org.apache.ftpserver.ftplet.FtpFile;
 /**
  * <strong>Internal class, do not use directly.</strong>
  * 
- * This is the file related activity observer.
+ * This is the file related activity observer. The observer is notified
+ * asynchronously by {@link DefaultFtpStatistics}, after the command has
+ * completed. The session passed is the live session, which may have moved
+ * on to other commands or be closed by then, so its state must not be
+ * relied upon to describe the notified event.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
@@ -24,6 +24,8 @@ import java.security.cert.Certificate;
 import java.util.Date;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.net.ssl.SSLSession;
@@ -32,6 +34,7 @@ import org.apache.ftpserver.ftplet.DataType;
 import org.apache.ftpserver.ftplet.FileSystemView;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
 import org.apache.ftpserver.ftplet.FtpSession;
 import org.apache.ftpserver.ftplet.Structure;
 import org.apache.ftpserver.ftplet.User;
@@ -91,10 +94,14 @@ public class FtpIoSession implements IoSession {
             + "listener";
     private static final String ATTRIBUTE_MAX_IDLE_TIME = ATTRIBUTE_PREFIX
             + "max-idle-time";
+    private static final String ATTRIBUTE_TRANSFER_STATE = ATTRIBUTE_PREFIX
+            + "transfer-state";
     private static final String ATTRIBUTE_LAST_ACCESS_TIME = ATTRIBUTE_PREFIX
             + "last-access-time";
     private static final String ATTRIBUTE_CACHED_REMOTE_ADDRESS = ATTRIBUTE_PREFIX
             + "cached-remote-address";
+    private static final String ATTRIBUTE_LAST_REQUEST = ATTRIBUTE_PREFIX
+            + "last-request";
     private final IoSession wrappedSession;
     private final FtpServerContext context;
     /**
@@ -102,6 +109,12 @@ public class FtpIoSession implements IoSession {
      */
     private FtpReply lastReply = null;
 
+    /**
+     * Completes the command being executed, see
+     * {@link #deferCommandCompletion()}.
+     */
+    private volatile CommandCompletion commandCompletion = null;
+
     /* Begin wrapped IoSession methods */
     /**
      * @see IoSession#close()
@@ -542,6 +555,48 @@ public class FtpIoSession implements IoSession {
     }
 
     /* End wrapped IoSession methods */
+
+    /**
+     * Write a reply after a delay without holding the calling thread. No
+     * further requests are read from the client until the reply has been
+     * written. The reply becomes the last reply right away so that Ftplets
+     * see it in {@link org.apache.ftpserver.ftplet.Ftplet#afterCommand}.
+     * 
+     * @param reply The reply to write
+     * @param delay The delay in milliseconds
+     * @param closeAfterWrite Whether to close the session once the reply has
+     *            been written
+     */
+    public void writeDelayed(final FtpReply reply, final long delay,
+            final boolean closeAfterWrite) {
+        this.lastReply = reply;
+
+        Runnable writeTask = new Runnable() {
+            public void run() {
+                wrappedSession.write(reply);
+                if (closeAfterWrite) {
+                    wrappedSession.closeOnFlush();
+                } else {
+                    wrappedSession.resumeRead();
+                }
+            }
+        };
+
+        if (delay <= 0 || context == null) {
+            writeTask.run();
+            return;
+        }
+
+        wrappedSession.suspendRead();
+        try {
+            context.getScheduler().schedule(writeTask, delay,
+                    TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the server is shutting down, no point in waiting
+            writeTask.run();
+        }
+    }
+
     public void resetState() {
         removeAttribute(ATTRIBUTE_RENAME_FROM);
         removeAttribute(ATTRIBUTE_FILE_OFFSET);
@@ -551,8 +606,14 @@ public class FtpIoSession implements IoSession {
         if (containsAttribute(ATTRIBUTE_DATA_CONNECTION)) {
             return (ServerDataConnectionFactory) getAttribute(ATTRIBUTE_DATA_CONNECTION);
         } else {
-            IODataConnectionFactory dataCon = new IODataConnectionFactory(
-                    context, this);
+            ServerDataConnectionFactory dataCon;
+            Listener listener = getListener();
+            if (listener != null
+                    && listener.getDataConnectionConfiguration().isNioEnabled()) {
+                dataCon = new NioDataConnectionFactory(context, this);
+            } else {
+                dataCon = new IODataConnectionFactory(context, this);
+            }
             dataCon.setServerControlAddress(((InetSocketAddress) getLocalAddress()).getAddress());
             setAttribute(ATTRIBUTE_DATA_CONNECTION, dataCon);
 
@@ -560,6 +621,63 @@ public class FtpIoSession implements IoSession {
         }
     }
 
+    /**
+     * Get the state of the data transfers of this session, shared between
+     * the control channel and the thread executing the transfer.
+     */
+    public TransferState getTransferState() {
+        TransferState state = (TransferState) getAttribute(ATTRIBUTE_TRANSFER_STATE);
+        if (state == null) {
+            TransferState newState = new TransferState();
+            state = (TransferState) setAttributeIfAbsent(
+                    ATTRIBUTE_TRANSFER_STATE, newState);
+            if (state == null) {
+                state = newState;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Get the progress of the data transfer in progress.
+     * @return The progress, null if no data transfer is in progress
+     */
+    public TransferProgress getTransferProgress() {
+        TransferState state = (TransferState) getAttribute(ATTRIBUTE_TRANSFER_STATE);
+        if (state == null) {
+            return null;
+        }
+        return state.getTransfer();
+    }
+
+    /**
+     * Tells whether a data transfer command may send its final reply after
+     * returning, see {@link #deferCommandCompletion()}. Only the transfer
+     * command tracked by the {@link TransferState} may, as the requests
+     * received meanwhile, e.g. PASV or REIN closing the data connection, are
+     * then held back until the transfer has completed.
+     * @param request The data transfer command
+     * @return true if the transfer may complete asynchronously
+     */
+    public boolean isAsyncTransferAllowed(FtpRequest request) {
+        TransferProgress transfer = getTransferProgress();
+        return transfer != null && transfer.getRequest() == request;
+    }
+
+    /**
+     * Get the request executed last for this session, see
+     * {@link #getTransferProgress()} for the data transfer command in
+     * progress.
+     * @return The request, null if none
+     */
+    public FtpRequest getLastRequest() {
+        return (FtpRequest) getAttribute(ATTRIBUTE_LAST_REQUEST);
+    }
+
+    public void setLastRequest(FtpRequest request) {
+        setAttribute(ATTRIBUTE_LAST_REQUEST, request);
+    }
+
     public FileSystemView getFileSystemView() {
         return (FileSystemView) getAttribute(ATTRIBUTE_FILE_SYSTEM);
     }
@@ -725,20 +843,14 @@ public class FtpIoSession implements IoSession {
     }
 
     public Certificate[] getClientCertificates() {
-        if (getFilterChain().contains(SslFilter.class)) {
-            SslFilter sslFilter = (SslFilter) getFilterChain().get(
-                    SslFilter.class);
-
-            SSLSession sslSession = sslFilter.getSslSession(this);
+        SSLSession sslSession = getSslSession();
 
-            if (sslSession != null) {
-                try {
-                    return sslSession.getPeerCertificates();
-                } catch (SSLPeerUnverifiedException e) {
-                    // ignore, certificate will not be available to the session
-                }
+        if (sslSession != null) {
+            try {
+                return sslSession.getPeerCertificates();
+            } catch (SSLPeerUnverifiedException e) {
+                // ignore, certificate will not be available to the session
             }
-
         }
 
         // no certificates available
@@ -746,6 +858,22 @@ public class FtpIoSession implements IoSession {
 
     }
 
+    /**
+     * Get the TLS session of the control connection.
+     * 
+     * @return The session, null if the control connection is not secure
+     */
+    public SSLSession getSslSession() {
+        if (getFilterChain().contains(SslFilter.class)) {
+            SslFilter sslFilter = (SslFilter) getFilterChain().get(
+                    SslFilter.class);
+
+            return sslFilter.getSslSession(this);
+        }
+
+        return null;
+    }
+
     public void updateLastAccessTime() {
         setAttribute(ATTRIBUTE_LAST_ACCESS_TIME, new Date());
 
@@ -806,6 +934,7 @@ public class FtpIoSession implements IoSession {
             ((AbstractIoSession) wrappedSession).increaseWrittenBytes(
                     increment, System.currentTimeMillis());
         }
+        increaseTransferredSize(increment, false);
     }
 
     /**
@@ -817,6 +946,23 @@ public class FtpIoSession implements IoSession {
             ((AbstractIoSession) wrappedSession).increaseReadBytes(increment,
                     System.currentTimeMillis());
         }
+        increaseTransferredSize(increment, true);
+    }
+
+    private void increaseTransferredSize(int increment, boolean upload) {
+        FtpMetrics metrics = context != null ? context.getFtpMetrics() : null;
+        if (metrics != null) {
+            metrics.recordTransfer(this, upload, increment);
+        }
+
+        TransferProgress transfer = getTransferProgress();
+        if (transfer != null) {
+            long transferred = transfer.increaseTransferredSize(increment);
+            if (metrics != null && transferred == increment && increment > 0) {
+                metrics.recordFirstByte(transfer.getRequest(), transfer
+                        .getElapsedNanos());
+            }
+        }
     }
 
     /**
@@ -827,6 +973,35 @@ public class FtpIoSession implements IoSession {
         return lastReply;
     }
 
+    /**
+     * Sets the task completing the command being executed, e.g. notifying
+     * the Ftplets of the last reply.
+     * @param commandCompletion the task completing the command
+     */
+    public void setCommandCompletion(CommandCompletion commandCompletion) {
+        this.commandCompletion = commandCompletion;
+    }
+
+    /**
+     * Called by commands which send their final reply after returning, e.g.
+     * when a data transfer completes asynchronously. The command is then
+     * responsible for running the returned task once the final reply has
+     * been written.
+     * @return the task completing the command, never null
+     */
+    public Runnable deferCommandCompletion() {
+        CommandCompletion completion = commandCompletion;
+        if (completion == null) {
+            return new Runnable() {
+                public void run() {
+                    // nothing to complete
+                }
+            };
+        }
+        completion.defer();
+        return completion;
+    }
+
     /**
      * @see IoSession#getWriteRequestQueue()
      */
@@ -0,0 +1,455 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSession;
+
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.LatencyStatistics;
+import org.apache.ftpserver.ftplet.ThroughputStatistics;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.listener.Listener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Records the recent transfer rates and the command latencies of a server,
+ * for the whole server, per listener and per user. Recording only looks up
+ * the meters in concurrent maps and adds to them, no lock is taken. The
+ * meters of a user are kept once created, as the averages span several
+ * sessions.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class FtpMetrics {
+
+    private final Logger LOG = LoggerFactory.getLogger(FtpMetrics.class);
+
+    /**
+     * The upper bounds of the buckets of the file sizes, from 1 KiB to
+     * 10 GiB
+     */
+    private static final long[] TRANSFER_SIZE_BOUNDS = new long[] { 1L << 10,
+            10L << 10, 100L << 10, 1L << 20, 10L << 20, 100L << 20, 1L << 30,
+            10L << 30 };
+
+    /**
+     * The upper bounds of the buckets of the file transfer durations, in
+     * nanoseconds, from 10 ms to an hour
+     */
+    private static final long[] TRANSFER_DURATION_BOUNDS = new long[] {
+            TimeUnit.MILLISECONDS.toNanos(10),
+            TimeUnit.MILLISECONDS.toNanos(100), TimeUnit.SECONDS.toNanos(1),
+            TimeUnit.SECONDS.toNanos(10), TimeUnit.MINUTES.toNanos(1),
+            TimeUnit.MINUTES.toNanos(10), TimeUnit.HOURS.toNanos(1) };
+
+    private final FtpServerContext serverContext;
+
+    private volatile RateMeter serverDownloadRate = new RateMeter();
+
+    private volatile RateMeter serverUploadRate = new RateMeter();
+
+    private volatile RateMeter dataTlsHandshakes = new RateMeter();
+
+    private volatile RateMeter dataTlsResumptions = new RateMeter();
+
+    private volatile RateMeter reapedDataConnections = new RateMeter();
+
+    private final ConcurrentMap<Listener, RateMeter> listenerDownloadRates = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Listener, RateMeter> listenerUploadRates = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Listener, RateMeter> listenerConnectionRates = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, RateMeter> userDownloadRates = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, RateMeter> userUploadRates = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, LatencyHistogram> commandLatencies = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, LatencyHistogram> firstByteLatencies = new ConcurrentHashMap<>();
+
+    private volatile BucketHistogram uploadSizes = new BucketHistogram(
+            TRANSFER_SIZE_BOUNDS);
+
+    private volatile BucketHistogram downloadSizes = new BucketHistogram(
+            TRANSFER_SIZE_BOUNDS);
+
+    private volatile BucketHistogram uploadDurations = new BucketHistogram(
+            TRANSFER_DURATION_BOUNDS);
+
+    private volatile BucketHistogram downloadDurations = new BucketHistogram(
+            TRANSFER_DURATION_BOUNDS);
+
+    private final ConcurrentMap<Listener, LatencyHistogram> listenerLatencies = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, LatencyHistogram> userLatencies = new ConcurrentHashMap<>();
+
+    public FtpMetrics(final FtpServerContext serverContext) {
+        this.serverContext = serverContext;
+    }
+
+    private static <K> RateMeter getRateMeter(
+            final ConcurrentMap<K, RateMeter> meters, final K key) {
+        RateMeter meter = meters.get(key);
+        if (meter == null) {
+            RateMeter newMeter = new RateMeter();
+            meter = meters.putIfAbsent(key, newMeter);
+            if (meter == null) {
+                meter = newMeter;
+            }
+        }
+        return meter;
+    }
+
+    private static <K> LatencyHistogram getHistogram(
+            final ConcurrentMap<K, LatencyHistogram> histograms, final K key) {
+        LatencyHistogram histogram = histograms.get(key);
+        if (histogram == null) {
+            LatencyHistogram newHistogram = new LatencyHistogram();
+            histogram = histograms.putIfAbsent(key, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Record data transferred on a data connection.
+     *
+     * @param upload
+     *            true for data received from the client, false for data
+     *            sent to the client
+     */
+    public void recordTransfer(final FtpIoSession session,
+            final boolean upload, final long size) {
+        (upload ? serverUploadRate : serverDownloadRate).mark(size);
+
+        Listener listener = session.getListener();
+        if (listener != null) {
+            getRateMeter(upload ? listenerUploadRates : listenerDownloadRates,
+                    listener).mark(size);
+        }
+
+        User user = session.getUser();
+        if (user != null && user.getName() != null) {
+            getRateMeter(upload ? userUploadRates : userDownloadRates,
+                    user.getName()).mark(size);
+        }
+    }
+
+    /**
+     * Record the size and duration of a file upload or download, once it has
+     * completed.
+     */
+    public void recordFileTransfer(final FtpIoSession session,
+            final boolean upload, final long size) {
+        (upload ? uploadSizes : downloadSizes).record(size);
+
+        TransferProgress transfer = session.getTransferProgress();
+        if (transfer != null) {
+            (upload ? uploadDurations : downloadDurations).record(transfer
+                    .getElapsedNanos());
+        }
+    }
+
+    /**
+     * Record a connection accepted by a listener.
+     */
+    public void recordConnection(final FtpIoSession session) {
+        Listener listener = session.getListener();
+        if (listener != null) {
+            getRateMeter(listenerConnectionRates, listener).mark(1L);
+        }
+    }
+
+    /**
+     * Get the rate at which a listener accepts connections.
+     *
+     * @return The rate in connections per second, null if the listener did
+     *         not accept any connection yet
+     */
+    public ThroughputStatistics getConnectionRate(final Listener listener) {
+        return listenerConnectionRates.get(listener);
+    }
+
+    /**
+     * Record the TLS handshake of a data connection.
+     *
+     * @param resumed
+     *            true if the session of the control connection was resumed
+     */
+    public void recordDataTlsHandshake(final boolean resumed) {
+        dataTlsHandshakes.mark(1L);
+        if (resumed) {
+            dataTlsResumptions.mark(1L);
+        }
+    }
+
+    /**
+     * Record the TLS handshake of a data connection, checking whether it
+     * resumed the session of the control connection. This is only possible
+     * when both use the same SSL configuration, the session being looked up
+     * in the cache of its {@link javax.net.ssl.SSLContext}. Many clients
+     * require it, refusing data connections negotiating a new session.
+     *
+     * @param dataSslSession
+     *            The TLS session of the data connection
+     */
+    public void recordDataTlsHandshake(final FtpIoSession session,
+            final SSLSession dataSslSession) {
+        SSLSession controlSslSession = session.getSslSession();
+        boolean resumed = controlSslSession != null
+                && dataSslSession != null
+                && Arrays.equals(controlSslSession.getId(), dataSslSession
+                        .getId());
+
+        if (resumed) {
+            LOG.debug("Data connection resumed the TLS session of the control connection");
+        } else {
+            LOG.debug("Data connection negotiated a new TLS session");
+        }
+        recordDataTlsHandshake(resumed);
+    }
+
+    /**
+     * Get the rate of the TLS handshakes of the data connections.
+     *
+     * @param resumed
+     *            true for the handshakes resuming the session of the control
+     *            connection only
+     */
+    public ThroughputStatistics getDataTlsHandshakeRate(final boolean resumed) {
+        return resumed ? dataTlsResumptions : dataTlsHandshakes;
+    }
+
+    /**
+     * Record a data connection closed as it was not used within the idle
+     * time, see {@link DataConnectionReaper}.
+     */
+    public void recordDataConnectionReaped() {
+        reapedDataConnections.mark(1L);
+    }
+
+    /**
+     * Get the rate of the data connections closed as they were not used
+     * within the idle time.
+     */
+    public ThroughputStatistics getReapedDataConnectionRate() {
+        return reapedDataConnections;
+    }
+
+    /**
+     * Record the time from the reception of a request to its final reply.
+     * Requests for unknown commands are not recorded.
+     */
+    public void recordCommand(final FtpIoSession session,
+            final FtpRequest request, final long nanos) {
+        String commandName = request.getCommand();
+        if (commandName == null
+                || serverContext.getCommandFactory().getCommand(commandName) == null) {
+            return;
+        }
+
+        long latency = TimeUnit.NANOSECONDS.toMicros(nanos);
+        getHistogram(commandLatencies, commandName).record(latency);
+
+        Listener listener = session.getListener();
+        if (listener != null) {
+            getHistogram(listenerLatencies, listener).record(latency);
+        }
+
+        User user = session.getUser();
+        if (user != null && user.getName() != null) {
+            getHistogram(userLatencies, user.getName()).record(latency);
+        }
+    }
+
+    /**
+     * Record the time from the reception of a data transfer command to the
+     * first byte transferred.
+     */
+    public void recordFirstByte(final FtpRequest request, final long nanos) {
+        if (request.getCommand() != null) {
+            getHistogram(firstByteLatencies, request.getCommand()).record(
+                    TimeUnit.NANOSECONDS.toMicros(nanos));
+        }
+    }
+
+    /**
+     * Get the transfer rate of the whole server.
+     */
+    public ThroughputStatistics getServerRate(final boolean upload) {
+        return upload ? serverUploadRate : serverDownloadRate;
+    }
+
+    /**
+     * Get the transfer rate of a listener.
+     *
+     * @return The rate, null if no data was transferred yet
+     */
+    public ThroughputStatistics getListenerRate(final Listener listener,
+            final boolean upload) {
+        return (upload ? listenerUploadRates : listenerDownloadRates)
+                .get(listener);
+    }
+
+    /**
+     * Get the transfer rates of the users, by user name.
+     */
+    public Map<String, ? extends ThroughputStatistics> getUserRates(
+            final boolean upload) {
+        return Collections.unmodifiableMap(upload ? userUploadRates
+                : userDownloadRates);
+    }
+
+    /**
+     * Get the command latencies, by command name.
+     */
+    public Map<String, LatencyHistogram> getCommandLatencies() {
+        return Collections.unmodifiableMap(commandLatencies);
+    }
+
+    /**
+     * Get the latencies of the first byte of the data transfer commands, by
+     * command name.
+     */
+    public Map<String, LatencyHistogram> getFirstByteLatencies() {
+        return Collections.unmodifiableMap(firstByteLatencies);
+    }
+
+    /**
+     * Get the sizes of the uploaded or downloaded files, in bytes.
+     */
+    public BucketHistogram getTransferSizes(final boolean upload) {
+        return upload ? uploadSizes : downloadSizes;
+    }
+
+    /**
+     * Get the durations of the file uploads or downloads, in nanoseconds.
+     */
+    public BucketHistogram getTransferDurations(final boolean upload) {
+        return upload ? uploadDurations : downloadDurations;
+    }
+
+    /**
+     * Get the transfer rates, see {@link org.apache.ftpserver.ftplet.FtpStatistics#getThroughput()}.
+     */
+    public Map<String, ThroughputStatistics> getThroughput() {
+        Map<String, ThroughputStatistics> throughput = new TreeMap<>();
+        throughput.put("server.download", serverDownloadRate);
+        throughput.put("server.upload", serverUploadRate);
+        throughput.put("data-tls.handshakes", dataTlsHandshakes);
+        throughput.put("data-tls.resumed", dataTlsResumptions);
+        throughput.put("data-connections.reaped", reapedDataConnections);
+
+        for (Map.Entry<String, Listener> entry : serverContext.getListeners()
+                .entrySet()) {
+            addMeter(throughput, "listener." + entry.getKey() + ".download",
+                    listenerDownloadRates.get(entry.getValue()));
+            addMeter(throughput, "listener." + entry.getKey() + ".upload",
+                    listenerUploadRates.get(entry.getValue()));
+            addMeter(throughput, "listener." + entry.getKey() + ".connections",
+                    listenerConnectionRates.get(entry.getValue()));
+        }
+
+        for (Map.Entry<String, RateMeter> entry : userDownloadRates.entrySet()) {
+            throughput.put("user." + entry.getKey() + ".download", entry
+                    .getValue());
+        }
+        for (Map.Entry<String, RateMeter> entry : userUploadRates.entrySet()) {
+            throughput.put("user." + entry.getKey() + ".upload", entry
+                    .getValue());
+        }
+        return throughput;
+    }
+
+    private static void addMeter(Map<String, ThroughputStatistics> throughput,
+            String name, RateMeter meter) {
+        if (meter != null) {
+            throughput.put(name, meter);
+        }
+    }
+
+    /**
+     * Get the latencies, see {@link org.apache.ftpserver.ftplet.FtpStatistics#getLatencies()}.
+     */
+    public Map<String, LatencyStatistics> getLatencies() {
+        Map<String, LatencyStatistics> latencies = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : commandLatencies
+                .entrySet()) {
+            latencies.put("command." + entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : firstByteLatencies
+                .entrySet()) {
+            latencies.put("first-byte." + entry.getKey(), entry.getValue());
+        }
+
+        for (Map.Entry<String, Listener> entry : serverContext.getListeners()
+                .entrySet()) {
+            LatencyHistogram histogram = listenerLatencies.get(entry
+                    .getValue());
+            if (histogram != null) {
+                latencies.put("listener." + entry.getKey(), histogram);
+            }
+        }
+
+        for (Map.Entry<String, LatencyHistogram> entry : userLatencies
+                .entrySet()) {
+            latencies.put("user." + entry.getKey(), entry.getValue());
+        }
+        return latencies;
+    }
+
+    /**
+     * Forget all the recorded rates and latencies.
+     */
+    public void reset() {
+        serverDownloadRate = new RateMeter();
+        serverUploadRate = new RateMeter();
+        dataTlsHandshakes = new RateMeter();
+        dataTlsResumptions = new RateMeter();
+        reapedDataConnections = new RateMeter();
+        uploadSizes = new BucketHistogram(TRANSFER_SIZE_BOUNDS);
+        downloadSizes = new BucketHistogram(TRANSFER_SIZE_BOUNDS);
+        uploadDurations = new BucketHistogram(TRANSFER_DURATION_BOUNDS);
+        downloadDurations = new BucketHistogram(TRANSFER_DURATION_BOUNDS);
+        listenerDownloadRates.clear();
+        listenerUploadRates.clear();
+        listenerConnectionRates.clear();
+        userDownloadRates.clear();
+        userUploadRates.clear();
+        commandLatencies.clear();
+        firstByteLatencies.clear();
+        listenerLatencies.clear();
+        userLatencies.clear();
+    }
+}
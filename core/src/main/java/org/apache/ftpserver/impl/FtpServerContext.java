@@ -20,10 +20,14 @@
 package org.apache.ftpserver.impl;
 
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import org.apache.ftpserver.ConnectionConfig;
 import org.apache.ftpserver.command.CommandFactory;
+import org.apache.ftpserver.command.impl.listing.ListingCache;
 import org.apache.ftpserver.ftplet.FtpletContext;
 import org.apache.ftpserver.ftpletcontainer.FtpletContainer;
 import org.apache.ftpserver.listener.Listener;
@@ -70,4 +74,64 @@ public interface FtpServerContext extends FtpletContext {
      * @return the thread pool executor for this context.
      */
     ThreadPoolExecutor getThreadPoolExecutor();
+
+    /**
+     * Returns the executor running the requests of all sessions. Requests of
+     * the same session are executed in order. Depending on the
+     * {@link ConnectionConfig} this is either the thread pool executor or an
+     * executor running on virtual threads.
+     * @return the executor for client requests.
+     */
+    Executor getRequestExecutor();
+
+    /**
+     * Returns the I/O services shared by the non-blocking data connections
+     * of this context.
+     * @return the non-blocking data connection services for this context.
+     */
+    NioDataConnectionService getNioDataConnectionService();
+
+    /**
+     * Returns the transfer rate limits shared by the data connections of this
+     * context.
+     * @return the transfer rate limiter for this context.
+     */
+    TransferRateLimiter getTransferRateLimiter();
+
+    /**
+     * Returns the scheduler running delayed tasks of this context, like the
+     * reply to a failed login, without holding a request thread.
+     * @return the scheduler for this context.
+     */
+    ScheduledExecutorService getScheduler();
+
+    /**
+     * Returns the executor running the data transfer commands, e.g. RETR, so
+     * that the control channel of the session stays responsive while the
+     * data is transferred. Unless virtual threads are enabled, it runs at
+     * most as many transfers as the request executor has threads and
+     * queues the others.
+     * @return the executor for data transfers.
+     */
+    ExecutorService getTransferExecutor();
+
+    /**
+     * Returns the recorder of the transfer rates and command latencies
+     * reported by the statistics.
+     * @return the metrics for this context.
+     */
+    FtpMetrics getFtpMetrics();
+
+    /**
+     * Returns the reaper closing the data connections of this context
+     * requested but not used in time.
+     * @return the data connection reaper for this context.
+     */
+    DataConnectionReaper getDataConnectionReaper();
+
+    /**
+     * Returns the cache of the directory listings sent by this context.
+     * @return the listing cache, null if listings are not cached.
+     */
+    ListingCache getListingCache();
 }
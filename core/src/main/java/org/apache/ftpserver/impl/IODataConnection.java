@@ -21,20 +21,30 @@ package org.apache.ftpserver.impl;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.InflaterInputStream;
 
+import javax.net.ssl.SSLSocket;
+
 import org.apache.ftpserver.ftplet.DataConnection;
 import org.apache.ftpserver.ftplet.DataType;
 import org.apache.ftpserver.ftplet.FtpSession;
-import org.apache.ftpserver.usermanager.impl.TransferRateRequest;
 import org.apache.ftpserver.util.IoUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,6 +64,13 @@ public class IODataConnection implements DataConnection {
 
     
     private static final byte[] EOL = System.getProperty("line.separator").getBytes();
+
+    /**
+     * The maximum number of bytes handed to the kernel in a single zero-copy
+     * transfer call. Kept moderate so that the session is regularly marked as
+     * active during slow transfers.
+     */
+    private static final long ZERO_COPY_CHUNK_SIZE = 256L * 1024;
     
     private final FtpIoSession session;
 
@@ -61,11 +78,15 @@ public class IODataConnection implements DataConnection {
 
     private final ServerDataConnectionFactory factory;
 
+    private final TransferRateLimiter rateLimiter;
+
     public IODataConnection(final Socket socket, final FtpIoSession session,
-            final ServerDataConnectionFactory factory) {
+            final ServerDataConnectionFactory factory,
+            final TransferRateLimiter rateLimiter) {
         this.session = session;
         this.socket = socket;
         this.factory = factory;
+        this.rateLimiter = rateLimiter;
     }
 
     /**
@@ -124,19 +145,29 @@ public class IODataConnection implements DataConnection {
      */
     public final long transferFromClient(FtpSession session,
             final OutputStream out) throws IOException {
-        TransferRateRequest transferRateRequest = new TransferRateRequest();
-        transferRateRequest = (TransferRateRequest) session.getUser()
-                .authorize(transferRateRequest);
-        int maxRate = 0;
-        if (transferRateRequest != null) {
-            maxRate = transferRateRequest.getMaxUploadRate();
-        }
-
-        InputStream is = getDataInputStream();
+        TransferShaper shaper = rateLimiter.open(this.session, true);
         try {
-            return transfer(session, false, is, out, maxRate);
+            // binary uploads to local files over plain TCP can be written
+            // straight from the socket into the file channel
+            SocketChannel socketChannel = getZeroCopySocketChannel(session);
+            if (socketChannel != null && out instanceof FileOutputStream) {
+                FileChannel fileChannel = ((FileOutputStream) out).getChannel();
+                try {
+                    return transferFromClient(session, socketChannel,
+                            fileChannel, shaper);
+                } finally {
+                    closeSocket();
+                }
+            }
+
+            InputStream is = getDataInputStream();
+            try {
+                return transfer(session, false, is, out, shaper);
+            } finally {
+                IoUtils.close(is);
+            }
         } finally {
-            IoUtils.close(is);
+            shaper.close();
         }
     }
 
@@ -149,19 +180,29 @@ public class IODataConnection implements DataConnection {
      */
     public final long transferToClient(FtpSession session, final InputStream in)
             throws IOException {
-        TransferRateRequest transferRateRequest = new TransferRateRequest();
-        transferRateRequest = (TransferRateRequest) session.getUser()
-                .authorize(transferRateRequest);
-        int maxRate = 0;
-        if (transferRateRequest != null) {
-            maxRate = transferRateRequest.getMaxDownloadRate();
-        }
-
-        OutputStream out = getDataOutputStream();
+        TransferShaper shaper = rateLimiter.open(this.session, false);
         try {
-            return transfer(session, true, in, out, maxRate);
+            // binary downloads of local files over plain TCP can be sent
+            // directly from the file to the socket without user space copies
+            SocketChannel socketChannel = getZeroCopySocketChannel(session);
+            if (socketChannel != null && in instanceof FileInputStream) {
+                FileChannel fileChannel = ((FileInputStream) in).getChannel();
+                try {
+                    return transferToClient(session, fileChannel,
+                            socketChannel, shaper);
+                } finally {
+                    closeSocket();
+                }
+            }
+
+            OutputStream out = getDataOutputStream();
+            try {
+                return transfer(session, true, in, out, shaper);
+            } finally {
+                IoUtils.close(out);
+            }
         } finally {
-            IoUtils.close(out);
+            shaper.close();
         }
     }
 
@@ -174,33 +215,185 @@ public class IODataConnection implements DataConnection {
      */
     public final void transferToClient(FtpSession session, final String str)
             throws IOException {
+        byte[] data = str.getBytes(StandardCharsets.UTF_8);
         OutputStream out = getDataOutputStream();
-        Writer writer = null;
         try {
-            writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
-            writer.write(str);
+            out.write(data);
 
             // update session
             if (session instanceof DefaultFtpSession) {
-                ((DefaultFtpSession) session).increaseWrittenDataBytes(str
-                        .getBytes(StandardCharsets.UTF_8).length);
+                ((DefaultFtpSession) session).increaseWrittenDataBytes(data.length);
             }
         } finally {
-            if (writer != null) {
-                writer.flush();
+            out.flush();
+            IoUtils.close(out);
+        }
+
+    }
+
+    /**
+     * Get the socket channel if the data can be transferred without copying it
+     * through user space buffers. This requires a plain TCP data connection
+     * (no TLS), binary data type and no compression. Returns null otherwise.
+     */
+    private SocketChannel getZeroCopySocketChannel(FtpSession session) {
+        if (socket == null || socket instanceof SSLSocket) {
+            return null;
+        }
+
+        if (factory.isZipMode() || session.getDataType() == DataType.ASCII) {
+            return null;
+        }
+
+        return socket.getChannel();
+    }
+
+    /**
+     * Transfer a file to the client using {@link FileChannel#transferTo}. The
+     * transfer starts at the current position of the file channel, that is,
+     * after any REST offset applied when the file was opened.
+     */
+    private final long transferToClient(FtpSession session,
+            final FileChannel in, final SocketChannel out,
+            final TransferShaper shaper) throws IOException {
+        long transferredSize = 0L;
+
+        // when rate limited, transfer in pieces small enough to be paced
+        // evenly
+        long chunkSize = shaper.getChunkSize(ZERO_COPY_CHUNK_SIZE);
+
+        try {
+            DefaultFtpSession defaultFtpSession = null;
+            if (session instanceof DefaultFtpSession) {
+                defaultFtpSession = (DefaultFtpSession) session;
+            }
+
+            long position = in.position();
+            while (true) {
+                long count = in.transferTo(position, chunkSize, out);
+
+                // end of file
+                if (count <= 0) {
+                    break;
+                }
+
+                // update MINA session
+                if (defaultFtpSession != null) {
+                    defaultFtpSession.increaseWrittenDataBytes((int) count);
+                }
+
+                position += count;
+                transferredSize += count;
+
+                notifyObserver();
+
+                // wait until the rate limits allow sending more
+                if (!shaper.await(count)) {
+                    break;
+                }
             }
-            IoUtils.close(writer);
+        } catch(IOException e) {
+            LOG.warn("Exception during data transfer, closing data connection socket", e);
+            factory.closeDataConnection();
+            throw translateException(e);
+        } catch(RuntimeException e) {
+            LOG.warn("Exception during data transfer, closing data connection socket", e);
+            factory.closeDataConnection();
+            throw e;
         }
 
+        return transferredSize;
+    }
+
+    /**
+     * Transfer data from the client into a file using
+     * {@link FileChannel#transferFrom}. The data is written starting at the
+     * current position of the file channel, that is, at the REST offset the
+     * file was opened with.
+     */
+    private final long transferFromClient(FtpSession session,
+            final SocketChannel in, final FileChannel out,
+            final TransferShaper shaper) throws IOException {
+        long transferredSize = 0L;
+
+        long chunkSize = shaper.getChunkSize(ZERO_COPY_CHUNK_SIZE);
+
+        TimeoutReadableChannel src = null;
+        try {
+            DefaultFtpSession defaultFtpSession = null;
+            if (session instanceof DefaultFtpSession) {
+                defaultFtpSession = (DefaultFtpSession) session;
+            }
+
+            src = new TimeoutReadableChannel(in, socket.getSoTimeout(),
+                    defaultFtpSession);
+
+            long position = out.position();
+            while (true) {
+                long count = out.transferFrom(src, position, chunkSize);
+
+                // end of stream
+                if (count <= 0) {
+                    break;
+                }
+
+                position += count;
+                transferredSize += count;
+
+                // wait until the rate limits allow receiving more
+                if (!shaper.await(count)) {
+                    break;
+                }
+            }
+        } catch(IOException e) {
+            LOG.warn("Exception during data transfer, closing data connection socket", e);
+            factory.closeDataConnection();
+            throw translateException(e);
+        } catch(RuntimeException e) {
+            LOG.warn("Exception during data transfer, closing data connection socket", e);
+            factory.closeDataConnection();
+            throw e;
+        } finally {
+            if (src != null) {
+                src.closeSelector();
+            }
+        }
+
+        return transferredSize;
+    }
+
+    /**
+     * A channel closed during the transfer, e.g. by ABOR, is reported as a
+     * socket error like a data connection closed by the client. Depending on
+     * when it is closed, the transfer fails with a ClosedChannelException or
+     * with an error on the closed file descriptor.
+     */
+    private IOException translateException(IOException e) {
+        if (e instanceof ClosedChannelException || socket.isClosed()) {
+            SocketException se = new SocketException("Data connection closed");
+            se.initCause(e);
+            return se;
+        }
+        return e;
+    }
+
+    /**
+     * Close the data socket, signalling the end of the data to the client.
+     */
+    private void closeSocket() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            LOG.debug("Failed to close data socket", e);
+        }
     }
 
     private final long transfer(FtpSession session, boolean isWrite,
-            final InputStream in, final OutputStream out, final int maxRate)
-            throws IOException {
+            final InputStream in, final OutputStream out,
+            final TransferShaper shaper) throws IOException {
         long transferredSize = 0L;
 
         boolean isAscii = session.getDataType() == DataType.ASCII;
-        long startTime = System.currentTimeMillis();
         byte[] buff = new byte[4096];
 
         BufferedInputStream bis = null;
@@ -218,28 +411,6 @@ public class IODataConnection implements DataConnection {
             byte lastByte = 0;
             while (true) {
 
-                // if current rate exceeds the max rate, sleep for 50ms
-                // and again check the current transfer rate
-                if (maxRate > 0) {
-
-                    // prevent "divide by zero" exception
-                    long interval = System.currentTimeMillis() - startTime;
-                    if (interval == 0) {
-                        interval = 1;
-                    }
-
-                    // check current rate
-                    long currRate = (transferredSize * 1000L) / interval;
-                    if (currRate > maxRate) {
-                        try {
-                            Thread.sleep(50);
-                        } catch (InterruptedException ex) {
-                            break;
-                        }
-                        continue;
-                    }
-                }
-
                 // read data
                 int count = bis.read(buff);
 
@@ -247,6 +418,11 @@ public class IODataConnection implements DataConnection {
                     break;
                 }
 
+                // wait until the rate limits allow the data to be passed on
+                if (!shaper.await(count)) {
+                    break;
+                }
+
                 // update MINA session
                 if (defaultFtpSession != null) {
                     if (isWrite) {
@@ -297,7 +473,7 @@ public class IODataConnection implements DataConnection {
         } catch(IOException e) {
             LOG.warn("Exception during data transfer, closing data connection socket", e);
             factory.closeDataConnection();
-            throw e;
+            throw translateException(e);
         } catch(RuntimeException e) {
             LOG.warn("Exception during data transfer, closing data connection socket", e);
             factory.closeDataConnection();
@@ -311,6 +487,81 @@ public class IODataConnection implements DataConnection {
         return transferredSize;
     }
 
+    /**
+     * Reads from a socket channel, honoring the socket timeout which a
+     * blocking {@link SocketChannel} would otherwise ignore. Never returns 0,
+     * so {@link FileChannel#transferFrom} only stops short at the end of the
+     * stream. Every successful read is accounted on the session, keeping it
+     * from going idle during slow uploads.
+     */
+    private class TimeoutReadableChannel implements ReadableByteChannel {
+
+        private final SocketChannel channel;
+
+        private final int timeout;
+
+        private final DefaultFtpSession session;
+
+        private final Selector selector;
+
+        public TimeoutReadableChannel(final SocketChannel channel,
+                final int timeout, final DefaultFtpSession session)
+                throws IOException {
+            this.channel = channel;
+            this.timeout = timeout;
+            this.session = session;
+
+            selector = Selector.open();
+            try {
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ);
+            } catch (IOException e) {
+                selector.close();
+                throw e;
+            }
+        }
+
+        public int read(ByteBuffer dst) throws IOException {
+            while (true) {
+                int count = channel.read(dst);
+                if (count > 0) {
+                    // update MINA session
+                    if (session != null) {
+                        session.increaseReadDataBytes(count);
+                    }
+                    notifyObserver();
+                }
+                if (count != 0 || !dst.hasRemaining()) {
+                    return count;
+                }
+
+                if (selector.select(timeout) == 0) {
+                    throw new SocketTimeoutException("Read timed out");
+                }
+                selector.selectedKeys().clear();
+            }
+        }
+
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        /**
+         * Close the selector, leaving the channel open.
+         */
+        public void closeSelector() {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
     /**
      * Notify connection manager observer.
      */
@@ -19,12 +19,16 @@
 
 package org.apache.ftpserver.impl;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
@@ -51,15 +55,28 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
 
     private FtpServerContext serverContext;
 
-    private Socket dataSoc;
+    private volatile Socket dataSoc;
 
-    ServerSocket servSoc;
+    volatile ServerSocket servSoc;
 
     InetAddress address;
 
     int port = 0;
 
-    long requestTime = 0L;
+    volatile long requestTime = 0L;
+
+    /**
+     * Guards the release of the sockets and the {@link #opening} flag. The
+     * {@link DataConnectionReaper} can not take the monitor of this factory,
+     * which is held while a data connection is being opened.
+     */
+    private final Object reaperLock = new Object();
+
+    /**
+     * Whether the data connection is being opened or used, so that it is
+     * not closed for being idle
+     */
+    private boolean opening = false;
 
     boolean passive = false;
 
@@ -82,7 +99,30 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
     /**
      * Close data socket. This method must be idempotent as we might call it multiple times during disconnect.
      */
-    public synchronized void closeDataConnection() {
+    public void closeDataConnection() {
+        // close the sockets before taking the lock, held while a data
+        // connection is being opened, to wake up a pending accept or connect
+        closeQuietly(dataSoc);
+        closeQuietly(servSoc);
+
+        synchronized (this) {
+            synchronized (reaperLock) {
+                releaseDataConnection();
+            }
+        }
+    }
+
+    private void closeQuietly(final Closeable socket) {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (Exception ex) {
+                LOG.debug("Failed to close data socket", ex);
+            }
+        }
+    }
+
+    private void releaseDataConnection() {
 
     // close client socket if any
     if (dataSoc != null) {
@@ -114,6 +154,10 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
 
     // reset request time
     requestTime = 0L;
+    opening = false;
+    if (serverContext != null) {
+        serverContext.getDataConnectionReaper().unregister(this);
+    }
     }
 
     /**
@@ -128,6 +172,9 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
         this.address = address.getAddress();
         port = address.getPort();
         requestTime = System.currentTimeMillis();
+        if (serverContext != null) {
+            serverContext.getDataConnectionReaper().register(this);
+        }
         }
     
         private SslConfiguration getSslConfiguration() {
@@ -182,11 +229,11 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                 // (https://issues.apache.org/jira/browse/FTPSERVER-241).
                 // Instead, it creates a regular
                 // ServerSocket that will be wrapped as a SSL socket in createDataSocket()
-                servSoc = new ServerSocket(passivePort, 0, address);
+                servSoc = createPassiveServerSocket(passivePort);
                 LOG.debug("SSL Passive data connection created on address \"{}\" and port {}", address, passivePort);
             } else {
                 LOG.debug("Opening passive data connection on address \"{}\" and port {}", address, passivePort);
-                servSoc = new ServerSocket(passivePort, 0, address);
+                servSoc = createPassiveServerSocket(passivePort);
                 LOG.debug("Passive data connection created on address \"{}\" and port {}", address, passivePort);
             }
             
@@ -196,6 +243,9 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
             // set different state variables
             passive = true;
             requestTime = System.currentTimeMillis();
+            if (serverContext != null) {
+                serverContext.getDataConnectionReaper().register(this);
+            }
     
             return new InetSocketAddress(address, port);
         } catch (Exception ex) {
@@ -204,6 +254,23 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
         }
     }
 
+    /**
+     * Create the passive server socket. The socket is backed by a
+     * {@link ServerSocketChannel} so that accepted plain data sockets support
+     * zero-copy transfers.
+     */
+    private ServerSocket createPassiveServerSocket(int passivePort) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            ServerSocket serverSocket = channel.socket();
+            serverSocket.bind(new InetSocketAddress(address, passivePort), 0);
+            return serverSocket;
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -228,7 +295,8 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
      * @see org.apache.ftpserver.FtpDataConnectionFactory2#openConnection()
      */
     public DataConnection openConnection() throws Exception {
-        return new IODataConnection(createDataSocket(), session, this);
+        return new IODataConnection(createDataSocket(), session, this,
+                serverContext.getTransferRateLimiter());
     }
 
     /**
@@ -237,6 +305,9 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
     private synchronized Socket createDataSocket() throws Exception {
         // get socket depending on the selection
         dataSoc = null;
+        synchronized (reaperLock) {
+            opening = true;
+        }
         DataConnectionConfiguration dataConfig = session.getListener().getDataConnectionConfiguration();
         try {
             if (!passive) {
@@ -267,7 +338,8 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                     dataSoc = ssoc;
                 } else {
                     LOG.debug("Opening active data connection");
-                    dataSoc = new Socket();
+                    // backed by a channel to support zero-copy transfers
+                    dataSoc = SocketChannel.open().socket();
                 }
         
                 dataSoc.setReuseAddress(true);
@@ -287,6 +359,11 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                 dataSoc.connect(new InetSocketAddress(address, port));
             } else {
     
+            if (servSoc == null) {
+                // closed as it was not used in time
+                throw new DataConnectionException("Passive data connection not initiated");
+            }
+
             if (secure) {
                 LOG.debug("Opening secure passive data connection");
                 // this is where we wrap the unsecured socket as a SSLSocket. This is
@@ -357,7 +434,10 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
         // get an error if we turn out not to send any data
         // e.g. during the listing of an empty directory
         if (dataSoc instanceof SSLSocket) {
-            ((SSLSocket) dataSoc).startHandshake();
+            SSLSocket sslSocket = (SSLSocket) dataSoc;
+            sslSocket.startHandshake();
+            serverContext.getFtpMetrics().recordDataTlsHandshake(session,
+                    sslSocket.getSession());
         }
     
         return dataSoc;
@@ -439,6 +519,28 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
     return true;
     }
 
+    /**
+     * Close the data connection if it has not been opened within the idle
+     * time. The check and the close are atomic with respect to the opening
+     * of the data connection, without taking the monitor of this factory.
+     */
+    public boolean closeIfTimedOut(final long currTime) {
+        synchronized (reaperLock) {
+            if (opening || requestTime == 0L || dataSoc != null) {
+                return false;
+            }
+
+            int maxIdleTime = session.getListener()
+                    .getDataConnectionConfiguration().getIdleTime() * 1000;
+            if (maxIdleTime == 0 || (currTime - requestTime) < maxIdleTime) {
+                return false;
+            }
+
+            releaseDataConnection();
+            return true;
+        }
+    }
+
     /**
      * Dispose data connection - close all the sockets.
      */
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.ftpserver.ftplet.LatencyStatistics;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * A histogram of latencies in microseconds, with buckets of exponentially
+ * growing width, each power of two being split into eight buckets. Like an
+ * HDR histogram, recording is a constant time, lock free increment and
+ * the percentiles have a bounded relative error, here 12.5%.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class LatencyHistogram implements LatencyStatistics {
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Higher latencies, about 12 days, are recorded as this value
+     */
+    private static final long MAX_VALUE = (1L << 40) - 1;
+
+    private static final int BUCKETS = bucketIndex(MAX_VALUE) + 1;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final AtomicLong max = new AtomicLong(0L);
+
+    private static int bucketIndex(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * The highest value recorded in a bucket.
+     */
+    private static long bucketUpperBound(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        long lowerBound = (long) (SUB_BUCKETS + subBucket) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    /**
+     * Record a latency.
+     *
+     * @param latency
+     *            The latency in microseconds
+     */
+    public void record(final long latency) {
+        long value = Math.min(Math.max(latency, 0L), MAX_VALUE);
+        buckets.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sum.add(value);
+
+        long currentMax;
+        do {
+            currentMax = max.get();
+            if (value <= currentMax) {
+                break;
+            }
+        } while (!max.compareAndSet(currentMax, value));
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMean() {
+        long n = count.sum();
+        return n > 0 ? sum.sum() / (double) n : 0.0;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * The sum of the recorded latencies, in microseconds.
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getPercentile(final double percentile) {
+        long[] latencies = new long[1];
+        getPercentiles(new double[] { percentile }, latencies);
+        return latencies[0];
+    }
+
+    /**
+     * Get several percentiles at once, without allocating.
+     *
+     * @param percentiles
+     *            The percentages, in increasing order
+     * @param latencies
+     *            Receives the latency of each percentage, in microseconds
+     */
+    public void getPercentiles(final double[] percentiles,
+            final long[] latencies) {
+        // the buckets are updated concurrently, ranks are computed from the
+        // total seen here and the last bucket is used for what was missed
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += buckets.get(i);
+        }
+        long maxValue = getMax();
+
+        int p = 0;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS && p < percentiles.length; i++) {
+            seen += buckets.get(i);
+            while (p < percentiles.length && seen >= rank(percentiles[p], total)) {
+                latencies[p++] = Math.min(bucketUpperBound(i), maxValue);
+            }
+        }
+        while (p < percentiles.length) {
+            latencies[p++] = maxValue;
+        }
+    }
+
+    private static long rank(final double percentile, final long total) {
+        double ratio = Math.min(Math.max(percentile, 0.0), 100.0) / 100.0;
+        return Math.max(1L, (long) Math.ceil(ratio * total));
+    }
+}
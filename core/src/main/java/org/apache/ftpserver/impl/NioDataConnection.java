@@ -0,0 +1,1268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+import org.apache.ftpserver.DataConnectionConfiguration;
+import org.apache.ftpserver.DataConnectionException;
+import org.apache.ftpserver.ftplet.DataType;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.ssl.ClientAuth;
+import org.apache.ftpserver.ssl.SslConfiguration;
+import org.apache.ftpserver.util.IoUtils;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.file.DefaultFileRegion;
+import org.apache.mina.core.future.CloseFuture;
+import org.apache.mina.core.future.ConnectFuture;
+import org.apache.mina.core.future.IoFutureListener;
+import org.apache.mina.core.future.WriteFuture;
+import org.apache.mina.core.session.AbstractIoSession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.ssl.SslFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * A data connection handled by the I/O processors of a
+ * {@link NioDataConnectionService}. Downloads are pushed to the client one
+ * chunk at a time as the previous chunk has been written, uploads are consumed
+ * as they arrive. No thread is blocked waiting for the client during the
+ * transfer. The connection is closed when the transfer completes and can not
+ * be reused.
+ * 
+ * Streams are read and written on the transfer executor, as a slow file system
+ * would otherwise stall all the sessions of an I/O processor. Only zero-copy
+ * file regions are sent directly by the I/O processors. Reads are suspended
+ * while uploaded data is written.
+ * 
+ * Secure connections are encrypted by an {@link SslFilter} added to the data
+ * session, the transfer starting once the handshake has completed. As file
+ * regions can not be encrypted, files are then read into pooled direct
+ * buffers instead.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioDataConnection implements AsyncDataConnection {
+
+    private final Logger LOG = LoggerFactory.getLogger(NioDataConnection.class);
+
+    private static final byte[] EOL = System.getProperty("line.separator").getBytes();
+
+    /**
+     * The size of the chunks read from streams
+     */
+    private static final int BUFFER_SIZE = NioDataConnectionService.BUFFER_SIZE;
+
+    /**
+     * The maximum number of bytes sent from a file in a single zero-copy
+     * write
+     */
+    private static final long FILE_REGION_SIZE = 256L * 1024;
+
+    private final NioDataConnectionService service;
+
+    private final FtpIoSession session;
+
+    private final ServerDataConnectionFactory factory;
+
+    private final DataConnectionConfiguration dataConfig;
+
+    private final TransferRateLimiter rateLimiter;
+
+    private final FtpMetrics metrics;
+
+    private final SslConfiguration sslConfiguration;
+
+    private final Executor transferExecutor;
+
+    private InetSocketAddress boundAddress;
+
+    private int passivePort;
+
+    private IoSession dataSession;
+
+    private Transfer transfer;
+
+    /**
+     * Whether the transfer can start, that is the client has connected and
+     * the TLS handshake, if any, has completed
+     */
+    private boolean ready = false;
+
+    /**
+     * Data received before the transfer was started
+     */
+    private List<IoBuffer> earlyData;
+
+    private ScheduledFuture<?> openTimeout;
+
+    private boolean closed = false;
+
+    private Exception closeCause;
+
+    public NioDataConnection(final NioDataConnectionService service,
+            final FtpIoSession session,
+            final ServerDataConnectionFactory factory,
+            final TransferRateLimiter rateLimiter, final FtpMetrics metrics,
+            final SslConfiguration sslConfiguration,
+            final Executor transferExecutor) {
+        this.service = service;
+        this.session = session;
+        this.factory = factory;
+        this.rateLimiter = rateLimiter;
+        this.metrics = metrics;
+        this.sslConfiguration = sslConfiguration;
+        this.transferExecutor = transferExecutor;
+        this.dataConfig = session.getListener().getDataConnectionConfiguration();
+    }
+
+    /**
+     * Wait for the client to connect on the passive address.
+     * 
+     * @return The address the connection is bound to
+     */
+    InetSocketAddress bind(InetSocketAddress address, int passivePort)
+            throws IOException {
+        this.passivePort = passivePort;
+        boundAddress = service.bind(address, this);
+        return boundAddress;
+    }
+
+    /**
+     * Connect to the client's active address.
+     */
+    void connect(InetSocketAddress remoteAddress, InetSocketAddress localAddress) {
+        service.connect(remoteAddress, localAddress, this).addListener(
+                new IoFutureListener<ConnectFuture>() {
+                    public void operationComplete(ConnectFuture future) {
+                        if (!future.isConnected()) {
+                            close(new DataConnectionException(
+                                    "Failed to open active data connection",
+                                    future.getException()));
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Is the connection still waiting for the client to connect?
+     */
+    synchronized boolean isPending() {
+        return !closed && dataSession == null;
+    }
+
+    /**
+     * Close the data connection, aborting any transfer in progress. This
+     * method is idempotent.
+     */
+    public void close() {
+        close(new SocketException("Data connection closed"));
+    }
+
+    public long transferFromClient(FtpSession ftpSession, OutputStream out)
+            throws IOException {
+        // the waiting thread does the file I/O, it would otherwise wait for
+        // a transfer executor thread while holding one
+        BlockingTransferListener listener = new BlockingTransferListener();
+        startTransfer(createUpload(ftpSession, out, listener, listener));
+        return listener.await();
+    }
+
+    public long transferToClient(FtpSession ftpSession, InputStream in)
+            throws IOException {
+        BlockingTransferListener listener = new BlockingTransferListener();
+        startTransfer(createDownload(ftpSession, in, listener, listener));
+        return listener.await();
+    }
+
+    public void transferToClient(FtpSession ftpSession, String str)
+            throws IOException {
+        BlockingTransferListener listener = new BlockingTransferListener();
+        startTransfer(createDownload(str, listener, listener));
+        listener.await();
+    }
+
+    public void transferFromClient(FtpSession ftpSession, OutputStream out,
+            DataTransferListener listener) {
+        startTransfer(createUpload(ftpSession, out, listener,
+                transferExecutor));
+    }
+
+    public void transferToClient(FtpSession ftpSession, InputStream in,
+            DataTransferListener listener) {
+        startTransfer(createDownload(ftpSession, in, listener,
+                transferExecutor));
+    }
+
+    public void transferToClient(FtpSession ftpSession, String str,
+            DataTransferListener listener) {
+        startTransfer(createDownload(str, listener, transferExecutor));
+    }
+
+    private Upload createUpload(FtpSession ftpSession, OutputStream out,
+            DataTransferListener listener, Executor executor) {
+        return new Upload(listener, rateLimiter.open(session, true), executor,
+                out, ftpSession.getDataType() == DataType.ASCII, factory
+                        .isZipMode());
+    }
+
+    private Download createDownload(FtpSession ftpSession, InputStream in,
+            DataTransferListener listener, Executor executor) {
+        return new Download(listener, rateLimiter.open(session, false),
+                executor, in, ftpSession.getDataType() == DataType.ASCII,
+                factory.isZipMode());
+    }
+
+    private Download createDownload(String str,
+            DataTransferListener listener, Executor executor) {
+        InputStream in = new ByteArrayInputStream(str
+                .getBytes(StandardCharsets.UTF_8));
+        return new Download(listener, TransferShaper.UNLIMITED, executor, in,
+                false, factory.isZipMode());
+    }
+
+    /**
+     * Attach the transfer and start it as soon as the client has connected.
+     */
+    private void startTransfer(Transfer newTransfer) {
+        Exception failure = null;
+        boolean connected = false;
+        synchronized (this) {
+            if (closed) {
+                failure = closeCause;
+            } else if (transfer != null) {
+                failure = new DataConnectionException(
+                        "Data connection already in use");
+            } else {
+                transfer = newTransfer;
+                connected = ready;
+
+                int idleTime = dataConfig.getIdleTime();
+                if (!connected && idleTime > 0) {
+                    openTimeout = service.schedule(new Runnable() {
+                        public void run() {
+                            close(new DataConnectionException(
+                                    "Data connection not opened in time"));
+                        }
+                    }, idleTime * 1000L);
+                }
+            }
+        }
+
+        if (failure != null) {
+            newTransfer.done(failure);
+        } else if (connected) {
+            newTransfer.start();
+        }
+    }
+
+    private synchronized IoSession getDataSession() {
+        return dataSession;
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * The client has connected.
+     * 
+     * @return false if the session does not belong to this connection and
+     *         must be closed
+     */
+    boolean sessionCreated(IoSession ioSession) {
+        Transfer pendingTransfer = null;
+        Exception sslFailure = null;
+        synchronized (this) {
+            if (closed || dataSession != null) {
+                return false;
+            }
+
+            if (boundAddress != null && dataConfig.isPassiveIpCheck()) {
+                // Let's make sure we got the connection from the same
+                // client that we are expecting
+                InetAddress remoteAddress = ((InetSocketAddress) session
+                        .getRemoteAddress()).getAddress();
+                InetAddress dataSessionAddress = ((InetSocketAddress) ioSession
+                        .getRemoteAddress()).getAddress();
+                if (!dataSessionAddress.equals(remoteAddress)) {
+                    LOG.warn("Passive IP Check failed. Closing data connection from "
+                            + dataSessionAddress
+                            + " as it does not match the expected address "
+                            + remoteAddress);
+                    return false;
+                }
+            }
+
+            dataSession = ioSession;
+            if (dataConfig.getIdleTime() > 0) {
+                ioSession.getConfig().setBothIdleTime(dataConfig.getIdleTime());
+            }
+
+            if (openTimeout != null) {
+                openTimeout.cancel(false);
+            }
+
+            if (sslConfiguration != null) {
+                // the transfer starts once the session is secured
+                try {
+                    ioSession.getFilterChain().addFirst("sslFilter",
+                            createSslFilter());
+                } catch (Exception e) {
+                    sslFailure = e;
+                }
+            } else {
+                // hold back uploaded data until the transfer has been set up
+                ioSession.suspendRead();
+                ready = true;
+                pendingTransfer = transfer;
+            }
+        }
+
+        // one data connection per PASV, stop accepting
+        if (boundAddress != null) {
+            service.unbind(boundAddress);
+        }
+        LOG.debug("Data connection opened from {}", ioSession.getRemoteAddress());
+
+        if (sslFailure != null) {
+            LOG.warn("Failed to secure data connection", sslFailure);
+            close(toSocketException(sslFailure));
+        } else if (pendingTransfer != null) {
+            pendingTransfer.start();
+        }
+        return true;
+    }
+
+    private SslFilter createSslFilter() throws GeneralSecurityException {
+        SslFilter sslFilter = new SslFilter(sslConfiguration.getSSLContext());
+
+        if (sslConfiguration.getClientAuth() == ClientAuth.NEED) {
+            sslFilter.setNeedClientAuth(true);
+        } else if (sslConfiguration.getClientAuth() == ClientAuth.WANT) {
+            sslFilter.setWantClientAuth(true);
+        }
+
+        if (sslConfiguration.getEnabledCipherSuites() != null) {
+            sslFilter.setEnabledCipherSuites(sslConfiguration
+                    .getEnabledCipherSuites());
+        }
+
+        if (sslConfiguration.getEnabledProtocols() != null) {
+            sslFilter.setEnabledProtocols(sslConfiguration
+                    .getEnabledProtocols());
+        }
+        return sslFilter;
+    }
+
+    /**
+     * The TLS handshake of a secure connection has completed.
+     */
+    void sessionSecured() {
+        Transfer pendingTransfer;
+        IoSession ioSession;
+        synchronized (this) {
+            if (closed || ready) {
+                return;
+            }
+            ioSession = dataSession;
+            ready = true;
+            pendingTransfer = transfer;
+            if (pendingTransfer == null) {
+                // hold back uploaded data until the transfer has been set up
+                ioSession.suspendRead();
+            }
+        }
+
+        SslFilter sslFilter = (SslFilter) ioSession.getFilterChain().get(
+                SslFilter.class);
+        metrics.recordDataTlsHandshake(session, sslFilter
+                .getSslSession(ioSession));
+
+        if (pendingTransfer != null) {
+            pendingTransfer.start();
+        }
+    }
+
+    void messageReceived(IoBuffer buffer) {
+        Transfer currentTransfer;
+        synchronized (this) {
+            currentTransfer = transfer;
+            if (currentTransfer == null || !currentTransfer.started) {
+                // decrypted along with the end of the handshake, keep it
+                // for the transfer
+                if (earlyData == null) {
+                    earlyData = new ArrayList<>();
+                }
+                IoBuffer copy = IoBuffer.allocate(buffer.remaining());
+                copy.put(buffer).flip();
+                earlyData.add(copy);
+                return;
+            }
+        }
+        currentTransfer.messageReceived(buffer);
+    }
+
+    /**
+     * Take the data received before the transfer was started, marking the
+     * transfer started if there is none left.
+     */
+    private synchronized List<IoBuffer> takeEarlyData(Transfer startedTransfer) {
+        List<IoBuffer> data = earlyData;
+        earlyData = null;
+        if (data == null) {
+            startedTransfer.started = true;
+        }
+        return data;
+    }
+
+    void sessionIdle() {
+        if (isTransferring()) {
+            close(new SocketTimeoutException("Data connection timed out"));
+        } else {
+            close(new DataConnectionException("Data connection idle"));
+        }
+    }
+
+    void exceptionCaught(Throwable cause) {
+        LOG.debug("Exception caught on data connection", cause);
+        close(toSocketException(cause));
+    }
+
+    void sessionClosed() {
+        Transfer currentTransfer;
+        synchronized (this) {
+            currentTransfer = transfer;
+        }
+        if (currentTransfer != null) {
+            currentTransfer.sessionClosed();
+        } else {
+            close(new SocketException("Data connection closed by client"));
+        }
+    }
+
+    private synchronized boolean isTransferring() {
+        return transfer != null;
+    }
+
+    /**
+     * Close the connection and complete the transfer, if any, once the data
+     * session has been closed.
+     * 
+     * @param cause
+     *            null if the transfer completed successfully
+     */
+    private void close(final Exception cause) {
+        final Transfer closedTransfer;
+        IoSession closedSession;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            closeCause = cause != null ? cause : new SocketException(
+                    "Data connection closed");
+            if (openTimeout != null) {
+                openTimeout.cancel(false);
+            }
+            closedTransfer = transfer;
+            closedSession = dataSession;
+        }
+
+        if (factory instanceof NioDataConnectionFactory) {
+            ((NioDataConnectionFactory) factory).connectionClosed(this);
+        }
+
+        if (boundAddress != null) {
+            service.unbind(boundAddress);
+            dataConfig.releasePassivePort(passivePort);
+        }
+
+        if (closedSession == null) {
+            if (closedTransfer != null) {
+                closedTransfer.done(cause);
+            }
+        } else {
+            // on success, let the end of the TLS handshake, if any, be
+            // flushed as an empty transfer completes as soon as the session
+            // is secured
+            CloseFuture closeFuture = cause == null ? closedSession
+                    .closeOnFlush() : closedSession.closeNow();
+            if (closedTransfer != null) {
+                closeFuture.addListener(new IoFutureListener<CloseFuture>() {
+                    public void operationComplete(CloseFuture future) {
+                        closedTransfer.done(cause);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Resume reading from a data session. The I/O processor is woken up as it
+     * would otherwise only notice the change on its next select timeout.
+     */
+    @SuppressWarnings("unchecked")
+    private static void resumeRead(IoSession ioSession) {
+        ioSession.resumeRead();
+        if (ioSession instanceof AbstractIoSession) {
+            ((AbstractIoSession) ioSession).getProcessor().flush(ioSession);
+        }
+    }
+
+    private static SocketException toSocketException(Throwable cause) {
+        if (cause instanceof SocketException) {
+            return (SocketException) cause;
+        }
+        SocketException e = new SocketException("Data transfer failed: "
+                + (cause != null ? cause.getMessage() : null));
+        e.initCause(cause);
+        return e;
+    }
+
+    /**
+     * A transfer over the data connection. Methods are called by one thread
+     * at a time, an I/O processor thread or, for file I/O, a thread of the
+     * executor.
+     */
+    private abstract class Transfer {
+
+        private final DataTransferListener listener;
+
+        protected final TransferShaper shaper;
+
+        /**
+         * Runs the file I/O of the transfer
+         */
+        private final Executor executor;
+
+        protected volatile long transferredSize = 0L;
+
+        /**
+         * Whether received data is passed to the transfer, guarded by the
+         * connection
+         */
+        private boolean started = false;
+
+        protected Transfer(final DataTransferListener listener,
+                final TransferShaper shaper, final Executor executor) {
+            this.listener = listener;
+            this.shaper = shaper;
+            this.executor = executor;
+        }
+
+        final void start() {
+            // pass on any data received so far, in order
+            List<IoBuffer> data;
+            while ((data = takeEarlyData(this)) != null) {
+                for (IoBuffer buffer : data) {
+                    messageReceived(buffer);
+                }
+            }
+            begin();
+        }
+
+        /**
+         * Start the transfer, the data session is connected.
+         */
+        protected abstract void begin();
+
+        /**
+         * Data has been received from the client.
+         */
+        void messageReceived(IoBuffer buffer) {
+            // ignore
+        }
+
+        /**
+         * The client closed the data connection, close the connection once
+         * the transfer is done.
+         */
+        abstract void sessionClosed();
+
+        /**
+         * Do file I/O off the I/O processor threads.
+         */
+        protected final void execute(Runnable task) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // the server is shutting down
+                close(new SocketException("Data transfer rejected"));
+            }
+        }
+
+        /**
+         * Release any resources held by the transfer.
+         * 
+         * @return the cause of the failure, or null if the transfer was
+         *         successful
+         */
+        protected Exception finish(Exception cause) {
+            return cause;
+        }
+
+        /**
+         * Get the time in milliseconds to wait for the rate limits after
+         * transferring bytes, zero if there is no need to wait.
+         */
+        protected long takeBandwidth(long bytes) {
+            long delay = shaper.take(bytes);
+            return delay > 0 ? TimeUnit.NANOSECONDS.toMillis(delay + 999999)
+                    : 0;
+        }
+
+        final void done(Exception cause) {
+            shaper.close();
+
+            Exception failure = finish(cause);
+            if (failure != null) {
+                LOG.debug("Data transfer failed", failure);
+            }
+
+            try {
+                if (failure == null) {
+                    listener.transferCompleted(transferredSize);
+                } else {
+                    listener.transferFailed(transferredSize, failure);
+                }
+            } catch (RuntimeException e) {
+                LOG.warn("Data transfer listener threw exception", e);
+            }
+        }
+    }
+
+    /**
+     * Sends a stream to the client. Plain files in binary mode are sent with
+     * zero-copy file regions, or read into a pooled direct buffer if the
+     * connection is secure. Other than file regions, the chunks are read by
+     * the executor.
+     */
+    private class Download extends Transfer {
+
+        private final InputStream in;
+
+        private final boolean ascii;
+
+        private final FileChannel fileChannel;
+
+        private final int chunkSize;
+
+        private byte[] buffer;
+
+        private ByteArrayOutputStream encoded;
+
+        private OutputStream encoder;
+
+        private long position;
+
+        private byte lastByte = 0;
+
+        /**
+         * The buffer files are read into on secure connections
+         */
+        private ByteBuffer directBuffer;
+
+        /**
+         * Whether a chunk is being read or written, guarded by the transfer
+         */
+        private boolean busy = false;
+
+        /**
+         * Whether the transfer has finished, guarded by the transfer
+         */
+        private boolean finished = false;
+
+        public Download(final DataTransferListener listener,
+                final TransferShaper shaper, final Executor executor,
+                final InputStream in, final boolean ascii, final boolean zip) {
+            super(listener, shaper, executor);
+            this.in = in;
+            this.ascii = ascii;
+
+            if (!ascii && !zip && in instanceof FileInputStream) {
+                fileChannel = ((FileInputStream) in).getChannel();
+                chunkSize = shaper.getChunkSize(sslConfiguration == null
+                        ? FILE_REGION_SIZE : BUFFER_SIZE);
+            } else {
+                fileChannel = null;
+                chunkSize = shaper.getChunkSize(BUFFER_SIZE);
+                buffer = new byte[chunkSize];
+                encoded = new ByteArrayOutputStream(chunkSize);
+                encoder = zip ? new DeflaterOutputStream(encoded, true)
+                        : encoded;
+            }
+        }
+
+        @Override
+        protected void begin() {
+            if (fileChannel != null) {
+                try {
+                    // start after any REST offset applied when the file was
+                    // opened
+                    position = fileChannel.position();
+                } catch (IOException e) {
+                    close(e);
+                    return;
+                }
+
+                if (sslConfiguration != null) {
+                    directBuffer = service.acquireBuffer();
+                }
+            }
+            writeNext();
+        }
+
+        private void writeNext() {
+            if (fileChannel != null && directBuffer == null) {
+                // file regions are sent without reading the file here
+                sendNext();
+            } else {
+                execute(new Runnable() {
+                    public void run() {
+                        sendNext();
+                    }
+                });
+            }
+        }
+
+        /**
+         * Start using the buffers for a chunk.
+         * 
+         * @return false if the transfer has finished
+         */
+        private synchronized boolean startChunk() {
+            if (finished) {
+                return false;
+            }
+            busy = true;
+            return true;
+        }
+
+        /**
+         * Stop using the buffers for a chunk, releasing them if the transfer
+         * finished meanwhile.
+         */
+        private void endChunk() {
+            synchronized (this) {
+                busy = false;
+                if (!finished) {
+                    return;
+                }
+            }
+
+            // a chunk not written yet may still be encrypted, leave the
+            // buffer to the garbage collector
+            IoUtils.close(encoder);
+            directBuffer = null;
+        }
+
+        private void sendNext() {
+            if (isClosed() || !startChunk()) {
+                return;
+            }
+
+            final Object message;
+            int count;
+            try {
+                if (fileChannel != null) {
+                    count = (int) Math.min(chunkSize, fileChannel.size()
+                            - position);
+                    if (count <= 0) {
+                        endChunk();
+                        close(null);
+                        return;
+                    }
+
+                    if (directBuffer == null) {
+                        message = new DefaultFileRegion(fileChannel, position,
+                                count);
+                    } else {
+                        directBuffer.clear();
+                        directBuffer.limit(count);
+                        count = fileChannel.read(directBuffer, position);
+                        if (count <= 0) {
+                            // truncated while being sent
+                            endChunk();
+                            close(null);
+                            return;
+                        }
+                        directBuffer.flip();
+                        message = IoBuffer.wrap(directBuffer);
+                    }
+                    position += count;
+                } else {
+                    count = in.read(buffer);
+                    if (count == -1) {
+                        byte[] trailer = encodeEnd();
+                        if (trailer.length == 0) {
+                            endChunk();
+                            close(null);
+                        } else {
+                            write(IoBuffer.wrap(trailer), true);
+                        }
+                        return;
+                    }
+                    message = IoBuffer.wrap(encode(count));
+                }
+            } catch (IOException e) {
+                endChunk();
+                close(e);
+                return;
+            }
+
+            // update MINA session
+            transferredSize += count;
+            session.increaseWrittenDataBytes(count);
+            session.updateLastAccessTime();
+
+            // wait until the rate limits allow the data to be sent
+            long delay = takeBandwidth(count);
+            if (delay > 0) {
+                service.schedule(new Runnable() {
+                    public void run() {
+                        if (!isClosed()) {
+                            write(message, false);
+                        } else {
+                            endChunk();
+                        }
+                    }
+                }, delay);
+                return;
+            }
+
+            write(message, false);
+        }
+
+        private void write(Object message, final boolean last) {
+            WriteFuture future = getDataSession().write(message);
+            future.addListener(new IoFutureListener<WriteFuture>() {
+                public void operationComplete(WriteFuture future) {
+                    endChunk();
+                    if (!future.isWritten()) {
+                        close(toSocketException(future.getException()));
+                    } else if (last) {
+                        close(null);
+                    } else {
+                        writeNext();
+                    }
+                }
+            });
+        }
+
+        /**
+         * Encode the data in the buffer, if ascii, replace \n by \r\n.
+         */
+        private byte[] encode(int count) throws IOException {
+            if (ascii) {
+                for (int i = 0; i < count; ++i) {
+                    byte b = buffer[i];
+                    if (b == '\n' && lastByte != '\r') {
+                        encoder.write('\r');
+                    }
+                    encoder.write(b);
+                    lastByte = b;
+                }
+            } else {
+                encoder.write(buffer, 0, count);
+            }
+            encoder.flush();
+
+            byte[] bytes = encoded.toByteArray();
+            encoded.reset();
+            return bytes;
+        }
+
+        /**
+         * Get any remaining encoded data at the end of the stream.
+         */
+        private byte[] encodeEnd() throws IOException {
+            encoder.close();
+            return encoded.toByteArray();
+        }
+
+        @Override
+        void sessionClosed() {
+            close(new SocketException("Data connection closed by client"));
+        }
+
+        @Override
+        protected Exception finish(Exception cause) {
+            // the buffers of a chunk in use are released once it is done
+            synchronized (this) {
+                finished = true;
+                if (busy) {
+                    return cause;
+                }
+            }
+
+            // release the deflater, if any
+            IoUtils.close(encoder);
+
+            if (directBuffer != null) {
+                service.releaseBuffer(directBuffer);
+            }
+            directBuffer = null;
+            return cause;
+        }
+    }
+
+    /**
+     * Receives data from the client until the client closes the data
+     * connection. The received data is written by the executor, reads being
+     * suspended until it has been written.
+     */
+    private class Upload extends Transfer {
+
+        private final OutputStream out;
+
+        private final boolean ascii;
+
+        private final Inflater inflater;
+
+        private final byte[] buffer;
+
+        private byte lastByte = 0;
+
+        /**
+         * Data received and not written yet, guarded by the transfer
+         */
+        private final Queue<byte[]> received = new ArrayDeque<>();
+
+        /**
+         * Whether the received data is being written, guarded by the transfer
+         */
+        private boolean writing = false;
+
+        /**
+         * Whether the client has closed the connection, guarded by the
+         * transfer
+         */
+        private boolean ended = false;
+
+        /**
+         * Whether the transfer has finished, guarded by the transfer
+         */
+        private boolean finished = false;
+
+        public Upload(final DataTransferListener listener,
+                final TransferShaper shaper, final Executor executor,
+                final OutputStream out, final boolean ascii, final boolean zip) {
+            super(listener, shaper, executor);
+            this.out = IoUtils.getBufferedOutputStream(out);
+            this.ascii = ascii;
+            if (zip) {
+                inflater = new Inflater();
+                buffer = new byte[BUFFER_SIZE];
+            } else {
+                inflater = null;
+                buffer = null;
+            }
+        }
+
+        @Override
+        protected void begin() {
+            resumeRead(getDataSession());
+        }
+
+        @Override
+        void messageReceived(IoBuffer message) {
+            int count = message.remaining();
+            byte[] data = new byte[count];
+            message.get(data);
+
+            // update MINA session
+            transferredSize += count;
+            session.increaseReadDataBytes(count);
+            session.updateLastAccessTime();
+
+            // suspended before the data is queued, so that reading is resumed
+            // once it has been written
+            getDataSession().suspendRead();
+
+            boolean start;
+            synchronized (this) {
+                received.add(data);
+                start = !writing;
+                writing = true;
+            }
+            if (start) {
+                execute(new Runnable() {
+                    public void run() {
+                        writeReceived();
+                    }
+                });
+            }
+        }
+
+        /**
+         * Write the data received so far, then resume reading once the rate
+         * limits allow receiving more.
+         */
+        private void writeReceived() {
+            long delay = 0;
+            while (true) {
+                boolean stopped = isClosed();
+                byte[] data;
+                boolean release = false;
+                boolean end = false;
+                synchronized (this) {
+                    data = stopped ? null : received.poll();
+                    if (data == null) {
+                        writing = false;
+                        release = finished;
+                        end = ended && !stopped;
+                    }
+                }
+
+                if (data == null) {
+                    if (release && inflater != null) {
+                        inflater.end();
+                    }
+                    if (end) {
+                        // the client signals the end of the data by closing
+                        // the connection
+                        close(null);
+                    } else if (!stopped) {
+                        resumeReadAfter(delay);
+                    }
+                    return;
+                }
+
+                try {
+                    write(data);
+                } catch (IOException e) {
+                    close(e);
+                    continue;
+                } catch (DataFormatException e) {
+                    close(new IOException("Invalid compressed data", e));
+                    continue;
+                }
+                delay = takeBandwidth(data.length);
+            }
+        }
+
+        /**
+         * Resume reading, after a delay in milliseconds if positive.
+         */
+        private void resumeReadAfter(long delay) {
+            if (delay > 0) {
+                service.schedule(new Runnable() {
+                    public void run() {
+                        resumeRead(getDataSession());
+                    }
+                }, delay);
+            } else {
+                resumeRead(getDataSession());
+            }
+        }
+
+        private void write(byte[] data) throws IOException,
+                DataFormatException {
+            if (inflater == null) {
+                decode(data, data.length);
+            } else {
+                inflater.setInput(data);
+                int inflated;
+                while ((inflated = inflater.inflate(buffer)) > 0) {
+                    decode(buffer, inflated);
+                }
+            }
+        }
+
+        /**
+         * Write the received data, if ascii, replace line endings by the
+         * system local line ending.
+         */
+        private void decode(byte[] data, int count) throws IOException {
+            if (!ascii) {
+                out.write(data, 0, count);
+                return;
+            }
+
+            for (int i = 0; i < count; ++i) {
+                byte b = data[i];
+                if (b == '\n') {
+                    // for reads, we should always get \r\n
+                    // so what we do here is to ignore \n bytes
+                    // and on \r dump the system local line ending.
+                    // Some clients won't transform new lines into \r\n so we
+                    // make sure we don't delete new lines
+                    if (lastByte != '\r') {
+                        out.write(EOL);
+                    }
+                } else if (b == '\r') {
+                    out.write(EOL);
+                } else {
+                    // not a line ending, just output
+                    out.write(b);
+                }
+                // store this byte so that we can compare it for line endings
+                lastByte = b;
+            }
+        }
+
+        @Override
+        void sessionClosed() {
+            // complete once the received data has been written
+            boolean start;
+            synchronized (this) {
+                ended = true;
+                start = !writing;
+                writing = true;
+            }
+            if (start) {
+                execute(new Runnable() {
+                    public void run() {
+                        writeReceived();
+                    }
+                });
+            }
+        }
+
+        @Override
+        protected Exception finish(Exception cause) {
+            // the inflater in use is released once the data is written
+            boolean release;
+            synchronized (this) {
+                finished = true;
+                release = !writing;
+            }
+            if (release && inflater != null) {
+                inflater.end();
+            }
+
+            if (cause == null) {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    return e;
+                }
+            }
+            return cause;
+        }
+    }
+
+    /**
+     * Waits for the completion of a transfer on behalf of the blocking
+     * {@link org.apache.ftpserver.ftplet.DataConnection} methods, running the
+     * file I/O of the transfer meanwhile.
+     */
+    private class BlockingTransferListener implements DataTransferListener,
+            Executor {
+
+        private final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+
+        private volatile boolean done = false;
+
+        private volatile long transferredSize;
+
+        private volatile Exception cause;
+
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        public void transferCompleted(long transferredSize) {
+            this.transferredSize = transferredSize;
+            end();
+        }
+
+        public void transferFailed(long transferredSize, Exception cause) {
+            this.transferredSize = transferredSize;
+            this.cause = cause;
+            end();
+        }
+
+        private void end() {
+            done = true;
+            // wake up the waiting thread
+            tasks.add(new Runnable() {
+                public void run() {
+                    // nothing to do
+                }
+            });
+        }
+
+        public long await() throws IOException {
+            try {
+                while (!done) {
+                    run(tasks.take());
+                }
+            } catch (InterruptedException e) {
+                close();
+                throw new InterruptedIOException("Data transfer interrupted");
+            } finally {
+                // let the tasks left release the resources of the transfer
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    run(task);
+                }
+            }
+
+            if (cause == null) {
+                return transferredSize;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else {
+                throw new IOException(cause.getMessage(), cause);
+            }
+        }
+
+        private void run(Runnable task) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                close(toSocketException(e));
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+
+import org.apache.ftpserver.DataConnectionConfiguration;
+import org.apache.ftpserver.DataConnectionException;
+import org.apache.ftpserver.ftplet.DataConnection;
+import org.apache.ftpserver.ssl.SslConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Creates non-blocking data connections running on the shared
+ * {@link NioDataConnectionService} of the server. Secure data connections are
+ * encrypted by an SSL filter on the data session, so that they do not block
+ * either.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioDataConnectionFactory implements ServerDataConnectionFactory {
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(NioDataConnectionFactory.class);
+
+    private final FtpServerContext serverContext;
+
+    private final FtpIoSession session;
+
+    private NioDataConnection connection;
+
+    private InetAddress address;
+
+    private int port = 0;
+
+    private long requestTime = 0L;
+
+    private boolean passive = false;
+
+    private boolean secure = false;
+
+    private boolean isZip = false;
+
+    private InetAddress serverControlAddress;
+
+    public NioDataConnectionFactory(final FtpServerContext serverContext,
+            final FtpIoSession session) {
+        this.serverContext = serverContext;
+        this.session = session;
+        if ((session != null) && (session.getListener() != null)
+                && session.getListener().getDataConnectionConfiguration()
+                        .isImplicitSsl()) {
+            secure = true;
+        }
+    }
+
+    private SslConfiguration getSslConfiguration() {
+        DataConnectionConfiguration dataCfg = session.getListener()
+                .getDataConnectionConfiguration();
+
+        SslConfiguration configuration = dataCfg.getSslConfiguration();
+
+        // fall back if no configuration has been provided on the data
+        // connection config
+        if (configuration == null) {
+            configuration = session.getListener().getSslConfiguration();
+        }
+
+        return configuration;
+    }
+
+    /**
+     * Create a data connection, secured if the PROT P command has been
+     * issued.
+     */
+    private NioDataConnection createConnection()
+            throws DataConnectionException {
+        SslConfiguration ssl = null;
+        if (secure) {
+            ssl = getSslConfiguration();
+            if (ssl == null) {
+                throw new DataConnectionException(
+                        "Data connection SSL required but not configured.");
+            }
+        }
+
+        return new NioDataConnection(serverContext
+                .getNioDataConnectionService(), session, this, serverContext
+                .getTransferRateLimiter(), serverContext.getFtpMetrics(), ssl,
+                serverContext.getTransferExecutor());
+    }
+
+    /**
+     * Close the data connection. This method must be idempotent as we might
+     * call it multiple times during disconnect.
+     */
+    public synchronized void closeDataConnection() {
+        if (connection != null) {
+            connection.close();
+            connection = null;
+        }
+
+        // reset request time
+        requestTime = 0L;
+        if (serverContext != null) {
+            serverContext.getDataConnectionReaper().unregister(this);
+        }
+    }
+
+    /**
+     * Called by a data connection closing itself, e.g. at the end of a
+     * transfer, so that it is no longer watched for its idle time.
+     */
+    synchronized void connectionClosed(final NioDataConnection closed) {
+        if (connection == closed) {
+            requestTime = 0L;
+            if (serverContext != null) {
+                serverContext.getDataConnectionReaper().unregister(this);
+            }
+        }
+    }
+
+    /**
+     * Port command.
+     */
+    public synchronized void initActiveDataConnection(
+            final InetSocketAddress address) {
+        // close old connections if any
+        closeDataConnection();
+
+        // set variables
+        passive = false;
+        this.address = address.getAddress();
+        port = address.getPort();
+        requestTime = System.currentTimeMillis();
+        if (serverContext != null) {
+            serverContext.getDataConnectionReaper().register(this);
+        }
+    }
+
+    /**
+     * Initiate a data connection in passive mode (server listening).
+     */
+    public synchronized InetSocketAddress initPassiveDataConnection()
+            throws DataConnectionException {
+        // close old connections if any
+        closeDataConnection();
+
+        LOG.debug("Initiating passive data connection");
+        DataConnectionConfiguration dataCfg = session.getListener()
+                .getDataConnectionConfiguration();
+
+        // get the passive port
+        int passivePort = dataCfg.requestPassivePort();
+        if (passivePort == -1) {
+            throw new DataConnectionException(
+                    "Cannot find an available passive port.");
+        }
+
+        try {
+            String passiveAddress = dataCfg.getPassiveAddress();
+            if (passiveAddress == null) {
+                address = serverControlAddress;
+            } else {
+                address = resolveAddress(passiveAddress);
+            }
+
+            LOG.debug("Opening {}passive data connection on address \"{}\" and port {}",
+                    secure ? "secure " : "", address, passivePort);
+            connection = createConnection();
+            InetSocketAddress boundAddress = connection.bind(
+                    new InetSocketAddress(address, passivePort), passivePort);
+            LOG.debug("Passive data connection created on address \"{}\" and port {}",
+                    address, boundAddress.getPort());
+
+            // set different state variables
+            port = boundAddress.getPort();
+            passive = true;
+            requestTime = System.currentTimeMillis();
+            if (serverContext != null) {
+                serverContext.getDataConnectionReaper().register(this);
+            }
+
+            return new InetSocketAddress(address, port);
+        } catch (Exception ex) {
+            connection = null;
+            dataCfg.releasePassivePort(passivePort);
+            closeDataConnection();
+            throw new DataConnectionException(
+                    "Failed to initate passive data connection: "
+                            + ex.getMessage(), ex);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.apache.ftpserver.ftplet.DataConnectionFactory#openConnection()
+     */
+    public synchronized DataConnection openConnection() throws Exception {
+        if (address == null) {
+            throw new DataConnectionException(
+                    "PORT or PASV must be issued first");
+        }
+
+        if (!passive) {
+            if (connection != null) {
+                connection.close();
+            }
+            LOG.debug("Opening {}active data connection", secure ? "secure "
+                    : "");
+
+            DataConnectionConfiguration dataCfg = session.getListener()
+                    .getDataConnectionConfiguration();
+            InetAddress localAddr = resolveAddress(dataCfg
+                    .getActiveLocalAddress());
+
+            // if no local address has been configured, make sure we use the
+            // same as the client connects from
+            if (localAddr == null) {
+                localAddr = ((InetSocketAddress) session.getLocalAddress())
+                        .getAddress();
+            }
+
+            connection = createConnection();
+            connection.connect(new InetSocketAddress(address, port),
+                    new InetSocketAddress(localAddr, dataCfg
+                            .getActiveLocalPort()));
+        } else if (connection == null || connection.isClosed()) {
+            // a passive data connection is used for a single transfer
+            throw new DataConnectionException(
+                    "Passive data connection not initiated");
+        }
+
+        return connection;
+    }
+
+    /*
+     * (non-Javadoc) Returns an InetAddress object from a hostname or IP
+     * address.
+     */
+    private InetAddress resolveAddress(String host)
+            throws DataConnectionException {
+        if (host == null) {
+            return null;
+        } else {
+            try {
+                return InetAddress.getByName(host);
+            } catch (UnknownHostException ex) {
+                throw new DataConnectionException("Failed to resolve address",
+                        ex);
+            }
+        }
+    }
+
+    public synchronized InetAddress getInetAddress() {
+        return address;
+    }
+
+    public synchronized int getPort() {
+        return port;
+    }
+
+    public synchronized boolean isSecure() {
+        return secure;
+    }
+
+    /**
+     * Set the security protocol.
+     */
+    public synchronized void setSecure(final boolean secure) {
+        this.secure = secure;
+    }
+
+    public synchronized boolean isZipMode() {
+        return isZip;
+    }
+
+    /**
+     * Set zip mode.
+     */
+    public synchronized void setZipMode(final boolean zip) {
+        isZip = zip;
+    }
+
+    /**
+     * Check the data connection idle status.
+     */
+    public synchronized boolean isTimeout(final long currTime) {
+        // data connection not requested - not a timeout
+        if (requestTime == 0L) {
+            return false;
+        }
+
+        // data connection active - not a timeout
+        if (connection != null && !connection.isPending()) {
+            return false;
+        }
+
+        // no idle time limit - not a timeout
+        int maxIdleTime = session.getListener()
+                .getDataConnectionConfiguration().getIdleTime() * 1000;
+        if (maxIdleTime == 0) {
+            return false;
+        }
+
+        // idle time is within limit - not a timeout
+        return (currTime - requestTime) >= maxIdleTime;
+    }
+
+    /**
+     * Close the data connection if it has not been opened within the idle
+     * time. Opening the data connection takes the monitor of this factory
+     * as well, so a data connection is never closed once handed out.
+     */
+    public synchronized boolean closeIfTimedOut(final long currTime) {
+        if (!isTimeout(currTime)) {
+            return false;
+        }
+        closeDataConnection();
+        return true;
+    }
+
+    /**
+     * Dispose data connection - close all the sockets.
+     */
+    public void dispose() {
+        closeDataConnection();
+    }
+
+    /**
+     * Sets the server's control address.
+     */
+    public synchronized void setServerControlAddress(
+            final InetAddress serverControlAddress) {
+        this.serverControlAddress = serverControlAddress;
+    }
+}
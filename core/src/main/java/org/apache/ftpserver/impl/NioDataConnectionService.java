@@ -0,0 +1,317 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.future.ConnectFuture;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.service.SimpleIoProcessorPool;
+import org.apache.mina.core.session.IdleStatus;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.session.IoSessionInitializer;
+import org.apache.mina.filter.FilterEvent;
+import org.apache.mina.filter.ssl.SslEvent;
+import org.apache.mina.transport.socket.nio.NioProcessor;
+import org.apache.mina.transport.socket.nio.NioSession;
+import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
+import org.apache.mina.transport.socket.nio.NioSocketConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Shared MINA services for non-blocking data connections. Passive data
+ * connections are accepted by a single {@link NioSocketAcceptor} on which the
+ * passive ports are bound and unbound on demand, active data connections are
+ * opened by a single {@link NioSocketConnector}. Both share one pool of I/O
+ * processors, so data transfers do not occupy a thread each. The direct
+ * buffers files are read into before being encrypted are pooled as well.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioDataConnectionService {
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(NioDataConnectionService.class);
+
+    private static final String ATTRIBUTE_DATA_CONNECTION = "org.apache.ftpserver.data-connection";
+
+    /**
+     * The size of the pooled buffers
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The maximum number of idle buffers kept in the pool
+     */
+    private static final int MAX_POOLED_BUFFERS = 64;
+
+    private final SimpleIoProcessorPool<NioSession> processor;
+
+    private final NioSocketAcceptor acceptor;
+
+    private final NioSocketConnector connector;
+
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Passive data connections waiting for the client to connect, by the
+     * address they are bound to
+     */
+    private final Map<InetSocketAddress, NioDataConnection> pendingConnections = new ConcurrentHashMap<>();
+
+    private final Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger pooledBufferCount = new AtomicInteger(0);
+
+    public NioDataConnectionService() {
+        processor = new SimpleIoProcessorPool<>(NioProcessor.class);
+
+        DataConnectionHandler handler = new DataConnectionHandler();
+
+        acceptor = new NioSocketAcceptor(processor);
+        acceptor.setReuseAddress(true);
+        // unbinding a passive port must not close the data connection
+        // accepted on it
+        acceptor.setCloseOnDeactivation(false);
+        acceptor.setHandler(handler);
+
+        connector = new NioSocketConnector(processor);
+        connector.getSessionConfig().setReuseAddress(true);
+        connector.setHandler(handler);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * Bind a passive data connection.
+     * 
+     * @return The address the connection is bound to, with the actual port
+     *         if an ephemeral port was requested
+     */
+    public synchronized InetSocketAddress bind(InetSocketAddress address,
+            NioDataConnection connection) throws IOException {
+        Set<SocketAddress> boundBefore = new HashSet<>(acceptor
+                .getLocalAddresses());
+        acceptor.bind(address);
+
+        InetSocketAddress boundAddress = address;
+        for (SocketAddress localAddress : acceptor.getLocalAddresses()) {
+            if (!boundBefore.contains(localAddress)) {
+                boundAddress = (InetSocketAddress) localAddress;
+                break;
+            }
+        }
+
+        pendingConnections.put(boundAddress, connection);
+        LOG.debug("Passive data connection bound to {}", boundAddress);
+        return boundAddress;
+    }
+
+    /**
+     * Unbind a passive data connection. Data connections already accepted
+     * are not affected. This method is idempotent.
+     */
+    public synchronized void unbind(InetSocketAddress boundAddress) {
+        if (pendingConnections.remove(boundAddress) != null) {
+            acceptor.unbind(boundAddress);
+            LOG.debug("Passive data connection unbound from {}", boundAddress);
+        }
+    }
+
+    /**
+     * Open an active data connection.
+     */
+    public ConnectFuture connect(InetSocketAddress remoteAddress,
+            InetSocketAddress localAddress, final NioDataConnection connection) {
+        return connector.connect(remoteAddress, localAddress,
+                new IoSessionInitializer<ConnectFuture>() {
+                    public void initializeSession(IoSession session,
+                            ConnectFuture future) {
+                        session.setAttribute(ATTRIBUTE_DATA_CONNECTION,
+                                connection);
+                    }
+                });
+    }
+
+    /**
+     * Run a task after a delay, outside of the I/O processor threads.
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delay) {
+        return scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Take a direct buffer of {@link #BUFFER_SIZE} bytes from the pool, or
+     * allocate one if the pool is empty.
+     * 
+     * @return The cleared buffer
+     */
+    public ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = bufferPool.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        pooledBufferCount.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Give a buffer back to the pool. The buffer must not be used anymore.
+     */
+    public void releaseBuffer(ByteBuffer buffer) {
+        if (pooledBufferCount.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+            bufferPool.offer(buffer);
+        } else {
+            // let the garbage collector free it
+            pooledBufferCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Close all data connections and release the I/O processors.
+     */
+    public void dispose() {
+        acceptor.dispose();
+        connector.dispose();
+        processor.dispose();
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Find the passive data connection waiting on the local address of an
+     * accepted session.
+     */
+    private NioDataConnection findPendingConnection(InetSocketAddress localAddress) {
+        NioDataConnection connection = pendingConnections.get(localAddress);
+        if (connection == null) {
+            // bound to the wildcard address
+            for (Map.Entry<InetSocketAddress, NioDataConnection> entry : pendingConnections
+                    .entrySet()) {
+                InetSocketAddress boundAddress = entry.getKey();
+                if (boundAddress.getPort() == localAddress.getPort()
+                        && boundAddress.getAddress().isAnyLocalAddress()) {
+                    connection = entry.getValue();
+                    break;
+                }
+            }
+        }
+        return connection;
+    }
+
+    private static NioDataConnection getConnection(IoSession session) {
+        return (NioDataConnection) session
+                .getAttribute(ATTRIBUTE_DATA_CONNECTION);
+    }
+
+    /**
+     * Dispatches the events of all data sessions to their
+     * {@link NioDataConnection}.
+     */
+    private class DataConnectionHandler extends IoHandlerAdapter {
+
+        @Override
+        public void sessionCreated(IoSession session) throws Exception {
+            NioDataConnection connection = getConnection(session);
+            if (connection == null) {
+                connection = findPendingConnection((InetSocketAddress) session
+                        .getLocalAddress());
+            }
+
+            if (connection != null) {
+                // attach before the connection can start a transfer
+                session.setAttribute(ATTRIBUTE_DATA_CONNECTION, connection);
+                if (connection.sessionCreated(session)) {
+                    return;
+                }
+                session.removeAttribute(ATTRIBUTE_DATA_CONNECTION);
+            }
+
+            LOG.debug("Unexpected data connection from {}, closing", session
+                    .getRemoteAddress());
+            session.closeNow();
+        }
+
+        @Override
+        public void messageReceived(IoSession session, Object message)
+                throws Exception {
+            NioDataConnection connection = getConnection(session);
+            if (connection != null) {
+                connection.messageReceived((IoBuffer) message);
+            }
+        }
+
+        @Override
+        public void event(IoSession session, FilterEvent event)
+                throws Exception {
+            NioDataConnection connection = getConnection(session);
+            if (connection != null && event == SslEvent.SECURED) {
+                connection.sessionSecured();
+            }
+        }
+
+        @Override
+        public void sessionIdle(IoSession session, IdleStatus status)
+                throws Exception {
+            NioDataConnection connection = getConnection(session);
+            if (connection != null) {
+                connection.sessionIdle();
+            }
+        }
+
+        @Override
+        public void exceptionCaught(IoSession session, Throwable cause)
+                throws Exception {
+            NioDataConnection connection = getConnection(session);
+            if (connection != null) {
+                connection.exceptionCaught(cause);
+            } else {
+                LOG.debug("Exception caught on data connection", cause);
+                session.closeNow();
+            }
+        }
+
+        @Override
+        public void sessionClosed(IoSession session) throws Exception {
+            NioDataConnection connection = getConnection(session);
+            if (connection != null) {
+                connection.sessionClosed();
+            }
+        }
+    }
+}
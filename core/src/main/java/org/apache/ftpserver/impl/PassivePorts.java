@@ -21,12 +21,13 @@ package org.apache.ftpserver.impl;
 
 import java.io.IOException;
 import java.net.ServerSocket;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.List;
-import java.util.Random;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,6 +37,13 @@ import org.slf4j.LoggerFactory;
  * 
  * Provides support for parsing a passive ports string as well as keeping track
  * of reserved passive ports.
+ * 
+ * The state of each port is kept in a slot of an atomic array, so ports are
+ * reserved and released without locking. A reservation probes the slots
+ * starting at a random position, which takes constant time on average as long
+ * as the ports are not nearly all in use. Released ports can optionally be
+ * kept unused for a cooldown period, so that they are not handed out again
+ * while the previous connection on the port might still be in TIME_WAIT.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
@@ -47,15 +55,34 @@ public class PassivePorts {
 
     private static final Integer MAX_PORT_INTEGER = Integer.valueOf(MAX_PORT);
 
-    private List<Integer> freeList;
+    /**
+     * Slot state of a free port. Positive states are the time, in nanoseconds
+     * since {@link #baseTime}, at which a port cooling down becomes free.
+     */
+    private static final long FREE = 0;
+
+    /**
+     * Slot state of a reserved port
+     */
+    private static final long RESERVED = -1;
+
+    /**
+     * The configured ports, sorted
+     */
+    private final int[] ports;
+
+    /**
+     * The state of each port, by index in {@link #ports}
+     */
+    private final AtomicLongArray states;
 
-    private Set<Integer> usedList;
+    private final long cooldown;
 
-    private Random r = new Random();
+    private final long baseTime = System.nanoTime();
 
     private String passivePortsString;
 
-    private boolean checkIfBound;
+    private final boolean checkIfBound;
 
     /**
      * Parse a string containing passive ports
@@ -145,22 +172,52 @@ public class PassivePorts {
     }
 
     public PassivePorts(final String passivePorts, boolean checkIfBound) {
-        this(parse(passivePorts), checkIfBound);
+        this(passivePorts, checkIfBound, 0);
+    }
+
+    /**
+     * @param cooldown
+     *            The number of milliseconds a released port is kept unused,
+     *            0 to reuse ports immediately
+     */
+    public PassivePorts(final String passivePorts, boolean checkIfBound,
+            int cooldown) {
+        this(parse(passivePorts), checkIfBound, cooldown);
 
         this.passivePortsString = passivePorts;
     }
 
     public PassivePorts(Set<Integer> passivePorts, boolean checkIfBound) {
+        this(passivePorts, checkIfBound, 0);
+    }
+
+    /**
+     * @param cooldown
+     *            The number of milliseconds a released port is kept unused,
+     *            0 to reuse ports immediately
+     */
+    public PassivePorts(Set<Integer> passivePorts, boolean checkIfBound,
+            int cooldown) {
         if (passivePorts == null) {
             throw new NullPointerException("passivePorts can not be null");
-        } else if(passivePorts.isEmpty()) {
-            passivePorts = new HashSet<>();
-            passivePorts.add(0);
+        } else if (cooldown < 0) {
+            throw new IllegalArgumentException(
+                    "Cooldown can not be negative: " + cooldown);
         }
 
-        this.freeList = new ArrayList<>(passivePorts);
-        this.usedList = new HashSet<>(passivePorts.size());
+        if (passivePorts.isEmpty()) {
+            ports = new int[] { 0 };
+        } else {
+            ports = new int[passivePorts.size()];
+            int i = 0;
+            for (Integer port : passivePorts) {
+                ports[i++] = port;
+            }
+            Arrays.sort(ports);
+        }
+        states = new AtomicLongArray(ports.length);
 
+        this.cooldown = TimeUnit.MILLISECONDS.toNanos(cooldown);
         this.checkIfBound = checkIfBound;
     }
 
@@ -198,51 +255,99 @@ public class PassivePorts {
         }
     }
 
-    public synchronized int reserveNextPort() {
-        // create a copy of the free ports, so that we can keep track of the tested ports
-        List<Integer> freeCopy = new ArrayList<>(freeList);
-        
-        // Loop until we have found a port, or exhausted all available ports
-        while (freeCopy.size() > 0) {
-            // Otherwise, pick one at random
-            int i = r.nextInt(freeCopy.size());
-            Integer ret = freeCopy.get(i);
-
-            if (ret == 0) {
-                // "Any" port should not be removed from our free list,
-                // nor added to the used list
+    /**
+     * Reserve a free port, picked at random.
+     * 
+     * @return The reserved port, 0 if any available port can be used, or -1
+     *         if all ports are in use
+     */
+    public int reserveNextPort() {
+        int count = ports.length;
+        int start = ThreadLocalRandom.current().nextInt(count);
+        long now = -1;
+
+        // probe all ports once, until we have found a free one
+        for (int i = 0; i < count; i++) {
+            int index = start + i;
+            if (index >= count) {
+                index -= count;
+            }
+
+            if (ports[index] == 0) {
+                // "Any" port should not be reserved
                 return 0;
+            }
+
+            long state = states.get(index);
+            if (state == RESERVED) {
+                continue;
+            } else if (state != FREE) {
+                // still cooling down since its last use?
+                if (now == -1) {
+                    now = System.nanoTime() - baseTime;
+                }
+                if (now < state) {
+                    continue;
+                }
+            }
 
-            } else if (checkPortUnbound(ret)) {
-                // Not used by someone else, so lets reserve it and return it
-                freeList.remove(ret);
-                usedList.add(ret);
-                return ret;
+            if (!states.compareAndSet(index, state, RESERVED)) {
+                // taken by a concurrent reservation
+                continue;
+            }
 
-            } else {
-                freeCopy.remove(i);
-                // log port unavailable, but left in pool
-                log.warn("Passive port in use by another process: " + ret);
+            int port = ports[index];
+            if (checkPortUnbound(port)) {
+                // Not used by someone else, so lets return it
+                return port;
             }
+
+            // log port unavailable, but left in pool
+            states.set(index, FREE);
+            log.warn("Passive port in use by another process: " + port);
         }
 
         return -1;
     }
 
-    public synchronized void releasePort(final int port) {
+    /**
+     * Release a reserved port. With a cooldown, the port will not be reserved
+     * again until the cooldown has elapsed.
+     */
+    public void releasePort(final int port) {
         if (port == 0) {
             // Ignore port 0 being released,
-            // since its not put on the used list
+            // since it is never reserved
+            return;
+        }
 
-        } else if (usedList.remove(port)) {
-            freeList.add(port);
+        int index = Arrays.binarySearch(ports, port);
+        long released = FREE;
+        if (cooldown > 0) {
+            // always positive, as the base time is in the past
+            released = Math.max(1, System.nanoTime() - baseTime + cooldown);
+        }
 
-        } else {
+        if (index < 0 || !states.compareAndSet(index, RESERVED, released)) {
             // log attempt to release unused port
             log.warn("Releasing unreserved passive port: " + port);
         }
     }
 
+    /**
+     * The number of ports currently reserved. Ports used when any available
+     * port is configured, i.e. port 0, are not counted.
+     */
+    public int getReservedCount() {
+        int count = 0;
+        for (int i = 0; i < states.length(); i++) {
+            if (states.get(i) == RESERVED) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     @Override
     public String toString() {
         if (passivePortsString != null) {
@@ -251,7 +356,7 @@ public class PassivePorts {
 
         StringBuilder sb = new StringBuilder();
 
-        for (Integer port : freeList) {
+        for (int port : ports) {
             sb.append(port);
             sb.append(",");
         }
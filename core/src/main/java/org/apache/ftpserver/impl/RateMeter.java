@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.ftpserver.ftplet.ThroughputStatistics;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Measures the rate of the data transferred, as exponentially weighted
+ * moving averages over 1, 5 and 15 minutes. Marking only adds to a
+ * {@link LongAdder}, the averages are updated every five seconds by the
+ * first thread noticing the interval has elapsed.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class RateMeter implements ThroughputStatistics {
+
+    private static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * Missed ticks beyond this number do not change the averages
+     */
+    private static final long MAX_TICKS = 15 * 60 / 5 * 4;
+
+    private static final double ONE_MINUTE_ALPHA = alpha(1);
+
+    private static final double FIVE_MINUTES_ALPHA = alpha(5);
+
+    private static final double FIFTEEN_MINUTES_ALPHA = alpha(15);
+
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Bytes marked since the last tick
+     */
+    private final LongAdder uncounted = new LongAdder();
+
+    private final AtomicLong lastTick;
+
+    private volatile boolean initialized = false;
+
+    private volatile double oneMinuteRate = 0.0;
+
+    private volatile double fiveMinuteRate = 0.0;
+
+    private volatile double fifteenMinuteRate = 0.0;
+
+    public RateMeter() {
+        lastTick = new AtomicLong(System.nanoTime());
+    }
+
+    private static double alpha(int minutes) {
+        return 1 - Math.exp(-5.0 / 60.0 / minutes);
+    }
+
+    /**
+     * Record transferred bytes.
+     */
+    public void mark(final long size) {
+        tickIfNecessary();
+        count.add(size);
+        uncounted.add(size);
+    }
+
+    private void tickIfNecessary() {
+        long oldTick = lastTick.get();
+        long age = System.nanoTime() - oldTick;
+        if (age > TICK_INTERVAL) {
+            long newTick = oldTick + age - age % TICK_INTERVAL;
+            if (lastTick.compareAndSet(oldTick, newTick)) {
+                long ticks = Math.min(age / TICK_INTERVAL, MAX_TICKS);
+                for (long i = 0; i < ticks; i++) {
+                    tick();
+                }
+            }
+        }
+    }
+
+    private void tick() {
+        double instantRate = uncounted.sumThenReset()
+                / (double) TimeUnit.NANOSECONDS.toSeconds(TICK_INTERVAL);
+        if (initialized) {
+            oneMinuteRate += ONE_MINUTE_ALPHA * (instantRate - oneMinuteRate);
+            fiveMinuteRate += FIVE_MINUTES_ALPHA
+                    * (instantRate - fiveMinuteRate);
+            fifteenMinuteRate += FIFTEEN_MINUTES_ALPHA
+                    * (instantRate - fifteenMinuteRate);
+        } else {
+            oneMinuteRate = instantRate;
+            fiveMinuteRate = instantRate;
+            fifteenMinuteRate = instantRate;
+            initialized = true;
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getOneMinuteRate() {
+        tickIfNecessary();
+        return oneMinuteRate;
+    }
+
+    public double getFiveMinuteRate() {
+        tickIfNecessary();
+        return fiveMinuteRate;
+    }
+
+    public double getFifteenMinuteRate() {
+        tickIfNecessary();
+        return fifteenMinuteRate;
+    }
+}
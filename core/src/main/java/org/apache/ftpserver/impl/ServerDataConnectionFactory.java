@@ -64,6 +64,17 @@ public interface ServerDataConnectionFactory extends DataConnectionFactory {
      */
     boolean isTimeout(long currTime);
 
+    /**
+     * Close the data connection if it is idle, atomically with respect to
+     * its opening so that a data connection being used is never closed. The
+     * default implementation never closes the data connection.
+     * 
+     * @return true if the data connection has been closed
+     */
+    default boolean closeIfTimedOut(long currTime) {
+        return false;
+    }
+
     /**
      * Dispose data connection - close all the sockets.
      */
@@ -19,6 +19,8 @@
 
 package org.apache.ftpserver.impl;
 
+import java.net.InetAddress;
+
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpStatistics;
 
@@ -87,6 +89,12 @@ public interface ServerFtpStatistics extends FtpStatistics {
      */
     void setLoginFail(FtpIoSession session);
 
+    /**
+     * Get the number of recent failed logins from an IP address. Failed
+     * logins are forgotten after a successful login from the same address.
+     */
+    int getRecentFailedLoginNumber(InetAddress address);
+
     /**
      * Decrement current login count.
      */
@@ -98,4 +106,14 @@ public interface ServerFtpStatistics extends FtpStatistics {
      * disconnects.
      */
     void resetStatisticsCounters();
+
+    /**
+     * Set the transfer rate limits to report the bandwidth utilization of.
+     */
+    void setTransferRateLimiter(TransferRateLimiter transferRateLimiter);
+
+    /**
+     * Set the recorded transfer rates and latencies to report.
+     */
+    void setMetrics(FtpMetrics metrics);
 }
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoEvent;
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Runs the events of each session one at a time and in order, on an
+ * unbounded {@link ExecutorService} such as a virtual thread per task
+ * executor. Unlike {@link org.apache.mina.filter.executor.OrderedThreadPoolExecutor}
+ * it does not limit the number of sessions processed concurrently.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SessionOrderedExecutor implements Executor {
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(SessionOrderedExecutor.class);
+
+    private static final AttributeKey TASKS_QUEUE = new AttributeKey(
+            SessionOrderedExecutor.class, "tasksQueue");
+
+    private final ExecutorService executor;
+
+    public SessionOrderedExecutor(final ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Execute the task. {@link IoEvent}s are executed after the previous
+     * events of the same session have completed, other tasks are executed
+     * immediately.
+     */
+    public void execute(Runnable task) {
+        if (task instanceof IoEvent) {
+            getSessionTasks(((IoEvent) task).getSession()).add(task);
+        } else {
+            executor.execute(task);
+        }
+    }
+
+    private SessionTasks getSessionTasks(IoSession session) {
+        SessionTasks tasks = (SessionTasks) session.getAttribute(TASKS_QUEUE);
+        if (tasks == null) {
+            tasks = new SessionTasks();
+            SessionTasks oldTasks = (SessionTasks) session
+                    .setAttributeIfAbsent(TASKS_QUEUE, tasks);
+            if (oldTasks != null) {
+                tasks = oldTasks;
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * Stop accepting new tasks.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Wait for the running tasks to complete after a shutdown.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * The pending tasks of a session, run by at most one thread at a time.
+     */
+    private class SessionTasks implements Runnable {
+
+        private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        public void add(Runnable task) {
+            queue.add(task);
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                    throw e;
+                }
+            }
+        }
+
+        public void run() {
+            Runnable task;
+            while ((task = queue.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LOG.warn("Session task threw exception", e);
+                }
+            }
+            scheduled.set(false);
+
+            // a task might have been added after the last poll
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
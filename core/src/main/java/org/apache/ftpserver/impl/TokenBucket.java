@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * A token bucket limiting the rate at which bytes are transferred. The bucket
+ * fills up at the configured rate until it holds the burst size. Bytes taken
+ * from an empty bucket are borrowed, and the caller is told how long to wait
+ * for the debt to be repaid before transferring more. This keeps the average
+ * rate at the limit while spreading the data evenly over time, and an idle
+ * client can at most send the burst size at line rate.
+ * 
+ * Thread safe, a bucket can be shared by several transfers.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final int rate;
+
+    private final long burstSize;
+
+    private double tokens;
+
+    private long lastRefillTime;
+
+    private long windowStartTime;
+
+    private long windowBytes;
+
+    private double utilization;
+
+    /**
+     * Create a full bucket.
+     * 
+     * @param rate
+     *            The rate in bytes per second, must be positive
+     * @param burstSize
+     *            The maximum number of bytes the bucket can hold, one second
+     *            worth of data if zero or less
+     */
+    public TokenBucket(final int rate, final long burstSize) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+        this.rate = rate;
+        this.burstSize = burstSize > 0 ? burstSize : rate;
+
+        tokens = this.burstSize;
+        lastRefillTime = System.nanoTime();
+        windowStartTime = lastRefillTime;
+    }
+
+    /**
+     * @return The rate in bytes per second
+     */
+    public int getRate() {
+        return rate;
+    }
+
+    /**
+     * @return The maximum number of bytes the bucket can hold
+     */
+    public long getBurstSize() {
+        return burstSize;
+    }
+
+    /**
+     * Take bytes from the bucket.
+     * 
+     * @param bytes
+     *            The number of bytes about to be transferred
+     * @return The time in nanoseconds to wait for the bucket to be refilled
+     *         before transferring more, zero if there is no need to wait
+     */
+    public synchronized long take(long bytes) {
+        long now = System.nanoTime();
+        tokens = Math.min(burstSize, tokens + (double) (now - lastRefillTime)
+                * rate / NANOS_PER_SECOND);
+        lastRefillTime = now;
+
+        updateUtilization(now);
+        windowBytes += bytes;
+
+        tokens -= bytes;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-tokens * NANOS_PER_SECOND / rate);
+    }
+
+    /**
+     * Get the share of the rate used recently, measured over periods of at
+     * least one second.
+     * 
+     * @return The utilization, 1.0 when transferring at the full rate
+     */
+    public synchronized double getUtilization() {
+        updateUtilization(System.nanoTime());
+        return utilization;
+    }
+
+    private void updateUtilization(long now) {
+        long elapsed = now - windowStartTime;
+        if (elapsed >= NANOS_PER_SECOND) {
+            utilization = (double) windowBytes * NANOS_PER_SECOND / elapsed
+                    / rate;
+            windowStartTime = now;
+            windowBytes = 0;
+        }
+    }
+}
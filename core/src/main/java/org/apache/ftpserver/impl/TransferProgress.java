@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ftpserver.ftplet.FtpRequest;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * The progress of the data transfer command being executed for a session,
+ * e.g. RETR or LIST. Updated by the data connections as data is sent or
+ * received.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class TransferProgress {
+
+    private final FtpRequest request;
+
+    private final long startTime = System.currentTimeMillis();
+
+    private final long startNanos = System.nanoTime();
+
+    private final AtomicLong transferredSize = new AtomicLong(0L);
+
+    private volatile long expectedSize = -1L;
+
+    private boolean completed = false;
+
+    /**
+     * The tasks to run once the command has completed, guarded by this
+     */
+    private final List<Runnable> completionTasks = new ArrayList<Runnable>();
+
+    public TransferProgress(final FtpRequest request) {
+        this.request = request;
+    }
+
+    /**
+     * The command transferring the data.
+     */
+    public FtpRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * The time the command started, in milliseconds.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * The number of bytes transferred so far.
+     */
+    public long getTransferredSize() {
+        return transferredSize.get();
+    }
+
+    /**
+     * The time elapsed since the start of the command, in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Add to the number of bytes transferred.
+     *
+     * @return The number of bytes transferred so far
+     */
+    public long increaseTransferredSize(final long increment) {
+        return transferredSize.addAndGet(increment);
+    }
+
+    /**
+     * The total number of bytes to transfer, -1 if not known.
+     */
+    public long getExpectedSize() {
+        return expectedSize;
+    }
+
+    public void setExpectedSize(final long expectedSize) {
+        this.expectedSize = expectedSize;
+    }
+
+    /**
+     * The average transfer rate since the start of the command.
+     *
+     * @return The rate in bytes per second
+     */
+    public long getRate() {
+        long elapsed = System.currentTimeMillis() - startTime;
+        if (elapsed <= 0) {
+            return 0L;
+        }
+        return getTransferredSize() * 1000L / elapsed;
+    }
+
+    /**
+     * Estimate the time until the transfer completes at the current rate.
+     *
+     * @return The remaining time in seconds, -1 if not known
+     */
+    public long getRemainingTime() {
+        long rate = getRate();
+        if (expectedSize < 0 || rate <= 0) {
+            return -1L;
+        }
+        return Math.max(0L, expectedSize - getTransferredSize()) / rate;
+    }
+
+    /**
+     * The command has sent its final reply.
+     */
+    void complete() {
+        List<Runnable> tasks;
+        synchronized (this) {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            tasks = new ArrayList<Runnable>(completionTasks);
+            completionTasks.clear();
+        }
+        for (Runnable task : tasks) {
+            task.run();
+        }
+    }
+
+    /**
+     * Run a task once the command has sent its final reply, right away if
+     * it already has. The task is run by the thread completing the command,
+     * before the requests received in the meantime are executed, and must
+     * not block.
+     */
+    public void whenComplete(final Runnable task) {
+        synchronized (this) {
+            if (!completed) {
+                completionTasks.add(task);
+                return;
+            }
+        }
+        task.run();
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.ftpserver.ConnectionConfig;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.listener.Listener;
+import org.apache.ftpserver.usermanager.impl.TransferRateRequest;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Keeps the token buckets enforcing the transfer rate limits of a server.
+ * The rates of a user, given by the user's
+ * {@link org.apache.ftpserver.usermanager.impl.TransferRatePermission}, apply
+ * to each transfer on its own, or to all transfers of that user combined if
+ * {@link ConnectionConfig#isUserRatesShared()}. The rates of a {@link Listener} are
+ * shared by all transfers of its sessions. The per IP and server wide rates
+ * are taken from the {@link ConnectionConfig}. Buckets of users and IP
+ * addresses are dropped when their last transfer completes.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class TransferRateLimiter {
+
+    private final FtpServerContext serverContext;
+
+    private final int maxDownloadRatePerIp;
+
+    private final int maxUploadRatePerIp;
+
+    private final boolean userRatesShared;
+
+    private final TokenBucket globalDownloadBucket;
+
+    private final TokenBucket globalUploadBucket;
+
+    private final BucketRegistry<String> userDownloadBuckets = new BucketRegistry<>();
+
+    private final BucketRegistry<String> userUploadBuckets = new BucketRegistry<>();
+
+    private final BucketRegistry<InetAddress> ipDownloadBuckets = new BucketRegistry<>();
+
+    private final BucketRegistry<InetAddress> ipUploadBuckets = new BucketRegistry<>();
+
+    private final Map<Listener, TokenBucket> listenerDownloadBuckets = new HashMap<>();
+
+    private final Map<Listener, TokenBucket> listenerUploadBuckets = new HashMap<>();
+
+    public TransferRateLimiter(final FtpServerContext serverContext) {
+        this.serverContext = serverContext;
+
+        ConnectionConfig connectionConfig = serverContext.getConnectionConfig();
+        maxDownloadRatePerIp = connectionConfig.getMaxDownloadRatePerIp();
+        maxUploadRatePerIp = connectionConfig.getMaxUploadRatePerIp();
+        userRatesShared = connectionConfig.isUserRatesShared();
+        globalDownloadBucket = createBucket(connectionConfig
+                .getMaxDownloadRate());
+        globalUploadBucket = createBucket(connectionConfig.getMaxUploadRate());
+    }
+
+    private static TokenBucket createBucket(int rate) {
+        return rate > 0 ? new TokenBucket(rate, 0) : null;
+    }
+
+    /**
+     * Get the shaper for a new transfer of a session. The shaper must be
+     * closed when the transfer is done.
+     * 
+     * @param upload
+     *            true for a transfer from the client, false for a transfer
+     *            to the client
+     */
+    public TransferShaper open(FtpIoSession session, boolean upload) {
+        List<TokenBucket> buckets = new ArrayList<>();
+
+        String userName = null;
+        TokenBucket userBucket = null;
+        User user = session.getUser();
+        if (user != null) {
+            TransferRateRequest transferRateRequest = new TransferRateRequest();
+            transferRateRequest = (TransferRateRequest) user
+                    .authorize(transferRateRequest);
+            if (transferRateRequest != null) {
+                int rate = upload ? transferRateRequest.getMaxUploadRate()
+                        : transferRateRequest.getMaxDownloadRate();
+                if (rate > 0 && userRatesShared) {
+                    userName = user.getName();
+                    userBucket = getUserBuckets(upload).acquire(userName,
+                            rate, transferRateRequest.getBurstSize());
+                    buckets.add(userBucket);
+                } else if (rate > 0) {
+                    buckets.add(new TokenBucket(rate, transferRateRequest
+                            .getBurstSize()));
+                }
+            }
+        }
+
+        InetAddress address = null;
+        TokenBucket ipBucket = null;
+        int ipRate = upload ? maxUploadRatePerIp : maxDownloadRatePerIp;
+        SocketAddress remoteAddress = session.getRemoteAddress();
+        if (ipRate > 0 && remoteAddress instanceof InetSocketAddress) {
+            address = ((InetSocketAddress) remoteAddress).getAddress();
+            ipBucket = getIpBuckets(upload).acquire(address, ipRate, 0);
+            buckets.add(ipBucket);
+        }
+
+        Listener listener = session.getListener();
+        if (listener != null) {
+            TokenBucket listenerBucket = getListenerBucket(listener, upload);
+            if (listenerBucket != null) {
+                buckets.add(listenerBucket);
+            }
+        }
+
+        TokenBucket globalBucket = upload ? globalUploadBucket
+                : globalDownloadBucket;
+        if (globalBucket != null) {
+            buckets.add(globalBucket);
+        }
+
+        return new TransferShaper(this, upload, userName, userBucket,
+                address, ipBucket, buckets.toArray(new TokenBucket[buckets
+                        .size()]));
+    }
+
+    /**
+     * Get the bucket shared by the transfers of a listener, null if the
+     * listener is not rate limited.
+     */
+    private synchronized TokenBucket getListenerBucket(Listener listener,
+            boolean upload) {
+        Map<Listener, TokenBucket> listenerBuckets = upload ? listenerUploadBuckets
+                : listenerDownloadBuckets;
+        if (!listenerBuckets.containsKey(listener)) {
+            int rate = upload ? listener.getMaxUploadRate() : listener
+                    .getMaxDownloadRate();
+            listenerBuckets.put(listener, createBucket(rate));
+        }
+        return listenerBuckets.get(listener);
+    }
+
+    /**
+     * Get the utilization of the rate limits in use, see
+     * {@link TokenBucket#getUtilization()}. The limits are named after their
+     * scope and direction, for example "server.download",
+     * "listener.default.upload", "user.admin.download" or
+     * "ip.127.0.0.1.upload". The limits of users are only reported when they
+     * are shared by the transfers of a user.
+     * 
+     * @return The utilization of the limits, by name
+     */
+    public Map<String, Double> getUtilization() {
+        Map<String, Double> utilization = new TreeMap<>();
+        if (globalDownloadBucket != null) {
+            utilization.put("server.download", globalDownloadBucket
+                    .getUtilization());
+        }
+        if (globalUploadBucket != null) {
+            utilization.put("server.upload", globalUploadBucket
+                    .getUtilization());
+        }
+
+        Map<Listener, TokenBucket> downloadBuckets;
+        Map<Listener, TokenBucket> uploadBuckets;
+        synchronized (this) {
+            downloadBuckets = new HashMap<>(listenerDownloadBuckets);
+            uploadBuckets = new HashMap<>(listenerUploadBuckets);
+        }
+        for (Map.Entry<String, Listener> entry : serverContext.getListeners()
+                .entrySet()) {
+            addUtilization(utilization, "listener." + entry.getKey()
+                    + ".download", downloadBuckets.get(entry.getValue()));
+            addUtilization(utilization, "listener." + entry.getKey()
+                    + ".upload", uploadBuckets.get(entry.getValue()));
+        }
+
+        for (Map.Entry<String, TokenBucket> entry : userDownloadBuckets
+                .getBuckets().entrySet()) {
+            addUtilization(utilization, "user." + entry.getKey()
+                    + ".download", entry.getValue());
+        }
+        for (Map.Entry<String, TokenBucket> entry : userUploadBuckets
+                .getBuckets().entrySet()) {
+            addUtilization(utilization, "user." + entry.getKey() + ".upload",
+                    entry.getValue());
+        }
+        for (Map.Entry<InetAddress, TokenBucket> entry : ipDownloadBuckets
+                .getBuckets().entrySet()) {
+            addUtilization(utilization, "ip."
+                    + entry.getKey().getHostAddress() + ".download", entry
+                    .getValue());
+        }
+        for (Map.Entry<InetAddress, TokenBucket> entry : ipUploadBuckets
+                .getBuckets().entrySet()) {
+            addUtilization(utilization, "ip."
+                    + entry.getKey().getHostAddress() + ".upload", entry
+                    .getValue());
+        }
+        return utilization;
+    }
+
+    private static void addUtilization(Map<String, Double> utilization,
+            String name, TokenBucket bucket) {
+        if (bucket != null) {
+            utilization.put(name, bucket.getUtilization());
+        }
+    }
+
+    /**
+     * Release the buckets of a completed transfer.
+     */
+    void release(boolean upload, String userName, TokenBucket userBucket,
+            InetAddress address, TokenBucket ipBucket) {
+        if (userBucket != null) {
+            getUserBuckets(upload).release(userName, userBucket);
+        }
+        if (ipBucket != null) {
+            getIpBuckets(upload).release(address, ipBucket);
+        }
+    }
+
+    private BucketRegistry<String> getUserBuckets(boolean upload) {
+        return upload ? userUploadBuckets : userDownloadBuckets;
+    }
+
+    private BucketRegistry<InetAddress> getIpBuckets(boolean upload) {
+        return upload ? ipUploadBuckets : ipDownloadBuckets;
+    }
+
+    /**
+     * The buckets in use by the transfers of users or IP addresses.
+     */
+    private static class BucketRegistry<K> {
+
+        private final Map<K, SharedBucket> buckets = new HashMap<>();
+
+        /**
+         * Get the bucket for the key, creating it if no transfer is using
+         * one or the limits have changed.
+         */
+        public synchronized TokenBucket acquire(K key, int rate,
+                long burstSize) {
+            SharedBucket shared = buckets.get(key);
+            if (shared == null || shared.rate != rate
+                    || shared.burstSize != burstSize) {
+                shared = new SharedBucket(rate, burstSize);
+                buckets.put(key, shared);
+            }
+            shared.references++;
+            return shared.bucket;
+        }
+
+        public synchronized Map<K, TokenBucket> getBuckets() {
+            Map<K, TokenBucket> snapshot = new HashMap<>();
+            for (Map.Entry<K, SharedBucket> entry : buckets.entrySet()) {
+                snapshot.put(entry.getKey(), entry.getValue().bucket);
+            }
+            return snapshot;
+        }
+
+        public synchronized void release(K key, TokenBucket bucket) {
+            SharedBucket shared = buckets.get(key);
+
+            // the bucket might have been replaced as the limits changed
+            if (shared != null && shared.bucket == bucket) {
+                shared.references--;
+                if (shared.references == 0) {
+                    buckets.remove(key);
+                }
+            }
+        }
+    }
+
+    private static class SharedBucket {
+
+        private final int rate;
+
+        private final long burstSize;
+
+        private final TokenBucket bucket;
+
+        private int references = 0;
+
+        public SharedBucket(final int rate, final long burstSize) {
+            this.rate = rate;
+            this.burstSize = burstSize;
+            bucket = new TokenBucket(rate, burstSize);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Paces a single transfer according to the token buckets of the rate limits
+ * that apply to it. The transfer has to wait for the slowest of the buckets.
+ * Must be closed when the transfer is done, releasing any shared buckets.
+ * 
+ * Bytes are charged to the buckets in quanta of about 50 ms worth of data.
+ * As the waits of the transfers sharing a bucket are queued in the order of
+ * their charges, each active transfer gets an equal share of the rate, and
+ * the capacity left unused by slow transfers goes to the others.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class TransferShaper {
+
+    /**
+     * A shaper for transfers without any rate limit
+     */
+    public static final TransferShaper UNLIMITED = new TransferShaper(null,
+            false, null, null, null, null, new TokenBucket[0]);
+
+    /**
+     * The smallest number of bytes charged at once
+     */
+    private static final int MIN_QUANTUM = 4096;
+
+    /**
+     * The largest number of bytes charged at once, for very high rates
+     */
+    private static final int MAX_QUANTUM = 256 * 1024;
+
+    private final TransferRateLimiter limiter;
+
+    private final boolean upload;
+
+    private final String userName;
+
+    private final TokenBucket userBucket;
+
+    private final InetAddress address;
+
+    private final TokenBucket ipBucket;
+
+    private final TokenBucket[] buckets;
+
+    private final int quantum;
+
+    private long pendingBytes = 0;
+
+    private boolean closed = false;
+
+    TransferShaper(final TransferRateLimiter limiter, final boolean upload,
+            final String userName, final TokenBucket userBucket,
+            final InetAddress address, final TokenBucket ipBucket,
+            final TokenBucket[] buckets) {
+        this.limiter = limiter;
+        this.upload = upload;
+        this.userName = userName;
+        this.userBucket = userBucket;
+        this.address = address;
+        this.ipBucket = ipBucket;
+        this.buckets = buckets;
+
+        long smallestQuantum = MAX_QUANTUM;
+        for (TokenBucket bucket : buckets) {
+            long bucketQuantum = Math.min(bucket.getRate() / 20, bucket
+                    .getBurstSize());
+            smallestQuantum = Math.min(smallestQuantum, Math.max(MIN_QUANTUM,
+                    bucketQuantum));
+        }
+        quantum = (int) smallestQuantum;
+    }
+
+    /**
+     * @return true if the transfer is rate limited
+     */
+    public boolean isLimited() {
+        return buckets.length > 0;
+    }
+
+    /**
+     * Get the number of bytes to transfer at once. When rate limited, this is
+     * at most the quantum charged to the buckets, so that the data is sent
+     * evenly.
+     */
+    public int getChunkSize(long maxChunkSize) {
+        if (!isLimited()) {
+            return (int) maxChunkSize;
+        }
+        return (int) Math.min(maxChunkSize, quantum);
+    }
+
+    /**
+     * Account for bytes of the transfer. Called by one thread at a time.
+     * 
+     * @return The time in nanoseconds to wait before transferring more, zero
+     *         if there is no need to wait
+     */
+    public long take(long bytes) {
+        if (!isLimited()) {
+            return 0;
+        }
+
+        pendingBytes += bytes;
+        if (pendingBytes < quantum) {
+            return 0;
+        }
+
+        long delay = 0;
+        for (TokenBucket bucket : buckets) {
+            delay = Math.max(delay, bucket.take(pendingBytes));
+        }
+        pendingBytes = 0;
+        return delay;
+    }
+
+    /**
+     * Account for bytes of the transfer and block the calling thread until
+     * more may be transferred.
+     * 
+     * @return false if the thread was interrupted while waiting
+     */
+    public boolean await(long bytes) {
+        long delay = take(bytes);
+        if (delay > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Release the shared buckets, the transfer is done. This method is
+     * idempotent.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+
+        if (limiter != null) {
+            limiter.release(upload, userName, userBucket, address, ipBucket);
+        }
+    }
+}
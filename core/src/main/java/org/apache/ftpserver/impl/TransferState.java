@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.LinkedList;
+import java.util.Queue;
+
+import org.apache.ftpserver.ftplet.FtpRequest;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Keeps track of the data transfer in progress for a session, and of the
+ * requests received while it is running. Only out of band commands, e.g.
+ * ABOR, are executed during a transfer, the other requests are kept until it
+ * has completed so that the replies are sent in order. At most
+ * {@link #MAX_DEFERRED_REQUESTS} requests are kept.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class TransferState {
+
+    /**
+     * The maximum number of requests kept while a data transfer is running
+     */
+    public static final int MAX_DEFERRED_REQUESTS = 32;
+
+    private volatile TransferProgress transfer = null;
+
+    private final Queue<FtpRequest> deferredRequests = new LinkedList<FtpRequest>();
+
+    /**
+     * Whether the deferred requests are being executed
+     */
+    private boolean draining = false;
+
+    /**
+     * The data transfer in progress, null if none.
+     */
+    public TransferProgress getTransfer() {
+        return transfer;
+    }
+
+    /**
+     * Decide whether a request must wait for the data transfer in progress,
+     * or for the requests already waiting, to complete.
+     *
+     * @param request
+     *            The received request
+     * @param outOfBand
+     *            Whether the request can be executed during a transfer
+     * @return true if the request was kept, to be returned later by
+     *         {@link #nextDeferredRequest()}
+     */
+    public synchronized boolean deferRequest(final FtpRequest request,
+            final boolean outOfBand) {
+        if (transfer == null && !draining && deferredRequests.isEmpty()) {
+            return false;
+        }
+        if (outOfBand && transfer != null) {
+            return false;
+        }
+        deferredRequests.add(request);
+        return true;
+    }
+
+    /**
+     * Whether no more requests can be kept. Requests are only added by the
+     * thread receiving the requests of the session.
+     */
+    public synchronized boolean isFull() {
+        return deferredRequests.size() >= MAX_DEFERRED_REQUESTS;
+    }
+
+    /**
+     * A data transfer command is about to be executed.
+     */
+    public synchronized TransferProgress beginTransfer(
+            final FtpRequest request) {
+        transfer = new TransferProgress(request);
+        return transfer;
+    }
+
+    /**
+     * The data transfer command has sent its final reply.
+     *
+     * @return true if the caller must execute the deferred requests, using
+     *         {@link #nextDeferredRequest()}
+     */
+    public synchronized boolean endTransfer() {
+        if (transfer != null) {
+            transfer.complete();
+            transfer = null;
+        }
+        if (draining || deferredRequests.isEmpty()) {
+            return false;
+        }
+        draining = true;
+        return true;
+    }
+
+    /**
+     * Get the next deferred request to execute.
+     *
+     * @return The request, or null if there are none left or a new data
+     *         transfer has started. The caller must then stop executing
+     *         deferred requests.
+     */
+    public synchronized FtpRequest nextDeferredRequest() {
+        FtpRequest request = null;
+        if (transfer == null) {
+            request = deferredRequests.poll();
+        }
+        if (request == null) {
+            draining = false;
+        }
+        return request;
+    }
+
+    /**
+     * Drop the deferred requests, e.g. when the session is closed.
+     */
+    public synchronized void clear() {
+        deferredRequests.clear();
+        if (transfer != null) {
+            transfer.complete();
+            transfer = null;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.jmx;
+
+import java.util.Date;
+
+/**
+ * Management interface of a running FTP server, registered under
+ * <code>org.apache.ftpserver:type=FtpServer,name=&lt;name&gt;</code>. The
+ * sessions of all the listeners can be inspected, and the misbehaving ones
+ * closed, without restarting the server.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface FtpServerMXBean {
+
+    /**
+     * Whether the server is started and not stopped yet.
+     */
+    boolean isStarted();
+
+    /**
+     * Whether the listeners of the server are suspended.
+     */
+    boolean isSuspended();
+
+    /**
+     * Stop accepting connections.
+     */
+    void suspend();
+
+    /**
+     * Accept connections again after {@link #suspend()}.
+     */
+    void resume();
+
+    /**
+     * The time the statistics were last reset, usually the start time.
+     */
+    Date getStartTime();
+
+    int getTotalConnectionNumber();
+
+    int getCurrentConnectionNumber();
+
+    int getTotalLoginNumber();
+
+    int getCurrentLoginNumber();
+
+    int getTotalFailedLoginNumber();
+
+    int getTotalUploadNumber();
+
+    int getTotalDownloadNumber();
+
+    long getTotalUploadSize();
+
+    long getTotalDownloadSize();
+
+    /**
+     * The data transfer rate to the clients over the last minute.
+     * @return The rate in bytes per second
+     */
+    double getDownloadRate();
+
+    /**
+     * The data transfer rate from the clients over the last minute.
+     * @return The rate in bytes per second
+     */
+    double getUploadRate();
+
+    /**
+     * The open sessions of all the listeners.
+     */
+    SessionInfo[] getSessions();
+
+    /**
+     * Close a session, aborting its data transfer if any.
+     * @param sessionId The session id, see {@link SessionInfo#getId()}
+     * @return false if the session was not found
+     */
+    boolean killSession(String sessionId);
+
+    /**
+     * Close all the sessions of a user.
+     * @param userName The user name
+     * @return The number of closed sessions
+     */
+    int killUserSessions(String userName);
+
+    /**
+     * Abort the data transfer of a session, as if the client had sent ABOR.
+     * The session is kept open.
+     * @param sessionId The session id, see {@link SessionInfo#getId()}
+     * @return false if the session was not found or was not transferring
+     *         data
+     */
+    boolean abortTransfer(String sessionId);
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.jmx;
+
+/**
+ * Management interface of a listener of a running FTP server, registered
+ * under
+ * <code>org.apache.ftpserver:type=Listener,server=&lt;server name&gt;,name=&lt;listener name&gt;</code>.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface ListenerMXBean {
+
+    String getName();
+
+    String getServerAddress();
+
+    int getPort();
+
+    boolean isImplicitSsl();
+
+    boolean isStopped();
+
+    boolean isSuspended();
+
+    /**
+     * Stop accepting connections.
+     */
+    void suspend();
+
+    /**
+     * Accept connections again after {@link #suspend()}.
+     */
+    void resume();
+
+    /**
+     * The number of open sessions.
+     */
+    int getActiveSessionCount();
+
+    /**
+     * The number of passive ports reserved by the sessions.
+     * @return The number of ports, -1 if not known
+     */
+    int getPassivePortsInUse();
+
+    /**
+     * The number of connections accepted since the statistics were reset.
+     */
+    long getAcceptedConnections();
+
+    /**
+     * The rate at which connections were accepted over the last minute.
+     * @return The rate in connections per second
+     */
+    double getAcceptRate();
+
+    /**
+     * The open sessions.
+     */
+    SessionInfo[] getSessions();
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.jmx;
+
+import java.util.Date;
+
+/**
+ * A snapshot of an open session, a row of the session tables of
+ * {@link FtpServerMXBean} and {@link ListenerMXBean}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SessionInfo {
+
+    private final String id;
+
+    private final String listenerName;
+
+    private final String remoteAddress;
+
+    private final String userName;
+
+    private final Date creationTime;
+
+    private final Date loginTime;
+
+    private final Date lastAccessTime;
+
+    private final long readBytes;
+
+    private final long writtenBytes;
+
+    private final String currentCommand;
+
+    private final boolean transferring;
+
+    private final long transferredBytes;
+
+    private final long expectedBytes;
+
+    private final long transferRate;
+
+    public SessionInfo(final String id, final String listenerName,
+            final String remoteAddress, final String userName,
+            final Date creationTime, final Date loginTime,
+            final Date lastAccessTime, final long readBytes,
+            final long writtenBytes, final String currentCommand,
+            final boolean transferring, final long transferredBytes,
+            final long expectedBytes, final long transferRate) {
+        this.id = id;
+        this.listenerName = listenerName;
+        this.remoteAddress = remoteAddress;
+        this.userName = userName;
+        this.creationTime = creationTime;
+        this.loginTime = loginTime;
+        this.lastAccessTime = lastAccessTime;
+        this.readBytes = readBytes;
+        this.writtenBytes = writtenBytes;
+        this.currentCommand = currentCommand;
+        this.transferring = transferring;
+        this.transferredBytes = transferredBytes;
+        this.expectedBytes = expectedBytes;
+        this.transferRate = transferRate;
+    }
+
+    /**
+     * The session id, as used by {@link FtpServerMXBean#killSession(String)}.
+     */
+    public String getId() {
+        return id;
+    }
+
+    public String getListenerName() {
+        return listenerName;
+    }
+
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    /**
+     * The name of the logged in user, null if not logged in.
+     */
+    public String getUserName() {
+        return userName;
+    }
+
+    public Date getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * The login time, null if not logged in.
+     */
+    public Date getLoginTime() {
+        return loginTime;
+    }
+
+    public Date getLastAccessTime() {
+        return lastAccessTime;
+    }
+
+    /**
+     * The number of bytes received, on the control and data connections.
+     */
+    public long getReadBytes() {
+        return readBytes;
+    }
+
+    /**
+     * The number of bytes sent, on the control and data connections.
+     */
+    public long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    /**
+     * The data transfer command in progress, or else the command executed
+     * last. Passwords are left out.
+     */
+    public String getCurrentCommand() {
+        return currentCommand;
+    }
+
+    /**
+     * Whether a data transfer is in progress.
+     */
+    public boolean isTransferring() {
+        return transferring;
+    }
+
+    /**
+     * The number of bytes transferred by the data transfer in progress.
+     */
+    public long getTransferredBytes() {
+        return transferredBytes;
+    }
+
+    /**
+     * The total number of bytes of the data transfer in progress, -1 if not
+     * known.
+     */
+    public long getExpectedBytes() {
+        return expectedBytes;
+    }
+
+    /**
+     * The average rate of the data transfer in progress.
+     * @return The rate in bytes per second
+     */
+    public long getTransferRate() {
+        return transferRate;
+    }
+}
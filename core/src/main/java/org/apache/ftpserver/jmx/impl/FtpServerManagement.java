@@ -0,0 +1,329 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.jmx.impl;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.FtpStatistics;
+import org.apache.ftpserver.ftplet.ThroughputStatistics;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.impl.DefaultFtpServer;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.TransferProgress;
+import org.apache.ftpserver.jmx.FtpServerMXBean;
+import org.apache.ftpserver.jmx.SessionInfo;
+import org.apache.ftpserver.listener.Listener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Exposes a running server, and its listeners, as MBeans of the platform
+ * MBean server. The values are read from the server when requested, nothing
+ * is recorded for the MBeans.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class FtpServerManagement implements FtpServerMXBean {
+
+    private static final Logger LOG = LoggerFactory
+            .getLogger(FtpServerManagement.class);
+
+    public static final String DOMAIN = "org.apache.ftpserver";
+
+    private final DefaultFtpServer server;
+
+    private final FtpServerContext serverContext;
+
+    private final String name;
+
+    private final List<ObjectName> registeredNames = new ArrayList<>();
+
+    /**
+     * @param name
+     *            The name of the server, used in the names of the MBeans
+     */
+    public FtpServerManagement(final DefaultFtpServer server,
+            final FtpServerContext serverContext, final String name) {
+        this.server = server;
+        this.serverContext = serverContext;
+        this.name = name;
+    }
+
+    /**
+     * Quote a value of an object name, only if required.
+     */
+    static String quote(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '=' || c == ':' || c == '"' || c == '*'
+                    || c == '?' || c == '\n') {
+                return ObjectName.quote(value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Register the MBeans of the server and of its listeners. Failures are
+     * logged, the server runs without them.
+     */
+    public synchronized void register() {
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            register(mbeanServer, new ObjectName(DOMAIN
+                    + ":type=FtpServer,name=" + quote(name)), this);
+
+            for (Map.Entry<String, Listener> entry : serverContext
+                    .getListeners().entrySet()) {
+                register(mbeanServer, new ObjectName(DOMAIN
+                        + ":type=Listener,server=" + quote(name) + ",name="
+                        + quote(entry.getKey())), new ListenerManagement(this,
+                        entry.getKey(), entry.getValue()));
+            }
+        } catch (JMException e) {
+            LOG.warn("Failed to register the MBeans of server " + name, e);
+        }
+    }
+
+    private void register(final MBeanServer mbeanServer,
+            final ObjectName objectName, final Object mbean)
+            throws JMException {
+        mbeanServer.registerMBean(mbean, objectName);
+        registeredNames.add(objectName);
+    }
+
+    /**
+     * Unregister the MBeans registered by {@link #register()}.
+     */
+    public synchronized void unregister() {
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName objectName : registeredNames) {
+            try {
+                mbeanServer.unregisterMBean(objectName);
+            } catch (JMException e) {
+                LOG.warn("Failed to unregister MBean " + objectName, e);
+            }
+        }
+        registeredNames.clear();
+    }
+
+    FtpServerContext getServerContext() {
+        return serverContext;
+    }
+
+    public boolean isStarted() {
+        return !server.isStopped();
+    }
+
+    public boolean isSuspended() {
+        return server.isSuspended();
+    }
+
+    public void suspend() {
+        server.suspend();
+    }
+
+    public void resume() {
+        server.resume();
+    }
+
+    public Date getStartTime() {
+        return serverContext.getFtpStatistics().getStartTime();
+    }
+
+    public int getTotalConnectionNumber() {
+        return serverContext.getFtpStatistics().getTotalConnectionNumber();
+    }
+
+    public int getCurrentConnectionNumber() {
+        return serverContext.getFtpStatistics().getCurrentConnectionNumber();
+    }
+
+    public int getTotalLoginNumber() {
+        return serverContext.getFtpStatistics().getTotalLoginNumber();
+    }
+
+    public int getCurrentLoginNumber() {
+        return serverContext.getFtpStatistics().getCurrentLoginNumber();
+    }
+
+    public int getTotalFailedLoginNumber() {
+        return serverContext.getFtpStatistics().getTotalFailedLoginNumber();
+    }
+
+    public int getTotalUploadNumber() {
+        return serverContext.getFtpStatistics().getTotalUploadNumber();
+    }
+
+    public int getTotalDownloadNumber() {
+        return serverContext.getFtpStatistics().getTotalDownloadNumber();
+    }
+
+    public long getTotalUploadSize() {
+        return serverContext.getFtpStatistics().getTotalUploadSize();
+    }
+
+    public long getTotalDownloadSize() {
+        return serverContext.getFtpStatistics().getTotalDownloadSize();
+    }
+
+    public double getDownloadRate() {
+        return getOneMinuteRate("server.download");
+    }
+
+    public double getUploadRate() {
+        return getOneMinuteRate("server.upload");
+    }
+
+    private double getOneMinuteRate(final String rateName) {
+        FtpStatistics stats = serverContext.getFtpStatistics();
+        ThroughputStatistics rate = stats.getThroughput().get(rateName);
+        return rate != null ? rate.getOneMinuteRate() : 0.0;
+    }
+
+    public SessionInfo[] getSessions() {
+        List<SessionInfo> infos = new ArrayList<>();
+        for (Map.Entry<String, Listener> entry : serverContext.getListeners()
+                .entrySet()) {
+            for (FtpIoSession session : getActiveSessions(entry.getValue())) {
+                infos.add(toSessionInfo(entry.getKey(), session));
+            }
+        }
+        return infos.toArray(new SessionInfo[infos.size()]);
+    }
+
+    /**
+     * The sessions of a listener, none if it is stopped.
+     */
+    static Set<FtpIoSession> getActiveSessions(final Listener listener) {
+        if (listener.isStopped()) {
+            return Collections.emptySet();
+        }
+        return listener.getActiveSessions();
+    }
+
+    static SessionInfo toSessionInfo(final String listenerName,
+            final FtpIoSession session) {
+        SocketAddress address = session.getRemoteAddress();
+        String remoteAddress = null;
+        if (address instanceof InetSocketAddress) {
+            InetSocketAddress inetAddress = (InetSocketAddress) address;
+            remoteAddress = inetAddress.getAddress().getHostAddress() + ":"
+                    + inetAddress.getPort();
+        } else if (address != null) {
+            remoteAddress = address.toString();
+        }
+
+        User user = session.getUser();
+        TransferProgress transfer = session.getTransferProgress();
+        FtpRequest request = transfer != null ? transfer.getRequest()
+                : session.getLastRequest();
+
+        return new SessionInfo(session.getSessionId().toString(),
+                listenerName, remoteAddress, user != null ? user.getName()
+                        : null, new Date(session.getCreationTime()), session
+                        .getLoginTime(), session.getLastAccessTime(), session
+                        .getReadBytes(), session.getWrittenBytes(),
+                toCommandLine(request), transfer != null,
+                transfer != null ? transfer.getTransferredSize() : 0L,
+                transfer != null ? transfer.getExpectedSize() : -1L,
+                transfer != null ? transfer.getRate() : 0L);
+    }
+
+    private static String toCommandLine(final FtpRequest request) {
+        if (request == null) {
+            return null;
+        } else if ("PASS".equals(request.getCommand())
+                || !request.hasArgument()) {
+            // never show a password
+            return request.getCommand();
+        } else {
+            return request.getCommand() + " " + request.getArgument();
+        }
+    }
+
+    private FtpIoSession findSession(final String sessionId) {
+        for (Listener listener : serverContext.getListeners().values()) {
+            for (FtpIoSession session : getActiveSessions(listener)) {
+                if (session.getSessionId().toString().equals(sessionId)) {
+                    return session;
+                }
+            }
+        }
+        return null;
+    }
+
+    public boolean killSession(final String sessionId) {
+        FtpIoSession session = findSession(sessionId);
+        if (session == null) {
+            return false;
+        }
+
+        LOG.info("Closing session {} of {} through JMX", sessionId, session
+                .getRemoteAddress());
+        session.closeNow();
+        return true;
+    }
+
+    public int killUserSessions(final String userName) {
+        int count = 0;
+        for (Listener listener : serverContext.getListeners().values()) {
+            for (FtpIoSession session : getActiveSessions(listener)) {
+                User user = session.getUser();
+                if (user != null && userName.equals(user.getName())) {
+                    session.closeNow();
+                    count++;
+                }
+            }
+        }
+        LOG.info("Closed {} sessions of user {} through JMX", count, userName);
+        return count;
+    }
+
+    public boolean abortTransfer(final String sessionId) {
+        FtpIoSession session = findSession(sessionId);
+        if (session == null || session.getTransferProgress() == null) {
+            return false;
+        }
+
+        LOG.info("Aborting the data transfer of session {} through JMX",
+                sessionId);
+        // the transfer command fails and replies 426, as for ABOR
+        session.getDataConnection().closeDataConnection();
+        return true;
+    }
+}
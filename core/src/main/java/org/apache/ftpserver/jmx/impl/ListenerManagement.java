@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.jmx.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ftpserver.DataConnectionConfiguration;
+import org.apache.ftpserver.ftplet.ThroughputStatistics;
+import org.apache.ftpserver.impl.DefaultDataConnectionConfiguration;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpMetrics;
+import org.apache.ftpserver.jmx.ListenerMXBean;
+import org.apache.ftpserver.jmx.SessionInfo;
+import org.apache.ftpserver.listener.Listener;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Exposes a listener of a running server, see {@link FtpServerManagement}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ListenerManagement implements ListenerMXBean {
+
+    private final FtpServerManagement server;
+
+    private final String name;
+
+    private final Listener listener;
+
+    public ListenerManagement(final FtpServerManagement server,
+            final String name, final Listener listener) {
+        this.server = server;
+        this.name = name;
+        this.listener = listener;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getServerAddress() {
+        return listener.getServerAddress();
+    }
+
+    public int getPort() {
+        return listener.getPort();
+    }
+
+    public boolean isImplicitSsl() {
+        return listener.isImplicitSsl();
+    }
+
+    public boolean isStopped() {
+        return listener.isStopped();
+    }
+
+    public boolean isSuspended() {
+        return listener.isSuspended();
+    }
+
+    public void suspend() {
+        listener.suspend();
+    }
+
+    public void resume() {
+        listener.resume();
+    }
+
+    public int getActiveSessionCount() {
+        return FtpServerManagement.getActiveSessions(listener).size();
+    }
+
+    public int getPassivePortsInUse() {
+        DataConnectionConfiguration config = listener
+                .getDataConnectionConfiguration();
+        if (config instanceof DefaultDataConnectionConfiguration) {
+            return ((DefaultDataConnectionConfiguration) config)
+                    .getPassivePortsInUse();
+        }
+        return -1;
+    }
+
+    private ThroughputStatistics getConnectionRate() {
+        FtpMetrics metrics = server.getServerContext().getFtpMetrics();
+        return metrics != null ? metrics.getConnectionRate(listener) : null;
+    }
+
+    public long getAcceptedConnections() {
+        ThroughputStatistics rate = getConnectionRate();
+        return rate != null ? rate.getCount() : 0L;
+    }
+
+    public double getAcceptRate() {
+        ThroughputStatistics rate = getConnectionRate();
+        return rate != null ? rate.getOneMinuteRate() : 0.0;
+    }
+
+    public SessionInfo[] getSessions() {
+        List<SessionInfo> infos = new ArrayList<>();
+        for (FtpIoSession session : FtpServerManagement
+                .getActiveSessions(listener)) {
+            infos.add(FtpServerManagement.toSessionInfo(name, session));
+        }
+        return infos.toArray(new SessionInfo[infos.size()]);
+    }
+}
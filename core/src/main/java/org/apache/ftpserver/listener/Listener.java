@@ -172,4 +172,24 @@ public interface Listener {
      *         return <code>null</code>.
      */
     SessionFilter getSessionFilter();
+
+    /**
+     * Get the maximum number of bytes per second sent to all clients of this
+     * listener together.
+     * @return The maximum download rate of this listener, 0 if not limited.
+     *         The default implementation does not limit the rate.
+     */
+    default int getMaxDownloadRate() {
+        return 0;
+    }
+
+    /**
+     * Get the maximum number of bytes per second received from all clients of
+     * this listener together.
+     * @return The maximum upload rate of this listener, 0 if not limited.
+     *         The default implementation does not limit the rate.
+     */
+    default int getMaxUploadRate() {
+        return 0;
+    }
 }
\ No newline at end of file
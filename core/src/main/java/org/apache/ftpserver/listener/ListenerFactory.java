@@ -61,6 +61,10 @@ public class ListenerFactory {
      */
     private SessionFilter sessionFilter = null;
 
+    private int maxDownloadRate = 0;
+
+    private int maxUploadRate = 0;
+
     /**
      * Default constructor
      */
@@ -84,6 +88,8 @@ public class ListenerFactory {
         blockedAddresses = listener.getBlockedAddresses();
         blockedSubnets = listener.getBlockedSubnets();
         this.sessionFilter = listener.getSessionFilter();
+        maxDownloadRate = listener.getMaxDownloadRate();
+        maxUploadRate = listener.getMaxUploadRate();
     }
 
     /**
@@ -106,10 +112,11 @@ public class ListenerFactory {
         if (blockedAddresses != null || blockedSubnets != null) {
             return new NioListener(serverAddress, port, implicitSsl, ssl,
                     dataConnectionConfig, idleTimeout, blockedAddresses,
-                    blockedSubnets);
+                    blockedSubnets, maxDownloadRate, maxUploadRate);
         } else {
             return new NioListener(serverAddress, port, implicitSsl, ssl,
-                    dataConnectionConfig, idleTimeout, sessionFilter);
+                    dataConnectionConfig, idleTimeout, sessionFilter,
+                    maxDownloadRate, maxUploadRate);
         }
     }
 
@@ -233,6 +240,46 @@ public class ListenerFactory {
         this.idleTimeout = idleTimeout;
     }
 
+    /**
+     * Get the maximum number of bytes per second sent to all clients of
+     * listeners created by this factory.
+     * @return The maximum download rate, 0 if not limited
+     */
+    public int getMaxDownloadRate() {
+        return maxDownloadRate;
+    }
+
+    /**
+     * Set the maximum number of bytes per second sent to all clients of
+     * listeners created by this factory. The limit is shared by all
+     * downloads on the listener, in addition to the limits of the users.
+     *
+     * @param maxDownloadRate The maximum download rate, 0 for no limit
+     */
+    public void setMaxDownloadRate(int maxDownloadRate) {
+        this.maxDownloadRate = maxDownloadRate;
+    }
+
+    /**
+     * Get the maximum number of bytes per second received from all clients of
+     * listeners created by this factory.
+     * @return The maximum upload rate, 0 if not limited
+     */
+    public int getMaxUploadRate() {
+        return maxUploadRate;
+    }
+
+    /**
+     * Set the maximum number of bytes per second received from all clients
+     * of listeners created by this factory. The limit is shared by all
+     * uploads on the listener, in addition to the limits of the users.
+     *
+     * @param maxUploadRate The maximum upload rate, 0 for no limit
+     */
+    public void setMaxUploadRate(int maxUploadRate) {
+        this.maxUploadRate = maxUploadRate;
+    }
+
     /**
      * @deprecated Replaced by the IpFilter.    
      * Retrieves the {@link InetAddress} for which listeners created by this factory blocks
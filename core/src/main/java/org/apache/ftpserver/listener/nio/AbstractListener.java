@@ -58,6 +58,10 @@ public abstract class AbstractListener implements Listener {
 
     private final DataConnectionConfiguration dataConnectionConfig;
 
+    private final int maxDownloadRate;
+
+    private final int maxUploadRate;
+
     /**
      * @deprecated Use the constructor with IpFilter instead. 
      * Constructor for internal use, do not use directly. Instead use {@link ListenerFactory}
@@ -66,6 +70,19 @@ public abstract class AbstractListener implements Listener {
     public AbstractListener(String serverAddress, int port, boolean implicitSsl, 
             SslConfiguration sslConfiguration, DataConnectionConfiguration dataConnectionConfig,
             int idleTimeout, List<InetAddress> blockedAddresses, List<Subnet> blockedSubnets) {
+        this(serverAddress, port, implicitSsl, sslConfiguration, dataConnectionConfig,
+                idleTimeout, blockedAddresses, blockedSubnets, 0, 0);
+    }
+
+    /**
+     * @deprecated Use the constructor with IpFilter instead. 
+     * Constructor for internal use, do not use directly. Instead use {@link ListenerFactory}
+     */
+    @Deprecated
+    public AbstractListener(String serverAddress, int port, boolean implicitSsl, 
+            SslConfiguration sslConfiguration, DataConnectionConfiguration dataConnectionConfig,
+            int idleTimeout, List<InetAddress> blockedAddresses, List<Subnet> blockedSubnets,
+            int maxDownloadRate, int maxUploadRate) {
         this.serverAddress = serverAddress;
         this.port = port;
         this.implicitSsl = implicitSsl;
@@ -75,6 +92,8 @@ public abstract class AbstractListener implements Listener {
         this.sessionFilter = createBlackListFilter(blockedAddresses, blockedSubnets);
         this.blockedAddresses = blockedAddresses;
         this.blockedSubnets = blockedSubnets;
+        this.maxDownloadRate = maxDownloadRate;
+        this.maxUploadRate = maxUploadRate;
     }
     
     /**
@@ -84,6 +103,17 @@ public abstract class AbstractListener implements Listener {
             boolean implicitSsl, SslConfiguration sslConfiguration,
             DataConnectionConfiguration dataConnectionConfig, int idleTimeout,
             SessionFilter sessionFilter) {
+        this(serverAddress, port, implicitSsl, sslConfiguration,
+                dataConnectionConfig, idleTimeout, sessionFilter, 0, 0);
+    }
+
+    /**
+     * Constructor for internal use, do not use directly. Instead use {@link ListenerFactory}
+     */
+    public AbstractListener(String serverAddress, int port,
+            boolean implicitSsl, SslConfiguration sslConfiguration,
+            DataConnectionConfiguration dataConnectionConfig, int idleTimeout,
+            SessionFilter sessionFilter, int maxDownloadRate, int maxUploadRate) {
         this.serverAddress = serverAddress;
         this.port = port;
         this.implicitSsl = implicitSsl;
@@ -93,6 +123,8 @@ public abstract class AbstractListener implements Listener {
         this.sessionFilter = sessionFilter;
         this.blockedAddresses = null;
         this.blockedSubnets = null;
+        this.maxDownloadRate = maxDownloadRate;
+        this.maxUploadRate = maxUploadRate;
     }
     
     /**
@@ -198,4 +230,18 @@ public abstract class AbstractListener implements Listener {
     public SessionFilter getSessionFilter() {
         return sessionFilter;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getMaxDownloadRate() {
+        return maxDownloadRate;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getMaxUploadRate() {
+        return maxUploadRate;
+    }
 }
@@ -79,14 +79,30 @@ public class NioListener extends AbstractListener {
      */
     @Deprecated
     public NioListener(String serverAddress, int port, boolean implicitSsl, SslConfiguration sslConfiguration, DataConnectionConfiguration dataConnectionConfig, int idleTimeout, List<InetAddress> blockedAddresses, List<Subnet> blockedSubnets) {
-    super(serverAddress, port, implicitSsl, sslConfiguration, dataConnectionConfig, idleTimeout, blockedAddresses, blockedSubnets);
+    this(serverAddress, port, implicitSsl, sslConfiguration, dataConnectionConfig, idleTimeout, blockedAddresses, blockedSubnets, 0, 0);
+    }
+
+    /**
+     * @deprecated Use the constructor with IpFilter instead. Constructor for internal use, do not use directly. Instead
+     *             use {@link ListenerFactory}
+     */
+    @Deprecated
+    public NioListener(String serverAddress, int port, boolean implicitSsl, SslConfiguration sslConfiguration, DataConnectionConfiguration dataConnectionConfig, int idleTimeout, List<InetAddress> blockedAddresses, List<Subnet> blockedSubnets, int maxDownloadRate, int maxUploadRate) {
+    super(serverAddress, port, implicitSsl, sslConfiguration, dataConnectionConfig, idleTimeout, blockedAddresses, blockedSubnets, maxDownloadRate, maxUploadRate);
     }
 
     /**
      * Constructor for internal use, do not use directly. Instead use {@link ListenerFactory}
      */
     public NioListener(String serverAddress, int port, boolean implicitSsl, SslConfiguration sslConfiguration, DataConnectionConfiguration dataConnectionConfig, int idleTimeout, SessionFilter sessionFilter) {
-    super(serverAddress, port, implicitSsl, sslConfiguration, dataConnectionConfig, idleTimeout, sessionFilter);
+    this(serverAddress, port, implicitSsl, sslConfiguration, dataConnectionConfig, idleTimeout, sessionFilter, 0, 0);
+    }
+
+    /**
+     * Constructor for internal use, do not use directly. Instead use {@link ListenerFactory}
+     */
+    public NioListener(String serverAddress, int port, boolean implicitSsl, SslConfiguration sslConfiguration, DataConnectionConfiguration dataConnectionConfig, int idleTimeout, SessionFilter sessionFilter, int maxDownloadRate, int maxUploadRate) {
+    super(serverAddress, port, implicitSsl, sslConfiguration, dataConnectionConfig, idleTimeout, sessionFilter, maxDownloadRate, maxUploadRate);
     }
 
     /**
@@ -126,7 +142,7 @@ public class NioListener extends AbstractListener {
         acceptor.getFilterChain().addLast("sessionFilter", new MinaSessionFilter(sessionFilter));
         }
 
-        acceptor.getFilterChain().addLast("threadPool", new ExecutorFilter(context.getThreadPoolExecutor()));
+        acceptor.getFilterChain().addLast("threadPool", new ExecutorFilter(context.getRequestExecutor()));
         acceptor.getFilterChain().addLast("codec", new ProtocolCodecFilter(new FtpServerProtocolCodecFactory()));
         acceptor.getFilterChain().addLast("mdcFilter2", mdcFilter);
         acceptor.getFilterChain().addLast("logger", new FtpLoggingFilter());
@@ -28,10 +28,12 @@ import java.util.List;
 
 import org.apache.ftpserver.FtpServer;
 import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.ftplet.User;
 import org.apache.ftpserver.ftplet.UserManager;
 import org.apache.ftpserver.impl.DefaultFtpServer;
 import org.apache.ftpserver.usermanager.impl.BaseUser;
 import org.apache.ftpserver.usermanager.impl.ConcurrentLoginPermission;
+import org.apache.ftpserver.usermanager.impl.DbUserManager;
 import org.apache.ftpserver.usermanager.impl.PropertiesUserManager;
 import org.apache.ftpserver.usermanager.impl.TransferRatePermission;
 import org.apache.ftpserver.usermanager.impl.WritePermission;
@@ -71,48 +73,29 @@ public class AddUser extends CommandLine {
             
             UserManager um = ((DefaultFtpServer)server).getUserManager();
             
-            BaseUser user = new BaseUser();
-
-            System.out.println("Asking for details of the new user");
-            
-            System.out.println();
-            String userName = askForString(in, "User name:", "User name is mandatory");
-            if(userName == null) {
-                return;
-            }
-            user.setName(userName);
-            
-            user.setPassword(askForString(in, "Password:"));
-            
-            String home = askForString(in, "Home directory:", "Home directory is mandatory");
-            if(home == null) {
-                return;            
-            }
-            user.setHomeDirectory(home);
-            
-            user.setEnabled(askForBoolean(in, "Enabled (Y/N):"));
+            List<User> users = new ArrayList<>();
+            do {
+                BaseUser user = askForUser(in);
+                if (user == null) {
+                    if (users.isEmpty()) {
+                        return;
+                    }
+                    // keep the users entered so far
+                    System.err.println("User not added, saving the "
+                            + users.size() + " user(s) entered before");
+                    break;
+                }
+                users.add(user);
+            } while (askForBoolean(in, "Add another user (Y/N):"));
 
-            user.setMaxIdleTime(askForInt(in, "Max idle time in seconds (0 for none):"));
-            
-            List<Authority> authorities = new ArrayList<>();
-            
-            if(askForBoolean(in, "Write permission (Y/N):")) {
-                authorities.add(new WritePermission());
+            if (um instanceof DbUserManager) {
+                // save all the users in one batch
+                ((DbUserManager) um).saveAll(users);
+            } else {
+                for (User user : users) {
+                    um.save(user);
+                }
             }
-
-            int maxLogins = askForInt(in, "Maximum number of concurrent logins (0 for no restriction)");
-            int maxLoginsPerIp = askForInt(in, "Maximum number of concurrent logins per IP (0 for no restriction)");
-            
-            authorities.add(new ConcurrentLoginPermission(maxLogins, maxLoginsPerIp));
-            
-            int downloadRate = askForInt(in, "Maximum download rate (0 for no restriction)");
-            int uploadRate = askForInt(in, "Maximum upload rate (0 for no restriction)");
-            
-            authorities.add(new TransferRatePermission(downloadRate, uploadRate));
-            
-            user.setAuthorities(authorities);
-            
-            um.save(user);
             
             if(um instanceof PropertiesUserManager) {
                 File file = ((PropertiesUserManager) um).getFile();
@@ -123,7 +106,7 @@ public class AddUser extends CommandLine {
                     System.err.println("User manager does not have a file configured, will not save user to file");
                 }
             } else {
-                System.out.println("User saved");
+                System.out.println(users.size() == 1 ? "User saved" : users.size() + " users saved");
             }
         } catch (Exception ex) {
             ex.printStackTrace();
@@ -131,6 +114,55 @@ public class AddUser extends CommandLine {
 
     }
 
+    /**
+     * Ask for the details of a new user.
+     *
+     * @return The user, null if a mandatory value is missing
+     */
+    private static BaseUser askForUser(BufferedReader in) throws IOException {
+        BaseUser user = new BaseUser();
+
+        System.out.println("Asking for details of the new user");
+        
+        System.out.println();
+        String userName = askForString(in, "User name:", "User name is mandatory");
+        if(userName == null) {
+            return null;
+        }
+        user.setName(userName);
+        
+        user.setPassword(askForString(in, "Password:"));
+        
+        String home = askForString(in, "Home directory:", "Home directory is mandatory");
+        if(home == null) {
+            return null;
+        }
+        user.setHomeDirectory(home);
+        
+        user.setEnabled(askForBoolean(in, "Enabled (Y/N):"));
+
+        user.setMaxIdleTime(askForInt(in, "Max idle time in seconds (0 for none):"));
+        
+        List<Authority> authorities = new ArrayList<>();
+        
+        if(askForBoolean(in, "Write permission (Y/N):")) {
+            authorities.add(new WritePermission());
+        }
+
+        int maxLogins = askForInt(in, "Maximum number of concurrent logins (0 for no restriction)");
+        int maxLoginsPerIp = askForInt(in, "Maximum number of concurrent logins per IP (0 for no restriction)");
+        
+        authorities.add(new ConcurrentLoginPermission(maxLogins, maxLoginsPerIp));
+        
+        int downloadRate = askForInt(in, "Maximum download rate (0 for no restriction)");
+        int uploadRate = askForInt(in, "Maximum upload rate (0 for no restriction)");
+        
+        authorities.add(new TransferRatePermission(downloadRate, uploadRate));
+        
+        user.setAuthorities(authorities);
+        return user;
+    }
+
     private static String askForString(BufferedReader in, String question) throws IOException {
         System.out.println(question);
         return in.readLine();
@@ -175,6 +207,8 @@ public class AddUser extends CommandLine {
         System.err.println("Usage: java " + AddUser.class.getName() + " [OPTION] [CONFIGFILE]");
         System.err
                 .println("Starts the user management application, asking for user settings");
+        System.err
+                .println("Several users can be added in a row, they are saved together");
         System.err.println("");
         System.err
                 .println("      --default              use the default configuration, ");
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.metrics;
+
+import org.apache.ftpserver.impl.FtpServerContext;
+
+/**
+ * Interface for the component publishing the statistics of a server to a
+ * monitoring system, started and stopped with the server.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface MetricsExporter {
+
+    /**
+     * Start publishing the statistics of a server.
+     * @param serverContext The current {@link FtpServerContext}
+     */
+    void start(FtpServerContext serverContext);
+
+    /**
+     * Stop publishing the statistics.
+     */
+    void stop();
+
+    /**
+     * Checks if the exporter is currently stopped.
+     * @return true if stopped
+     */
+    boolean isStopped();
+
+    /**
+     * Get the port on which the statistics are published. If the exporter
+     * was configured with port 0, the port actually used once started.
+     * @return The port
+     */
+    int getPort();
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.metrics;
+
+import org.apache.ftpserver.FtpServerConfigurationException;
+import org.apache.ftpserver.metrics.impl.HttpMetricsExporter;
+
+/**
+ * Factory for {@link MetricsExporter} instances publishing the statistics
+ * over HTTP, in the OpenMetrics text format scraped by Prometheus. The
+ * embedded HTTP server of the JDK is used.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class MetricsExporterFactory {
+
+    private String serverAddress;
+
+    private int port = 9101;
+
+    private String path = "/metrics";
+
+    /**
+     * Create a {@link MetricsExporter} instance based on the provided
+     * configuration
+     * @return The {@link MetricsExporter}
+     */
+    public MetricsExporter createMetricsExporter() {
+        if (path == null || !path.startsWith("/")) {
+            throw new FtpServerConfigurationException(
+                    "The metrics path must start with /: " + path);
+        }
+        return new HttpMetricsExporter(serverAddress, port, path);
+    }
+
+    /**
+     * Get the address the HTTP server binds to.
+     * @return The address, null to bind to all addresses
+     */
+    public String getServerAddress() {
+        return serverAddress;
+    }
+
+    /**
+     * Set the address the HTTP server binds to. By default, it binds to all
+     * addresses.
+     * @param serverAddress The address
+     */
+    public void setServerAddress(String serverAddress) {
+        this.serverAddress = serverAddress;
+    }
+
+    /**
+     * Get the port of the HTTP server.
+     * @return The port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Set the port of the HTTP server, 0 to pick any available port. The
+     * default value is 9101.
+     * @param port The port
+     */
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Get the path under which the statistics are published.
+     * @return The path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Set the path under which the statistics are published. The default
+     * value is "/metrics".
+     * @param path The path
+     */
+    public void setPath(String path) {
+        this.path = path;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.metrics.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.ftpserver.FtpServerConfigurationException;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.metrics.MetricsExporter;
+import org.apache.ftpserver.metrics.MetricsExporterFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Publishes the statistics of a server in the OpenMetrics text format, on
+ * the HTTP server embedded in the JDK. The requests are handled by a few
+ * threads of their own, so that a slow client does not hold up the other
+ * scrapes. A scrape only reads the counters of the server.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class HttpMetricsExporter implements MetricsExporter {
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(HttpMetricsExporter.class);
+
+    /**
+     * The number of threads handling the scrapes
+     */
+    private static final int HANDLER_THREADS = 2;
+
+    private static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    private final String serverAddress;
+
+    private final int configuredPort;
+
+    private final String path;
+
+    private final OpenMetricsWriter writer = new OpenMetricsWriter();
+
+    private HttpServer httpServer;
+
+    private ExecutorService handlers;
+
+    private volatile int port;
+
+    /**
+     * Internal constructor, do not use directly. Use
+     * {@link MetricsExporterFactory} instead.
+     */
+    public HttpMetricsExporter(final String serverAddress, final int port,
+            final String path) {
+        this.serverAddress = serverAddress;
+        this.configuredPort = port;
+        this.port = port;
+        this.path = path;
+    }
+
+    public synchronized void start(final FtpServerContext serverContext) {
+        if (httpServer != null) {
+            throw new IllegalStateException("Metrics exporter already started");
+        }
+
+        InetSocketAddress address = serverAddress != null ? new InetSocketAddress(
+                serverAddress, configuredPort)
+                : new InetSocketAddress(configuredPort);
+        try {
+            httpServer = HttpServer.create(address, 0);
+        } catch (IOException e) {
+            throw new FtpServerConfigurationException("Failed to bind to address "
+                    + address + ", check configuration", e);
+        }
+
+        httpServer.createContext(path, new HttpHandler() {
+            public void handle(final HttpExchange exchange) throws IOException {
+                try {
+                    handleScrape(exchange, serverContext);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        handlers = Executors.newFixedThreadPool(HANDLER_THREADS,
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "HttpMetricsExporter");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        httpServer.setExecutor(handlers);
+        httpServer.start();
+        port = httpServer.getAddress().getPort();
+
+        LOG.info("Publishing metrics on http://{}:{}{}", address
+                .getHostString(), port, path);
+    }
+
+    private void handleScrape(final HttpExchange exchange,
+            final FtpServerContext serverContext) throws IOException {
+        String method = exchange.getRequestMethod();
+        if (!path.equals(exchange.getRequestURI().getPath())) {
+            exchange.sendResponseHeaders(404, -1);
+        } else if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+            exchange.sendResponseHeaders(405, -1);
+        } else {
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            // the buffer of the writer is reused, copy the body out so that
+            // it is sent to the client without holding the lock
+            byte[] body;
+            synchronized (writer) {
+                ByteBuffer buffer = writer.write(serverContext);
+                body = new byte[buffer.remaining()];
+                buffer.get(body);
+            }
+            if ("HEAD".equals(method)) {
+                exchange.sendResponseHeaders(200, -1);
+            } else {
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.flush();
+            }
+        }
+    }
+
+    public synchronized void stop() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpServer = null;
+            handlers.shutdownNow();
+            handlers = null;
+        }
+    }
+
+    public synchronized boolean isStopped() {
+        return httpServer == null;
+    }
+
+    public int getPort() {
+        return port;
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.metrics.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.apache.ftpserver.DataConnectionConfiguration;
+import org.apache.ftpserver.ftplet.FtpStatistics;
+import org.apache.ftpserver.ftplet.ThroughputStatistics;
+import org.apache.ftpserver.impl.BucketHistogram;
+import org.apache.ftpserver.impl.DefaultDataConnectionConfiguration;
+import org.apache.ftpserver.impl.FtpMetrics;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.LatencyHistogram;
+import org.apache.ftpserver.listener.Listener;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Renders the statistics of a server in the OpenMetrics text format. The
+ * text and byte buffers are kept from one rendering to the next, and the
+ * numbers are appended without formatting objects, so that frequent scrapes
+ * allocate little. Not thread safe, the caller must render one scrape at a
+ * time and consume the returned buffer before the next one.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class OpenMetricsWriter {
+
+    private static final double[] PERCENTILES = new double[] { 50.0, 90.0,
+            99.0 };
+
+    private static final String[] QUANTILES = new String[] { "0.5", "0.9",
+            "0.99" };
+
+    private static final int MICROS_DECIMALS = 6;
+
+    private static final int NANOS_DECIMALS = 9;
+
+    private static final String[] DIRECTIONS = new String[] { "upload",
+            "download" };
+
+    private final StringBuilder text = new StringBuilder(16 * 1024);
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private ByteBuffer bytes = ByteBuffer.allocate(16 * 1024);
+
+    private final long[] percentiles = new long[PERCENTILES.length];
+
+    /**
+     * Render the statistics.
+     *
+     * @return The UTF-8 encoded text, valid until the next call
+     */
+    public ByteBuffer write(final FtpServerContext serverContext) {
+        text.setLength(0);
+
+        writeServer(serverContext.getFtpStatistics());
+
+        FtpMetrics metrics = serverContext.getFtpMetrics();
+        writeListeners(serverContext.getListeners(), metrics);
+        if (metrics != null) {
+            writeTransfers(metrics);
+            writeLatencies(metrics);
+        }
+
+        text.append("# EOF\n");
+        return encode();
+    }
+
+    private ByteBuffer encode() {
+        // at most 3 bytes per char in UTF-8, so that one pass is enough
+        if (bytes.capacity() < text.length() * 3) {
+            bytes = ByteBuffer.allocate(text.length() * 3);
+        }
+        bytes.clear();
+        encoder.reset();
+        encoder.encode(CharBuffer.wrap(text), bytes, true);
+        encoder.flush(bytes);
+        bytes.flip();
+        return bytes;
+    }
+
+    private void writeServer(final FtpStatistics stats) {
+        counter("ftp_connections", "Connections accepted",
+                stats.getTotalConnectionNumber());
+        gauge("ftp_current_connections", "Open connections",
+                stats.getCurrentConnectionNumber());
+        counter("ftp_logins", "Successful logins", stats.getTotalLoginNumber());
+        counter("ftp_anonymous_logins", "Successful anonymous logins",
+                stats.getTotalAnonymousLoginNumber());
+        counter("ftp_failed_logins", "Failed logins",
+                stats.getTotalFailedLoginNumber());
+        gauge("ftp_current_logins", "Logged in sessions",
+                stats.getCurrentLoginNumber());
+        gauge("ftp_current_anonymous_logins", "Anonymously logged in sessions",
+                stats.getCurrentAnonymousLoginNumber());
+        counter("ftp_uploads", "Files uploaded", stats.getTotalUploadNumber());
+        counter("ftp_downloads", "Files downloaded",
+                stats.getTotalDownloadNumber());
+        counter("ftp_deletes", "Files deleted", stats.getTotalDeleteNumber());
+        counter("ftp_directories_created", "Directories created",
+                stats.getTotalDirectoryCreated());
+        counter("ftp_directories_removed", "Directories removed",
+                stats.getTotalDirectoryRemoved());
+        counter("ftp_uploaded_bytes", "Size of the files uploaded",
+                stats.getTotalUploadSize());
+        counter("ftp_downloaded_bytes", "Size of the files downloaded",
+                stats.getTotalDownloadSize());
+    }
+
+    private void writeListeners(final Map<String, Listener> listeners,
+            final FtpMetrics metrics) {
+        header("ftp_listener_passive_ports_in_use", "gauge",
+                "Passive ports reserved by the sessions");
+        for (Map.Entry<String, Listener> entry : listeners.entrySet()) {
+            DataConnectionConfiguration config = entry.getValue()
+                    .getDataConnectionConfiguration();
+            if (config instanceof DefaultDataConnectionConfiguration) {
+                name("ftp_listener_passive_ports_in_use", "");
+                label('{', "listener", entry.getKey());
+                value(((DefaultDataConnectionConfiguration) config)
+                        .getPassivePortsInUse());
+            }
+        }
+
+        if (metrics == null) {
+            return;
+        }
+
+        header("ftp_listener_connections", "counter",
+                "Connections accepted by the listener");
+        for (Map.Entry<String, Listener> entry : listeners.entrySet()) {
+            ThroughputStatistics rate = metrics.getConnectionRate(entry
+                    .getValue());
+            name("ftp_listener_connections", "_total");
+            label('{', "listener", entry.getKey());
+            value(rate != null ? rate.getCount() : 0L);
+        }
+
+        header("ftp_listener_data_bytes", "counter",
+                "Bytes transferred on the data connections of the listener");
+        for (Map.Entry<String, Listener> entry : listeners.entrySet()) {
+            for (int i = 0; i < DIRECTIONS.length; i++) {
+                ThroughputStatistics rate = metrics.getListenerRate(entry
+                        .getValue(), i == 0);
+                name("ftp_listener_data_bytes", "_total");
+                label('{', "listener", entry.getKey());
+                label(',', "direction", DIRECTIONS[i]);
+                value(rate != null ? rate.getCount() : 0L);
+            }
+        }
+    }
+
+    private void writeTransfers(final FtpMetrics metrics) {
+        header("ftp_data_bytes", "counter",
+                "Bytes transferred on the data connections");
+        for (int i = 0; i < DIRECTIONS.length; i++) {
+            name("ftp_data_bytes", "_total");
+            label('{', "direction", DIRECTIONS[i]);
+            value(metrics.getServerRate(i == 0).getCount());
+        }
+
+        header("ftp_user_data_bytes", "counter",
+                "Bytes transferred on the data connections of the user");
+        for (int i = 0; i < DIRECTIONS.length; i++) {
+            for (Map.Entry<String, ? extends ThroughputStatistics> entry : metrics
+                    .getUserRates(i == 0).entrySet()) {
+                name("ftp_user_data_bytes", "_total");
+                label('{', "user", entry.getKey());
+                label(',', "direction", DIRECTIONS[i]);
+                value(entry.getValue().getCount());
+            }
+        }
+
+        counter("ftp_data_tls_handshakes",
+                "TLS handshakes of the data connections", metrics
+                        .getDataTlsHandshakeRate(false).getCount());
+        counter("ftp_data_tls_resumed_handshakes",
+                "TLS handshakes of the data connections resuming the session of the control connection",
+                metrics.getDataTlsHandshakeRate(true).getCount());
+        counter("ftp_data_connections_reaped",
+                "Data connections closed as they were not used in time",
+                metrics.getReapedDataConnectionRate().getCount());
+
+        header("ftp_transfer_size_bytes", "histogram",
+                "Size of the files uploaded or downloaded");
+        for (int i = 0; i < DIRECTIONS.length; i++) {
+            histogram("ftp_transfer_size_bytes", DIRECTIONS[i], metrics
+                    .getTransferSizes(i == 0), 0);
+        }
+
+        header("ftp_transfer_duration_seconds", "histogram",
+                "Duration of the file uploads or downloads");
+        for (int i = 0; i < DIRECTIONS.length; i++) {
+            histogram("ftp_transfer_duration_seconds", DIRECTIONS[i], metrics
+                    .getTransferDurations(i == 0), NANOS_DECIMALS);
+        }
+    }
+
+    private void writeLatencies(final FtpMetrics metrics) {
+        header("ftp_command_duration_seconds", "summary",
+                "Time from the reception of a command to its final reply");
+        for (Map.Entry<String, LatencyHistogram> entry : metrics
+                .getCommandLatencies().entrySet()) {
+            summary("ftp_command_duration_seconds", entry.getKey(), entry
+                    .getValue());
+        }
+
+        header("ftp_first_byte_duration_seconds", "summary",
+                "Time from the reception of a data transfer command to the first byte transferred");
+        for (Map.Entry<String, LatencyHistogram> entry : metrics
+                .getFirstByteLatencies().entrySet()) {
+            summary("ftp_first_byte_duration_seconds", entry.getKey(), entry
+                    .getValue());
+        }
+    }
+
+    private void counter(final String name, final String help,
+            final long value) {
+        header(name, "counter", help);
+        name(name, "_total");
+        value(value);
+    }
+
+    private void gauge(final String name, final String help, final long value) {
+        header(name, "gauge", help);
+        name(name, "");
+        value(value);
+    }
+
+    private void histogram(final String name, final String direction,
+            final BucketHistogram histogram, final int decimals) {
+        // the count must match the last bucket, the buckets are read once
+        long count = 0;
+        for (int i = 0; i < histogram.getBucketCount(); i++) {
+            count += histogram.getBucketValue(i);
+            name(name, "_bucket");
+            label('{', "direction", direction);
+            text.append(",le=\"");
+            long upperBound = histogram.getUpperBound(i);
+            if (upperBound == Long.MAX_VALUE) {
+                text.append("+Inf");
+            } else {
+                decimal(upperBound, decimals);
+            }
+            text.append('"');
+            value(count);
+        }
+
+        name(name, "_count");
+        label('{', "direction", direction);
+        value(count);
+
+        name(name, "_sum");
+        label('{', "direction", direction);
+        text.append("} ");
+        decimal(histogram.getSum(), decimals);
+        text.append('\n');
+    }
+
+    private void summary(final String name, final String command,
+            final LatencyHistogram histogram) {
+        histogram.getPercentiles(PERCENTILES, percentiles);
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            name(name, "");
+            label('{', "command", command);
+            label(',', "quantile", QUANTILES[i]);
+            text.append("} ");
+            decimal(percentiles[i], MICROS_DECIMALS);
+            text.append('\n');
+        }
+
+        name(name, "_count");
+        label('{', "command", command);
+        value(histogram.getCount());
+
+        name(name, "_sum");
+        label('{', "command", command);
+        text.append("} ");
+        decimal(histogram.getSum(), MICROS_DECIMALS);
+        text.append('\n');
+    }
+
+    private void header(final String name, final String type,
+            final String help) {
+        text.append("# TYPE ").append(name).append(' ').append(type).append(
+                '\n');
+        text.append("# HELP ").append(name).append(' ').append(help).append(
+                '\n');
+    }
+
+    private void name(final String name, final String suffix) {
+        text.append(name).append(suffix);
+    }
+
+    /**
+     * Append a label.
+     *
+     * @param separator
+     *            { for the first label, else ,
+     */
+    private void label(final char separator, final String name,
+            final String value) {
+        text.append(separator).append(name).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                text.append('\\').append(c);
+            } else if (c == '\n') {
+                text.append("\\n");
+            } else {
+                text.append(c);
+            }
+        }
+        text.append('"');
+    }
+
+    /**
+     * Append the value of a sample, closing its labels if any.
+     */
+    private void value(final long value) {
+        if (text.charAt(text.length() - 1) == '"') {
+            text.append('}');
+        }
+        text.append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Append a fixed point number, e.g. 1500000 with 6 decimals as 1.5.
+     */
+    private void decimal(final long value, final int decimals) {
+        long scale = 1;
+        for (int i = 0; i < decimals; i++) {
+            scale *= 10;
+        }
+        text.append(value / scale);
+
+        long fraction = value % scale;
+        if (fraction != 0) {
+            text.append('.');
+            for (long pow = scale / 10; fraction < pow; pow /= 10) {
+                text.append('0');
+            }
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+            }
+            text.append(fraction);
+        }
+    }
+}
@@ -70,6 +70,10 @@ public class SslConfigurationFactory {
 
     private String[] enabledCipherSuites;
 
+    private int sessionCacheSize = -1;
+
+    private int sessionTimeout = -1;
+
     /**
      * The key store file used by this configuration
      * 
@@ -351,7 +355,7 @@ public class SslConfigurationFactory {
         trustManagerFactory.init(trustStore);
 
         return new DefaultSslConfiguration(keyManagerFactory, trustManagerFactory, clientAuth, sslProtocols, 
-        	enabledCipherSuites, keyAlias);
+        	enabledCipherSuites, keyAlias, sessionCacheSize, sessionTimeout);
     } catch (Exception ex) {
         LOG.error("DefaultSsl.configure()", ex);
         throw new FtpServerConfigurationException("DefaultSsl.configure()", ex);
@@ -415,4 +419,49 @@ public class SslConfigurationFactory {
     public void setKeyAlias(String keyAlias) {
     this.keyAlias = keyAlias;
     }
+
+    /**
+     * Get the maximum number of TLS sessions kept for resumption.
+     * 
+     * @return The cache size, 0 if unlimited or -1 if the JVM default is used
+     */
+    public int getSessionCacheSize() {
+    return sessionCacheSize;
+    }
+
+    /**
+     * Set the maximum number of TLS sessions kept for resumption. Data
+     * connections resume the session of their control connection, avoiding a
+     * full handshake per transfer, as long as it is in the cache. By default,
+     * the JVM default is used, see the javax.net.ssl.sessionCacheSize system
+     * property.
+     * 
+     * @param sessionCacheSize
+     *            The cache size, 0 for unlimited
+     */
+    public void setSessionCacheSize(int sessionCacheSize) {
+    this.sessionCacheSize = sessionCacheSize;
+    }
+
+    /**
+     * Get how long a TLS session can be resumed.
+     * 
+     * @return The timeout in seconds, 0 if unlimited or -1 if the JVM
+     *         default is used
+     */
+    public int getSessionTimeout() {
+    return sessionTimeout;
+    }
+
+    /**
+     * Set how long a TLS session can be resumed, that is how long a control
+     * connection can go on without its data connections having to make a
+     * full handshake. By default, the JVM default of 24 hours is used.
+     * 
+     * @param sessionTimeout
+     *            The timeout in seconds, 0 for unlimited
+     */
+    public void setSessionTimeout(int sessionTimeout) {
+    this.sessionTimeout = sessionTimeout;
+    }
 }
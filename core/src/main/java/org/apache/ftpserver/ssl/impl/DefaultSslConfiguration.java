@@ -60,6 +60,10 @@ public class DefaultSslConfiguration implements SslConfiguration {
 
     private final SSLSocketFactory socketFactory;
 
+    private final int sessionCacheSize;
+
+    private final int sessionTimeout;
+
     /**
      * Internal constructor, do not use directly. Instead, use {@link SslConfigurationFactory}
      * 
@@ -67,6 +71,19 @@ public class DefaultSslConfiguration implements SslConfiguration {
      */
     public DefaultSslConfiguration(KeyManagerFactory keyManagerFactory, TrustManagerFactory trustManagerFactory, 
 	    ClientAuth clientAuthReqd, String[] sslProtocols, String[] enabledCipherSuites, String keyAlias) throws GeneralSecurityException {
+        this(keyManagerFactory, trustManagerFactory, clientAuthReqd, sslProtocols, enabledCipherSuites, keyAlias, -1, -1);
+    }
+
+    /**
+     * Internal constructor, do not use directly. Instead, use {@link SslConfigurationFactory}
+     * 
+     * @param sessionCacheSize The maximum number of sessions kept for resumption, -1 for the JVM default
+     * @param sessionTimeout How long a session can be resumed in seconds, -1 for the JVM default
+     * @throws GeneralSecurityException
+     */
+    public DefaultSslConfiguration(KeyManagerFactory keyManagerFactory, TrustManagerFactory trustManagerFactory, 
+	    ClientAuth clientAuthReqd, String[] sslProtocols, String[] enabledCipherSuites, String keyAlias,
+	    int sessionCacheSize, int sessionTimeout) throws GeneralSecurityException {
         super();
         this.clientAuth = clientAuthReqd;
         this.enabledCipherSuites = enabledCipherSuites;
@@ -74,6 +91,8 @@ public class DefaultSslConfiguration implements SslConfiguration {
         this.keyManagerFactory = keyManagerFactory;
         this.enabledProtocols = sslProtocols;
         this.trustManagerFactory = trustManagerFactory;
+        this.sessionCacheSize = sessionCacheSize;
+        this.sessionTimeout = sessionTimeout;
         this.sslContext = initContext();
         this.socketFactory = sslContext.getSocketFactory();
     }
@@ -137,6 +156,16 @@ public class DefaultSslConfiguration implements SslConfiguration {
         // create and initialize the SSLContext
         SSLContext ctx = SSLContext.getInstance(enabledProtocols[0]);
         ctx.init(keyManagers, trustManagerFactory.getTrustManagers(), null);
+
+        // the control and data connections share the server session cache,
+        // so that data connections can resume the session of the control
+        // connection
+        if (sessionCacheSize >= 0) {
+            ctx.getServerSessionContext().setSessionCacheSize(sessionCacheSize);
+        }
+        if (sessionTimeout >= 0) {
+            ctx.getServerSessionContext().setSessionTimeout(sessionTimeout);
+        }
         
         // Create the socket factory
         return ctx;
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager;
+
+import org.apache.ftpserver.FtpServerConfigurationException;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.usermanager.impl.CachingUserManager;
+
+/**
+ * Factory for {@link UserManager} instances caching the users of another
+ * user manager, e.g. one backed by a database.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class CachingUserManagerFactory implements UserManagerFactory {
+
+    private UserManager userManager;
+
+    private int maxSize = 1000;
+
+    private int timeToLive = 60;
+
+    private int negativeTimeToLive = 10;
+
+    /**
+     * Creates a {@link CachingUserManager} instance based on the provided
+     * configuration
+     */
+    public UserManager createUserManager() {
+        if (userManager == null) {
+            throw new FtpServerConfigurationException(
+                    "Required user manager not provided");
+        }
+
+        return new CachingUserManager(userManager, maxSize,
+                timeToLive * 1000L, negativeTimeToLive * 1000L);
+    }
+
+    /**
+     * Get the user manager whose users are cached.
+     * @return The user manager
+     */
+    public UserManager getUserManager() {
+        return userManager;
+    }
+
+    /**
+     * Set the user manager whose users are cached.
+     * @param userManager The user manager
+     */
+    public void setUserManager(UserManager userManager) {
+        this.userManager = userManager;
+    }
+
+    /**
+     * Get the maximum number of cached users.
+     * @return The maximum number of cached users
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Set the maximum number of cached users, the least recently used ones
+     * being removed when the cache is full. The default value is 1000.
+     * @param maxSize The maximum number of cached users
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get how long a user is cached.
+     * @return The time to live in seconds
+     */
+    public int getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Set how long a user is cached. Changes made to the underlying user
+     * storage, other than through the user manager, are seen after this
+     * delay. The default value is 60 seconds.
+     * @param timeToLive The time to live in seconds
+     */
+    public void setTimeToLive(int timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Get how long an unknown user name is cached.
+     * @return The time to live in seconds
+     */
+    public int getNegativeTimeToLive() {
+        return negativeTimeToLive;
+    }
+
+    /**
+     * Set how long an unknown user name is cached, 0 to not cache unknown
+     * user names. The default value is 10 seconds.
+     * @param negativeTimeToLive The time to live in seconds
+     */
+    public void setNegativeTimeToLive(int negativeTimeToLive) {
+        this.negativeTimeToLive = negativeTimeToLive;
+    }
+}
@@ -40,6 +40,8 @@ public class PropertiesUserManagerFactory implements UserManagerFactory {
 
     private PasswordEncryptor passwordEncryptor = new Md5PasswordEncryptor();
 
+    private boolean watchFile = false;
+
     /**
      * Creates a {@link PropertiesUserManager} instance based on the provided configuration
      */
@@ -50,7 +52,7 @@ public class PropertiesUserManagerFactory implements UserManagerFactory {
         } else {
 
             return new PropertiesUserManager(passwordEncryptor, userDataFile,
-                    adminName);
+                    adminName, watchFile);
         }
     }
 
@@ -125,4 +127,23 @@ public class PropertiesUserManagerFactory implements UserManagerFactory {
     public void setPasswordEncryptor(PasswordEncryptor passwordEncryptor) {
         this.passwordEncryptor = passwordEncryptor;
     }
+
+    /**
+     * Whether the file used to store users is watched for changes.
+     * @return true if the file is watched
+     */
+    public boolean isWatchFile() {
+        return watchFile;
+    }
+
+    /**
+     * Set whether the file used to store users is watched, changes made to it
+     * by other processes being reloaded without a call to
+     * {@link PropertiesUserManager#refresh()}. Only applies to users stored in
+     * a file. The default value is false.
+     * @param watchFile true to watch the file
+     */
+    public void setWatchFile(boolean watchFile) {
+        this.watchFile = watchFile;
+    }
 }
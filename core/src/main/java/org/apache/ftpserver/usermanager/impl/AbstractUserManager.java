@@ -49,6 +49,8 @@ public abstract class AbstractUserManager implements UserManager {
 
     public static final String ATTR_MAX_DOWNLOAD_RATE = "downloadrate";
 
+    public static final String ATTR_TRANSFER_BURST_SIZE = "burstsize";
+
     public static final String ATTR_MAX_LOGIN_NUMBER = "maxloginnumber";
 
     public static final String ATTR_MAX_LOGIN_PER_IP = "maxloginperip";
@@ -59,6 +59,34 @@ public class BaseUser implements User {
 
     private List<? extends Authority> authorities = new ArrayList<>();
 
+    /**
+     * The write permissions compiled from the authorities, created when first
+     * needed
+     */
+    private volatile WriteAuthorizer writeAuthorizer;
+
+    /**
+     * Write permissions compiled into the single root all writable files
+     * start with. Each {@link WritePermission} must authorize a write
+     * request, so a file is writable if it starts with the longest root, and
+     * the longest root starts with all the others.
+     */
+    private static final class WriteAuthorizer {
+        /**
+         * The root all writable files start with, null if no file is
+         * writable
+         */
+        private final String root;
+
+        public WriteAuthorizer(final String root) {
+            this.root = root;
+        }
+
+        public boolean isWritable(final String file) {
+            return root != null && file.startsWith(root);
+        }
+    }
+
     /**
      * Default constructor.
      */
@@ -115,10 +143,13 @@ public class BaseUser implements User {
 
     public void setAuthorities(List<Authority> authorities) {
         if (authorities != null) {
-            this.authorities = Collections.unmodifiableList(authorities);
+            // copied, so that the compiled permissions stay consistent
+            this.authorities = Collections
+                    .unmodifiableList(new ArrayList<>(authorities));
         } else {
             this.authorities = null;
         }
+        writeAuthorizer = null;
     }
 
     /**
@@ -182,6 +213,15 @@ public class BaseUser implements User {
         if(authorities == null) {
             return null;
         }
+
+        if (request instanceof WriteRequest
+                && ((WriteRequest) request).getFile() != null) {
+            WriteAuthorizer authorizer = getWriteAuthorizer();
+            if (authorizer != null) {
+                return authorizer.isWritable(((WriteRequest) request)
+                        .getFile()) ? request : null;
+            }
+        }
         
         boolean someoneCouldAuthorize = false;
         for (Authority authority : authorities) {
@@ -205,6 +245,59 @@ public class BaseUser implements User {
         }
     }
 
+    /**
+     * Get the compiled write permissions.
+     * 
+     * @return The compiled write permissions, null if other authorities than
+     *         the write permissions might handle write requests
+     */
+    private WriteAuthorizer getWriteAuthorizer() {
+        WriteAuthorizer authorizer = writeAuthorizer;
+        if (authorizer == null) {
+            authorizer = compileWriteAuthorizer();
+            if (authorizer == null) {
+                return null;
+            }
+            writeAuthorizer = authorizer;
+        }
+        return authorizer;
+    }
+
+    private WriteAuthorizer compileWriteAuthorizer() {
+        List<? extends Authority> auths = authorities;
+        if (auths == null) {
+            return null;
+        }
+
+        List<String> roots = new ArrayList<>();
+        String longestRoot = null;
+        for (Authority authority : auths) {
+            Class<?> clazz = authority.getClass();
+            if (clazz == WritePermission.class) {
+                String root = ((WritePermission) authority).getPermissionRoot();
+                if (root == null) {
+                    return null;
+                }
+                roots.add(root);
+                if (longestRoot == null || root.length() > longestRoot.length()) {
+                    longestRoot = root;
+                }
+            } else if (clazz != TransferRatePermission.class
+                    && clazz != ConcurrentLoginPermission.class) {
+                // can not tell which requests it handles
+                return null;
+            }
+        }
+
+        for (String root : roots) {
+            if (!longestRoot.startsWith(root)) {
+                // no file can start with all the roots
+                return new WriteAuthorizer(null);
+            }
+        }
+        return new WriteAuthorizer(longestRoot);
+    }
+
     /**
      * {@inheritDoc}
      */
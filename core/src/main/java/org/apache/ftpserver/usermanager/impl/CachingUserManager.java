@@ -0,0 +1,397 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ftpserver.FtpServerConfigurationException;
+import org.apache.ftpserver.ftplet.Authentication;
+import org.apache.ftpserver.ftplet.AuthenticationFailedException;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * User manager caching the users of another user manager, e.g. a
+ * {@link DbUserManager}, to avoid looking them up on every login.
+ *
+ * Users are kept for a limited time, the least recently used ones being
+ * evicted when the cache is full. Unknown users can be cached as well, so
+ * that repeated logins with unknown user names do not reach the underlying
+ * user manager. Passwords are never stored, a successful authentication is
+ * remembered as a salted digest of the password. Users saved or deleted
+ * through this user manager are removed from the cache, changes made
+ * directly to the underlying storage are seen once the cached entries
+ * expire.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class CachingUserManager implements UserManager {
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final UserManager userManager;
+
+    private final int maxSize;
+
+    private final long timeToLive;
+
+    private final long negativeTimeToLive;
+
+    /**
+     * The cached users by name, in least recently used order, guarded by
+     * itself
+     */
+    private final Map<String, CacheEntry> cache;
+
+    /**
+     * Incremented on each invalidation, so that users looked up while they
+     * are invalidated are not cached
+     */
+    private long generation = 0L;
+
+    private final byte[] salt = new byte[16];
+
+    private final AtomicLong hitCount = new AtomicLong(0L);
+
+    private final AtomicLong missCount = new AtomicLong(0L);
+
+    private final AtomicLong evictionCount = new AtomicLong(0L);
+
+    /**
+     * A cached user, or the absence of a user.
+     */
+    private static class CacheEntry {
+        private final User user;
+
+        private final long expiryTime;
+
+        /**
+         * Digest of the password the user last authenticated with, if any
+         */
+        private final byte[] passwordDigest;
+
+        private volatile Boolean admin;
+
+        public CacheEntry(final User user, final long expiryTime,
+                final byte[] passwordDigest) {
+            this.user = user;
+            this.expiryTime = expiryTime;
+            this.passwordDigest = passwordDigest;
+        }
+    }
+
+    /**
+     * @param userManager
+     *            The user manager to cache the users of
+     * @param maxSize
+     *            The maximum number of cached user names
+     * @param timeToLive
+     *            How long a user is cached, in milliseconds
+     * @param negativeTimeToLive
+     *            How long an unknown user name is cached, in milliseconds.
+     *            0 to not cache unknown users
+     */
+    public CachingUserManager(final UserManager userManager, final int maxSize,
+            final long timeToLive, final long negativeTimeToLive) {
+        this.userManager = userManager;
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.negativeTimeToLive = negativeTimeToLive;
+
+        cache = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, CacheEntry> eldest) {
+                if (size() > CachingUserManager.this.maxSize) {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        new SecureRandom().nextBytes(salt);
+    }
+
+    /**
+     * Get the cached user manager.
+     * @return The user manager
+     */
+    public UserManager getUserManager() {
+        return userManager;
+    }
+
+    /**
+     * Get the maximum number of cached user names.
+     * @return The maximum size
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Get how long a user is cached.
+     * @return The time to live in milliseconds
+     */
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Get how long an unknown user name is cached.
+     * @return The time to live in milliseconds, 0 if unknown users are not
+     *         cached
+     */
+    public long getNegativeTimeToLive() {
+        return negativeTimeToLive;
+    }
+
+    /**
+     * The number of lookups answered from the cache.
+     * @return The hit count
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * The number of lookups passed on to the cached user manager.
+     * @return The miss count
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * The number of entries removed as the cache was full.
+     * @return The eviction count
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * The number of cached user names, including expired entries not
+     * removed yet.
+     * @return The cache size
+     */
+    public int getSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Remove a user from the cache.
+     * @param username The user name
+     */
+    public void invalidate(final String username) {
+        synchronized (cache) {
+            generation++;
+            cache.remove(username);
+        }
+    }
+
+    /**
+     * Remove all the users from the cache.
+     */
+    public void invalidateAll() {
+        synchronized (cache) {
+            generation++;
+            cache.clear();
+        }
+    }
+
+    private CacheEntry getEntry(final String username) {
+        synchronized (cache) {
+            CacheEntry entry = cache.get(username);
+            if (entry != null
+                    && entry.expiryTime <= System.currentTimeMillis()) {
+                cache.remove(username);
+                entry = null;
+            }
+            return entry;
+        }
+    }
+
+    private long getGeneration() {
+        synchronized (cache) {
+            return generation;
+        }
+    }
+
+    private void putEntry(final String username, final User user,
+            final byte[] passwordDigest, final long lookupGeneration) {
+        long ttl = user != null ? timeToLive : negativeTimeToLive;
+        if (ttl <= 0 || maxSize <= 0) {
+            return;
+        }
+
+        synchronized (cache) {
+            // invalidated while being looked up
+            if (lookupGeneration != generation) {
+                return;
+            }
+            cache.put(username, new CacheEntry(user, System
+                    .currentTimeMillis() + ttl, passwordDigest));
+        }
+    }
+
+    private byte[] digest(final String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            digest.update(salt);
+            digest.update(password.getBytes(StandardCharsets.UTF_8));
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new FtpServerConfigurationException(DIGEST_ALGORITHM
+                    + " not supported", e);
+        }
+    }
+
+    /**
+     * Get a user, from the cache if possible.
+     */
+    public User getUserByName(final String username) throws FtpException {
+        if (username == null) {
+            return userManager.getUserByName(username);
+        }
+
+        CacheEntry entry = getEntry(username);
+        if (entry != null) {
+            hitCount.incrementAndGet();
+            return entry.user;
+        }
+
+        missCount.incrementAndGet();
+        long lookupGeneration = getGeneration();
+        User user = userManager.getUserByName(username);
+        putEntry(username, user, null, lookupGeneration);
+        return user;
+    }
+
+    /**
+     * Check if the user exists, from the cache if possible.
+     */
+    public boolean doesExist(final String username) throws FtpException {
+        return getUserByName(username) != null;
+    }
+
+    /**
+     * Authenticate a user. Successful user name and password authentications
+     * are cached, as well as unknown user names.
+     */
+    public User authenticate(final Authentication authentication)
+            throws AuthenticationFailedException {
+        if (!(authentication instanceof UsernamePasswordAuthentication)) {
+            return userManager.authenticate(authentication);
+        }
+
+        UsernamePasswordAuthentication upauth = (UsernamePasswordAuthentication) authentication;
+        String username = upauth.getUsername();
+        if (username == null) {
+            return userManager.authenticate(authentication);
+        }
+
+        String password = upauth.getPassword();
+        if (password == null) {
+            password = "";
+        }
+        byte[] passwordDigest = digest(password);
+
+        CacheEntry entry = getEntry(username);
+        if (entry != null && entry.user == null) {
+            hitCount.incrementAndGet();
+            throw new AuthenticationFailedException("Authentication failed");
+        } else if (entry != null && entry.passwordDigest != null
+                && MessageDigest.isEqual(entry.passwordDigest, passwordDigest)) {
+            hitCount.incrementAndGet();
+            return entry.user;
+        }
+
+        missCount.incrementAndGet();
+        long lookupGeneration = getGeneration();
+        User user = userManager.authenticate(authentication);
+        if (user != null) {
+            putEntry(username, user, passwordDigest, lookupGeneration);
+        }
+        return user;
+    }
+
+    /**
+     * Check if the user is an administrator, from the cache if possible.
+     */
+    public boolean isAdmin(final String username) throws FtpException {
+        CacheEntry entry = username != null ? getEntry(username) : null;
+        if (entry != null && entry.admin != null) {
+            hitCount.incrementAndGet();
+            return entry.admin.booleanValue();
+        }
+
+        missCount.incrementAndGet();
+        boolean admin = userManager.isAdmin(username);
+        if (entry != null) {
+            entry.admin = Boolean.valueOf(admin);
+        }
+        return admin;
+    }
+
+    /**
+     * Save the user and remove it from the cache.
+     */
+    public void save(final User user) throws FtpException {
+        try {
+            userManager.save(user);
+        } finally {
+            invalidate(user.getName());
+        }
+    }
+
+    /**
+     * Delete the user and remove it from the cache.
+     */
+    public void delete(final String username) throws FtpException {
+        try {
+            userManager.delete(username);
+        } finally {
+            invalidate(username);
+        }
+    }
+
+    public String[] getAllUserNames() throws FtpException {
+        return userManager.getAllUserNames();
+    }
+
+    public String getAdminName() throws FtpException {
+        return userManager.getAdminName();
+    }
+}
@@ -20,12 +20,17 @@
 package org.apache.ftpserver.usermanager.impl;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.sql.DataSource;
 
@@ -39,7 +44,6 @@ import org.apache.ftpserver.usermanager.AnonymousAuthentication;
 import org.apache.ftpserver.usermanager.DbUserManagerFactory;
 import org.apache.ftpserver.usermanager.PasswordEncryptor;
 import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
-import org.apache.ftpserver.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,6 +55,8 @@ import org.slf4j.LoggerFactory;
  *
  * All the user attributes are replaced during run-time. So we can use your
  * database schema. Then you need to modify the SQLs in the configuration file.
+ * The attributes are passed as parameters of prepared statements, see
+ * {@link SqlTemplate}, so that the database can reuse the query plans.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
@@ -58,19 +64,19 @@ public class DbUserManager extends AbstractUserManager {
 
     private final Logger LOG = LoggerFactory.getLogger(DbUserManager.class);
 
-    private String insertUserStmt;
+    private SqlTemplate insertUserStmt;
 
-    private String updateUserStmt;
+    private SqlTemplate updateUserStmt;
 
-    private String deleteUserStmt;
+    private SqlTemplate deleteUserStmt;
 
-    private String selectUserStmt;
+    private SqlTemplate selectUserStmt;
 
-    private String selectAllStmt;
+    private SqlTemplate selectAllStmt;
 
-    private String isAdminStmt;
+    private SqlTemplate isAdminStmt;
 
-    private String authenticateStmt;
+    private SqlTemplate authenticateStmt;
 
     private DataSource dataSource;
 
@@ -84,13 +90,13 @@ public class DbUserManager extends AbstractUserManager {
             PasswordEncryptor passwordEncryptor, String adminName) {
         super(adminName, passwordEncryptor);
         this.dataSource = dataSource;
-        this.selectAllStmt = selectAllStmt;
-        this.selectUserStmt = selectUserStmt;
-        this.insertUserStmt = insertUserStmt;
-        this.updateUserStmt = updateUserStmt;
-        this.deleteUserStmt = deleteUserStmt;
-        this.authenticateStmt = authenticateStmt;
-        this.isAdminStmt = isAdminStmt;
+        this.selectAllStmt = new SqlTemplate(selectAllStmt);
+        this.selectUserStmt = new SqlTemplate(selectUserStmt);
+        this.insertUserStmt = new SqlTemplate(insertUserStmt);
+        this.updateUserStmt = new SqlTemplate(updateUserStmt);
+        this.deleteUserStmt = new SqlTemplate(deleteUserStmt);
+        this.authenticateStmt = new SqlTemplate(authenticateStmt);
+        this.isAdminStmt = new SqlTemplate(isAdminStmt);
 
         Connection con = null; 
         try { 
@@ -132,7 +138,7 @@ public class DbUserManager extends AbstractUserManager {
      * @return The SQL statement
      */
     public String getSqlUserInsert() {
-        return insertUserStmt;
+        return insertUserStmt.getTemplate();
     }
 
     /**
@@ -143,7 +149,7 @@ public class DbUserManager extends AbstractUserManager {
      *            The SQL statement
      */
     public void setSqlUserInsert(String sql) {
-        insertUserStmt = sql;
+        insertUserStmt = new SqlTemplate(sql);
     }
 
     /**
@@ -152,7 +158,7 @@ public class DbUserManager extends AbstractUserManager {
      * @return The SQL statement
      */
     public String getSqlUserDelete() {
-        return deleteUserStmt;
+        return deleteUserStmt.getTemplate();
     }
 
     /**
@@ -163,7 +169,7 @@ public class DbUserManager extends AbstractUserManager {
      *            The SQL statement
      */
     public void setSqlUserDelete(String sql) {
-        deleteUserStmt = sql;
+        deleteUserStmt = new SqlTemplate(sql);
     }
 
     /**
@@ -172,7 +178,7 @@ public class DbUserManager extends AbstractUserManager {
      * @return The SQL statement
      */
     public String getSqlUserUpdate() {
-        return updateUserStmt;
+        return updateUserStmt.getTemplate();
     }
 
     /**
@@ -183,7 +189,7 @@ public class DbUserManager extends AbstractUserManager {
      *            The SQL statement
      */
     public void setSqlUserUpdate(String sql) {
-        updateUserStmt = sql;
+        updateUserStmt = new SqlTemplate(sql);
     }
 
     /**
@@ -192,7 +198,7 @@ public class DbUserManager extends AbstractUserManager {
      * @return The SQL statement
      */
     public String getSqlUserSelect() {
-        return selectUserStmt;
+        return selectUserStmt.getTemplate();
     }
 
     /**
@@ -203,7 +209,7 @@ public class DbUserManager extends AbstractUserManager {
      *            The SQL statement
      */
     public void setSqlUserSelect(String sql) {
-        selectUserStmt = sql;
+        selectUserStmt = new SqlTemplate(sql);
     }
 
     /**
@@ -212,7 +218,7 @@ public class DbUserManager extends AbstractUserManager {
      * @return The SQL statement
      */
     public String getSqlUserSelectAll() {
-        return selectAllStmt;
+        return selectAllStmt.getTemplate();
     }
 
     /**
@@ -223,7 +229,7 @@ public class DbUserManager extends AbstractUserManager {
      *            The SQL statement
      */
     public void setSqlUserSelectAll(String sql) {
-        selectAllStmt = sql;
+        selectAllStmt = new SqlTemplate(sql);
     }
 
     /**
@@ -232,7 +238,7 @@ public class DbUserManager extends AbstractUserManager {
      * @return The SQL statement
      */
     public String getSqlUserAuthenticate() {
-        return authenticateStmt;
+        return authenticateStmt.getTemplate();
     }
 
     /**
@@ -243,7 +249,7 @@ public class DbUserManager extends AbstractUserManager {
      *            The SQL statement
      */
     public void setSqlUserAuthenticate(String sql) {
-        authenticateStmt = sql;
+        authenticateStmt = new SqlTemplate(sql);
     }
 
     /**
@@ -253,7 +259,7 @@ public class DbUserManager extends AbstractUserManager {
      * @return The SQL statement
      */
     public String getSqlUserAdmin() {
-        return isAdminStmt;
+        return isAdminStmt.getTemplate();
     }
 
     /**
@@ -264,7 +270,7 @@ public class DbUserManager extends AbstractUserManager {
      *            The SQL statement
      */
     public void setSqlUserAdmin(String sql) {
-        isAdminStmt = sql;
+        isAdminStmt = new SqlTemplate(sql);
     }
 
     /**
@@ -278,19 +284,20 @@ public class DbUserManager extends AbstractUserManager {
             return false;
         }
 
-        Statement stmt = null;
+        Connection con = null;
+        PreparedStatement stmt = null;
         ResultSet rs = null;
         try {
 
             // create the sql query
             HashMap<String, Object> map = new HashMap<>();
-            map.put(ATTR_LOGIN, escapeString(login));
-            String sql = StringUtils.replaceString(isAdminStmt, map);
-            LOG.info(sql);
+            map.put(ATTR_LOGIN, login);
+            LOG.debug("{}", isAdminStmt);
 
             // execute query
-            stmt = createConnection().createStatement();
-            rs = stmt.executeQuery(sql);
+            con = createConnection();
+            stmt = isAdminStmt.prepare(con, map);
+            rs = stmt.executeQuery();
             return rs.next();
         } catch (SQLException ex) {
             LOG.error("DbUserManager.isAdmin()", ex);
@@ -298,6 +305,7 @@ public class DbUserManager extends AbstractUserManager {
         } finally {
             closeQuitely(rs);
             closeQuitely(stmt);
+            closeQuitely(con);
         }
     }
 
@@ -318,20 +326,22 @@ public class DbUserManager extends AbstractUserManager {
     public void delete(String name) throws FtpException {
         // create sql query
         HashMap<String, Object> map = new HashMap<>();
-        map.put(ATTR_LOGIN, escapeString(name));
-        String sql = StringUtils.replaceString(deleteUserStmt, map);
-        LOG.info(sql);
+        map.put(ATTR_LOGIN, name);
+        LOG.debug("{}", deleteUserStmt);
 
         // execute query
-        Statement stmt = null;
+        Connection con = null;
+        PreparedStatement stmt = null;
         try {
-            stmt = createConnection().createStatement();
-            stmt.executeUpdate(sql);
+            con = createConnection();
+            stmt = deleteUserStmt.prepare(con, map);
+            stmt.executeUpdate();
         } catch (SQLException ex) {
             LOG.error("DbUserManager.delete()", ex);
             throw new FtpException("DbUserManager.delete()", ex);
         } finally {
             closeQuitely(stmt);
+            closeQuitely(con);
         }
     }
 
@@ -344,109 +354,177 @@ public class DbUserManager extends AbstractUserManager {
             throw new NullPointerException("User name is null.");
         }
 
-        Statement stmt = null;
+        Connection con = null;
+        PreparedStatement stmt = null;
         try {
+            con = createConnection();
 
-            // create sql query
-            HashMap<String, Object> map = new HashMap<>();
-            map.put(ATTR_LOGIN, escapeString(user.getName()));
+            BaseUser existingUser = selectUserByName(con, user.getName());
+            Map<String, Object> map = getUserValues(user, existingUser);
 
-            String password = null;
-            if(user.getPassword() != null) {
-                // password provided, encrypt it and store the encrypted value
-                password= getPasswordEncryptor().encrypt(user.getPassword());
+            SqlTemplate template;
+            if (existingUser == null) {
+                template = insertUserStmt;
             } else {
-                // password was not provided, either load from the existing user and store that again
-                // or store as null
-                ResultSet rs = null;
+                template = updateUserStmt;
+            }
+            LOG.debug("{}", template);
 
-                try {
-                    User userWithPassword = selectUserByName(user.getName());
+            // execute query
+            stmt = template.prepare(con, map);
+            stmt.executeUpdate();
+        } catch (SQLException ex) {
+            LOG.error("DbUserManager.save()", ex);
+            throw new FtpException("DbUserManager.save()", ex);
+        } finally {
+            closeQuitely(stmt);
+            closeQuitely(con);
+        }
+    }
+
+    /**
+     * Save several users in a single transaction, e.g. when provisioning
+     * users in bulk. The new users are inserted and the existing ones
+     * updated in batches. Either all users are saved or none.
+     *
+     * @param users
+     *            The users to save
+     * @throws FtpException
+     *             If the users could not be saved
+     */
+    public void saveAll(Collection<? extends User> users) throws FtpException {
+        for (User user : users) {
+            if (user.getName() == null) {
+                throw new NullPointerException("User name is null.");
+            }
+        }
 
-                    if(userWithPassword != null) {
-                        // user exists, reuse password
-                        password = userWithPassword.getPassword();
+        Connection con = null;
+        Statement insertBatch = null;
+        Statement updateBatch = null;
+        try {
+            con = createConnection();
+            con.setAutoCommit(false);
+
+            // users saved twice are inserted once, then updated
+            Set<String> insertedNames = new HashSet<>();
+            for (User user : users) {
+                BaseUser existingUser = selectUserByName(con, user.getName());
+                Map<String, Object> map = getUserValues(user, existingUser);
+
+                if (existingUser == null
+                        && insertedNames.add(user.getName())) {
+                    if (insertBatch == null) {
+                        insertBatch = insertUserStmt.createBatch(con);
+                    }
+                    insertUserStmt.addBatch(insertBatch, map);
+                } else {
+                    if (updateBatch == null) {
+                        updateBatch = updateUserStmt.createBatch(con);
                     }
-                } finally {
-                    closeQuitely(rs);
+                    updateUserStmt.addBatch(updateBatch, map);
                 }
             }
-            map.put(ATTR_PASSWORD, escapeString(password));
-
+            LOG.debug("Saving {} users", users.size());
 
-            String home = user.getHomeDirectory();
-            if (home == null) {
-                home = "/";
+            if (insertBatch != null) {
+                insertBatch.executeBatch();
             }
-            map.put(ATTR_HOME, escapeString(home));
-            map.put(ATTR_ENABLE, String.valueOf(user.getEnabled()));
-
-            map.put(ATTR_WRITE_PERM, String.valueOf(user
-                    .authorize(new WriteRequest()) != null));
-            map.put(ATTR_MAX_IDLE_TIME, user.getMaxIdleTime());
-
-            TransferRateRequest transferRateRequest = new TransferRateRequest();
-            transferRateRequest = (TransferRateRequest) user
-                    .authorize(transferRateRequest);
-
-            if (transferRateRequest != null) {
-                map.put(ATTR_MAX_UPLOAD_RATE, transferRateRequest
-                        .getMaxUploadRate());
-                map.put(ATTR_MAX_DOWNLOAD_RATE, transferRateRequest
-                        .getMaxDownloadRate());
-            } else {
-                map.put(ATTR_MAX_UPLOAD_RATE, 0);
-                map.put(ATTR_MAX_DOWNLOAD_RATE, 0);
+            if (updateBatch != null) {
+                updateBatch.executeBatch();
             }
-
-            // request that always will succeed
-            ConcurrentLoginRequest concurrentLoginRequest = new ConcurrentLoginRequest(
-                    0, 0);
-            concurrentLoginRequest = (ConcurrentLoginRequest) user
-                    .authorize(concurrentLoginRequest);
-
-            if (concurrentLoginRequest != null) {
-                map.put(ATTR_MAX_LOGIN_NUMBER, concurrentLoginRequest
-                        .getMaxConcurrentLogins());
-                map.put(ATTR_MAX_LOGIN_PER_IP, concurrentLoginRequest
-                        .getMaxConcurrentLoginsPerIP());
-            } else {
-                map.put(ATTR_MAX_LOGIN_NUMBER, 0);
-                map.put(ATTR_MAX_LOGIN_PER_IP, 0);
+            con.commit();
+        } catch (SQLException ex) {
+            LOG.error("DbUserManager.saveAll()", ex);
+            rollbackQuitely(con);
+            throw new FtpException("DbUserManager.saveAll()", ex);
+        } finally {
+            closeQuitely(insertBatch);
+            closeQuitely(updateBatch);
+            if (con != null) {
+                try {
+                    con.setAutoCommit(true);
+                } catch (SQLException e) {
+                    // ignore
+                }
             }
+            closeQuitely(con);
+        }
+    }
 
-            String sql = null;
-            if (!doesExist(user.getName())) {
-                sql = StringUtils.replaceString(insertUserStmt, map);
-            } else {
-                sql = StringUtils.replaceString(updateUserStmt, map);
-            }
-            LOG.info(sql);
+    /**
+     * Get the values of the attributes of a user to save.
+     *
+     * @param existingUser
+     *            The stored user, if any, whose password is kept if the
+     *            user to save has none
+     */
+    private Map<String, Object> getUserValues(User user, BaseUser existingUser) {
+        HashMap<String, Object> map = new HashMap<>();
+        map.put(ATTR_LOGIN, user.getName());
+
+        String password = null;
+        if(user.getPassword() != null) {
+            // password provided, encrypt it and store the encrypted value
+            password= getPasswordEncryptor().encrypt(user.getPassword());
+        } else if (existingUser != null) {
+            // password was not provided, either reuse the one of the
+            // existing user or store as null
+            password = existingUser.getPassword();
+        }
+        map.put(ATTR_PASSWORD, password);
 
-            // execute query
-            stmt = createConnection().createStatement();
-            stmt.executeUpdate(sql);
-        } catch (SQLException ex) {
-            LOG.error("DbUserManager.save()", ex);
-            throw new FtpException("DbUserManager.save()", ex);
-        } finally {
-            closeQuitely(stmt);
+
+        String home = user.getHomeDirectory();
+        if (home == null) {
+            home = "/";
+        }
+        map.put(ATTR_HOME, home);
+        map.put(ATTR_ENABLE, Boolean.valueOf(user.getEnabled()));
+
+        map.put(ATTR_WRITE_PERM, Boolean.valueOf(user
+                .authorize(new WriteRequest()) != null));
+        map.put(ATTR_MAX_IDLE_TIME, user.getMaxIdleTime());
+
+        TransferRateRequest transferRateRequest = new TransferRateRequest();
+        transferRateRequest = (TransferRateRequest) user
+                .authorize(transferRateRequest);
+
+        if (transferRateRequest != null) {
+            map.put(ATTR_MAX_UPLOAD_RATE, transferRateRequest
+                    .getMaxUploadRate());
+            map.put(ATTR_MAX_DOWNLOAD_RATE, transferRateRequest
+                    .getMaxDownloadRate());
+        } else {
+            map.put(ATTR_MAX_UPLOAD_RATE, 0);
+            map.put(ATTR_MAX_DOWNLOAD_RATE, 0);
         }
+
+        // request that always will succeed
+        ConcurrentLoginRequest concurrentLoginRequest = new ConcurrentLoginRequest(
+                0, 0);
+        concurrentLoginRequest = (ConcurrentLoginRequest) user
+                .authorize(concurrentLoginRequest);
+
+        if (concurrentLoginRequest != null) {
+            map.put(ATTR_MAX_LOGIN_NUMBER, concurrentLoginRequest
+                    .getMaxConcurrentLogins());
+            map.put(ATTR_MAX_LOGIN_PER_IP, concurrentLoginRequest
+                    .getMaxConcurrentLoginsPerIP());
+        } else {
+            map.put(ATTR_MAX_LOGIN_NUMBER, 0);
+            map.put(ATTR_MAX_LOGIN_PER_IP, 0);
+        }
+        return map;
     }
 
     private void closeQuitely(Statement stmt) {
         if(stmt != null) {
-        Connection con = null;
-        try {
-        con = stmt.getConnection();
-        } catch (Exception e) {
-        }
-        try {
+            try {
                 stmt.close();
             } catch (SQLException e) {
                 // ignore
             }
-        closeQuitely(con);
         }
     }
 
@@ -470,19 +548,28 @@ public class DbUserManager extends AbstractUserManager {
         }
     }
 
-    private BaseUser selectUserByName(String name) throws SQLException {
+    private void rollbackQuitely(Connection con) {
+        if (con != null) {
+            try {
+                con.rollback();
+            } catch (SQLException e) {
+                // ignore
+            }
+        }
+    }
+
+    private BaseUser selectUserByName(Connection con, String name) throws SQLException {
         // create sql query
         HashMap<String, Object> map = new HashMap<>();
-        map.put(ATTR_LOGIN, escapeString(name));
-        String sql = StringUtils.replaceString(selectUserStmt, map);
-        LOG.info(sql);
+        map.put(ATTR_LOGIN, name);
+        LOG.debug("{}", selectUserStmt);
 
-        Statement stmt = null;
+        PreparedStatement stmt = null;
         ResultSet rs = null;
         try {
             // execute query
-            stmt = createConnection().createStatement();
-            rs = stmt.executeQuery(sql);
+            stmt = selectUserStmt.prepare(con, map);
+            rs = stmt.executeQuery();
 
             // populate user object
             BaseUser thisUser = null;
@@ -520,11 +607,10 @@ public class DbUserManager extends AbstractUserManager {
      * Get the user object. Fetch the row from the table.
      */
     public User getUserByName(String name) throws FtpException {
-        Statement stmt = null;
-        ResultSet rs = null;
+        Connection con = null;
         try {
-
-            BaseUser user = selectUserByName(name);
+            con = createConnection();
+            BaseUser user = selectUserByName(con, name);
 
             if(user != null) {
                 // reset the password, not to be sent to API users
@@ -537,8 +623,7 @@ public class DbUserManager extends AbstractUserManager {
             LOG.error("DbUserManager.getUserByName()", ex);
             throw new FtpException("DbUserManager.getUserByName()", ex);
         } finally {
-            closeQuitely(rs);
-            closeQuitely(stmt);
+            closeQuitely(con);
         }
     }
 
@@ -546,19 +631,20 @@ public class DbUserManager extends AbstractUserManager {
      * User existance check.
      */
     public boolean doesExist(String name) throws FtpException {
-        Statement stmt = null;
+        Connection con = null;
+        PreparedStatement stmt = null;
         ResultSet rs = null;
         try {
 
             // create the sql
             HashMap<String, Object> map = new HashMap<>();
-            map.put(ATTR_LOGIN, escapeString(name));
-            String sql = StringUtils.replaceString(selectUserStmt, map);
-            LOG.info(sql);
+            map.put(ATTR_LOGIN, name);
+            LOG.debug("{}", selectUserStmt);
 
             // execute query
-            stmt = createConnection().createStatement();
-            rs = stmt.executeQuery(sql);
+            con = createConnection();
+            stmt = selectUserStmt.prepare(con, map);
+            rs = stmt.executeQuery();
             return rs.next();
         } catch (SQLException ex) {
             LOG.error("DbUserManager.doesExist()", ex);
@@ -566,6 +652,7 @@ public class DbUserManager extends AbstractUserManager {
         } finally {
             closeQuitely(rs);
             closeQuitely(stmt);
+            closeQuitely(con);
         }
     }
 
@@ -574,17 +661,18 @@ public class DbUserManager extends AbstractUserManager {
      */
     public String[] getAllUserNames() throws FtpException {
 
-        Statement stmt = null;
+        Connection con = null;
+        PreparedStatement stmt = null;
         ResultSet rs = null;
         try {
 
             // create sql query
-            String sql = selectAllStmt;
-            LOG.info(sql);
+            LOG.debug("{}", selectAllStmt);
 
             // execute query
-            stmt = createConnection().createStatement();
-            rs = stmt.executeQuery(sql);
+            con = createConnection();
+            stmt = selectAllStmt.prepare(con, new HashMap<String, Object>());
+            rs = stmt.executeQuery();
 
             // populate list
             ArrayList<String> names = new ArrayList<>();
@@ -598,6 +686,7 @@ public class DbUserManager extends AbstractUserManager {
         } finally {
             closeQuitely(rs);
             closeQuitely(stmt);
+            closeQuitely(con);
         }
     }
 
@@ -620,31 +709,35 @@ public class DbUserManager extends AbstractUserManager {
                 password = "";
             }
 
-            Statement stmt = null;
+            Connection con = null;
+            PreparedStatement stmt = null;
             ResultSet rs = null;
             try {
 
                 // create the sql query
                 HashMap<String, Object> map = new HashMap<>();
-                map.put(ATTR_LOGIN, escapeString(user));
-                String sql = StringUtils.replaceString(authenticateStmt, map);
-                LOG.info(sql);
+                map.put(ATTR_LOGIN, user);
+                LOG.debug("{}", authenticateStmt);
 
                 // execute query
-                stmt = createConnection().createStatement();
-                rs = stmt.executeQuery(sql);
+                con = createConnection();
+                stmt = authenticateStmt.prepare(con, map);
+                rs = stmt.executeQuery();
                 if (rs.next()) {
-                    try {
-                        String storedPassword = rs.getString(ATTR_PASSWORD);
-                        if (getPasswordEncryptor().matches(password, storedPassword)) {
-                            return getUserByName(user);
-                        } else {
+                    String storedPassword = rs.getString(ATTR_PASSWORD);
+                    if (getPasswordEncryptor().matches(password, storedPassword)) {
+                        // use the same connection to load the user
+                        BaseUser authenticatedUser = selectUserByName(con, user);
+                        if (authenticatedUser == null) {
                             throw new AuthenticationFailedException(
                                     "Authentication failed");
                         }
-                    } catch (FtpException e) {
+                        // reset the password, not to be sent to API users
+                        authenticatedUser.setPassword(null);
+                        return authenticatedUser;
+                    } else {
                         throw new AuthenticationFailedException(
-                                "Authentication failed", e);
+                                "Authentication failed");
                     }
                 } else {
                     throw new AuthenticationFailedException(
@@ -657,6 +750,7 @@ public class DbUserManager extends AbstractUserManager {
             } finally {
                 closeQuitely(rs);
                 closeQuitely(stmt);
+                closeQuitely(con);
             }
         } else if (authentication instanceof AnonymousAuthentication) {
             try {
@@ -677,25 +771,4 @@ public class DbUserManager extends AbstractUserManager {
                     "Authentication not supported by this user manager");
         }
     }
-
-    /**
-     * Escape string to be embedded in SQL statement.
-     */
-    private String escapeString(String input) {
-        if (input == null) {
-            return input;
-        }
-
-        StringBuilder valBuf = new StringBuilder(input);
-        for (int i = 0; i < valBuf.length(); i++) {
-            char ch = valBuf.charAt(i);
-            if (ch == '\'' || ch == '\\' || ch == '$' || ch == '^' || ch == '['
-                    || ch == ']' || ch == '{' || ch == '}') {
-
-                valBuf.insert(i, '\\');
-                i++;
-            }
-        }
-        return valBuf.toString();
-    }
-}
\ No newline at end of file
+}
@@ -19,17 +19,31 @@
 
 package org.apache.ftpserver.usermanager.impl;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import org.apache.ftpserver.FtpServerConfigurationException;
 import org.apache.ftpserver.ftplet.Authentication;
@@ -98,6 +112,12 @@ import org.slf4j.LoggerFactory;
  *      <td>ftpserver.user.{username}.downloadrate</td>
  *      <td>The maximum number of bytes per second the user is allowed to download files. 0 disables the check.</td>
  * </tr>
+ * <tr>
+ *      <td>ftpserver.user.{username}.burstsize</td>
+ *      <td>The number of bytes the user can transfer at full speed after being idle, when the transfer rate is limited. 
+ *              Optional, defaults to one second worth of data.
+ *      </td>
+ * </tr>
  * </table>
  * 
  * <p>Example:</p>
@@ -112,6 +132,13 @@ import org.slf4j.LoggerFactory;
  * ftpserver.user.admin.uploadrate=0
  * ftpserver.user.admin.downloadrate=0
  * </pre>
+ *
+ * <p>The users are parsed once into an in-memory index, lookups do not go
+ * through the properties. A saved user is appended to the end of the file,
+ * the whole file being rewritten only when users are deleted or when the
+ * appended entries outnumber the users. The file can also be watched for
+ * changes, which are then reloaded without a call to {@link #refresh()}.</p>
+ *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
 public class PropertiesUserManager extends AbstractUserManager {
@@ -121,20 +148,158 @@ public class PropertiesUserManager extends AbstractUserManager {
 
     private final static String PREFIX = "ftpserver.user.";
 
-    private BaseProperties userDataProp;
+    private final static String[] ATTRIBUTES = { ATTR_PASSWORD, ATTR_HOME,
+            ATTR_ENABLE, ATTR_WRITE_PERM, ATTR_MAX_IDLE_TIME,
+            ATTR_MAX_UPLOAD_RATE, ATTR_MAX_DOWNLOAD_RATE,
+            ATTR_TRANSFER_BURST_SIZE, ATTR_MAX_LOGIN_NUMBER,
+            ATTR_MAX_LOGIN_PER_IP };
+
+    private volatile BaseProperties userDataProp;
+
+    /**
+     * The users parsed from the properties, by name
+     */
+    private final ConcurrentSkipListMap<String, UserRecord> users = new ConcurrentSkipListMap<>();
 
     private File userDataFile;
 
     private URL userUrl;
 
+    /**
+     * The number of users appended to the file since it was last written
+     * completely
+     */
+    private int appendedUsers = 0;
+
+    /**
+     * The length and modification time of the file when it was last read or
+     * written, to ignore the change events caused by our own writes
+     */
+    private long fileLength = -1;
+
+    private long fileLastModified = -1;
+
+    private WatchService watchService;
+
+    private boolean watchFile = false;
+
+    /**
+     * A user parsed from the properties.
+     */
+    private static final class UserRecord {
+        private final String name;
+
+        private final String password;
+
+        private final String homeDirectory;
+
+        private final boolean enabled;
+
+        private final boolean writePermission;
+
+        private final int maxIdleTime;
+
+        private final int maxLoginNumber;
+
+        private final int maxLoginPerIP;
+
+        private final int uploadRate;
+
+        private final int downloadRate;
+
+        private final int burstSize;
+
+        public UserRecord(final String name, final BaseProperties properties) {
+            String baseKey = PREFIX + name + '.';
+            this.name = name;
+            password = properties.getProperty(baseKey + ATTR_PASSWORD);
+            homeDirectory = properties.getProperty(baseKey + ATTR_HOME, "/");
+            enabled = properties.getBoolean(baseKey + ATTR_ENABLE, true);
+            writePermission = properties.getBoolean(
+                    baseKey + ATTR_WRITE_PERM, false);
+            maxIdleTime = properties.getInteger(baseKey + ATTR_MAX_IDLE_TIME,
+                    0);
+            maxLoginNumber = properties.getInteger(baseKey
+                    + ATTR_MAX_LOGIN_NUMBER, 0);
+            maxLoginPerIP = properties.getInteger(baseKey
+                    + ATTR_MAX_LOGIN_PER_IP, 0);
+            uploadRate = properties.getInteger(baseKey + ATTR_MAX_UPLOAD_RATE,
+                    0);
+            downloadRate = properties.getInteger(baseKey
+                    + ATTR_MAX_DOWNLOAD_RATE, 0);
+            burstSize = properties.getInteger(baseKey
+                    + ATTR_TRANSFER_BURST_SIZE, 0);
+        }
+
+        public User toUser() {
+            BaseUser user = new BaseUser();
+            user.setName(name);
+            user.setEnabled(enabled);
+            user.setHomeDirectory(homeDirectory);
+
+            List<Authority> authorities = new ArrayList<>();
+
+            if (writePermission) {
+                authorities.add(new WritePermission());
+            }
+
+            authorities.add(new ConcurrentLoginPermission(maxLoginNumber,
+                    maxLoginPerIP));
+            authorities.add(new TransferRatePermission(downloadRate,
+                    uploadRate, burstSize));
+
+            user.setAuthorities(authorities);
+
+            user.setMaxIdleTime(maxIdleTime);
+
+            return user;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof UserRecord)) {
+                return false;
+            }
+            UserRecord other = (UserRecord) obj;
+            return name.equals(other.name)
+                    && (password == null ? other.password == null : password
+                            .equals(other.password))
+                    && homeDirectory.equals(other.homeDirectory)
+                    && enabled == other.enabled
+                    && writePermission == other.writePermission
+                    && maxIdleTime == other.maxIdleTime
+                    && maxLoginNumber == other.maxLoginNumber
+                    && maxLoginPerIP == other.maxLoginPerIP
+                    && uploadRate == other.uploadRate
+                    && downloadRate == other.downloadRate
+                    && burstSize == other.burstSize;
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+    }
+
     /**
      * Internal constructor, do not use directly. Use {@link PropertiesUserManagerFactory} instead.
      */
     public PropertiesUserManager(PasswordEncryptor passwordEncryptor,
             File userDataFile, String adminName) {
+        this(passwordEncryptor, userDataFile, adminName, false);
+    }
+
+    /**
+     * Internal constructor, do not use directly. Use {@link PropertiesUserManagerFactory} instead.
+     */
+    public PropertiesUserManager(PasswordEncryptor passwordEncryptor,
+            File userDataFile, String adminName, boolean watchFile) {
         super(adminName, passwordEncryptor);
 
         loadFromFile(userDataFile);
+
+        this.watchFile = watchFile;
+        startWatching();
     }
 
     /**
@@ -149,7 +314,7 @@ public class PropertiesUserManager extends AbstractUserManager {
 
     private void loadFromFile(File userDataFile) {
         try {
-            userDataProp = new BaseProperties();
+            BaseProperties properties = new BaseProperties();
 
             if (userDataFile != null) {
                 LOG.debug("File configured, will try loading");
@@ -160,8 +325,9 @@ public class PropertiesUserManager extends AbstractUserManager {
                     LOG.debug("File found on file system");
                     FileInputStream fis = null;
                     try {
+                        rememberFileState();
                         fis = new FileInputStream(userDataFile);
-                        userDataProp.load(fis);
+                        properties.load(fis);
                     } finally {
                         IoUtils.close(fis);
                     }
@@ -175,7 +341,7 @@ public class PropertiesUserManager extends AbstractUserManager {
 
                     if (is != null) {
                         try {
-                            userDataProp.load(is);
+                            properties.load(is);
                         } finally {
                             IoUtils.close(is);
                         }
@@ -187,6 +353,8 @@ public class PropertiesUserManager extends AbstractUserManager {
                     }
                 }
             }
+
+            setUserData(properties);
         } catch (IOException e) {
             throw new FtpServerConfigurationException(
                     "Error loading user data file : " + userDataFile, e);
@@ -195,7 +363,7 @@ public class PropertiesUserManager extends AbstractUserManager {
 
     private void loadFromUrl(URL userDataPath) {
         try {
-            userDataProp = new BaseProperties();
+            BaseProperties properties = new BaseProperties();
 
             if (userDataPath != null) {
                 LOG.debug("URL configured, will try loading");
@@ -206,36 +374,143 @@ public class PropertiesUserManager extends AbstractUserManager {
                 is = userDataPath.openStream();
 
                 try {
-                    userDataProp.load(is);
+                    properties.load(is);
                 } finally {
                     IoUtils.close(is);
                 }
             }
+
+            setUserData(properties);
         } catch (IOException e) {
             throw new FtpServerConfigurationException(
                     "Error loading user data resource : " + userDataPath, e);
         }
     }
 
+    /**
+     * Replace the user data, updating the index only for the users which
+     * were added, changed or removed.
+     */
+    private synchronized void setUserData(BaseProperties properties) {
+        String suffix = '.' + ATTR_HOME;
+        Map<String, UserRecord> loaded = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(PREFIX) && key.endsWith(suffix)
+                    && key.length() >= PREFIX.length() + suffix.length()) {
+                String name = key.substring(PREFIX.length(), key.length()
+                        - suffix.length());
+                loaded.put(name, new UserRecord(name, properties));
+            }
+        }
+
+        users.keySet().retainAll(loaded.keySet());
+        for (UserRecord record : loaded.values()) {
+            if (!record.equals(users.get(record.name))) {
+                users.put(record.name, record);
+            }
+        }
+        userDataProp = properties;
+    }
+
     /**
      * Reloads the contents of the user.properties file. This allows any manual modifications to the file to be recognised by the running server.
      */
-    public void refresh() {
-        synchronized (userDataProp) {
-            if (userDataFile != null) {
-                LOG.debug("Refreshing user manager using file: "
-                        + userDataFile.getAbsolutePath());
-                loadFromFile(userDataFile);
-    
-            } else {
-                //file is null, must have been created using URL
-                LOG.debug("Refreshing user manager using URL: "
-                        + userUrl.toString());
-                loadFromUrl(userUrl);
+    public synchronized void refresh() {
+        if (userDataFile != null) {
+            LOG.debug("Refreshing user manager using file: "
+                    + userDataFile.getAbsolutePath());
+            loadFromFile(userDataFile);
+
+        } else {
+            //file is null, must have been created using URL
+            LOG.debug("Refreshing user manager using URL: "
+                    + userUrl.toString());
+            loadFromUrl(userUrl);
+        }
+    }
+
+    /**
+     * Watch the user data file, and reload it when it is changed by another
+     * process, if enabled. Started when the user manager is created and by
+     * the server using it, which stops watching when stopped. This method is
+     * idempotent.
+     */
+    public synchronized void startWatching() {
+        if (!watchFile || userDataFile == null || watchService != null) {
+            return;
+        }
+
+        final File file = userDataFile.getAbsoluteFile();
+        Path dir = file.getParentFile().toPath();
+        try {
+            watchService = dir.getFileSystem().newWatchService();
+            dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            throw new FtpServerConfigurationException(
+                    "Error watching user data file : " + file, e);
+        }
+
+        final WatchService service = watchService;
+        Thread watcher = new Thread(new Runnable() {
+            public void run() {
+                watch(service, file);
             }
+        }, "PropertiesUserManager-" + file.getName());
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watch(WatchService service, File file) {
+        Path fileName = file.toPath().getFileName();
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || fileName.equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+
+                if (changed) {
+                    reloadIfChanged();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // the user manager is disposed
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
+    /**
+     * Reload the user data file unless it is in the state we last read or
+     * wrote it.
+     */
+    private synchronized void reloadIfChanged() {
+        if (userDataProp == null || !userDataFile.exists()
+                || (userDataFile.length() == fileLength
+                        && userDataFile.lastModified() == fileLastModified)) {
+            return;
+        }
+
+        LOG.debug("User data file changed, reloading: {}", userDataFile);
+        try {
+            loadFromFile(userDataFile);
+            appendedUsers = 0;
+        } catch (FtpServerConfigurationException e) {
+            LOG.warn("Failed reloading user data file", e);
+        }
+    }
+
+    private void rememberFileState() {
+        fileLength = userDataFile.length();
+        fileLastModified = userDataFile.lastModified();
+    }
+
     /**
      * Retrive the file backing this user manager
      * @return The file
@@ -253,6 +528,7 @@ public class PropertiesUserManager extends AbstractUserManager {
             throw new NullPointerException("User name is null.");
         }
         String thisPrefix = PREFIX + usr.getName() + '.';
+        Set<String> previousKeys = getUserKeys(thisPrefix);
 
         // set other properties
         userDataProp.setProperty(thisPrefix + ATTR_PASSWORD, getPassword(usr));
@@ -277,9 +553,16 @@ public class PropertiesUserManager extends AbstractUserManager {
                     transferRateRequest.getMaxUploadRate());
             userDataProp.setProperty(thisPrefix + ATTR_MAX_DOWNLOAD_RATE,
                     transferRateRequest.getMaxDownloadRate());
+            if (transferRateRequest.getBurstSize() > 0) {
+                userDataProp.setProperty(thisPrefix + ATTR_TRANSFER_BURST_SIZE,
+                        transferRateRequest.getBurstSize());
+            } else {
+                userDataProp.remove(thisPrefix + ATTR_TRANSFER_BURST_SIZE);
+            }
         } else {
             userDataProp.remove(thisPrefix + ATTR_MAX_UPLOAD_RATE);
             userDataProp.remove(thisPrefix + ATTR_MAX_DOWNLOAD_RATE);
+            userDataProp.remove(thisPrefix + ATTR_TRANSFER_BURST_SIZE);
         }
 
         // request that always will succeed
@@ -298,7 +581,85 @@ public class PropertiesUserManager extends AbstractUserManager {
             userDataProp.remove(thisPrefix + ATTR_MAX_LOGIN_PER_IP);
         }
 
-        saveUserData();
+        users.put(usr.getName(), new UserRecord(usr.getName(), userDataProp));
+
+        // appended properties can not remove the ones already in the file
+        Set<String> keys = getUserKeys(thisPrefix);
+        if (keys.containsAll(previousKeys)) {
+            appendUserData(keys);
+        } else {
+            saveUserData();
+        }
+    }
+
+    /**
+     * The keys of the known attributes stored for a user.
+     */
+    private Set<String> getUserKeys(String thisPrefix) {
+        Set<String> keys = new LinkedHashSet<>();
+        for (String attribute : ATTRIBUTES) {
+            String key = thisPrefix + attribute;
+            if (userDataProp.containsKey(key)) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Append properties at the end of the user data file, overriding their
+     * previous values. The whole file is written instead if the appended
+     * users outnumber the users.
+     */
+    private void appendUserData(Set<String> keys) throws FtpException {
+        if (userDataFile == null) {
+            return;
+        }
+        if (appendedUsers >= users.size() || !userDataFile.exists()) {
+            saveUserData();
+            return;
+        }
+
+        RandomAccessFile raf = null;
+        try {
+            Properties properties = new Properties();
+            for (String key : keys) {
+                properties.setProperty(key, userDataProp.getProperty(key));
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            properties.store(out, null);
+
+            // skip the date comment
+            String lines = new String(out.toByteArray(),
+                    StandardCharsets.ISO_8859_1);
+            lines = lines.substring(lines.indexOf('\n') + 1);
+
+            raf = new RandomAccessFile(userDataFile, "rw");
+            long length = raf.length();
+            if (length > 0) {
+                raf.seek(length - 1);
+                int last = raf.read();
+                if (last != '\n' && last != '\r') {
+                    lines = System.lineSeparator() + lines;
+                }
+            }
+            raf.seek(length);
+            raf.write(lines.getBytes(StandardCharsets.ISO_8859_1));
+        } catch (IOException ex) {
+            LOG.error("Failed saving user data", ex);
+            throw new FtpException("Failed saving user data", ex);
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ex) {
+                    LOG.warn("Failed closing user data file", ex);
+                }
+            }
+        }
+
+        appendedUsers++;
+        rememberFileState();
     }
 
     /**
@@ -327,13 +688,16 @@ public class PropertiesUserManager extends AbstractUserManager {
         } finally {
             IoUtils.close(fos);
         }
+
+        appendedUsers = 0;
+        rememberFileState();
     }
 
     /**
      * Delete an user. Removes all this user entries from the properties. After
      * removing the corresponding from the properties, save the data.
      */
-    public void delete(String usrName) throws FtpException {
+    public synchronized void delete(String usrName) throws FtpException {
         // remove entries from properties
         String thisPrefix = PREFIX + usrName + '.';
         Enumeration<?> propNames = userDataProp.propertyNames();
@@ -348,6 +712,9 @@ public class PropertiesUserManager extends AbstractUserManager {
         while (remKeysIt.hasNext()) {
             userDataProp.remove(remKeysIt.next());
         }
+        if (usrName != null) {
+            users.remove(usrName);
+        }
 
         saveUserData();
     }
@@ -366,19 +733,16 @@ public class PropertiesUserManager extends AbstractUserManager {
      * </pre>
      */
     private String getPassword(User usr) {
-        String name = usr.getName();
         String password = usr.getPassword();
 
         if (password != null) {
             password = getPasswordEncryptor().encrypt(password);
         } else {
-            String blankPassword = getPasswordEncryptor().encrypt("");
-
-            if (doesExist(name)) {
-                String key = PREFIX + name + '.' + ATTR_PASSWORD;
-                password = userDataProp.getProperty(key, blankPassword);
+            UserRecord record = users.get(usr.getName());
+            if (record != null && record.password != null) {
+                password = record.password;
             } else {
-                password = blankPassword;
+                password = getPasswordEncryptor().encrypt("");
             }
         }
         return password;
@@ -388,75 +752,23 @@ public class PropertiesUserManager extends AbstractUserManager {
      * Get all user names.
      */
     public String[] getAllUserNames() {
-        // get all user names
-        String suffix = '.' + ATTR_HOME;
-        ArrayList<String> ulst = new ArrayList<>();
-        Enumeration<?> allKeys = userDataProp.propertyNames();
-        int prefixlen = PREFIX.length();
-        int suffixlen = suffix.length();
-        while (allKeys.hasMoreElements()) {
-            String key = (String) allKeys.nextElement();
-            if (key.endsWith(suffix)) {
-                String name = key.substring(prefixlen);
-                int endIndex = name.length() - suffixlen;
-                name = name.substring(0, endIndex);
-                ulst.add(name);
-            }
-        }
-
-        Collections.sort(ulst);
-        return ulst.toArray(new String[0]);
+        // the index is sorted by name
+        return users.keySet().toArray(new String[0]);
     }
 
     /**
      * Load user data.
      */
     public User getUserByName(String userName) {
-        if (!doesExist(userName)) {
-            return null;
-        }
-
-        String baseKey = PREFIX + userName + '.';
-        BaseUser user = new BaseUser();
-        user.setName(userName);
-        user.setEnabled(userDataProp.getBoolean(baseKey + ATTR_ENABLE, true));
-        user.setHomeDirectory(userDataProp
-                .getProperty(baseKey + ATTR_HOME, "/"));
-
-        List<Authority> authorities = new ArrayList<>();
-
-        if (userDataProp.getBoolean(baseKey + ATTR_WRITE_PERM, false)) {
-            authorities.add(new WritePermission());
-        }
-
-        int maxLogin = userDataProp.getInteger(baseKey + ATTR_MAX_LOGIN_NUMBER,
-                0);
-        int maxLoginPerIP = userDataProp.getInteger(baseKey
-                + ATTR_MAX_LOGIN_PER_IP, 0);
-
-        authorities.add(new ConcurrentLoginPermission(maxLogin, maxLoginPerIP));
-
-        int uploadRate = userDataProp.getInteger(
-                baseKey + ATTR_MAX_UPLOAD_RATE, 0);
-        int downloadRate = userDataProp.getInteger(baseKey
-                + ATTR_MAX_DOWNLOAD_RATE, 0);
-
-        authorities.add(new TransferRatePermission(downloadRate, uploadRate));
-
-        user.setAuthorities(authorities);
-
-        user.setMaxIdleTime(userDataProp.getInteger(baseKey
-                + ATTR_MAX_IDLE_TIME, 0));
-
-        return user;
+        UserRecord record = userName != null ? users.get(userName) : null;
+        return record != null ? record.toUser() : null;
     }
 
     /**
      * User existance check
      */
     public boolean doesExist(String name) {
-        String key = PREFIX + name + '.' + ATTR_HOME;
-        return userDataProp.containsKey(key);
+        return name != null && users.containsKey(name);
     }
 
     /**
@@ -478,16 +790,15 @@ public class PropertiesUserManager extends AbstractUserManager {
                 password = "";
             }
 
-            String storedPassword = userDataProp.getProperty(PREFIX + user
-                    + '.' + ATTR_PASSWORD);
+            UserRecord record = users.get(user);
 
-            if (storedPassword == null) {
+            if (record == null || record.password == null) {
                 // user does not exist
                 throw new AuthenticationFailedException("Authentication failed");
             }
 
-            if (getPasswordEncryptor().matches(password, storedPassword)) {
-                return getUserByName(user);
+            if (getPasswordEncryptor().matches(password, record.password)) {
+                return record.toUser();
             } else {
                 throw new AuthenticationFailedException("Authentication failed");
             }
@@ -504,10 +815,27 @@ public class PropertiesUserManager extends AbstractUserManager {
         }
     }
 
+    /**
+     * Stop watching the user data file, ending the watcher thread. This
+     * method is idempotent.
+     */
+    public synchronized void stopWatching() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOG.warn("Failed closing the user data file watcher", e);
+            }
+            watchService = null;
+        }
+    }
+
     /**
      * Close the user manager - remove existing entries.
      */
     public synchronized void dispose() {
+        stopWatching();
+        users.clear();
         if (userDataProp != null) {
             userDataProp.clear();
             userDataProp = null;
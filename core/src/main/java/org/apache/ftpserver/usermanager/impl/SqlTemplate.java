@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ftpserver.util.StringUtils;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * An SQL statement configured with named placeholders, e.g.
+ * <code>SELECT * FROM FTP_USER WHERE userid = '{userid}'</code>. The
+ * placeholders are compiled into the parameters of a
+ * {@link PreparedStatement}, so that the database can reuse the query plan.
+ * A placeholder making up a whole string literal, like <code>'{userid}'</code>
+ * above, becomes a string parameter.
+ *
+ * Statements with placeholders embedded in a longer string literal, e.g.
+ * <code>LIKE '%{userid}%'</code>, can not be parameterized. The escaped
+ * values are then substituted in the statement text.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SqlTemplate {
+
+    private final String template;
+
+    /**
+     * The statement with a ? for each parameter, null if it can not be
+     * parameterized
+     */
+    private final String sql;
+
+    private final List<String> parameterNames = new ArrayList<>();
+
+    /**
+     * Whether each parameter was quoted, that is a string literal
+     */
+    private final List<Boolean> quotedParameters = new ArrayList<>();
+
+    public SqlTemplate(final String template) {
+        this.template = template;
+        this.sql = template != null ? compile(template) : null;
+    }
+
+    /**
+     * Replace the placeholders by parameters.
+     *
+     * @return The statement, null if it can not be parameterized
+     */
+    private String compile(final String source) {
+        StringBuilder sb = new StringBuilder(source.length());
+        boolean inLiteral = false;
+        int literalStart = -1;
+
+        int i = 0;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            int closeIndex = c == '{' ? source.indexOf('}', i) : -1;
+
+            if (closeIndex != -1) {
+                String name = source.substring(i + 1, closeIndex);
+                if (!inLiteral) {
+                    sb.append('?');
+                    parameterNames.add(name);
+                    quotedParameters.add(Boolean.FALSE);
+                } else if (literalStart == sb.length() - 1
+                        && closeIndex + 1 < source.length()
+                        && source.charAt(closeIndex + 1) == '\'') {
+                    // the placeholder is the whole literal
+                    sb.setLength(literalStart);
+                    sb.append('?');
+                    parameterNames.add(name);
+                    quotedParameters.add(Boolean.TRUE);
+                    inLiteral = false;
+                    closeIndex++;
+                } else {
+                    parameterNames.clear();
+                    quotedParameters.clear();
+                    return null;
+                }
+                i = closeIndex + 1;
+            } else {
+                if (c == '\'') {
+                    inLiteral = !inLiteral;
+                    if (inLiteral) {
+                        literalStart = sb.length();
+                    }
+                }
+                sb.append(c);
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The configured statement, with named placeholders.
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * Whether the placeholders are compiled into statement parameters.
+     */
+    public boolean isParameterized() {
+        return sql != null;
+    }
+
+    /**
+     * Create a statement for this template.
+     *
+     * @param values
+     *            The values of the placeholders
+     */
+    public PreparedStatement prepare(final Connection con,
+            final Map<String, Object> values) throws SQLException {
+        if (sql != null) {
+            PreparedStatement stmt = con.prepareStatement(sql);
+            try {
+                bind(stmt, values);
+            } catch (SQLException e) {
+                stmt.close();
+                throw e;
+            }
+            return stmt;
+        } else {
+            return con.prepareStatement(format(values));
+        }
+    }
+
+    /**
+     * Create a statement to which the values of several executions of this
+     * template can be added with {@link #addBatch(Statement, Map)}.
+     */
+    public Statement createBatch(final Connection con) throws SQLException {
+        if (sql != null) {
+            return con.prepareStatement(sql);
+        } else {
+            return con.createStatement();
+        }
+    }
+
+    /**
+     * Add an execution to a statement created by
+     * {@link #createBatch(Connection)}.
+     */
+    public void addBatch(final Statement stmt, final Map<String, Object> values)
+            throws SQLException {
+        if (sql != null) {
+            PreparedStatement pstmt = (PreparedStatement) stmt;
+            bind(pstmt, values);
+            pstmt.addBatch();
+        } else {
+            stmt.addBatch(format(values));
+        }
+    }
+
+    private void bind(final PreparedStatement stmt,
+            final Map<String, Object> values) throws SQLException {
+        for (int i = 0; i < parameterNames.size(); i++) {
+            Object value = values.get(parameterNames.get(i));
+            if (quotedParameters.get(i).booleanValue()) {
+                // an absent value used to be replaced by an empty literal
+                stmt.setString(i + 1, value != null ? value.toString() : "");
+            } else if (value == null) {
+                stmt.setNull(i + 1, Types.VARCHAR);
+            } else {
+                stmt.setObject(i + 1, value);
+            }
+        }
+    }
+
+    /**
+     * Substitute the escaped values in the template.
+     */
+    private String format(final Map<String, Object> values) {
+        Map<String, Object> escaped = new HashMap<>();
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                value = escapeString((String) value);
+            }
+            escaped.put(entry.getKey(), value);
+        }
+        return StringUtils.replaceString(template, escaped);
+    }
+
+    /**
+     * Escape string to be embedded in SQL statement.
+     */
+    private static String escapeString(String input) {
+        StringBuilder valBuf = new StringBuilder(input);
+        for (int i = 0; i < valBuf.length(); i++) {
+            char ch = valBuf.charAt(i);
+            if (ch == '\'' || ch == '\\' || ch == '$' || ch == '^' || ch == '['
+                    || ch == ']' || ch == '{' || ch == '}') {
+
+                valBuf.insert(i, '\\');
+                i++;
+            }
+        }
+        return valBuf.toString();
+    }
+
+    @Override
+    public String toString() {
+        return sql != null ? sql : template;
+    }
+}
@@ -25,7 +25,8 @@ import org.apache.ftpserver.ftplet.AuthorizationRequest;
 /**
  * <strong>Internal class, do not use directly.</strong>
  * 
- * The max upload rate permission
+ * The max upload rate permission. The rates are shared by all transfers of
+ * the user.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
@@ -35,9 +36,22 @@ public class TransferRatePermission implements Authority {
 
     private int maxUploadRate;
 
+    private int burstSize;
+
     public TransferRatePermission(int maxDownloadRate, int maxUploadRate) {
+        this(maxDownloadRate, maxUploadRate, 0);
+    }
+
+    /**
+     * @param burstSize
+     *            The number of bytes that can be transferred at full speed
+     *            after an idle period, zero for one second worth of data
+     */
+    public TransferRatePermission(int maxDownloadRate, int maxUploadRate,
+            int burstSize) {
         this.maxDownloadRate = maxDownloadRate;
         this.maxUploadRate = maxUploadRate;
+        this.burstSize = burstSize;
     }
 
     /**
@@ -49,6 +63,7 @@ public class TransferRatePermission implements Authority {
 
             transferRateRequest.setMaxDownloadRate(maxDownloadRate);
             transferRateRequest.setMaxUploadRate(maxUploadRate);
+            transferRateRequest.setBurstSize(burstSize);
 
             return transferRateRequest;
         } else {
@@ -34,6 +34,8 @@ public class TransferRateRequest implements AuthorizationRequest {
 
     private int maxUploadRate = 0;
 
+    private int burstSize = 0;
+
     /**
      * @return the maxDownloadRate
      */
@@ -64,4 +66,21 @@ public class TransferRateRequest implements AuthorizationRequest {
         this.maxUploadRate = maxUploadRate;
     }
 
+    /**
+     * @return the burstSize, the number of bytes that can be transferred at
+     *         full speed after an idle period, zero for one second worth of
+     *         data
+     */
+    public int getBurstSize() {
+        return burstSize;
+    }
+
+    /**
+     * @param burstSize
+     *            the burstSize to set
+     */
+    public void setBurstSize(int burstSize) {
+        this.burstSize = burstSize;
+    }
+
 }
@@ -51,6 +51,16 @@ public class WritePermission implements Authority {
         this.permissionRoot = permissionRoot;
     }
 
+    /**
+     * Get the file or directory, relative to the user home directory, whose
+     * path the writable files start with
+     * 
+     * @return The file or directory
+     */
+    public String getPermissionRoot() {
+        return permissionRoot;
+    }
+
     /**
      * @see Authority#authorize(AuthorizationRequest)
      */
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.clienttests;
+
+import java.net.ServerSocket;
+
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.impl.FtpMetrics;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+ * Tests that the data connections requested but not used within their idle
+ * time are closed.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class DataConnectionReaperTest extends ClientTestTemplate {
+
+    private int passivePort;
+
+    @Override
+    protected DataConnectionConfigurationFactory createDataConnectionConfigurationFactory() {
+        DataConnectionConfigurationFactory factory = super
+                .createDataConnectionConfigurationFactory();
+        try {
+            passivePort = TestUtil.findFreePort(12544);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        factory.setPassivePorts(Integer.toString(passivePort));
+        factory.setIdleTime(1);
+        return factory;
+    }
+
+    private FtpMetrics getMetrics() {
+        return server.getServerContext().getFtpMetrics();
+    }
+
+    /**
+     * Wait until no data connection is pending.
+     */
+    private void waitForReaper() throws Exception {
+        long end = System.currentTimeMillis() + 10000;
+        while (server.getServerContext().getDataConnectionReaper()
+                .getPendingCount() > 0
+                && System.currentTimeMillis() < end) {
+            Thread.sleep(100);
+        }
+    }
+
+    public void testUnusedPassiveConnectionClosed() throws Exception {
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+        client.pasv();
+        assertEquals(1, server.getServerContext().getDataConnectionReaper()
+                .getPendingCount());
+
+        waitForReaper();
+
+        assertEquals(0, server.getServerContext().getDataConnectionReaper()
+                .getPendingCount());
+        assertEquals(1, getMetrics().getReapedDataConnectionRate().getCount());
+
+        // the passive port has been released
+        ServerSocket ss = new ServerSocket(passivePort);
+        ss.close();
+    }
+
+    public void testUsedPassiveConnectionNotClosed() throws Exception {
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+        client.enterLocalPassiveMode();
+        assertNotNull(client.listNames());
+
+        // the data connection is closed just after the transfer reply
+        waitForReaper();
+        assertEquals(0, server.getServerContext().getDataConnectionReaper()
+                .getPendingCount());
+
+        Thread.sleep(2500);
+        assertEquals(0, getMetrics().getReapedDataConnectionRate().getCount());
+
+        // the session can still transfer data
+        assertNotNull(client.listNames());
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+ * Tests the MBeans of a running server.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class JmxTest extends ClientTestTemplate {
+    private static final String TEST_FILENAME = "test.txt";
+
+    private static final File TEST_FILE = new File(ROOT_DIR, TEST_FILENAME);
+
+    private static final int MAX_DOWNLOAD_RATE = 64 * 1024;
+
+    private static final byte[] TEST_DATA = new byte[64 * MAX_DOWNLOAD_RATE];
+
+    // not to be confused with a server left running by another test
+    private static final String JMX_NAME = "JmxTest";
+
+    private MBeanServer mbeanServer;
+
+    private ObjectName serverName;
+
+    private ObjectName listenerName;
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory factory = super.createServer();
+        factory.setJmxName(JMX_NAME);
+        return factory;
+    }
+
+    @Override
+    protected ConnectionConfigFactory createConnectionConfigFactory() {
+        ConnectionConfigFactory factory = super.createConnectionConfigFactory();
+        factory.setMaxDownloadRate(MAX_DOWNLOAD_RATE);
+        return factory;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        serverName = new ObjectName(
+                "org.apache.ftpserver:type=FtpServer,name=" + JMX_NAME);
+        listenerName = new ObjectName("org.apache.ftpserver:type=Listener,server="
+                + JMX_NAME + ",name=default");
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+    }
+
+    private CompositeData[] getSessions(ObjectName name) throws Exception {
+        return (CompositeData[]) mbeanServer.getAttribute(name, "Sessions");
+    }
+
+    private InputStream startDownload() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE, TEST_DATA);
+        InputStream is = client.retrieveFileStream(TEST_FILENAME);
+        assertNotNull(is);
+
+        // make sure the data is flowing
+        assertTrue(is.read() != -1);
+        return is;
+    }
+
+    public void testServerMBean() throws Exception {
+        assertEquals(Boolean.TRUE, mbeanServer.getAttribute(serverName,
+                "Started"));
+        assertEquals(1, mbeanServer.getAttribute(serverName,
+                "CurrentConnectionNumber"));
+        assertEquals(1, mbeanServer.getAttribute(serverName,
+                "CurrentLoginNumber"));
+
+        CompositeData[] sessions = getSessions(serverName);
+        assertEquals(1, sessions.length);
+        assertEquals(ADMIN_USERNAME, sessions[0].get("userName"));
+        assertEquals("default", sessions[0].get("listenerName"));
+        assertEquals("TYPE I", sessions[0].get("currentCommand"));
+        assertEquals(Boolean.FALSE, sessions[0].get("transferring"));
+        assertTrue((Long) sessions[0].get("writtenBytes") > 0);
+    }
+
+    public void testListenerMBean() throws Exception {
+        assertEquals(getListenerPort(), mbeanServer.getAttribute(
+                listenerName, "Port"));
+        assertEquals(1, mbeanServer.getAttribute(listenerName,
+                "ActiveSessionCount"));
+        assertEquals(1L, mbeanServer.getAttribute(listenerName,
+                "AcceptedConnections"));
+        assertEquals(0, mbeanServer.getAttribute(listenerName,
+                "PassivePortsInUse"));
+        assertEquals(1, getSessions(listenerName).length);
+    }
+
+    public void testSuspendResume() throws Exception {
+        mbeanServer.invoke(serverName, "suspend", null, null);
+        assertEquals(Boolean.TRUE, mbeanServer.getAttribute(serverName,
+                "Suspended"));
+        assertEquals(Boolean.TRUE, mbeanServer.getAttribute(listenerName,
+                "Suspended"));
+
+        mbeanServer.invoke(serverName, "resume", null, null);
+        assertEquals(Boolean.FALSE, mbeanServer.getAttribute(serverName,
+                "Suspended"));
+
+        // connect should work again
+        client.disconnect();
+        client.connect("localhost", getListenerPort());
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+    }
+
+    public void testAbortTransfer() throws Exception {
+        InputStream is = startDownload();
+
+        CompositeData session = getSessions(serverName)[0];
+        assertEquals(Boolean.TRUE, session.get("transferring"));
+        assertEquals("RETR " + TEST_FILENAME, session.get("currentCommand"));
+        assertEquals((long) TEST_DATA.length, session.get("expectedBytes"));
+
+        assertEquals(Boolean.TRUE, mbeanServer.invoke(serverName,
+                "abortTransfer", new Object[] { session.get("id") },
+                new String[] { String.class.getName() }));
+        is.close();
+
+        assertFalse(client.completePendingCommand());
+        assertEquals(FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+                client.getReplyCode());
+
+        // the session is kept
+        assertTrue(client.sendNoOp());
+
+        // the transfer ends once its reply has been sent
+        for (int i = 0; i < 50
+                && (Boolean) getSessions(serverName)[0].get("transferring"); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(Boolean.FALSE, mbeanServer.invoke(serverName,
+                "abortTransfer", new Object[] { session.get("id") },
+                new String[] { String.class.getName() }));
+    }
+
+    public void testKillSession() throws Exception {
+        InputStream is = startDownload();
+
+        CompositeData session = getSessions(serverName)[0];
+        assertEquals(Boolean.TRUE, mbeanServer.invoke(serverName,
+                "killSession", new Object[] { session.get("id") },
+                new String[] { String.class.getName() }));
+        is.close();
+
+        try {
+            client.completePendingCommand();
+            client.sendNoOp();
+            fail("Must throw IOException");
+        } catch (IOException e) {
+            // ok
+        }
+
+        for (int i = 0; i < 50 && getSessions(serverName).length > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, getSessions(serverName).length);
+        assertEquals(Boolean.FALSE, mbeanServer.invoke(serverName,
+                "killSession", new Object[] { session.get("id") },
+                new String[] { String.class.getName() }));
+    }
+
+    public void testKillUserSessions() throws Exception {
+        assertEquals(0, mbeanServer.invoke(serverName, "killUserSessions",
+                new Object[] { TESTUSER1_USERNAME },
+                new String[] { String.class.getName() }));
+        assertEquals(1, mbeanServer.invoke(serverName, "killUserSessions",
+                new Object[] { ADMIN_USERNAME },
+                new String[] { String.class.getName() }));
+    }
+
+    public void testUnregisteredOnStop() throws Exception {
+        assertTrue(mbeanServer.isRegistered(serverName));
+        assertTrue(mbeanServer.isRegistered(listenerName));
+
+        server.stop();
+
+        assertFalse(mbeanServer.isRegistered(serverName));
+        assertFalse(mbeanServer.isRegistered(listenerName));
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPClientConfig;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.ListingCacheFactory;
+import org.apache.ftpserver.command.impl.listing.ListingCache;
+import org.apache.ftpserver.impl.DefaultFtpServerContext;
+
+/**
+ * Tests that listings are served from the cache, and that changes made
+ * through the server are seen.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ListingCacheTest extends ClientTestTemplate {
+    private static final File TEST_FILE1 = new File(ROOT_DIR, "test1.txt");
+
+    private static final File TEST_FILE2 = new File(ROOT_DIR, "test2.txt");
+
+    private static final File TEST_DIR1 = new File(ROOT_DIR, "dir1");
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory serverFactory = super.createServer();
+        ListingCacheFactory cacheFactory = new ListingCacheFactory();
+        cacheFactory.setTimeToLive(60);
+        serverFactory.setListingCache(cacheFactory.createListingCache());
+        return serverFactory;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        client.configure(new FTPClientConfig("UNIX"));
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+
+        TEST_FILE1.createNewFile();
+    }
+
+    private ListingCache getListingCache() {
+        return server.getServerContext().getListingCache();
+    }
+
+    public void testCachedListing() throws Exception {
+        assertEquals(1, client.listNames().length);
+
+        // not seen until the listing expires
+        TEST_FILE2.createNewFile();
+        assertEquals(1, client.listNames().length);
+        assertEquals(1, getListingCache().getHitCount());
+
+        // other formats are cached separately
+        assertEquals(2, client.listFiles().length);
+        assertEquals(2, client.mlistDir().length);
+        assertEquals(1, getListingCache().getHitCount());
+    }
+
+    public void testExpiry() throws Exception {
+        ((DefaultFtpServerContext) server.getServerContext())
+                .setListingCache(new ListingCache(10, 100, 1024));
+
+        assertEquals(1, client.listNames().length);
+        TEST_FILE2.createNewFile();
+        Thread.sleep(200);
+        assertEquals(2, client.listNames().length);
+    }
+
+    public void testTooLargeListing() throws Exception {
+        ((DefaultFtpServerContext) server.getServerContext())
+                .setListingCache(new ListingCache(10, 60000, 5));
+
+        assertEquals(1, client.listNames().length);
+        TEST_FILE2.createNewFile();
+        assertEquals(2, client.listNames().length);
+        assertEquals(0, getListingCache().getSize());
+    }
+
+    public void testStoreInvalidates() throws Exception {
+        assertEquals(1, client.listNames().length);
+
+        assertTrue(client.storeFile(TEST_FILE2.getName(),
+                new ByteArrayInputStream(new byte[10])));
+
+        FTPFile[] files = client.listFiles();
+        assertEquals(2, files.length);
+        assertEquals(10, getFile(files, TEST_FILE2.getName()).getSize());
+    }
+
+    public void testChangesInvalidate() throws Exception {
+        assertEquals(1, client.listNames().length);
+
+        assertTrue(client.makeDirectory(TEST_DIR1.getName()));
+        assertEquals(2, client.listNames().length);
+
+        assertEquals(0, client.listNames(TEST_DIR1.getName()).length);
+        assertTrue(client.rename(TEST_FILE1.getName(), TEST_DIR1.getName()
+                + "/" + TEST_FILE1.getName()));
+        assertEquals(1, client.listNames().length);
+        assertEquals(1, client.listNames(TEST_DIR1.getName()).length);
+
+        assertTrue(client.deleteFile(TEST_DIR1.getName() + "/"
+                + TEST_FILE1.getName()));
+        assertEquals(0, client.listNames(TEST_DIR1.getName()).length);
+
+        assertTrue(client.removeDirectory(TEST_DIR1.getName()));
+        assertEquals(0, client.listNames().length);
+    }
+
+    public void testPermissionsPerUser() throws Exception {
+        FTPFile[] files = client.listFiles();
+        assertTrue(files[0].hasPermission(FTPFile.USER_ACCESS,
+                FTPFile.WRITE_PERMISSION));
+
+        FTPClient anonClient = createFTPClient();
+        try {
+            anonClient.connect("localhost", getListenerPort());
+            anonClient.configure(new FTPClientConfig("UNIX"));
+            assertTrue(anonClient.login(ANONYMOUS_USERNAME, ANONYMOUS_PASSWORD));
+
+            files = anonClient.listFiles();
+            assertEquals(1, files.length);
+            assertFalse(files[0].hasPermission(FTPFile.USER_ACCESS,
+                    FTPFile.WRITE_PERMISSION));
+            assertEquals(0, getListingCache().getHitCount());
+
+            // served from the cache
+            files = anonClient.listFiles();
+            assertFalse(files[0].hasPermission(FTPFile.USER_ACCESS,
+                    FTPFile.WRITE_PERMISSION));
+            assertEquals(1, getListingCache().getHitCount());
+        } finally {
+            anonClient.disconnect();
+        }
+    }
+
+    private FTPFile getFile(FTPFile[] files, String name) {
+        for (FTPFile file : files) {
+            if (name.equals(file.getName())) {
+                return file;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.impl.ServerFtpStatistics;
+
+/**
+ * Tests that the reply to a failed login is delayed without holding a request
+ * thread.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class LoginFailureDelayTest extends ClientTestTemplate {
+    private static final String UNKNOWN_USERNAME = "foo";
+
+    private static final String UNKNOWN_PASSWORD = "bar";
+
+    private static final int LOGIN_FAILURE_DELAY = 500;
+
+    private static final int MAX_LOGIN_FAILURE_DELAY = 2000;
+
+    @Override
+    protected ConnectionConfigFactory createConnectionConfigFactory() {
+        ConnectionConfigFactory factory = super.createConnectionConfigFactory();
+        factory.setMaxLoginFailures(0);
+        factory.setLoginFailureDelay(LOGIN_FAILURE_DELAY);
+        factory.setMaxLoginFailureDelay(MAX_LOGIN_FAILURE_DELAY);
+        // a single request thread would be blocked by a sleeping login failure
+        factory.setMaxThreads(1);
+        return factory;
+    }
+
+    private long timeFailedLogin(FTPClient ftpClient) throws Exception {
+        long start = System.currentTimeMillis();
+        assertFalse(ftpClient.login(UNKNOWN_USERNAME, UNKNOWN_PASSWORD));
+        return System.currentTimeMillis() - start;
+    }
+
+    public void testDelayEscalates() throws Exception {
+        assertTrue(timeFailedLogin(client) >= LOGIN_FAILURE_DELAY);
+        assertTrue(timeFailedLogin(client) >= 2 * LOGIN_FAILURE_DELAY);
+        assertTrue(timeFailedLogin(client) >= MAX_LOGIN_FAILURE_DELAY);
+
+        // the session is still usable after the delay
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+    }
+
+    public void testSuccessfulLoginResetsFailures() throws Exception {
+        ServerFtpStatistics stats = (ServerFtpStatistics) server
+                .getServerContext().getFtpStatistics();
+        InetAddress address = client.getLocalAddress();
+
+        timeFailedLogin(client);
+        timeFailedLogin(client);
+        assertEquals(2, stats.getRecentFailedLoginNumber(address));
+
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+        assertEquals(0, stats.getRecentFailedLoginNumber(address));
+    }
+
+    public void testRequestThreadNotHeld() throws Exception {
+        final AtomicLong failedLoginDone = new AtomicLong();
+        Thread failingClient = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    timeFailedLogin(client);
+                } catch (Exception e) {
+                    // checked by the assert below
+                }
+                failedLoginDone.set(System.nanoTime());
+            }
+        };
+        failingClient.start();
+
+        // give the failed login a head start
+        Thread.sleep(100);
+
+        FTPClient otherClient = createFTPClient();
+        try {
+            otherClient.connect("localhost", getListenerPort());
+            assertTrue(otherClient.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+            long otherLoginDone = System.nanoTime();
+
+            failingClient.join(10000);
+            assertTrue(failedLoginDone.get() != 0);
+            assertTrue(otherLoginDone < failedLoginDone.get());
+        } finally {
+            otherClient.disconnect();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.metrics.MetricsExporter;
+import org.apache.ftpserver.metrics.MetricsExporterFactory;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+ * Tests the statistics published over HTTP in the OpenMetrics format.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class MetricsExporterTest extends ClientTestTemplate {
+    private static final String TEST_FILENAME = "test.txt";
+
+    private static final File TEST_FILE = new File(ROOT_DIR, TEST_FILENAME);
+
+    private static final byte[] TEST_DATA = new byte[10000];
+
+    private static final Pattern SAMPLE = Pattern
+            .compile("[a-z_]+(\\{[a-z]+=\"[^\"]*\"(,[a-z]+=\"[^\"]*\")*\\})? [0-9.]+");
+
+    private MetricsExporter exporter;
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory factory = super.createServer();
+
+        MetricsExporterFactory exporterFactory = new MetricsExporterFactory();
+        exporterFactory.setServerAddress("localhost");
+        exporterFactory.setPort(0);
+        exporter = exporterFactory.createMetricsExporter();
+        factory.setMetricsExporter(exporter);
+        return factory;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+    }
+
+    private HttpURLConnection connect(String path) throws IOException {
+        URL url = new URL("http://localhost:" + exporter.getPort() + path);
+        return (HttpURLConnection) url.openConnection();
+    }
+
+    private String scrape() throws IOException {
+        HttpURLConnection con = connect("/metrics");
+        assertEquals(200, con.getResponseCode());
+        assertTrue(con.getContentType().startsWith(
+                "application/openmetrics-text"));
+
+        InputStream in = con.getInputStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    public void testScrape() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE, TEST_DATA);
+        assertTrue(client.retrieveFile(TEST_FILENAME,
+                new ByteArrayOutputStream()));
+        assertTrue(client.storeFile("upload.txt", new ByteArrayInputStream(
+                new byte[500])));
+
+        String text = scrape();
+        assertTrue(text.endsWith("# EOF\n"));
+        for (String line : text.split("\n")) {
+            assertTrue(line, line.startsWith("# ")
+                    || SAMPLE.matcher(line).matches());
+        }
+
+        assertTrue(text.contains("\nftp_connections_total 1\n"));
+        assertTrue(text.contains("\nftp_current_logins 1\n"));
+        assertTrue(text.contains("\nftp_downloaded_bytes_total "
+                + TEST_DATA.length + "\n"));
+        assertTrue(text.contains("\nftp_listener_connections_total{listener=\"default\"} 1\n"));
+        assertTrue(text.contains("\nftp_listener_passive_ports_in_use{listener=\"default\"} 0\n"));
+        assertTrue(text.contains("\nftp_user_data_bytes_total{user=\"admin\",direction=\"upload\"} 500\n"));
+        assertTrue(text.contains("\nftp_transfer_size_bytes_bucket{direction=\"upload\",le=\"1024\"} 1\n"));
+        assertTrue(text.contains("\nftp_transfer_size_bytes_bucket{direction=\"download\",le=\"1024\"} 0\n"));
+        assertTrue(text.contains("\nftp_transfer_size_bytes_bucket{direction=\"download\",le=\"10240\"} 1\n"));
+        assertTrue(text.contains("\nftp_transfer_size_bytes_count{direction=\"download\"} 1\n"));
+        assertTrue(text.contains("\nftp_transfer_duration_seconds_bucket{direction=\"download\",le=\"+Inf\"} 1\n"));
+        assertTrue(text.contains("\nftp_command_duration_seconds_count{command=\"RETR\"} 1\n"));
+        assertTrue(text.contains("\nftp_command_duration_seconds{command=\"RETR\",quantile=\"0.99\"} "));
+        assertTrue(text.contains("\nftp_first_byte_duration_seconds_count{command=\"STOR\"} 1\n"));
+
+        // the buffers are reused, the next scrape must be complete as well
+        assertEquals(text.length(), scrape().length());
+    }
+
+    public void testHead() throws Exception {
+        HttpURLConnection con = connect("/metrics");
+        con.setRequestMethod("HEAD");
+        assertEquals(200, con.getResponseCode());
+    }
+
+    public void testUnsupportedMethod() throws Exception {
+        HttpURLConnection con = connect("/metrics");
+        con.setRequestMethod("POST");
+        assertEquals(405, con.getResponseCode());
+    }
+
+    public void testUnknownPath() throws Exception {
+        assertEquals(404, connect("/metrics/foo").getResponseCode());
+    }
+
+    public void testStoppedWithServer() throws Exception {
+        assertFalse(exporter.isStopped());
+        server.stop();
+        assertTrue(exporter.isStopped());
+
+        try {
+            connect("/metrics").getResponseCode();
+            fail("Must throw IOException");
+        } catch (IOException e) {
+            // ok
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Map;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.ftpserver.ftplet.FtpStatistics;
+import org.apache.ftpserver.ftplet.LatencyStatistics;
+import org.apache.ftpserver.ftplet.ThroughputStatistics;
+import org.apache.ftpserver.impl.ServerFtpStatistics;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+ * Tests the transfer rates and latencies reported by the statistics.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class MetricsTest extends ClientTestTemplate {
+    private static final String TEST_FILENAME = "test.txt";
+
+    private static final File TEST_FILE = new File(ROOT_DIR, TEST_FILENAME);
+
+    private static final byte[] TEST_DATA = new byte[10000];
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+    }
+
+    private FtpStatistics getStatistics() {
+        return server.getServerContext().getFtpStatistics();
+    }
+
+    public void testTransferRates() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE, TEST_DATA);
+        assertTrue(client.retrieveFile(TEST_FILENAME,
+                new ByteArrayOutputStream()));
+        assertTrue(client.storeFile("upload.txt", new ByteArrayInputStream(
+                new byte[500])));
+
+        Map<String, ThroughputStatistics> throughput = getStatistics()
+                .getThroughput();
+        assertEquals(TEST_DATA.length, throughput.get("server.download")
+                .getCount());
+        assertEquals(TEST_DATA.length, throughput.get(
+                "listener.default.download").getCount());
+        assertEquals(TEST_DATA.length, throughput.get(
+                "user." + ADMIN_USERNAME + ".download").getCount());
+        assertEquals(500, throughput.get("server.upload").getCount());
+        assertEquals(500, throughput.get(
+                "user." + ADMIN_USERNAME + ".upload").getCount());
+    }
+
+    public void testLatencies() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE, TEST_DATA);
+        assertTrue(client.retrieveFile(TEST_FILENAME,
+                new ByteArrayOutputStream()));
+        assertNotNull(client.listFiles());
+        client.sendCommand("FOO");
+
+        Map<String, LatencyStatistics> latencies = getStatistics()
+                .getLatencies();
+        assertEquals(1, latencies.get("command.PASS").getCount());
+        assertEquals(1, latencies.get("command.RETR").getCount());
+        assertEquals(1, latencies.get("command.LIST").getCount());
+        assertEquals(1, latencies.get("first-byte.RETR").getCount());
+        assertEquals(1, latencies.get("first-byte.LIST").getCount());
+        assertTrue(latencies.get("listener.default").getCount() >= 4);
+        assertTrue(latencies.get("user." + ADMIN_USERNAME).getCount() >= 3);
+        // unknown commands are not recorded
+        assertNull(latencies.get("command.FOO"));
+
+        LatencyStatistics retr = latencies.get("command.RETR");
+        assertTrue(retr.getPercentile(99) > 0);
+        assertTrue(retr.getPercentile(99) <= retr.getMax());
+        assertTrue(latencies.get("first-byte.RETR").getMax() <= retr.getMax());
+    }
+
+    public void testReset() throws Exception {
+        assertFalse(getStatistics().getLatencies().isEmpty());
+
+        ((ServerFtpStatistics) getStatistics()).resetStatisticsCounters();
+
+        assertTrue(getStatistics().getLatencies().isEmpty());
+        assertEquals(0, getStatistics().getThroughput().get("server.download")
+                .getCount());
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.File;
+import java.io.InputStream;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+ * Tests that ABOR, STAT and NOOP are answered while a download is in
+ * progress.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class OutOfBandCommandsTest extends ClientTestTemplate {
+    private static final String TEST_FILENAME = "test.txt";
+
+    private static final File TEST_FILE = new File(ROOT_DIR, TEST_FILENAME);
+
+    private static final int MAX_DOWNLOAD_RATE = 64 * 1024;
+
+    // takes about a minute at the download rate
+    private static final byte[] TEST_DATA = new byte[64 * MAX_DOWNLOAD_RATE];
+
+    @Override
+    protected ConnectionConfigFactory createConnectionConfigFactory() {
+        ConnectionConfigFactory factory = super.createConnectionConfigFactory();
+        factory.setMaxDownloadRate(MAX_DOWNLOAD_RATE);
+        return factory;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        TestUtil.writeDataToFile(TEST_FILE, TEST_DATA);
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+    }
+
+    private InputStream startDownload() throws Exception {
+        InputStream is = client.retrieveFileStream(TEST_FILENAME);
+        assertNotNull(is);
+
+        // make sure the data is flowing
+        assertTrue(is.read() != -1);
+        return is;
+    }
+
+    private void abortDownload(InputStream is) throws Exception {
+        long start = System.currentTimeMillis();
+        assertFalse(client.abort());
+        assertEquals(FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+                client.getReplyCode());
+        assertEquals(FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, client
+                .getReply());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        is.close();
+    }
+
+    public void testNoopDuringDownload() throws Exception {
+        InputStream is = startDownload();
+
+        assertTrue(client.sendNoOp());
+        assertTrue(client.sendNoOp());
+
+        abortDownload(is);
+    }
+
+    public void testStatDuringDownload() throws Exception {
+        InputStream is = startDownload();
+
+        assertEquals(FtpReply.REPLY_213_FILE_STATUS, client.stat());
+        String status = client.getReplyString();
+        assertTrue(status.contains("RETR " + TEST_FILENAME));
+        assertTrue(status.contains("of " + TEST_DATA.length + " bytes"));
+
+        abortDownload(is);
+    }
+
+    public void testAbortDuringDownload() throws Exception {
+        InputStream is = startDownload();
+
+        abortDownload(is);
+
+        // the session is still usable and a new transfer can be started
+        assertTrue(client.sendNoOp());
+        String[] names = client.listNames();
+        assertNotNull(names);
+        assertEquals(1, names.length);
+    }
+}
@@ -22,6 +22,7 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Random;
 
 import org.apache.commons.net.ftp.FTP;
 import org.apache.commons.net.ftp.FTPClient;
@@ -144,6 +145,43 @@ public class StoreTest extends ClientTestTemplate {
         TestUtil.assertFileEqual(oneAndAHalfTestData, testFile);
     }
 
+    public void testStoreBinary() throws Exception {
+        File testFile = new File(ROOT_DIR, TEST_FILENAME);
+        byte[] binaryData = createBinaryData();
+
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                binaryData)));
+
+        assertTrue(testFile.exists());
+        TestUtil.assertFileEqual(binaryData, testFile);
+    }
+
+    public void testStoreBinaryWithRestart() throws Exception {
+        File testFile = new File(ROOT_DIR, TEST_FILENAME);
+        byte[] binaryData = createBinaryData();
+        TestUtil.writeDataToFile(testFile, binaryData);
+
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        client.setRestartOffset(SKIP_LEN);
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                binaryData)));
+
+        byte[] expected = new byte[SKIP_LEN + binaryData.length];
+        System.arraycopy(binaryData, 0, expected, 0, SKIP_LEN);
+        System.arraycopy(binaryData, 0, expected, SKIP_LEN, binaryData.length);
+
+        assertTrue(testFile.exists());
+        TestUtil.assertFileEqual(expected, testFile);
+    }
+
+    private byte[] createBinaryData() {
+        // large enough to require multiple reads, including \r and \n bytes
+        byte[] data = new byte[1024 * 1024 + 17];
+        new Random(1).nextBytes(data);
+        return data;
+    }
+
     public void testStoreEmptyFile() throws Exception {
         File testFile = new File(ROOT_DIR, TEST_FILENAME);
 
@@ -285,6 +323,23 @@ public class StoreTest extends ClientTestTemplate {
         TestUtil.assertFileEqual(doubleTestData, testFile);
     }
 
+    public void testAppendBinary() throws Exception {
+        File testFile = new File(ROOT_DIR, TEST_FILENAME);
+        byte[] binaryData = createBinaryData();
+        TestUtil.writeDataToFile(testFile, testData);
+
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        assertTrue(client.appendFile(TEST_FILENAME, new ByteArrayInputStream(
+                binaryData)));
+
+        byte[] expected = new byte[testData.length + binaryData.length];
+        System.arraycopy(testData, 0, expected, 0, testData.length);
+        System.arraycopy(binaryData, 0, expected, testData.length, binaryData.length);
+
+        assertTrue(testFile.exists());
+        TestUtil.assertFileEqual(expected, testFile);
+    }
+
     public void testAppendNoFileName() throws Exception {
         assertEquals(501, client.sendCommand("APPE"));
     }
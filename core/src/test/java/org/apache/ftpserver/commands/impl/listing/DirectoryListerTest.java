@@ -19,16 +19,23 @@
 
 package org.apache.ftpserver.commands.impl.listing;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 import junit.framework.TestCase;
 
 import org.apache.ftpserver.command.impl.listing.DirectoryLister;
 import org.apache.ftpserver.command.impl.listing.FileFormater;
 import org.apache.ftpserver.command.impl.listing.ListArgument;
+import org.apache.ftpserver.command.impl.listing.ListingInputStream;
 import org.apache.ftpserver.command.impl.listing.NLSTFileFormater;
 import org.apache.ftpserver.filesystem.nativefs.impl.NativeFileSystemView;
 import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.test.TestUtil;
 import org.apache.ftpserver.usermanager.impl.BaseUser;
 import org.apache.ftpserver.util.IoUtils;
@@ -90,6 +97,126 @@ public class DirectoryListerTest extends TestCase {
         assertEquals("dir3\r\ntest3.txt\r\ntest4.txt\r\n", actual);
     }
 
+    public void testOpenListing() throws Exception {
+        ListArgument arg = new ListArgument(TEST_DIR1.getName(), null, null);
+        FileFormater formater = new NLSTFileFormater();
+
+        InputStream listing = directoryLister.openListing(arg,
+                fileSystemView, formater);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = listing.read()) != -1) {
+            out.write(b);
+        }
+
+        assertEquals("dir3\r\ntest3.txt\r\ntest4.txt\r\n", new String(out
+                .toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    public void testListingLargerThanBatch() throws Exception {
+        final FtpFile file = fileSystemView.getFile(TEST_FILE1.getName());
+        final FtpFile dir = fileSystemView.getFile(TEST_DIR1.getName());
+        final List<FtpFile> files = new ArrayList<>();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            files.add(file);
+            files.add(dir);
+            expected.insert(0, "dir1\r\n");
+            expected.append("test1.txt\r\n");
+        }
+
+        FtpFile listedDir = new NLSTFileFormaterTest.MockFileObject() {
+            @Override
+            public boolean isFile() {
+                return false;
+            }
+
+            @Override
+            public List<FtpFile> listFiles() {
+                return files;
+            }
+        };
+
+        InputStream listing = new ListingInputStream(listedDir, true, null,
+                new NLSTFileFormater());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IoUtils.copy(listing, out, 1000);
+
+        assertEquals(expected.toString(), new String(out.toByteArray(),
+                StandardCharsets.UTF_8));
+        assertEquals(-1, listing.read());
+    }
+
+    public void testUnsortedListing() throws Exception {
+        ListArgument arg = new ListArgument(TEST_DIR1.getName(), null,
+                new char[] { 'f' });
+        FileFormater formater = new NLSTFileFormater();
+
+        String actual = directoryLister
+                .listFiles(arg, fileSystemView, formater);
+
+        // in directory order
+        assertTrue(actual.contains("dir3\r\n"));
+        assertTrue(actual.contains("test3.txt\r\n"));
+        assertTrue(actual.contains("test4.txt\r\n"));
+        assertEquals(28, actual.length());
+    }
+
+    public void testDirectoryReadOnce() throws Exception {
+        final FtpFile file = fileSystemView.getFile(TEST_FILE1.getName());
+        final FtpFile dir = fileSystemView.getFile(TEST_DIR1.getName());
+        final int[] reads = new int[1];
+
+        FtpFile listedDir = new NLSTFileFormaterTest.MockFileObject() {
+            @Override
+            public boolean isFile() {
+                return false;
+            }
+
+            @Override
+            public List<FtpFile> listFiles() {
+                reads[0]++;
+                List<FtpFile> files = new ArrayList<>();
+                files.add(file);
+                files.add(dir);
+                return files;
+            }
+        };
+
+        for (boolean sorted : new boolean[] { true, false }) {
+            reads[0] = 0;
+            InputStream listing = new ListingInputStream(listedDir, sorted,
+                    null, new NLSTFileFormater());
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            IoUtils.copy(listing, out, 1000);
+
+            assertEquals(sorted ? "dir1\r\ntest1.txt\r\n"
+                    : "test1.txt\r\ndir1\r\n", new String(out.toByteArray(),
+                    StandardCharsets.UTF_8));
+            assertEquals(1, reads[0]);
+        }
+    }
+
+    public void testEmptyListing() throws Exception {
+        InputStream listing = new ListingInputStream(null, true, null,
+                new NLSTFileFormater());
+
+        assertEquals(-1, listing.read());
+    }
+
+    public void testListingClosed() throws Exception {
+        ListArgument arg = new ListArgument(TEST_DIR1.getName(), null, null);
+        InputStream listing = directoryLister.openListing(arg,
+                fileSystemView, new NLSTFileFormater());
+
+        assertEquals('d', listing.read());
+        listing.close();
+        assertEquals(-1, listing.read());
+    }
+
     /*
      * (non-Javadoc)
      * 
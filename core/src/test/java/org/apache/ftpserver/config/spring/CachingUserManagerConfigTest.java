@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.config.spring;
+
+import java.io.File;
+
+import org.apache.ftpserver.impl.DefaultFtpServer;
+import org.apache.ftpserver.usermanager.impl.CachingUserManager;
+import org.apache.ftpserver.usermanager.impl.PropertiesUserManager;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class CachingUserManagerConfigTest extends SpringConfigTestTemplate {
+
+    private static final String FILE_USER_MANAGER = "<file-user-manager file=\"src/test/resources/users.properties\" />";
+
+    private CachingUserManager createCachingUserManager(String config) {
+        DefaultFtpServer server = (DefaultFtpServer) createServer(config);
+
+        return (CachingUserManager) server.getUserManager();
+    }
+
+    public void testCachingUserManager() throws Throwable {
+        CachingUserManager um = createCachingUserManager("<caching-user-manager max-size=\"123\" time-to-live=\"30\" negative-time-to-live=\"5\">"
+                + FILE_USER_MANAGER + "</caching-user-manager>");
+
+        assertEquals(123, um.getMaxSize());
+        assertEquals(30000, um.getTimeToLive());
+        assertEquals(5000, um.getNegativeTimeToLive());
+
+        PropertiesUserManager wrapped = (PropertiesUserManager) um.getUserManager();
+        assertEquals(new File("src/test/resources/users.properties"), wrapped.getFile());
+    }
+
+    public void testDefaults() throws Throwable {
+        CachingUserManager um = createCachingUserManager("<caching-user-manager>"
+                + FILE_USER_MANAGER + "</caching-user-manager>");
+
+        assertEquals(1000, um.getMaxSize());
+        assertEquals(60000, um.getTimeToLive());
+        assertEquals(10000, um.getNegativeTimeToLive());
+        assertTrue(um.getUserManager() instanceof PropertiesUserManager);
+    }
+}
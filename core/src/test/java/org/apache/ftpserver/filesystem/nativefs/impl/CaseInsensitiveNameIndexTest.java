@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.filesystem.nativefs.impl;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class CaseInsensitiveNameIndexTest extends TestCase {
+
+    private static final File TEST_TMP_DIR = new File("test-tmp");
+
+    private static final File TEST_DIR1 = new File(TEST_TMP_DIR, "dir1");
+
+    private static final File TEST_DIR2 = new File(TEST_TMP_DIR, "dir2");
+
+    // an old modification time, for the directories to be indexed once
+    private static final long LAST_MODIFIED = 1000000000000L;
+
+    @Override
+    protected void setUp() throws Exception {
+        cleanTmpDirs();
+
+        TEST_DIR1.mkdirs();
+        TEST_DIR2.mkdirs();
+        new File(TEST_DIR1, "File1").createNewFile();
+        new File(TEST_DIR2, "File2").createNewFile();
+        assertTrue(TEST_DIR1.setLastModified(LAST_MODIFIED));
+        assertTrue(TEST_DIR2.setLastModified(LAST_MODIFIED));
+    }
+
+    public void testGetName() {
+        CaseInsensitiveNameIndex index = new CaseInsensitiveNameIndex(10);
+
+        assertEquals("File1", index.getName(TEST_DIR1, "file1"));
+        assertEquals("File1", index.getName(TEST_DIR1, "FILE1"));
+        assertEquals("File1", index.getName(TEST_DIR1, "File1"));
+        assertNull(index.getName(TEST_DIR1, "file2"));
+        assertEquals(1, index.getSize());
+    }
+
+    public void testMissingDirectory() {
+        CaseInsensitiveNameIndex index = new CaseInsensitiveNameIndex(10);
+
+        assertNull(index.getName(new File(TEST_TMP_DIR, "foo"), "file1"));
+        assertEquals(0, index.getSize());
+    }
+
+    public void testModifiedDirectory() throws IOException {
+        CaseInsensitiveNameIndex index = new CaseInsensitiveNameIndex(10);
+        assertNull(index.getName(TEST_DIR1, "file3"));
+
+        new File(TEST_DIR1, "File3").createNewFile();
+        assertTrue(TEST_DIR1.setLastModified(LAST_MODIFIED + 1000));
+
+        assertEquals("File3", index.getName(TEST_DIR1, "file3"));
+    }
+
+    public void testRecentlyModifiedDirectory() throws IOException {
+        CaseInsensitiveNameIndex index = new CaseInsensitiveNameIndex(10);
+        long now = System.currentTimeMillis();
+        assertTrue(TEST_DIR1.setLastModified(now));
+        assertNull(index.getName(TEST_DIR1, "file3"));
+
+        // changed within the resolution of the modification time
+        new File(TEST_DIR1, "File3").createNewFile();
+        assertTrue(TEST_DIR1.setLastModified(now));
+
+        assertEquals("File3", index.getName(TEST_DIR1, "file3"));
+    }
+
+    public void testEviction() {
+        CaseInsensitiveNameIndex index = new CaseInsensitiveNameIndex(1);
+
+        assertEquals("File1", index.getName(TEST_DIR1, "file1"));
+        assertEquals("File2", index.getName(TEST_DIR2, "file2"));
+        assertEquals(1, index.getSize());
+        assertEquals("File1", index.getName(TEST_DIR1, "file1"));
+    }
+
+    public void testNoIndexing() {
+        CaseInsensitiveNameIndex index = new CaseInsensitiveNameIndex(0);
+
+        assertEquals("File1", index.getName(TEST_DIR1, "file1"));
+        assertEquals(0, index.getSize());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        cleanTmpDirs();
+    }
+
+    protected void cleanTmpDirs() throws IOException {
+        if (TEST_TMP_DIR.exists()) {
+            IoUtils.delete(TEST_TMP_DIR);
+        }
+    }
+}
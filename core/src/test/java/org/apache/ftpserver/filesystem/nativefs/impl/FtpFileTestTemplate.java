@@ -19,7 +19,12 @@
 
 package org.apache.ftpserver.filesystem.nativefs.impl;
 
+import java.nio.file.DirectoryStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import junit.framework.TestCase;
 
@@ -124,4 +129,39 @@ public abstract class FtpFileTestTemplate extends TestCase {
         assertEquals("file3", files.get(2).getName());
     }
 
+    public void testOpenDirectoryStreamSorted() throws Exception {
+        FtpFile root = createFileObject("/", USER);
+
+        List<String> names = new ArrayList<>();
+        DirectoryStream<FtpFile> files = root.openDirectoryStream(true);
+        try {
+            for (FtpFile file : files) {
+                names.add(file.getName());
+            }
+        } finally {
+            files.close();
+        }
+        assertEquals(Arrays.asList("dir1", "file1", "file3"), names);
+    }
+
+    public void testOpenDirectoryStreamUnsorted() throws Exception {
+        FtpFile root = createFileObject("/", USER);
+
+        Set<String> paths = new HashSet<>();
+        DirectoryStream<FtpFile> files = root.openDirectoryStream(false);
+        try {
+            for (FtpFile file : files) {
+                paths.add(file.getAbsolutePath());
+            }
+        } finally {
+            files.close();
+        }
+        assertEquals(new HashSet<>(Arrays.asList(DIR1_PATH, FILE1_PATH,
+                FILE3_PATH)), paths);
+    }
+
+    public void testOpenDirectoryStreamOnFile() throws Exception {
+        assertNull(createFileObject(FILE1_PATH, USER).openDirectoryStream(true));
+    }
+
 }
\ No newline at end of file
@@ -21,11 +21,19 @@ package org.apache.ftpserver.filesystem.nativefs.impl;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.test.TestUtil;
 import org.apache.ftpserver.util.IoUtils;
 
 /**
@@ -102,6 +110,90 @@ public class NativeFtpFileTest extends FtpFileTestTemplate {
         assertTrue(physicalFile.delete());
     }
 
+    public void testAttributesKeptUntilChanged() throws Exception {
+        NativeFtpFile fileObj = (NativeFtpFile) createFileObject(FILE1_PATH,
+                USER);
+        assertTrue(fileObj.doesExist());
+        assertEquals(0, fileObj.getSize());
+
+        // changed behind the back of the file object
+        TestUtil.writeDataToFile(TEST_FILE1, new byte[10]);
+        assertEquals(0, fileObj.getSize());
+
+        // changed through the file object
+        OutputStream out = fileObj.createOutputStream(0);
+        out.write(new byte[20]);
+        out.close();
+        assertEquals(20, fileObj.getSize());
+
+        assertTrue(fileObj.setLastModified(10000L));
+        assertEquals(10000L, fileObj.getLastModified());
+
+        assertTrue(fileObj.delete());
+        assertFalse(fileObj.doesExist());
+        assertFalse(fileObj.isFile());
+        assertEquals(0, fileObj.getSize());
+    }
+
+    public void testAttributesReadWhileListing() throws Exception {
+        NativeFtpFile root = new NativeFtpFile("/", ROOT_DIR, USER);
+        for (boolean sorted : new boolean[] { true, false }) {
+            TestUtil.writeDataToFile(TEST_FILE1, new byte[10]);
+            DirectoryStream<FtpFile> files = root.openDirectoryStream(sorted);
+            List<FtpFile> listed = new ArrayList<>();
+            try {
+                for (FtpFile file : files) {
+                    listed.add(file);
+                }
+            } finally {
+                files.close();
+            }
+
+            // changed after the listing, the listed attributes are kept
+            TestUtil.writeDataToFile(TEST_FILE1, new byte[20]);
+            for (FtpFile file : listed) {
+                if (file.getName().equals("file1")) {
+                    assertEquals(10, file.getSize());
+                }
+            }
+        }
+    }
+
+    public void testMissingFile() {
+        NativeFtpFile fileObj = new NativeFtpFile("/foo", new File(ROOT_DIR,
+                "foo"), USER);
+        assertFalse(fileObj.doesExist());
+        assertFalse(fileObj.isFile());
+        assertFalse(fileObj.isDirectory());
+        assertFalse(fileObj.isReadable());
+        assertEquals(0, fileObj.getSize());
+        assertEquals(0, fileObj.getLastModified());
+        assertNull(fileObj.getPermissions());
+    }
+
+    public void testNativeOwners() throws Exception {
+        NativeFtpFile fileObj = (NativeFtpFile) createFileObject(FILE1_PATH,
+                USER);
+        assertEquals("user", fileObj.getOwnerName());
+        assertEquals("group", fileObj.getGroupName());
+
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains(
+                "posix")) {
+            return;
+        }
+        PosixFileAttributes attrs = Files.readAttributes(TEST_FILE1.toPath(),
+                PosixFileAttributes.class);
+        assertEquals(attrs.permissions(), fileObj.getPermissions());
+
+        NativeFtpFile nativeRoot = new NativeFtpFile("/", ROOT_DIR, USER, true);
+        for (FtpFile child : nativeRoot.listFiles()) {
+            if (child.getName().equals("file1")) {
+                assertEquals(attrs.owner().getName(), child.getOwnerName());
+                assertEquals(attrs.group().getName(), child.getGroupName());
+            }
+        }
+    }
+
     @Override
     protected void tearDown() throws Exception {
         cleanTmpDirs();
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that the completion of a request runs once.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class CommandCompletionTest extends TestCase {
+
+    private final AtomicInteger runs = new AtomicInteger();
+
+    private final CommandCompletion completion = new CommandCompletion(
+            new Runnable() {
+                public void run() {
+                    runs.incrementAndGet();
+                }
+            });
+
+    public void testRunOnce() {
+        completion.run();
+        completion.run();
+
+        assertEquals(1, runs.get());
+    }
+
+    public void testDeferredKeptAfterNextRequest() {
+        completion.defer();
+
+        // the session moves on to the next request
+        CommandCompletion next = new CommandCompletion(completion);
+        assertFalse(next.isDeferred());
+        assertTrue(completion.isDeferred());
+
+        completion.run();
+        next.run();
+        assertEquals(1, runs.get());
+    }
+}
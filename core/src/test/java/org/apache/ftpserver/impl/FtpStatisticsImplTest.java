@@ -19,6 +19,9 @@
 
 package org.apache.ftpserver.impl;
 
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.ftpserver.ftplet.FtpFile;
 
 /**
 *
@@ -32,4 +35,46 @@ public class FtpStatisticsImplTest extends ServerFtpStatisticsTestTemplate {
         return new DefaultFtpStatistics();
     }
 
-}
\ No newline at end of file
+    public void testSlowObserverDropsNotifications() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        DefaultFtpStatistics stats = createStatistics();
+        stats.setFileObserver(new FileObserver() {
+            public void notifyUpload(FtpIoSession session, FtpFile file,
+                    long size) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            public void notifyDownload(FtpIoSession session, FtpFile file,
+                    long size) {
+            }
+
+            public void notifyDelete(FtpIoSession session, FtpFile file) {
+            }
+
+            public void notifyMkdir(FtpIoSession session, FtpFile file) {
+            }
+
+            public void notifyRmdir(FtpIoSession session, FtpFile file) {
+            }
+        });
+
+        try {
+            // one notification being run, the others waiting
+            int count = DefaultFtpStatistics.MAX_PENDING_NOTIFICATIONS + 10;
+            for (int i = 0; i < count; i++) {
+                stats.setUpload(null, null, 1);
+            }
+
+            assertEquals(count, stats.getTotalUploadNumber());
+            assertTrue(stats.getDroppedNotificationCount() >= 9);
+            assertTrue(stats.getDroppedNotificationCount() <= 10);
+        } finally {
+            release.countDown();
+            stats.dispose();
+        }
+    }
+}
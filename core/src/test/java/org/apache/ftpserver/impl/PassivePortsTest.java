@@ -22,7 +22,11 @@ package org.apache.ftpserver.impl;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
 import junit.framework.AssertionFailedError;
 import junit.framework.TestCase;
@@ -180,4 +184,62 @@ public class PassivePortsTest extends TestCase {
         assertEquals(0, valid.size());
     }
 
-}
\ No newline at end of file
+    public void testReleaseUnreserved() {
+        PassivePorts ports = new PassivePorts("123", false);
+
+        ports.releasePort(123);
+        ports.releasePort(456);
+
+        assertEquals(123, ports.reserveNextPort());
+        assertEquals(-1, ports.reserveNextPort());
+    }
+
+    public void testAnyPort() {
+        PassivePorts ports = new PassivePorts(Collections.<Integer>emptySet(), false);
+
+        assertEquals(0, ports.reserveNextPort());
+        assertEquals(0, ports.reserveNextPort());
+        ports.releasePort(0);
+    }
+
+    public void testCooldown() throws Exception {
+        PassivePorts ports = new PassivePorts("123", false, 200);
+
+        assertEquals(123, ports.reserveNextPort());
+        ports.releasePort(123);
+
+        // the released port is cooling down
+        assertEquals(-1, ports.reserveNextPort());
+
+        Thread.sleep(300);
+
+        assertEquals(123, ports.reserveNextPort());
+    }
+
+    public void testConcurrentReservations() throws Exception {
+        final PassivePorts ports = new PassivePorts("10000-10999", false);
+        final Set<Integer> reserved = Collections.synchronizedSet(new HashSet<Integer>());
+        final List<Integer> duplicates = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(4);
+
+        for (int i = 0; i < 4; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 250; j++) {
+                        int port = ports.reserveNextPort();
+                        if (!reserved.add(port)) {
+                            duplicates.add(port);
+                        }
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+
+        done.await();
+        assertTrue(duplicates.isEmpty());
+        assertEquals(1000, reserved.size());
+        assertEquals(-1, ports.reserveNextPort());
+    }
+}
@@ -19,10 +19,20 @@
 
 package org.apache.ftpserver.impl;
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
 
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.mina.core.session.DummySession;
+
 /**
 *
 * @author <a href="http://mina.apache.org">Apache MINA Project</a>
@@ -70,6 +80,166 @@ public abstract class ServerFtpStatisticsTestTemplate extends TestCase {
 
     }
 
+    private FtpIoSession createSession(String userName, String address) {
+        DummySession dummySession = new DummySession();
+        dummySession.setRemoteAddress(new InetSocketAddress(address, 21));
+        FtpIoSession session = new FtpIoSession(dummySession, null);
+        BaseUser user = new BaseUser();
+        user.setName(userName);
+        session.setUser(user);
+        return session;
+    }
+
+    public void testConcurrentUpdates() throws Exception {
+        final ServerFtpStatistics stats = createStatistics();
+        final int threads = 8;
+        final int iterations = 2000;
+
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            final FtpIoSession session = createSession("user" + (i % 2),
+                    "127.0.0." + (i % 4 + 1));
+            Thread worker = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < iterations; j++) {
+                        stats.setOpenConnection(session);
+                        stats.setLogin(session);
+                        stats.setUpload(session, null, 10);
+                        stats.setDownload(session, null, 5);
+                        stats.setLoginFail(session);
+                        stats.setLogout(session);
+                        stats.setCloseConnection(session);
+                    }
+                }
+            };
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        int total = threads * iterations;
+        assertEquals(total, stats.getTotalConnectionNumber());
+        assertEquals(0, stats.getCurrentConnectionNumber());
+        assertEquals(total, stats.getTotalLoginNumber());
+        assertEquals(0, stats.getCurrentLoginNumber());
+        assertEquals(total, stats.getTotalFailedLoginNumber());
+        assertEquals(total, stats.getTotalUploadNumber());
+        assertEquals(total * 10L, stats.getTotalUploadSize());
+        assertEquals(total * 5L, stats.getTotalDownloadSize());
+
+        BaseUser user = new BaseUser();
+        user.setName("user0");
+        assertEquals(0, stats.getCurrentUserLoginNumber(user));
+        assertEquals(0, stats.getCurrentUserLoginNumber(user, InetAddress
+                .getByName("127.0.0.1")));
+    }
+
+    public void testUserLoginNumber() throws Exception {
+        ServerFtpStatistics stats = createStatistics();
+        FtpIoSession session1 = createSession("user1", "127.0.0.1");
+        FtpIoSession session2 = createSession("user1", "127.0.0.2");
+
+        stats.setLogin(session1);
+        stats.setLogin(session2);
+
+        BaseUser user = new BaseUser();
+        user.setName("user1");
+        assertEquals(2, stats.getCurrentUserLoginNumber(user));
+        assertEquals(1, stats.getCurrentUserLoginNumber(user, InetAddress
+                .getByName("127.0.0.2")));
+        assertEquals(0, stats.getCurrentUserLoginNumber(user, InetAddress
+                .getByName("127.0.0.3")));
+
+        stats.setLogout(session2);
+        assertEquals(1, stats.getCurrentUserLoginNumber(user));
+        assertEquals(0, stats.getCurrentUserLoginNumber(user, InetAddress
+                .getByName("127.0.0.2")));
+    }
+
+    public void testRecentFailedLogins() throws Exception {
+        ServerFtpStatistics stats = createStatistics();
+        FtpIoSession session = createSession("user1", "127.0.0.1");
+        InetAddress address = InetAddress.getByName("127.0.0.1");
+
+        stats.setLoginFail(session);
+        stats.setLoginFail(session);
+        assertEquals(2, stats.getRecentFailedLoginNumber(address));
+
+        stats.setLogin(session);
+        assertEquals(0, stats.getRecentFailedLoginNumber(address));
+    }
+
+    public void testObserverNotifiedInOrder() throws Exception {
+        DefaultFtpStatistics stats = createStatistics();
+        final List<String> events = Collections
+                .synchronizedList(new ArrayList<String>());
+        final CountDownLatch done = new CountDownLatch(1);
+        stats.setObserver(new StatisticsObserver() {
+            public void notifyUpload() {
+                events.add("upload");
+            }
+
+            public void notifyDownload() {
+                events.add("download");
+            }
+
+            public void notifyDelete() {
+            }
+
+            public void notifyMkdir() {
+            }
+
+            public void notifyRmdir() {
+            }
+
+            public void notifyLogin(boolean anonymous) {
+                events.add("login " + anonymous);
+            }
+
+            public void notifyLoginFail(InetAddress address) {
+            }
+
+            public void notifyLogout(boolean anonymous) {
+                events.add("logout " + anonymous);
+            }
+
+            public void notifyOpenConnection() {
+                events.add("open");
+            }
+
+            public void notifyCloseConnection() {
+                events.add("close");
+                done.countDown();
+            }
+        });
+
+        try {
+            FtpIoSession session = createSession("anonymous", "127.0.0.1");
+            stats.setOpenConnection(session);
+            stats.setLogin(session);
+            stats.setUpload(session, null, 1);
+            stats.setDownload(session, null, 1);
+            stats.setLogout(session);
+            stats.setCloseConnection(session);
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals("[open, login true, upload, download, logout true, close]",
+                    events.toString());
+        } finally {
+            stats.dispose();
+        }
+    }
+
     protected abstract DefaultFtpStatistics createStatistics();
 
 }
\ No newline at end of file
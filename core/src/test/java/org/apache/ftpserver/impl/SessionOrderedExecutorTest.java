@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoEvent;
+import org.apache.mina.core.session.IoEventType;
+import org.apache.mina.core.session.IoSession;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class SessionOrderedExecutorTest extends TestCase {
+
+    private static final int EVENT_COUNT = 1000;
+
+    private SessionOrderedExecutor executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        executor = new SessionOrderedExecutor(Executors.newCachedThreadPool());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    public void testEventsOfSessionRunInOrder() throws Exception {
+        IoSession session1 = new DummySession();
+        IoSession session2 = new DummySession();
+        List<Integer> events1 = Collections.synchronizedList(new ArrayList<Integer>());
+        List<Integer> events2 = Collections.synchronizedList(new ArrayList<Integer>());
+        CountDownLatch latch = new CountDownLatch(2 * EVENT_COUNT);
+
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            executor.execute(new RecordingEvent(session1, events1, i, latch));
+            executor.execute(new RecordingEvent(session2, events2, i, latch));
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            assertEquals(i, events1.get(i).intValue());
+            assertEquals(i, events2.get(i).intValue());
+        }
+    }
+
+    public void testEventsOfSessionDoNotOverlap() throws Exception {
+        IoSession session = new DummySession();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(100);
+
+        for (int i = 0; i < 100; i++) {
+            executor.execute(new IoEvent(IoEventType.MESSAGE_RECEIVED, session, null) {
+                @Override
+                public void run() {
+                    int current = running.incrementAndGet();
+                    maxRunning.set(Math.max(maxRunning.get(), current));
+                    Thread.yield();
+                    running.decrementAndGet();
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(1, maxRunning.get());
+    }
+
+    public void testSessionsRunConcurrently() throws Exception {
+        final CountDownLatch bothRunning = new CountDownLatch(2);
+
+        for (int i = 0; i < 2; i++) {
+            executor.execute(new IoEvent(IoEventType.MESSAGE_RECEIVED, new DummySession(), null) {
+                @Override
+                public void run() {
+                    bothRunning.countDown();
+                    try {
+                        bothRunning.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+            });
+        }
+
+        assertTrue(bothRunning.await(5, TimeUnit.SECONDS));
+    }
+
+    private static class RecordingEvent extends IoEvent {
+
+        private final List<Integer> events;
+
+        private final int index;
+
+        private final CountDownLatch latch;
+
+        public RecordingEvent(IoSession session, List<Integer> events,
+                int index, CountDownLatch latch) {
+            super(IoEventType.MESSAGE_RECEIVED, session, null);
+            this.events = events;
+            this.index = index;
+            this.latch = latch;
+        }
+
+        @Override
+        public void run() {
+            events.add(index);
+            latch.countDown();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class TokenBucketTest extends TestCase {
+
+    public void testBurstWithoutWaiting() {
+        TokenBucket bucket = new TokenBucket(1000, 5000);
+
+        assertEquals(0, bucket.take(2000));
+        assertEquals(0, bucket.take(3000));
+    }
+
+    public void testWaitForDebt() {
+        TokenBucket bucket = new TokenBucket(1000, 1000);
+
+        // one second of debt on top of the full bucket
+        long delay = bucket.take(2000);
+
+        assertTrue(delay > TimeUnit.MILLISECONDS.toNanos(900));
+        assertTrue(delay <= TimeUnit.SECONDS.toNanos(1));
+    }
+
+    public void testDebtAccumulates() {
+        TokenBucket bucket = new TokenBucket(1000, 1000);
+
+        bucket.take(1000);
+        long first = bucket.take(500);
+        long second = bucket.take(500);
+
+        assertTrue(second > first);
+        assertTrue(second > TimeUnit.MILLISECONDS.toNanos(900));
+    }
+
+    public void testDefaultBurstSizeIsOneSecond() {
+        TokenBucket bucket = new TokenBucket(1000, 0);
+
+        assertEquals(1000, bucket.getBurstSize());
+    }
+
+    public void testRefillLimitedToBurstSize() throws Exception {
+        TokenBucket bucket = new TokenBucket(100000, 1000);
+
+        // idle long enough to refill far more than the burst size
+        Thread.sleep(50);
+
+        assertEquals(0, bucket.take(1000));
+        assertTrue(bucket.take(1000) > 0);
+    }
+
+    public void testUtilization() throws Exception {
+        TokenBucket bucket = new TokenBucket(1000, 10000);
+
+        assertEquals(0.0, bucket.getUtilization());
+
+        bucket.take(500);
+        Thread.sleep(1000);
+
+        double utilization = bucket.getUtilization();
+        assertTrue(utilization > 0.4);
+        assertTrue(utilization <= 0.5);
+    }
+
+    public void testRateMustBePositive() {
+        try {
+            new TokenBucket(0, 1000);
+            fail("Must throw IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class TransferShaperTest extends TestCase {
+
+    private static TransferShaper createShaper(TokenBucket... buckets) {
+        return new TransferShaper(null, false, null, null, null, null,
+                buckets);
+    }
+
+    public void testUnlimited() {
+        assertFalse(TransferShaper.UNLIMITED.isLimited());
+        assertEquals(65536, TransferShaper.UNLIMITED.getChunkSize(65536));
+        assertEquals(0, TransferShaper.UNLIMITED.take(Integer.MAX_VALUE));
+    }
+
+    public void testChunkSizeFollowsLowestRate() {
+        TransferShaper shaper = createShaper(new TokenBucket(2000000, 0),
+                new TokenBucket(200000, 0));
+
+        assertTrue(shaper.isLimited());
+        assertEquals(10000, shaper.getChunkSize(65536));
+        assertEquals(1000, shaper.getChunkSize(1000));
+    }
+
+    public void testChargedInQuanta() {
+        // quantum of 4096 bytes, burst of 4096 bytes
+        TokenBucket bucket = new TokenBucket(4096, 4096);
+        TransferShaper shaper = createShaper(bucket);
+
+        assertEquals(0, shaper.take(4095));
+        assertEquals(0, shaper.take(1));
+
+        // the next quantum has to wait for the bucket to refill
+        assertEquals(0, shaper.take(4095));
+        assertTrue(shaper.take(1) > 0);
+    }
+
+    public void testSharedBucketSplitEvenly() {
+        TokenBucket bucket = new TokenBucket(4096, 4096);
+        TransferShaper shaper1 = createShaper(bucket);
+        TransferShaper shaper2 = createShaper(bucket);
+
+        // the transfers queue up behind each other
+        shaper1.take(4096);
+        long delay1 = shaper1.take(4096);
+        long delay2 = shaper2.take(4096);
+
+        assertTrue(delay2 > delay1);
+    }
+
+    public void testInterruptKept() {
+        TokenBucket bucket = new TokenBucket(4096, 4096);
+        TransferShaper shaper = createShaper(bucket);
+        shaper.take(4096);
+
+        Thread.currentThread().interrupt();
+        try {
+            assertFalse(shaper.await(4096));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the requests kept during a data transfer and the completion of the
+ * transfer.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class TransferStateTest extends TestCase {
+
+    private TransferState state = new TransferState();
+
+    public void testNotDeferredWithoutTransfer() {
+        assertFalse(state.deferRequest(new DefaultFtpRequest("PWD"), false));
+    }
+
+    public void testDeferredDuringTransfer() {
+        state.beginTransfer(new DefaultFtpRequest("RETR foo"));
+
+        assertTrue(state.deferRequest(new DefaultFtpRequest("PWD"), false));
+        assertFalse(state.deferRequest(new DefaultFtpRequest("NOOP"), true));
+
+        assertTrue(state.endTransfer());
+        assertEquals("PWD", state.nextDeferredRequest().getCommand());
+        assertNull(state.nextDeferredRequest());
+    }
+
+    public void testFull() {
+        state.beginTransfer(new DefaultFtpRequest("RETR foo"));
+
+        for (int i = 0; i < TransferState.MAX_DEFERRED_REQUESTS; i++) {
+            assertFalse(state.isFull());
+            assertTrue(state.deferRequest(new DefaultFtpRequest("PWD"), false));
+        }
+        assertTrue(state.isFull());
+
+        state.clear();
+        assertFalse(state.isFull());
+    }
+
+    public void testCompletionTasks() {
+        final List<String> events = new ArrayList<String>();
+        TransferProgress transfer = state.beginTransfer(new DefaultFtpRequest(
+                "RETR foo"));
+
+        transfer.whenComplete(new Runnable() {
+            public void run() {
+                events.add("before");
+            }
+        });
+        assertTrue(events.isEmpty());
+
+        state.endTransfer();
+        assertEquals(1, events.size());
+
+        // run right away once completed
+        transfer.whenComplete(new Runnable() {
+            public void run() {
+                events.add("after");
+            }
+        });
+        assertEquals(2, events.size());
+        assertEquals("after", events.get(1));
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.ssl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+
+import org.apache.commons.net.ftp.FTPSClient;
+import org.apache.ftpserver.ftplet.ThroughputStatistics;
+import org.apache.ftpserver.impl.FtpMetrics;
+
+/**
+ * Tests that the data connections can resume the TLS session of the control
+ * connection, and that the handshakes are counted.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class DataSessionResumptionTest extends SSLTestTemplate {
+
+    @Override
+    protected String getAuthValue() {
+        return "TLSv1.2";
+    }
+
+    @Override
+    protected boolean useImplicit() {
+        return true;
+    }
+
+    @Override
+    protected SslConfigurationFactory createSslConfiguration() {
+        SslConfigurationFactory sslConfigFactory = super
+                .createSslConfiguration();
+        sslConfigFactory.setSessionCacheSize(100);
+        sslConfigFactory.setSessionTimeout(600);
+        return sslConfigFactory;
+    }
+
+    private ThroughputStatistics getHandshakes(boolean resumed) {
+        FtpMetrics metrics = server.getServerContext().getFtpMetrics();
+        return metrics.getDataTlsHandshakeRate(resumed);
+    }
+
+    public void testSessionCacheConfiguration() throws Exception {
+        SSLSessionContext sessionContext = server.getListener("default")
+                .getSslConfiguration().getSSLContext()
+                .getServerSessionContext();
+
+        assertEquals(100, sessionContext.getSessionCacheSize());
+        assertEquals(600, sessionContext.getSessionTimeout());
+    }
+
+    /**
+     * The client keys the data connection session by its own address, thus
+     * negotiating a new session.
+     */
+    public void testNewSession() throws Exception {
+        FTPSClient ftpsClient = (FTPSClient) client;
+        ftpsClient.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+        ftpsClient.execPBSZ(0);
+        ftpsClient.execPROT("P");
+
+        assertNotNull(ftpsClient.listNames());
+
+        assertEquals(1, getHandshakes(false).getCount());
+        assertEquals(0, getHandshakes(true).getCount());
+    }
+
+    /**
+     * The client looks up the data connection session by the address of the
+     * control connection, thus resuming its session.
+     */
+    public void testResumedSession() throws Exception {
+        SSLContext context = SSLContext.getInstance("TLSv1.2");
+        context.init(new KeyManager[] { clientKeyManager },
+                new TrustManager[] { clientTrustManager }, null);
+        SSLSocketFactory socketFactory = context.getSocketFactory();
+
+        SSLSocket control = null;
+        try {
+            control = (SSLSocket) socketFactory.createSocket("localhost",
+                    getListenerPort());
+            control.setSoTimeout(10000);
+            BufferedReader reader = reader(control.getInputStream());
+            OutputStream out = control.getOutputStream();
+            assertReply(reader, "220");
+
+            send(out, "USER " + ADMIN_USERNAME);
+            assertReply(reader, "331");
+            send(out, "PASS " + ADMIN_PASSWORD);
+            assertReply(reader, "230");
+            send(out, "PBSZ 0");
+            assertReply(reader, "200");
+            send(out, "PROT P");
+            assertReply(reader, "200");
+
+            for (int i = 0; i < 2; i++) {
+                send(out, "PASV");
+                String reply = assertReply(reader, "227");
+                String[] address = reply.substring(reply.indexOf('(') + 1,
+                        reply.indexOf(')')).split(",");
+                int dataPort = Integer.parseInt(address[4]) * 256
+                        + Integer.parseInt(address[5]);
+
+                // the JDK client looks up the session to resume by the
+                // host and port of the underlying socket, pretend to be
+                // connected to the control port
+                final int controlPort = getListenerPort();
+                Socket plainData = new Socket("localhost", dataPort) {
+                    @Override
+                    public int getPort() {
+                        return controlPort;
+                    }
+                };
+                send(out, "NLST");
+                SSLSocket data = (SSLSocket) socketFactory.createSocket(
+                        plainData, "localhost", getListenerPort(), true);
+                try {
+                    data.startHandshake();
+                    InputStream in = data.getInputStream();
+                    while (in.read() != -1) {
+                        // read the listing
+                    }
+                } finally {
+                    data.close();
+                }
+                assertReply(reader, "150");
+                assertReply(reader, "226");
+            }
+        } finally {
+            if (control != null) {
+                control.close();
+            }
+        }
+
+        assertEquals(2, getHandshakes(false).getCount());
+        assertEquals(2, getHandshakes(true).getCount());
+    }
+
+    private static BufferedReader reader(InputStream in) {
+        return new BufferedReader(new InputStreamReader(in,
+                StandardCharsets.UTF_8));
+    }
+
+    private static void send(OutputStream out, String command)
+            throws IOException {
+        out.write((command + "\r\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static String assertReply(BufferedReader reader, String code)
+            throws IOException {
+        String reply = reader.readLine();
+        assertNotNull(reply);
+        assertTrue(reply, reply.startsWith(code));
+        return reply;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.ssl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.commons.net.ftp.FTPSClient;
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+ * Runs the secure data transfers over non-blocking data connections.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioImplicitTLSTest extends MinaImplicitTLSTest {
+
+    private static final byte[] LARGE_TEST_DATA = new byte[1024 * 1024 + 123];
+
+    static {
+        new Random(42).nextBytes(LARGE_TEST_DATA);
+    }
+
+    @Override
+    protected DataConnectionConfigurationFactory createDataConnectionConfigurationFactory() {
+        DataConnectionConfigurationFactory factory = super
+                .createDataConnectionConfigurationFactory();
+        factory.setNioEnabled(true);
+        return factory;
+    }
+
+    private void secureDataConnection() throws Exception {
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        ((FTPSClient) client).execPBSZ(0);
+        ((FTPSClient) client).execPROT("P");
+    }
+
+    private void assertRetrieve() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE1, LARGE_TEST_DATA);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        assertTrue(client.retrieveFile(TEST_FILE1.getName(), baos));
+
+        TestUtil.assertArraysEqual(LARGE_TEST_DATA, baos.toByteArray());
+    }
+
+    public void testRetrieveInPassiveMode() throws Exception {
+        secureDataConnection();
+        client.enterLocalPassiveMode();
+
+        assertRetrieve();
+    }
+
+    public void testRetrieveInActiveMode() throws Exception {
+        secureDataConnection();
+        assertRetrieve();
+    }
+
+    public void testRetrieveWithRestart() throws Exception {
+        secureDataConnection();
+        client.enterLocalPassiveMode();
+        TestUtil.writeDataToFile(TEST_FILE1, LARGE_TEST_DATA);
+
+        client.setRestartOffset(1000);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        assertTrue(client.retrieveFile(TEST_FILE1.getName(), baos));
+
+        byte[] expected = new byte[LARGE_TEST_DATA.length - 1000];
+        System.arraycopy(LARGE_TEST_DATA, 1000, expected, 0, expected.length);
+        TestUtil.assertArraysEqual(expected, baos.toByteArray());
+    }
+
+    public void testStoreLargeFile() throws Exception {
+        secureDataConnection();
+        client.enterLocalPassiveMode();
+
+        assertTrue(client.storeFile(TEST_FILE1.getName(),
+                new ByteArrayInputStream(LARGE_TEST_DATA)));
+
+        TestUtil.assertFileEqual(LARGE_TEST_DATA, TEST_FILE1);
+    }
+
+    public void testSeveralTransfers() throws Exception {
+        secureDataConnection();
+        client.enterLocalPassiveMode();
+
+        for (int i = 0; i < 5; i++) {
+            assertRetrieve();
+            assertNotNull(client.listNames());
+        }
+        assertEquals(10, server.getServerContext().getFtpMetrics()
+                .getDataTlsHandshakeRate(false).getCount());
+    }
+}
@@ -115,4 +115,59 @@ public class BaseUserTest extends TestCase {
 
         assertNull(user.authorize(REQUEST));
     }
+
+    public void testWritePermissions() {
+        List<Authority> authorities = new ArrayList<>();
+        authorities.add(new WritePermission("/dir"));
+        authorities.add(new TransferRatePermission(0, 0));
+        authorities.add(new WritePermission("/dir/sub"));
+
+        user.setAuthorities(authorities);
+
+        WriteRequest request = new WriteRequest("/dir/sub/file");
+        assertSame(request, user.authorize(request));
+        assertNull(user.authorize(new WriteRequest("/dir/file")));
+        assertNull(user.authorize(new WriteRequest("/")));
+    }
+
+    public void testDisjointWritePermissions() {
+        List<Authority> authorities = new ArrayList<>();
+        authorities.add(new WritePermission("/dir1"));
+        authorities.add(new WritePermission("/dir2"));
+
+        user.setAuthorities(authorities);
+
+        assertNull(user.authorize(new WriteRequest("/dir1/file")));
+        assertNull(user.authorize(new WriteRequest("/dir2/file")));
+    }
+
+    public void testNoWritePermission() {
+        user.setAuthorities(new ArrayList<Authority>());
+
+        assertNull(user.authorize(new WriteRequest("/file")));
+    }
+
+    public void testChangedWritePermissions() {
+        List<Authority> authorities = new ArrayList<>();
+        authorities.add(new WritePermission("/dir1"));
+        user.setAuthorities(authorities);
+        assertNotNull(user.authorize(new WriteRequest("/dir1/file")));
+
+        // changing the list does not change the user
+        authorities.add(new WritePermission("/dir2"));
+        assertNotNull(user.authorize(new WriteRequest("/dir1/file")));
+
+        user.setAuthorities(authorities);
+        assertNull(user.authorize(new WriteRequest("/dir1/file")));
+    }
+
+    public void testWritePermissionWithOtherAuthority() {
+        List<Authority> authorities = new ArrayList<>();
+        authorities.add(new WritePermission("/dir"));
+        authorities.add(NEVER_ALLOW_AUTHORITY);
+
+        user.setAuthorities(authorities);
+
+        assertNull(user.authorize(new WriteRequest("/dir/file")));
+    }
 }
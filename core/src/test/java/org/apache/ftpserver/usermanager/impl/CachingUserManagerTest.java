@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.io.File;
+
+import org.apache.ftpserver.ftplet.Authentication;
+import org.apache.ftpserver.ftplet.AuthenticationFailedException;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.usermanager.CachingUserManagerFactory;
+import org.apache.ftpserver.usermanager.ClearTextPasswordEncryptor;
+import org.apache.ftpserver.usermanager.UserManagerFactory;
+import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
+
+/**
+ * Runs the user manager tests through a cache, and tests the caching.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class CachingUserManagerTest extends VolatilePropertiesUserManagerTest {
+
+    /**
+     * Counts the lookups reaching the cached user manager
+     */
+    private static class CountingUserManager implements UserManager {
+        private final UserManager userManager = new PropertiesUserManager(
+                new ClearTextPasswordEncryptor(), (File) null, "admin");
+
+        private int lookups = 0;
+
+        public User getUserByName(String username) throws FtpException {
+            lookups++;
+            return userManager.getUserByName(username);
+        }
+
+        public User authenticate(Authentication authentication)
+                throws AuthenticationFailedException {
+            lookups++;
+            return userManager.authenticate(authentication);
+        }
+
+        public boolean isAdmin(String username) throws FtpException {
+            lookups++;
+            return userManager.isAdmin(username);
+        }
+
+        public boolean doesExist(String username) throws FtpException {
+            lookups++;
+            return userManager.doesExist(username);
+        }
+
+        public String[] getAllUserNames() throws FtpException {
+            return userManager.getAllUserNames();
+        }
+
+        public void delete(String username) throws FtpException {
+            userManager.delete(username);
+        }
+
+        public void save(User user) throws FtpException {
+            userManager.save(user);
+        }
+
+        public String getAdminName() throws FtpException {
+            return userManager.getAdminName();
+        }
+    }
+
+    @Override
+    protected UserManagerFactory createUserManagerFactory() throws FtpException {
+        CachingUserManagerFactory factory = new CachingUserManagerFactory();
+        factory.setUserManager(super.createUserManagerFactory()
+                .createUserManager());
+        return factory;
+    }
+
+    private CountingUserManager createCountingUserManager() throws FtpException {
+        CountingUserManager counting = new CountingUserManager();
+        BaseUser user = new BaseUser();
+        user.setName("user1");
+        user.setPassword("pw1");
+        counting.save(user);
+        return counting;
+    }
+
+    public void testCachedAuthentication() throws Exception {
+        CountingUserManager counting = createCountingUserManager();
+        CachingUserManager caching = new CachingUserManager(counting, 10,
+                60000, 60000);
+
+        assertNotNull(caching.authenticate(new UsernamePasswordAuthentication(
+                "user1", "pw1")));
+        assertNotNull(caching.authenticate(new UsernamePasswordAuthentication(
+                "user1", "pw1")));
+        assertEquals(1, counting.lookups);
+        assertEquals(1, caching.getHitCount());
+        assertEquals(1, caching.getMissCount());
+
+        // a wrong password is checked by the cached user manager
+        try {
+            caching.authenticate(new UsernamePasswordAuthentication("user1",
+                    "foo"));
+            fail("Must throw AuthenticationFailedException");
+        } catch (AuthenticationFailedException e) {
+            // ok
+        }
+        assertEquals(2, counting.lookups);
+    }
+
+    public void testCachedUnknownUser() throws Exception {
+        CountingUserManager counting = createCountingUserManager();
+        CachingUserManager caching = new CachingUserManager(counting, 10,
+                60000, 60000);
+
+        assertNull(caching.getUserByName("foo"));
+        assertFalse(caching.doesExist("foo"));
+        try {
+            caching.authenticate(new UsernamePasswordAuthentication("foo",
+                    "foo"));
+            fail("Must throw AuthenticationFailedException");
+        } catch (AuthenticationFailedException e) {
+            // ok
+        }
+        assertEquals(1, counting.lookups);
+    }
+
+    public void testUnknownUserNotCached() throws Exception {
+        CountingUserManager counting = createCountingUserManager();
+        CachingUserManager caching = new CachingUserManager(counting, 10,
+                60000, 0);
+
+        assertNull(caching.getUserByName("foo"));
+        assertNull(caching.getUserByName("foo"));
+        assertEquals(2, counting.lookups);
+    }
+
+    public void testExpiry() throws Exception {
+        CountingUserManager counting = createCountingUserManager();
+        CachingUserManager caching = new CachingUserManager(counting, 10,
+                50, 50);
+
+        assertNotNull(caching.getUserByName("user1"));
+        assertNotNull(caching.getUserByName("user1"));
+        assertEquals(1, counting.lookups);
+
+        Thread.sleep(100);
+
+        assertNotNull(caching.getUserByName("user1"));
+        assertEquals(2, counting.lookups);
+    }
+
+    public void testEviction() throws Exception {
+        CountingUserManager counting = createCountingUserManager();
+        CachingUserManager caching = new CachingUserManager(counting, 2,
+                60000, 60000);
+
+        caching.getUserByName("user1");
+        caching.getUserByName("foo");
+        // user1 is now the most recently used
+        caching.getUserByName("user1");
+        caching.getUserByName("bar");
+
+        assertEquals(2, caching.getSize());
+        assertEquals(1, caching.getEvictionCount());
+
+        caching.getUserByName("user1");
+        assertEquals(2, caching.getHitCount());
+        caching.getUserByName("foo");
+        assertEquals(4, caching.getMissCount());
+    }
+
+    public void testCachedIsAdmin() throws Exception {
+        CountingUserManager counting = createCountingUserManager();
+        CachingUserManager caching = new CachingUserManager(counting, 10,
+                60000, 60000);
+
+        caching.getUserByName("user1");
+        assertFalse(caching.isAdmin("user1"));
+        assertFalse(caching.isAdmin("user1"));
+        assertEquals(2, counting.lookups);
+    }
+
+    public void testSaveInvalidates() throws Exception {
+        UserManager caching = userManager;
+        assertNotNull(caching.authenticate(new UsernamePasswordAuthentication(
+                "user1", "pw1")));
+
+        BaseUser user = new BaseUser(caching.getUserByName("user1"));
+        user.setPassword("newpw");
+        caching.save(user);
+
+        try {
+            caching.authenticate(new UsernamePasswordAuthentication("user1",
+                    "pw1"));
+            fail("Must throw AuthenticationFailedException");
+        } catch (AuthenticationFailedException e) {
+            // ok
+        }
+        assertNotNull(caching.authenticate(new UsernamePasswordAuthentication(
+                "user1", "newpw")));
+    }
+
+    public void testDeleteInvalidates() throws Exception {
+        UserManager caching = userManager;
+        assertNotNull(caching.getUserByName("user1"));
+
+        caching.delete("user1");
+
+        assertNull(caching.getUserByName("user1"));
+    }
+}
@@ -23,11 +23,15 @@ import java.io.File;
 import java.io.FileReader;
 import java.sql.Connection;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.User;
 import org.apache.ftpserver.test.TestUtil;
 import org.apache.ftpserver.usermanager.DbUserManagerFactory;
 import org.apache.ftpserver.usermanager.UserManagerFactory;
+import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
 import org.apache.ftpserver.util.IoUtils;
 import org.hsqldb.jdbc.jdbcDataSource;
 
@@ -98,6 +102,73 @@ public class DbUserManagerTest extends UserManagerTestTemplate {
         super.setUp();
     }
 
+    public void testSaveAll() throws Exception {
+        DbUserManager dbUserManager = (DbUserManager) userManager;
+
+        BaseUser newUser = new BaseUser();
+        newUser.setName("newuser");
+        newUser.setPassword("newpw");
+        newUser.setHomeDirectory("newhome");
+
+        BaseUser existingUser = new BaseUser(userManager.getUserByName("user1"));
+        existingUser.setHomeDirectory("movedhome");
+
+        List<User> users = new ArrayList<>();
+        users.add(newUser);
+        users.add(existingUser);
+        dbUserManager.saveAll(users);
+
+        assertEquals("newhome", userManager.getUserByName("newuser")
+                .getHomeDirectory());
+        assertNotNull(userManager.authenticate(new UsernamePasswordAuthentication(
+                "newuser", "newpw")));
+        assertEquals("movedhome", userManager.getUserByName("user1")
+                .getHomeDirectory());
+        // the password of the existing user is kept
+        assertNotNull(userManager.authenticate(new UsernamePasswordAuthentication(
+                "user1", "pw1")));
+    }
+
+    public void testSaveAllRollsBack() throws Exception {
+        DbUserManager dbUserManager = (DbUserManager) userManager;
+
+        BaseUser newUser = new BaseUser();
+        newUser.setName("newuser");
+        newUser.setHomeDirectory("home");
+
+        BaseUser existingUser = new BaseUser(userManager.getUserByName("user1"));
+
+        // the updates are executed after the inserts
+        dbUserManager.setSqlUserUpdate("UPDATE NO_SUCH_TABLE SET homedirectory='{homedirectory}' WHERE userid='{userid}'");
+
+        List<User> users = new ArrayList<>();
+        users.add(newUser);
+        users.add(existingUser);
+        try {
+            dbUserManager.saveAll(users);
+            fail("Must throw FtpException");
+        } catch (FtpException e) {
+            // ok
+        }
+
+        assertFalse(userManager.doesExist("newuser"));
+    }
+
+    public void testSpecialCharactersInUserName() throws Exception {
+        BaseUser user = new BaseUser();
+        user.setName("o'bri{userid}en\\");
+        user.setPassword("pw");
+        user.setHomeDirectory("home");
+        userManager.save(user);
+
+        assertTrue(userManager.doesExist("o'bri{userid}en\\"));
+        assertEquals("o'bri{userid}en\\", userManager.getUserByName(
+                "o'bri{userid}en\\").getName());
+        assertNotNull(userManager.authenticate(new UsernamePasswordAuthentication(
+                "o'bri{userid}en\\", "pw")));
+        assertFalse(userManager.doesExist("o'"));
+    }
+
     @Override
     protected void tearDown() throws Exception {
         Statement stm = conn.createStatement();
@@ -19,13 +19,18 @@
 
 package org.apache.ftpserver.usermanager.impl;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
+import org.apache.ftpserver.ftplet.Authority;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.User;
 import org.apache.ftpserver.usermanager.ClearTextPasswordEncryptor;
@@ -115,4 +120,166 @@ public class PropertiesUserManagerTest extends UserManagerTestTemplate {
         modifiedUser = pum.getUserByName("user1");
         assertEquals("Home directory should have reset back to \""+originalSetting+"\" after second call to refresh().",originalSetting,modifiedUser.getHomeDirectory());
     }
+
+    private PropertiesUserManager reloadUserManager() {
+        return new PropertiesUserManager(new ClearTextPasswordEncryptor(),
+                USERS_FILE, "admin");
+    }
+
+    public void testSaveAppends() throws Exception {
+        long length = USERS_FILE.length();
+
+        BaseUser user = new BaseUser(userManager.getUserByName("user1"));
+        user.setHomeDirectory("newhome");
+        userManager.save(user);
+
+        // the previous entries are kept, overridden by the appended ones
+        assertTrue(USERS_FILE.length() > length);
+        assertEquals("newhome", reloadUserManager().getUserByName("user1")
+                .getHomeDirectory());
+        assertEquals("newhome", userManager.getUserByName("user1")
+                .getHomeDirectory());
+    }
+
+    public void testSaveRemovingAttribute() throws Exception {
+        BaseUser user = new BaseUser(userManager.getUserByName("user1"));
+        List<Authority> authorities = new ArrayList<>();
+        authorities.add(new TransferRatePermission(1, 2, 3));
+        user.setAuthorities(authorities);
+        userManager.save(user);
+
+        user.setAuthorities(new ArrayList<Authority>());
+        userManager.save(user);
+
+        Properties users = new Properties();
+        FileInputStream fis = new FileInputStream(USERS_FILE);
+        try {
+            users.load(fis);
+        } finally {
+            IoUtils.close(fis);
+        }
+        assertNull(users.getProperty("ftpserver.user.user1.burstsize"));
+        TransferRateRequest request = (TransferRateRequest) reloadUserManager()
+                .getUserByName("user1").authorize(new TransferRateRequest());
+        assertEquals(0, request.getMaxUploadRate());
+        assertEquals(0, request.getBurstSize());
+    }
+
+    public void testCompaction() throws Exception {
+        BaseUser user = new BaseUser(userManager.getUserByName("user1"));
+        for (int i = 0; i < 10; i++) {
+            user.setMaxIdleTime(i);
+            userManager.save(user);
+        }
+
+        // each user is written once after compaction, plus some appended
+        BufferedReader reader = new BufferedReader(new FileReader(USERS_FILE));
+        int homes = 0;
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("ftpserver.user.user1.homedirectory")) {
+                    homes++;
+                }
+            }
+        } finally {
+            IoUtils.close(reader);
+        }
+        assertTrue(homes <= 4);
+        assertEquals(9, reloadUserManager().getUserByName("user1")
+                .getMaxIdleTime());
+    }
+
+    public void testDeleteRewrites() throws Exception {
+        BaseUser user = new BaseUser(userManager.getUserByName("user1"));
+        user.setHomeDirectory("newhome");
+        userManager.save(user);
+        userManager.delete("user1");
+
+        assertFalse(reloadUserManager().doesExist("user1"));
+        assertTrue(reloadUserManager().doesExist("user2"));
+    }
+
+    public void testGetAllUserNamesSorted() throws Exception {
+        BaseUser user = new BaseUser();
+        user.setName("a");
+        userManager.save(user);
+
+        String[] names = userManager.getAllUserNames();
+        assertEquals(4, names.length);
+        assertEquals("a", names[0]);
+        assertEquals("user3", names[3]);
+    }
+
+    public void testWatchFile() throws Exception {
+        PropertiesUserManager watching = new PropertiesUserManager(
+                new ClearTextPasswordEncryptor(), USERS_FILE, "admin", true);
+        try {
+            // saved through the user manager, not reloaded
+            BaseUser user = new BaseUser(watching.getUserByName("user1"));
+            user.setHomeDirectory("savedhome");
+            watching.save(user);
+            assertEquals("savedhome", watching.getUserByName("user1")
+                    .getHomeDirectory());
+
+            // changed by another process
+            Properties users = new Properties();
+            users.setProperty("ftpserver.user.user4.userpassword", "pw4");
+            users.setProperty("ftpserver.user.user4.homedirectory", "home");
+            FileOutputStream fos = new FileOutputStream(USERS_FILE);
+            try {
+                users.store(fos, null);
+            } finally {
+                IoUtils.close(fos);
+            }
+
+            // the watch service may poll for changes
+            long timeout = System.currentTimeMillis() + 30000;
+            while (!watching.doesExist("user4")
+                    && System.currentTimeMillis() < timeout) {
+                Thread.sleep(50);
+            }
+            assertTrue(watching.doesExist("user4"));
+            assertFalse(watching.doesExist("user1"));
+        } finally {
+            watching.dispose();
+        }
+    }
+
+    private int countWatcherThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && thread.getName().equals(
+                    "PropertiesUserManager-" + USERS_FILE.getName())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public void testStopWatching() throws Exception {
+        int before = countWatcherThreads();
+        PropertiesUserManager watching = new PropertiesUserManager(
+                new ClearTextPasswordEncryptor(), USERS_FILE, "admin", true);
+        try {
+            assertEquals(before + 1, countWatcherThreads());
+
+            // idempotent
+            watching.startWatching();
+            assertEquals(before + 1, countWatcherThreads());
+
+            watching.stopWatching();
+            long timeout = System.currentTimeMillis() + 10000;
+            while (countWatcherThreads() > before
+                    && System.currentTimeMillis() < timeout) {
+                Thread.sleep(50);
+            }
+            assertEquals(before, countWatcherThreads());
+
+            // the users are kept
+            assertTrue(watching.doesExist("user1"));
+        } finally {
+            watching.dispose();
+        }
+    }
 }
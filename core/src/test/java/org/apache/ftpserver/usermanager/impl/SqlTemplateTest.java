@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class SqlTemplateTest extends TestCase {
+
+    public void testQuotedPlaceholder() {
+        SqlTemplate template = new SqlTemplate(
+                "SELECT * FROM FTP_USER WHERE userid = '{userid}'");
+        assertTrue(template.isParameterized());
+        assertEquals("SELECT * FROM FTP_USER WHERE userid = ?", template
+                .toString());
+    }
+
+    public void testUnquotedPlaceholders() {
+        SqlTemplate template = new SqlTemplate(
+                "UPDATE FTP_USER SET enableflag={enableflag},idletime={idletime} WHERE userid='{userid}'");
+        assertTrue(template.isParameterized());
+        assertEquals("UPDATE FTP_USER SET enableflag=?,idletime=? WHERE userid=?",
+                template.toString());
+    }
+
+    public void testLiteralsKept() {
+        SqlTemplate template = new SqlTemplate(
+                "SELECT userid FROM FTP_USER WHERE userid='{userid}' AND userid='admin' AND x='it''s'");
+        assertTrue(template.isParameterized());
+        assertEquals("SELECT userid FROM FTP_USER WHERE userid=? AND userid='admin' AND x='it''s'",
+                template.toString());
+    }
+
+    public void testNoPlaceholders() {
+        SqlTemplate template = new SqlTemplate(
+                "SELECT userid FROM FTP_USER ORDER BY userid");
+        assertTrue(template.isParameterized());
+        assertEquals("SELECT userid FROM FTP_USER ORDER BY userid", template
+                .toString());
+    }
+
+    public void testPlaceholderInLongerLiteral() {
+        String sql = "SELECT * FROM FTP_USER WHERE userid LIKE '%{userid}%'";
+        SqlTemplate template = new SqlTemplate(sql);
+        assertFalse(template.isParameterized());
+        assertEquals(sql, template.getTemplate());
+    }
+}
@@ -22,6 +22,7 @@ package org.apache.ftpserver.ftplet;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
 import java.util.List;
 
 /**
@@ -159,6 +160,31 @@ public interface FtpFile {
      */
     List<? extends FtpFile> listFiles();
 
+    /**
+     * Open a stream over the file objects of this directory. Unlike
+     * {@link #listFiles()}, the files can be read one at a time, so that large
+     * directories do not have to be held in memory. The stream can only be
+     * iterated once and must be closed after use. The default implementation
+     * iterates over the files returned by {@link #listFiles()}.
+     * 
+     * @param sorted
+     *            true if the files must be returned in alphabetical order,
+     *            false if any order will do. Unsorted streams can be read
+     *            without first reading the whole directory
+     * @return The stream of {@link FtpFile}s, null if not a directory or does
+     *         not exist
+     * @throws IOException
+     *             If the directory can not be read
+     */
+    default DirectoryStream<FtpFile> openDirectoryStream(boolean sorted)
+            throws IOException {
+        List<? extends FtpFile> files = listFiles();
+        if (files == null) {
+            return null;
+        }
+        return new ListDirectoryStream(files);
+    }
+
     /**
      * Create output stream for writing.
      * @param offset The number of bytes at where to start writing.
@@ -20,7 +20,9 @@
 package org.apache.ftpserver.ftplet;
 
 import java.net.InetAddress;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
 
 /**
  * This interface holds all the ftp server statistical information.
@@ -136,4 +138,49 @@ public interface FtpStatistics {
      * @return The total number of logins for the provided user and IP address
      */
     int getCurrentUserLoginNumber(User user, InetAddress ipAddress);
+
+    /**
+     * Get the utilization of the bandwidth limits currently in use, that is
+     * the share of each limit used over the last second or so. The limits are
+     * named after their scope and direction, for example "server.download",
+     * "listener.default.upload", "user.admin.download" or
+     * "ip.127.0.0.1.upload".
+     * The default implementation reports no limits.
+     * @return The utilization of each limit by name, 1.0 meaning the full
+     *         rate is used
+     */
+    default Map<String, Double> getBandwidthUtilization() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Get the recent data transfer rates. The rates are named after their
+     * scope and direction, for example "server.download",
+     * "listener.default.upload" or "user.admin.download". The rates at which
+     * the listeners accept connections are named e.g.
+     * "listener.default.connections", in connections per second. The TLS
+     * handshakes of the data connections are counted in "data-tls.handshakes",
+     * those resuming the session of the control connection in
+     * "data-tls.resumed". The data connections closed as they were not used
+     * within their idle time are counted in "data-connections.reaped".
+     * The default implementation reports no rates.
+     * @return The transfer rates by name
+     */
+    default Map<String, ThroughputStatistics> getThroughput() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Get the latencies of the commands, from the reception of the request
+     * until its final reply. The latencies are named after their scope:
+     * "command.RETR" for a command, "listener.default" for all the commands
+     * received by a listener and "user.admin" for all the commands of a
+     * user. The time until the first byte of a data transfer is named after
+     * the command, for example "first-byte.RETR" or "first-byte.LIST".
+     * The default implementation reports no latencies.
+     * @return The latencies by name
+     */
+    default Map<String, LatencyStatistics> getLatencies() {
+        return Collections.emptyMap();
+    }
 }
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.ftplet;
+
+/**
+ * The distribution of the latencies recorded for a command, a listener or a
+ * user. Latencies are in microseconds. Percentiles are approximated, with
+ * an error below 12.5%.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface LatencyStatistics {
+
+    /**
+     * Get the number of recorded latencies.
+     * @return The number of latencies
+     */
+    long getCount();
+
+    /**
+     * Get the mean latency.
+     * @return The mean latency in microseconds, 0 if none was recorded
+     */
+    double getMean();
+
+    /**
+     * Get the highest latency.
+     * @return The highest latency in microseconds, 0 if none was recorded
+     */
+    long getMax();
+
+    /**
+     * Get the latency below which a given percentage of the latencies fall.
+     * @param percentile The percentage, for example 99.0
+     * @return The latency in microseconds, 0 if none was recorded
+     */
+    long getPercentile(double percentile);
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.ftplet;
+
+import java.nio.file.DirectoryStream;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A {@link DirectoryStream} over an already listed directory, used by the
+ * default implementation of {@link FtpFile#openDirectoryStream(boolean)}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+final class ListDirectoryStream implements DirectoryStream<FtpFile> {
+
+    private final List<? extends FtpFile> files;
+
+    private boolean iterated = false;
+
+    ListDirectoryStream(final List<? extends FtpFile> files) {
+        this.files = files;
+    }
+
+    public synchronized Iterator<FtpFile> iterator() {
+        if (iterated) {
+            throw new IllegalStateException("Iterator already obtained");
+        }
+        iterated = true;
+
+        final Iterator<? extends FtpFile> iter = files.iterator();
+        return new Iterator<FtpFile>() {
+            public boolean hasNext() {
+                return iter.hasNext();
+            }
+
+            public FtpFile next() {
+                return iter.next();
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    public void close() {
+        // nothing to release
+    }
+}
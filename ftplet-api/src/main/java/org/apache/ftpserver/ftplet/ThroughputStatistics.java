@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.ftplet;
+
+/**
+ * The recent rate of the data transferred in one direction, for the whole
+ * server, a listener or a user. The rates are exponentially weighted moving
+ * averages, like the load averages of Unix systems.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface ThroughputStatistics {
+
+    /**
+     * Get the total number of bytes transferred.
+     * @return The number of bytes
+     */
+    long getCount();
+
+    /**
+     * Get the transfer rate averaged over the last minute.
+     * @return The rate in bytes per second
+     */
+    double getOneMinuteRate();
+
+    /**
+     * Get the transfer rate averaged over the last five minutes.
+     * @return The rate in bytes per second
+     */
+    double getFiveMinuteRate();
+
+    /**
+     * Get the transfer rate averaged over the last fifteen minutes.
+     * @return The rate in bytes per second
+     */
+    double getFifteenMinuteRate();
+}